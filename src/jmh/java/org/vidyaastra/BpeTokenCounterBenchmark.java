@@ -0,0 +1,70 @@
+package org.vidyaastra;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of token counting on prompt-like text: an ontology listing in
+ * functional syntax and a natural-language question, with the vocabularies
+ * bundled with the plugin.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark=BpeTokenCounter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BpeTokenCounterBenchmark {
+
+    @Param({"CL100K_BASE", "O200K_BASE"})
+    public BpeTokenCounter.Encoding encoding;
+
+    private BpeTokenCounter bpe;
+    private String ontology;
+    private String question;
+
+    @Setup
+    public void setUp() {
+        bpe = BpeTokenCounter.get(encoding);
+        if (!bpe.isAvailable()) {
+            throw new IllegalStateException("No " + encoding.getFileName() + " vocabulary to benchmark");
+        }
+        StringBuilder sb = new StringBuilder("Prefix(:=<http://example.org/zoo#>)\nOntology(<http://example.org/zoo>\n");
+        for (int i = 0; i < 2_000; i++) {
+            sb.append("Declaration(Class(:Species").append(i).append("))\n")
+                    .append("SubClassOf(:Species").append(i).append(" :Animal)\n")
+                    .append("AnnotationAssertion(rdfs:comment :Species").append(i)
+                    .append(" \"A species of animal kept at the zoo, number ").append(i).append("\")\n");
+        }
+        ontology = sb.append(")\n").toString();
+        question = "Which animals that live in the reptile house were fed more than twice yesterday?";
+    }
+
+    @Benchmark
+    public int countOntology() {
+        return bpe.count(ontology);
+    }
+
+    @Benchmark
+    public int countQuestion() {
+        return bpe.count(question);
+    }
+
+    @Benchmark
+    public int approximateOntology() {
+        return TokenCounter.approximate().count(ontology);
+    }
+}
@@ -0,0 +1,78 @@
+package org.vidyaastra;
+
+/**
+ * Heuristic counter behind {@link TokenCounter#approximate()}.
+ */
+final class ApproximateTokenCounter implements TokenCounter {
+
+    static final ApproximateTokenCounter INSTANCE = new ApproximateTokenCounter();
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private static final int SPACE = 1;
+    private static final int LETTER = 2;
+    private static final int DIGIT = 3;
+    private static final int SYMBOL = 4;
+    private static final int NON_ASCII = 5;
+
+    private ApproximateTokenCounter() {
+    }
+
+    @Override
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        int tokens = 0;
+        int runLength = 0;
+        int previousKind = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int kind = kindOf(c);
+            boolean boundary = kind != previousKind
+                    // a capital letter after a lower-case one starts a new word part
+                    || (kind == LETTER && Character.isUpperCase(c) && i > 0 && Character.isLowerCase(text.charAt(i - 1)));
+            if (boundary) {
+                tokens += tokensFor(previousKind, runLength);
+                runLength = 0;
+            }
+            runLength++;
+            previousKind = kind;
+        }
+        return tokens + tokensFor(previousKind, runLength);
+    }
+
+    private static int kindOf(char c) {
+        if (c == ' ' || c == '\t') {
+            return SPACE;
+        }
+        if (c < 128 && Character.isLetter(c)) {
+            return LETTER;
+        }
+        if (c < 128 && Character.isDigit(c)) {
+            return DIGIT;
+        }
+        return c < 128 ? SYMBOL : NON_ASCII;
+    }
+
+    private static int tokensFor(int kind, int runLength) {
+        if (runLength == 0) {
+            return 0;
+        }
+        switch (kind) {
+            case SPACE:
+                // a single space is merged into the following word
+                return runLength == 1 ? 0 : 1;
+            case LETTER:
+                return (runLength + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+            case DIGIT:
+                // digits are grouped in threes
+                return (runLength + 2) / 3;
+            case SYMBOL:
+                // punctuation and line breaks; common pairs such as "//" merge
+                return (runLength + 1) / 2;
+            default:
+                return runLength;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.vidyaastra;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Azure OpenAI: the deployment is part of the path, the API version a query
+ * parameter and the key is sent in the api-key header. The endpoint's base
+ * URL is the resource, such as {@code https://my-resource.openai.azure.com},
+ * and its model is the deployment name.
+ */
+public class AzureOpenAiProvider implements CompletionProvider {
+
+    public static final String DEFAULT_API_VERSION = "2024-10-21";
+
+    private final String apiVersion;
+
+    public AzureOpenAiProvider(String apiVersion) {
+        this.apiVersion = apiVersion == null || apiVersion.trim().isEmpty() ? DEFAULT_API_VERSION : apiVersion.trim();
+    }
+
+    public String getApiVersion() {
+        return apiVersion;
+    }
+
+    @Override
+    public CompletionProvider.Kind getKind() {
+        return CompletionProvider.Kind.AZURE;
+    }
+
+    @Override
+    public URI chatCompletionsUri(Endpoint endpoint) {
+        if (endpoint.getModel().isEmpty()) {
+            throw new IllegalArgumentException("Azure OpenAI needs a deployment name as the model.");
+        }
+        return URI.create(endpoint.getBaseUrl() + "/openai/deployments/" + encode(endpoint.getModel())
+                + "/chat/completions?api-version=" + encode(apiVersion));
+    }
+
+    @Override
+    public URI modelsUri(Endpoint endpoint) {
+        return URI.create(endpoint.getBaseUrl() + "/openai/models?api-version=" + encode(apiVersion));
+    }
+
+    @Override
+    public void authorize(HttpRequest.Builder builder, Endpoint endpoint) {
+        if (!endpoint.getApiKey().isEmpty()) {
+            builder.header("api-key", endpoint.getApiKey());
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AzureOpenAiProvider && apiVersion.equals(((AzureOpenAiProvider) o).apiVersion);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getKind(), apiVersion);
+    }
+
+    @Override
+    public String toString() {
+        return getKind().getDisplayName() + " " + apiVersion;
+    }
+}
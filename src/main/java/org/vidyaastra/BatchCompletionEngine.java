@@ -0,0 +1,329 @@
+package org.vidyaastra;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many chat completions with a bounded number of requests in flight.
+ *
+ * Each prompt runs on its own virtual thread when the JVM supports them
+ * (Java 21+), otherwise on a fixed pool sized to the concurrency limit. A
+ * failing prompt only fails its own {@link Result}; the rest of the batch
+ * keeps going. Results are returned in input order and can additionally be
+ * observed one by one as they finish.
+ *
+ * Interrupting the thread that called {@link #run} cancels all outstanding
+ * requests.
+ */
+public class BatchCompletionEngine {
+
+    /**
+     * The call made for every request; by default {@link OpenAiCaller#generateCompletion}.
+     */
+    public interface Completer {
+        String complete(String systemPrompt, String userQuery, double temperature) throws Exception;
+    }
+
+    /**
+     * Receives each result as soon as it is available. Called from worker
+     * threads, possibly concurrently.
+     */
+    public interface ResultListener {
+        void onResult(Result result);
+    }
+
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Completer completer;
+    private final int maxConcurrency;
+
+    /**
+     * @param caller The caller used for every prompt.
+     * @param maxConcurrency Maximum number of requests in flight at once.
+     */
+    public BatchCompletionEngine(OpenAiCaller caller, int maxConcurrency) {
+        this(caller::generateCompletion, maxConcurrency);
+    }
+
+    /**
+     * @param completer The call made for every prompt.
+     * @param maxConcurrency Maximum number of requests in flight at once.
+     */
+    public BatchCompletionEngine(Completer completer, int maxConcurrency) {
+        if (completer == null) {
+            throw new IllegalArgumentException("Completer must be provided.");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency limit must be at least 1.");
+        }
+        this.completer = completer;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return true if prompts run on virtual threads in this JVM.
+     */
+    public static boolean usesVirtualThreads() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Runs all requests and waits for them to finish.
+     * @param requests The prompts to run.
+     * @return The results in input order plus aggregate statistics.
+     * @throws InterruptedException If interrupted; outstanding requests are cancelled.
+     */
+    public Report run(List<Request> requests) throws InterruptedException {
+        return run(requests, null);
+    }
+
+    /**
+     * Runs all requests, reporting each result as it finishes, and waits for them.
+     * @param requests The prompts to run.
+     * @param listener Receives results in completion order; may be null.
+     * @return The results in input order plus aggregate statistics.
+     * @throws InterruptedException If interrupted; outstanding requests are cancelled.
+     */
+    public Report run(List<Request> requests, ResultListener listener) throws InterruptedException {
+        Result[] results = new Result[requests.size()];
+        Semaphore permits = new Semaphore(maxConcurrency);
+        ExecutorService executor = newExecutor();
+        long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < results.length; i++) {
+                // Acquire before submitting so at most maxConcurrency threads exist at once
+                permits.acquire();
+                int index = i;
+                Request request = requests.get(i);
+                executor.execute(() -> {
+                    try {
+                        Result result = execute(index, request);
+                        results[index] = result;
+                        if (listener != null) {
+                            listener.onResult(result);
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting; interruption is handled below
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+
+        return new Report(Arrays.asList(results), System.nanoTime() - start);
+    }
+
+    private Result execute(int index, Request request) {
+        long start = System.nanoTime();
+        try {
+            String content = completer.complete(request.getSystemPrompt(), request.getUserQuery(),
+                    request.getTemperature());
+            return new Result(index, request, content, null, System.nanoTime() - start);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return new Result(index, request, null, e, System.nanoTime() - start);
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        if (VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual threads unavailable, using a fixed pool: " + e.getMessage());
+            }
+        }
+        return Executors.newFixedThreadPool(maxConcurrency, r -> {
+            Thread thread = new Thread(r, "vidyaastra-batch-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One prompt of a batch.
+     */
+    public static class Request {
+        private final String systemPrompt;
+        private final String userQuery;
+        private final double temperature;
+
+        public Request(String systemPrompt, String userQuery, double temperature) {
+            this.systemPrompt = systemPrompt;
+            this.userQuery = userQuery;
+            this.temperature = temperature;
+        }
+
+        public Request(String systemPrompt, String userQuery) {
+            this(systemPrompt, userQuery, 0.7);
+        }
+
+        public String getSystemPrompt() {
+            return systemPrompt;
+        }
+
+        public String getUserQuery() {
+            return userQuery;
+        }
+
+        public double getTemperature() {
+            return temperature;
+        }
+    }
+
+    /**
+     * The outcome of one prompt: either content or the error it failed with.
+     */
+    public static class Result {
+        private final int index;
+        private final Request request;
+        private final String content;
+        private final Exception error;
+        private final long latencyNanos;
+
+        Result(int index, Request request, String content, Exception error, long latencyNanos) {
+            this.index = index;
+            this.request = request;
+            this.content = content;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        /**
+         * @return Position of the request in the submitted list.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Request getRequest() {
+            return request;
+        }
+
+        /**
+         * @return The generated text, or null if the request failed.
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * @return The failure, or null if the request succeeded.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public Duration getLatency() {
+            return Duration.ofNanos(latencyNanos);
+        }
+    }
+
+    /**
+     * Results of a finished batch together with aggregate statistics.
+     */
+    public static class Report {
+        private final List<Result> results;
+        private final long elapsedNanos;
+        private final int successCount;
+        private final long totalLatencyNanos;
+        private final long maxLatencyNanos;
+
+        Report(List<Result> results, long elapsedNanos) {
+            this.results = Collections.unmodifiableList(new ArrayList<>(results));
+            this.elapsedNanos = elapsedNanos;
+            int successes = 0;
+            long total = 0;
+            long max = 0;
+            for (Result result : results) {
+                if (result.isSuccess()) {
+                    successes++;
+                }
+                total += result.latencyNanos;
+                max = Math.max(max, result.latencyNanos);
+            }
+            this.successCount = successes;
+            this.totalLatencyNanos = total;
+            this.maxLatencyNanos = max;
+        }
+
+        /**
+         * @return One result per request, in input order.
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public int getSuccessCount() {
+            return successCount;
+        }
+
+        public int getFailureCount() {
+            return results.size() - successCount;
+        }
+
+        /**
+         * @return Wall-clock time from the first submission to the last completion.
+         */
+        public Duration getElapsed() {
+            return Duration.ofNanos(elapsedNanos);
+        }
+
+        /**
+         * @return Completed requests (successful or not) per second of wall-clock time.
+         */
+        public double getThroughputPerSecond() {
+            return elapsedNanos == 0 ? 0 : results.size() * 1e9 / elapsedNanos;
+        }
+
+        public Duration getMeanLatency() {
+            return results.isEmpty() ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos / results.size());
+        }
+
+        public Duration getMaxLatency() {
+            return Duration.ofNanos(maxLatencyNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Batch: %d requests (%d ok, %d failed) in %d ms, %.2f req/s, mean latency %d ms, max %d ms",
+                    results.size(), successCount, getFailureCount(), getElapsed().toMillis(),
+                    getThroughputPerSecond(), getMeanLatency().toMillis(), getMaxLatency().toMillis());
+        }
+    }
+}
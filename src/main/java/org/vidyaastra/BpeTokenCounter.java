@@ -0,0 +1,499 @@
+package org.vidyaastra;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.protege.editor.core.util.ProtegeDirectories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts tokens exactly as OpenAI's byte-pair encodings do.
+ *
+ * Text is split into pieces with the encoding's pre-tokenization pattern, each
+ * piece is encoded as UTF-8, and adjacent byte sequences are merged in the
+ * order of their rank in the vocabulary until no known pair is left; the
+ * number of remaining parts is the piece's token count. Vocabularies are read
+ * from tiktoken files ({@code <name>.tiktoken}, one base64 token and its rank
+ * per line) on first use, from {@code /org/vidyaastra/tokenizer/} on the
+ * class path or from {@code vidyaastra/tokenizer} in the Protégé data
+ * directory. The plugin ships OpenAI's published cl100k_base and o200k_base
+ * files there; without a vocabulary the counter falls back to
+ * {@link TokenCounter#approximate()}.
+ *
+ * Counting reuses per-thread buffers, so apart from the regex match state it
+ * does not allocate. Instances are thread safe.
+ */
+public class BpeTokenCounter implements TokenCounter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BpeTokenCounter.class);
+
+    private static final String RESOURCE_PATH = "/org/vidyaastra/tokenizer/";
+
+    /**
+     * The supported encodings.
+     */
+    public enum Encoding {
+        /**
+         * GPT-4, GPT-3.5 and their embeddings
+         */
+        CL100K_BASE("cl100k_base",
+                "'(?i:[sdmt]|ll|ve|re)|[^\\r\\n\\p{L}\\p{N}]?+\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]++[\\r\\n]*"
+                        + "|\\s*[\\r\\n]|\\s+(?!\\S)|\\s+"),
+
+        /**
+         * GPT-4o, GPT-4.1, GPT-5 and the o-series reasoning models
+         */
+        O200K_BASE("o200k_base",
+                "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+"
+                        + "(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                        + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*"
+                        + "(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+                        + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+        private final String fileName;
+        private final Pattern pattern;
+
+        Encoding(String name, String regex) {
+            this.fileName = name + ".tiktoken";
+            // tiktoken's \s also matches Unicode spaces
+            this.pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        Pattern getPattern() {
+            return pattern;
+        }
+    }
+
+    private static final Map<Encoding, BpeTokenCounter> SHARED = new EnumMap<>(Encoding.class);
+
+    static {
+        for (Encoding encoding : Encoding.values()) {
+            SHARED.put(encoding, new BpeTokenCounter(encoding, null));
+        }
+    }
+
+    private final Encoding encoding;
+    private final ThreadLocal<Scratch> scratch;
+    private volatile Vocabulary vocabulary;
+    private volatile boolean loadAttempted;
+
+    private BpeTokenCounter(Encoding encoding, Vocabulary vocabulary) {
+        this.encoding = encoding;
+        this.vocabulary = vocabulary;
+        this.loadAttempted = vocabulary != null;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(encoding.getPattern()));
+    }
+
+    /**
+     * @return The shared counter of an encoding; its vocabulary is loaded on first use.
+     */
+    public static BpeTokenCounter get(Encoding encoding) {
+        return SHARED.get(encoding);
+    }
+
+    /**
+     * @return The shared counter of the encoding the model uses.
+     */
+    public static BpeTokenCounter forModel(String model) {
+        return get(encodingFor(model));
+    }
+
+    /**
+     * Picks the encoding of a model by name. Unknown models, such as local
+     * ones, get cl100k_base as the closest widely used encoding.
+     */
+    public static Encoding encodingFor(String model) {
+        if (model == null) {
+            return Encoding.CL100K_BASE;
+        }
+        String name = model.trim().toLowerCase(Locale.ROOT);
+        name = name.substring(name.lastIndexOf('/') + 1);
+        for (String prefix : new String[] {"gpt-4o", "chatgpt-4o", "gpt-4.1", "gpt-4.5", "gpt-5", "o1", "o3", "o4"}) {
+            if (name.startsWith(prefix)) {
+                return Encoding.O200K_BASE;
+            }
+        }
+        return Encoding.CL100K_BASE;
+    }
+
+    /**
+     * Creates a counter with a vocabulary read from a tiktoken file.
+     * @param encoding The encoding whose pre-tokenization the vocabulary belongs to.
+     * @param in The vocabulary; not closed.
+     * @throws IOException If the vocabulary cannot be read or is malformed.
+     */
+    public static BpeTokenCounter load(Encoding encoding, InputStream in) throws IOException {
+        return new BpeTokenCounter(encoding, Vocabulary.read(in));
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Loads the vocabulary if that has not been tried yet.
+     * @return true if exact counts are available.
+     */
+    public boolean isAvailable() {
+        return vocabulary() != null;
+    }
+
+    @Override
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        Vocabulary vocab = vocabulary();
+        if (vocab == null) {
+            return TokenCounter.approximate().count(text);
+        }
+        Scratch s = scratch.get();
+        Matcher matcher = s.matcher.reset(text);
+        int tokens = 0;
+        while (matcher.find()) {
+            int length = s.encode(text, matcher.start(), matcher.end());
+            tokens += vocab.rank(s.bytes, 0, length) >= 0 ? 1 : s.merge(vocab, length, null);
+        }
+        // Do not keep a reference to the text
+        matcher.reset("");
+        return tokens;
+    }
+
+    /**
+     * Encodes text into token ids.
+     * @return The token ids, or null if no vocabulary is available.
+     */
+    public int[] encode(CharSequence text) {
+        Vocabulary vocab = vocabulary();
+        if (vocab == null) {
+            return null;
+        }
+        IntList ids = new IntList();
+        Scratch s = scratch.get();
+        Matcher matcher = s.matcher.reset(text);
+        while (matcher.find()) {
+            int length = s.encode(text, matcher.start(), matcher.end());
+            int rank = vocab.rank(s.bytes, 0, length);
+            if (rank >= 0) {
+                ids.add(rank);
+            } else {
+                s.merge(vocab, length, ids);
+            }
+        }
+        matcher.reset("");
+        return ids.toArray();
+    }
+
+    private Vocabulary vocabulary() {
+        if (!loadAttempted) {
+            synchronized (this) {
+                if (!loadAttempted) {
+                    vocabulary = loadBundled();
+                    loadAttempted = true;
+                }
+            }
+        }
+        return vocabulary;
+    }
+
+    private Vocabulary loadBundled() {
+        long start = System.nanoTime();
+        try (InputStream in = openVocabulary()) {
+            if (in == null) {
+                logger.info("No {} vocabulary found, token counts are estimated", encoding.getFileName());
+                return null;
+            }
+            Vocabulary vocab = Vocabulary.read(in);
+            logger.info("Loaded {} tokens of {} in {} ms", vocab.size(), encoding.getFileName(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return vocab;
+        } catch (IOException e) {
+            logger.warn("Could not load {}, token counts are estimated", encoding.getFileName(), e);
+            return null;
+        }
+    }
+
+    private InputStream openVocabulary() throws IOException {
+        InputStream in = BpeTokenCounter.class.getResourceAsStream(RESOURCE_PATH + encoding.getFileName());
+        if (in != null) {
+            return in;
+        }
+        File file;
+        try {
+            file = new File(new File(new File(ProtegeDirectories.getDataDirectory(), "vidyaastra"), "tokenizer"),
+                    encoding.getFileName());
+        } catch (RuntimeException | LinkageError e) {
+            // outside Protégé
+            return null;
+        }
+        return file.isFile() ? new FileInputStream(file) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "BpeTokenCounter[" + encoding.getFileName() + (isAvailable() ? "" : ", estimating") + "]";
+    }
+
+    /**
+     * Per-thread buffers for one piece of text.
+     */
+    private static final class Scratch {
+        private final Matcher matcher;
+        private byte[] bytes = new byte[256];
+        // Start of each part and rank of the part merged with its successor
+        private int[] starts = new int[257];
+        private int[] ranks = new int[257];
+
+        Scratch(Pattern pattern) {
+            this.matcher = pattern.matcher("");
+        }
+
+        /**
+         * Writes text[from, to) as UTF-8 into {@link #bytes}.
+         * @return The number of bytes written.
+         */
+        int encode(CharSequence text, int from, int to) {
+            int required = (to - from) * 3;
+            if (bytes.length < required) {
+                bytes = new byte[Math.max(required, bytes.length * 2)];
+            }
+            byte[] out = bytes;
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    out[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[n++] = (byte) (0xC0 | (c >> 6));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    out[n++] = (byte) (0xF0 | (cp >> 18));
+                    out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, encoded as U+FFFD like String.getBytes
+                    out[n++] = (byte) 0xEF;
+                    out[n++] = (byte) 0xBF;
+                    out[n++] = (byte) 0xBD;
+                } else {
+                    out[n++] = (byte) (0xE0 | (c >> 12));
+                    out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Runs the byte-pair merges over the first {@code length} bytes.
+         * @param ids Receives the token ids if not null.
+         * @return The number of tokens.
+         */
+        int merge(Vocabulary vocab, int length, IntList ids) {
+            if (starts.length < length + 1) {
+                starts = new int[length + 1];
+                ranks = new int[length + 1];
+            }
+            // Parts start as single bytes; the last entry marks the end
+            int parts = length + 1;
+            for (int i = 0; i < parts; i++) {
+                starts[i] = i;
+            }
+            for (int i = 0; i < parts - 2; i++) {
+                ranks[i] = pairRank(vocab, i, parts);
+            }
+            ranks[parts - 2] = Integer.MAX_VALUE;
+            ranks[parts - 1] = Integer.MAX_VALUE;
+
+            while (parts > 2) {
+                int min = Integer.MAX_VALUE;
+                int at = -1;
+                for (int i = 0; i < parts - 2; i++) {
+                    if (ranks[i] < min) {
+                        min = ranks[i];
+                        at = i;
+                    }
+                }
+                if (at < 0) {
+                    break;
+                }
+                // Part at+1 is absorbed into part at
+                System.arraycopy(starts, at + 2, starts, at + 1, parts - at - 2);
+                System.arraycopy(ranks, at + 2, ranks, at + 1, parts - at - 2);
+                parts--;
+                ranks[at] = pairRank(vocab, at, parts);
+                if (at > 0) {
+                    ranks[at - 1] = pairRank(vocab, at - 1, parts);
+                }
+            }
+            if (ids != null) {
+                for (int i = 0; i < parts - 1; i++) {
+                    ids.add(vocab.rank(bytes, starts[i], starts[i + 1]));
+                }
+            }
+            return parts - 1;
+        }
+
+        /**
+         * @return The rank of parts i and i+1 merged, or MAX_VALUE if unknown or there is no part i+1.
+         */
+        private int pairRank(Vocabulary vocab, int i, int parts) {
+            if (i + 2 >= parts) {
+                return Integer.MAX_VALUE;
+            }
+            int rank = vocab.rank(bytes, starts[i], starts[i + 2]);
+            return rank >= 0 ? rank : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Byte sequences and their ranks in an open-addressing table, looked up
+     * by a range of a byte array without copying it.
+     */
+    static final class Vocabulary {
+        private final byte[] pool;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final int[] ranks;
+        private final int[] slots;
+        private final int size;
+
+        private Vocabulary(byte[] pool, int[] offsets, int[] lengths, int[] ranks, int size) {
+            this.pool = pool;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.ranks = ranks;
+            this.size = size;
+            this.slots = new int[Integer.highestOneBit(Math.max(size, 1) * 2) * 2];
+            int mask = slots.length - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(pool, offsets[i], offsets[i] + lengths[i]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+
+        static Vocabulary read(InputStream in) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] pool = new byte[1 << 16];
+            int[] offsets = new int[1 << 12];
+            int[] lengths = new int[1 << 12];
+            int[] ranks = new int[1 << 12];
+            int size = 0;
+            int used = 0;
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                byte[] token;
+                int rank;
+                try {
+                    token = decoder.decode(line.substring(0, space));
+                    rank = Integer.parseInt(line.substring(space + 1).trim());
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    throw new IOException("Malformed vocabulary line " + lineNumber + ": " + line);
+                }
+                if (size == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, size * 2);
+                    lengths = Arrays.copyOf(lengths, size * 2);
+                    ranks = Arrays.copyOf(ranks, size * 2);
+                }
+                if (used + token.length > pool.length) {
+                    pool = Arrays.copyOf(pool, Math.max(pool.length * 2, used + token.length));
+                }
+                System.arraycopy(token, 0, pool, used, token.length);
+                offsets[size] = used;
+                lengths[size] = token.length;
+                ranks[size] = rank;
+                used += token.length;
+                size++;
+            }
+            return new Vocabulary(Arrays.copyOf(pool, used), offsets, lengths, ranks, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return The rank of bytes[from, to), or -1 if it is not a token.
+         */
+        int rank(byte[] bytes, int from, int to) {
+            int mask = slots.length - 1;
+            int slot = hash(bytes, from, to) & mask;
+            int length = to - from;
+            int entry;
+            while ((entry = slots[slot]) != 0) {
+                int i = entry - 1;
+                if (lengths[i] == length && equalRange(pool, offsets[i], bytes, from, length)) {
+                    return ranks[i];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static boolean equalRange(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+            for (int i = 0; i < length; i++) {
+                if (a[aFrom + i] != b[bFrom + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(byte[] bytes, int from, int to) {
+            // FNV-1a, then spread so that linear probing sees the high bits too
+            int h = 0x811C9DC5;
+            for (int i = from; i < to; i++) {
+                h = (h ^ bytes[i]) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Growable list of token ids.
+     */
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
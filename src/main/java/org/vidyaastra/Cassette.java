@@ -0,0 +1,420 @@
+package org.vidyaastra;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records LLM request/response pairs to a file and serves them back later.
+ *
+ * In {@link Mode#RECORD} every exchange made by an OpenAiCaller is appended to
+ * the cassette as one JSON line holding the request key, status, response body
+ * (the raw event stream for streamed calls), time to first byte and total
+ * latency. In {@link Mode#REPLAY} the recorded responses are served instead
+ * of calling the endpoint, either with their original timing or immediately.
+ * Requests are matched on a normalized form of model, temperature, streaming
+ * flag and messages, so line ending and trailing whitespace differences do
+ * not matter, while the endpoint URL and API key are ignored. Identical
+ * requests recorded more than once are replayed in recording order.
+ */
+public class Cassette {
+
+    private static final Logger logger = LoggerFactory.getLogger(Cassette.class);
+
+    /**
+     * What a cassette does with the traffic.
+     */
+    public enum Mode {
+        OFF, RECORD, REPLAY
+    }
+
+    private static final Cassette OFF = new Cassette(null, Mode.OFF, false);
+    private static volatile Cassette defaultCassette = OFF;
+
+    private final File file;
+    private final Mode mode;
+    private final boolean originalLatency;
+    private final Map<String, List<Entry>> entries = new HashMap<>();
+    private final Map<String, Integer> replayPositions = new HashMap<>();
+    private int recordedCount;
+    private int replayedCount;
+    private int missCount;
+
+    /**
+     * Opens a cassette. In replay mode the file is read completely; in record
+     * mode new entries are appended to it.
+     * @param file The cassette file; may be null only when the mode is OFF.
+     * @param mode What to do with the traffic.
+     * @param originalLatency In replay mode, whether to reproduce the recorded
+     *        timing instead of answering immediately.
+     * @throws IOException If a cassette to replay cannot be read.
+     */
+    public static Cassette open(File file, Mode mode, boolean originalLatency) throws IOException {
+        Cassette cassette = new Cassette(file, mode, originalLatency);
+        if (mode == Mode.REPLAY) {
+            cassette.load();
+        }
+        return cassette;
+    }
+
+    private Cassette(File file, Mode mode, boolean originalLatency) {
+        this.file = file;
+        this.mode = mode;
+        this.originalLatency = originalLatency;
+    }
+
+    /**
+     * @return A cassette that neither records nor replays.
+     */
+    public static Cassette off() {
+        return OFF;
+    }
+
+    /**
+     * @return The cassette used by callers that were not given one.
+     */
+    public static Cassette getDefault() {
+        return defaultCassette;
+    }
+
+    public static void setDefault(Cassette cassette) {
+        defaultCassette = cassette != null ? cassette : OFF;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isRecording() {
+        return mode == Mode.RECORD;
+    }
+
+    public boolean isReplaying() {
+        return mode == Mode.REPLAY;
+    }
+
+    /**
+     * @return Whether replayed responses reproduce the recorded timing.
+     */
+    public boolean isOriginalLatency() {
+        return originalLatency;
+    }
+
+    /**
+     * Computes the key a request is recorded and replayed under.
+     */
+    public static String keyFor(ChatCompletionRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, request.model);
+            update(digest, Double.toString(request.temperature));
+            update(digest, Boolean.toString(request.stream));
+            if (!request.options.isEmpty()) {
+                // Only when set, so that cassettes recorded without options still match
+                update(digest, request.options.toString());
+            }
+            for (Message message : request.messages) {
+                update(digest, message.role);
+                update(digest, normalize(message.content));
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Unifies line endings and drops trailing whitespace on every line.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String[] lines = text.replace("\r\n", "\n").replace('\r', '\n').split("\n", -1);
+        StringBuilder sb = new StringBuilder(text.length());
+        for (String line : lines) {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            sb.append(line, 0, end).append('\n');
+        }
+        return sb.toString().trim();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    /**
+     * Appends an exchange to the cassette. Does nothing unless recording.
+     * @param key The request key from {@link #keyFor}.
+     * @param status The HTTP status of the response.
+     * @param body The response body, or the raw event stream of a streamed call.
+     * @param timeToFirstByteNanos Time until the response headers arrived.
+     * @param latencyNanos Time until the body was complete.
+     */
+    public void record(String key, int status, String body, long timeToFirstByteNanos, long latencyNanos) {
+        if (mode != Mode.RECORD) {
+            return;
+        }
+        Entry entry = new Entry(key, status, body, TimeUnit.NANOSECONDS.toMillis(timeToFirstByteNanos),
+                TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        JsonWriter writer = new JsonWriter(body.length() + 128);
+        entry.writeJson(writer);
+        byte[] line = Arrays.copyOf(writer.toByteArray(), writer.size() + 1);
+        line[line.length - 1] = '\n';
+
+        synchronized (this) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                logger.warn("Could not create cassette directory {}", parent);
+            }
+            // Appended and flushed per entry so a crash keeps what was recorded
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write(line);
+            } catch (IOException e) {
+                logger.warn("Could not record to cassette {}", file, e);
+                return;
+            }
+            entries.computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+            recordedCount++;
+        }
+    }
+
+    /**
+     * Finds the next recorded response for a request. Identical requests get
+     * the recorded responses in order; once they are used up, the last one
+     * is served again.
+     * @return The entry, or null if the request was never recorded.
+     */
+    public synchronized Entry find(String key) {
+        List<Entry> recorded = entries.get(key);
+        if (recorded == null || recorded.isEmpty()) {
+            missCount++;
+            return null;
+        }
+        int position = replayPositions.getOrDefault(key, 0);
+        replayPositions.put(key, position + 1);
+        replayedCount++;
+        return recorded.get(Math.min(position, recorded.size() - 1));
+    }
+
+    /**
+     * @return A future completing with the entry after its recorded latency,
+     *         or immediately when replaying without latency.
+     */
+    public CompletableFuture<Entry> replay(Entry entry) {
+        if (!originalLatency || entry.getLatencyMillis() <= 0) {
+            return CompletableFuture.completedFuture(entry);
+        }
+        return CompletableFuture.supplyAsync(() -> entry,
+                CompletableFuture.delayedExecutor(entry.getLatencyMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Splits a recorded event stream back into lines. With original latency
+     * the first line is held back by the recorded time to first byte and the
+     * rest are spread evenly over the remaining time.
+     */
+    public Stream<String> replayLines(Entry entry) {
+        List<String> lines = Arrays.asList(entry.getBody().split("\n", -1));
+        long firstDelay = originalLatency ? entry.getTimeToFirstByteMillis() : 0;
+        long spacing = originalLatency && lines.size() > 1
+                ? Math.max(0, entry.getLatencyMillis() - entry.getTimeToFirstByteMillis()) / lines.size() : 0;
+        Iterator<String> paced = new Iterator<String>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < lines.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                pause(index == 0 ? firstDelay : spacing);
+                return lines.get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(paced, lines.size(), Spliterator.ORDERED), false);
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        int count = 0;
+        for (List<Entry> recorded : entries.values()) {
+            count += recorded.size();
+        }
+        return count;
+    }
+
+    public synchronized int getRecordedCount() {
+        return recordedCount;
+    }
+
+    public synchronized int getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * @return How many requests had no recorded response.
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("Cassette not found: " + file);
+        }
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                Entry entry = Entry.parse(line);
+                entries.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry);
+            } catch (JsonReader.JsonParseException e) {
+                logger.warn("Skipping malformed cassette line {} of {}: {}", lineNumber, file, e.getMessage());
+            }
+        }
+        logger.info("Loaded {} recorded responses from {}", getEntryCount(), file);
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (mode == Mode.OFF) {
+            return "Cassette[off]";
+        }
+        return "Cassette[" + mode + " " + file + ", " + getEntryCount() + " entries, "
+                + (mode == Mode.RECORD ? recordedCount + " recorded" : replayedCount + " replayed, " + missCount + " missed")
+                + "]";
+    }
+
+    /**
+     * One recorded exchange.
+     */
+    public static final class Entry {
+        private final String key;
+        private final int status;
+        private final String body;
+        private final long timeToFirstByteMillis;
+        private final long latencyMillis;
+
+        Entry(String key, int status, String body, long timeToFirstByteMillis, long latencyMillis) {
+            this.key = key;
+            this.status = status;
+            this.body = body;
+            this.timeToFirstByteMillis = timeToFirstByteMillis;
+            this.latencyMillis = latencyMillis;
+        }
+
+        static Entry parse(CharSequence json) {
+            JsonReader reader = new JsonReader(json);
+            String key = null;
+            int status = 200;
+            String body = "";
+            long ttfb = 0;
+            long latency = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("key".equals(name)) {
+                    key = reader.nextString();
+                } else if ("status".equals(name)) {
+                    status = reader.nextInt();
+                } else if ("body".equals(name)) {
+                    body = reader.nextString();
+                } else if ("ttfb_ms".equals(name)) {
+                    ttfb = reader.nextLong();
+                } else if ("latency_ms".equals(name)) {
+                    latency = reader.nextLong();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (key == null) {
+                throw new JsonReader.JsonParseException("Cassette entry without key");
+            }
+            return new Entry(key, status, body, ttfb, latency);
+        }
+
+        void writeJson(JsonWriter writer) {
+            writer.beginObject()
+                    .name("key").value(key)
+                    .name("status").value(status)
+                    .name("ttfb_ms").value(timeToFirstByteMillis)
+                    .name("latency_ms").value(latencyMillis)
+                    .name("body").value(body)
+                    .endObject();
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public long getTimeToFirstByteMillis() {
+            return timeToFirstByteMillis;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package org.vidyaastra;
 
+import java.net.http.HttpRequest;
 import java.util.List;
-import java.util.stream.Collectors;
 // Assuming Message class is defined elsewhere with 'role' and 'content' fields
 public class ChatCompletionRequest {
 
     public final String model;
     public final List<Message> messages;
     public final double temperature;
+    public final boolean stream;
+    // Never null; empty when the server's defaults apply
+    public final GenerationOptions options;
 
-    public ChatCompletionRequest(String model, List<Message> messages, double temperature) {
+    /**
+     * @param options max_tokens, stop and the other optional parameters, or null for none.
+     *        The request keeps a copy.
+     */
+    public ChatCompletionRequest(String model, List<Message> messages, double temperature, boolean stream,
+                                 GenerationOptions options) {
         this.model = model;
         this.messages = messages;
         this.temperature = temperature;
+        this.stream = stream;
+        this.options = options != null ? new GenerationOptions(options) : new GenerationOptions();
+    }
+
+    public ChatCompletionRequest(String model, List<Message> messages, double temperature, boolean stream) {
+        this(model, messages, temperature, stream, null);
+    }
+
+    public ChatCompletionRequest(String model, List<Message> messages, double temperature) {
+        this(model, messages, temperature, false);
     }
 
     public ChatCompletionRequest(String model, List<Message> messages) {
@@ -21,24 +39,63 @@ public class ChatCompletionRequest {
 
     // Minimal JSON serialization for the shape expected by the API
     public String toJson() {
-        String messagesJson = messages.stream()
-                .map(m -> "{" +
-                        "\"role\":\"" + escape(m.role) + "\"," +
-                        "\"content\":\"" + escape(m.content) + "\"}")
-                .collect(Collectors.joining(","));
-
-        return "{" +
-                "\"model\":\"" + escape(model) + "\"," +
-                "\"temperature\":" + temperature + "," +
-                "\"messages\":[" + messagesJson + "]" +
-                "}";
-    }
-
-    private static String escape(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r");
+        return writeJson(new JsonWriter(estimateSize())).toString();
+    }
+
+    /**
+     * Serializes the request straight into UTF-8 bytes in a single pass over
+     * each string. Null fields are written as empty strings, as before.
+     * @param writer The writer to append to, typically freshly created or reset.
+     * @return The same writer.
+     */
+    public JsonWriter writeJson(JsonWriter writer) {
+        writer.beginObject()
+                .name("model").value(nullToEmpty(model))
+                .name("temperature").value(temperature);
+        options.writeFields(writer);
+        if (stream) {
+            writer.name("stream").value(true);
+        }
+        writer.name("messages").beginArray();
+        for (Message m : messages) {
+            writer.beginObject()
+                    .name("role").value(nullToEmpty(m.role))
+                    .name("content").value(nullToEmpty(m.content))
+                    .endObject();
+        }
+        return writer.endArray().endObject();
+    }
+
+    /**
+     * @return A body publisher over a buffer sized for this request, so large
+     *         ontology prompts are not copied again on the way out.
+     */
+    public HttpRequest.BodyPublisher toBodyPublisher() {
+        return writeJson(new JsonWriter(estimateSize())).toBodyPublisher();
+    }
+
+    /**
+     * Counts the tokens the messages take up in the prompt, including the
+     * tokens the chat format adds around each message and to prime the reply.
+     * @param counter The counter, typically {@link BpeTokenCounter#forModel} of {@link #model}.
+     */
+    public int countPromptTokens(TokenCounter counter) {
+        int tokens = 3;
+        for (Message m : messages) {
+            tokens += 4 + counter.count(nullToEmpty(m.content));
+        }
+        return tokens;
+    }
+
+    private int estimateSize() {
+        long size = 64 + (model != null ? model.length() : 0) + (options.isEmpty() ? 0 : 128);
+        for (Message m : messages) {
+            size += 32 + (m.content != null ? m.content.length() : 0);
+        }
+        return (int) Math.min(size + size / 16, Integer.MAX_VALUE - 8);
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
     }
 }
@@ -1,123 +1,383 @@
 package org.vidyaastra;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsed form of an OpenAI chat.completion response or a streamed
+ * chat.completion.chunk:
+ * { "choices": [ { "message": { "role": "assistant", "content": "..." },
+ *                  "finish_reason": "stop" } ],
+ *   "usage": { "prompt_tokens": 10, "completion_tokens": 20, "total_tokens": 30 } }
+ *
+ * The body is read in a single pass with {@link JsonReader}; fields that are
+ * not needed are skipped without being copied.
+ */
 public class ChatCompletionResponse {
 
-    private ChatCompletionResponse() {
-        // utility
+    /**
+     * The finish_reason of an answer cut off by the length limit.
+     */
+    public static final String FINISH_LENGTH = "length";
+
+    private final String id;
+    private final String model;
+    private final List<Choice> choices;
+    private final Usage usage;
+    private final String errorMessage;
+
+    private ChatCompletionResponse(String id, String model, List<Choice> choices, Usage usage, String errorMessage) {
+        this.id = id;
+        this.model = model;
+        this.choices = choices;
+        this.usage = usage;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Parses a chat completion (or chunk) response body.
+     * @param json The response body.
+     * @return The parsed response; never null.
+     * @throws JsonReader.JsonParseException If the body is not well-formed JSON.
+     */
+    public static ChatCompletionResponse parse(CharSequence json) {
+        JsonReader reader = new JsonReader(json);
+        String id = null;
+        String model = null;
+        List<Choice> choices = null;
+        Usage usage = null;
+        String errorMessage = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "model":
+                    model = reader.nextString();
+                    break;
+                case "choices":
+                    choices = readChoices(reader);
+                    break;
+                case "usage":
+                    usage = readUsage(reader);
+                    break;
+                case "error":
+                    errorMessage = readErrorMessage(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new ChatCompletionResponse(id, model,
+                choices != null ? choices : Collections.<Choice>emptyList(), usage, errorMessage);
     }
 
     /**
      * Extracts the assistant's first message content from an OpenAI
-     * chat.completion JSON response of the form:
-     * { "choices": [ { "message": { "role": "assistant", "content": "..." } } ] }
+     * chat.completion JSON response.
      *
-     * This is a very small, non-robust extractor based on string operations
-     * to avoid any external JSON library, but is sufficient for the known
-     * OpenAI response shape.
+     * Problems are reported as text starting with "Error:" rather than as
+     * exceptions, so the result can always be shown to the user.
      */
     public static String extractFirstMessageContent(String json) {
         if (json == null || json.isEmpty()) {
             return "Error: Empty response.";
         }
 
-        // 1) Find the "choices" array
-        String choicesKey = "\"choices\"";
-        int choicesIdx = json.indexOf(choicesKey);
-        if (choicesIdx < 0) {
-            return "Error: No 'choices' field found in response.";
+        ChatCompletionResponse response;
+        try {
+            response = parse(json);
+        } catch (JsonReader.JsonParseException e) {
+            return "Error: Malformed response: " + e.getMessage();
         }
+        return response.getFirstContentOrError();
+    }
 
-        // Narrow to substring starting at choices
-        String fromChoices = json.substring(choicesIdx);
-
-        // 2) Find the first opening '[' after "choices"
-        int arrayStart = fromChoices.indexOf('[');
-        if (arrayStart < 0) {
-            return "Error: Malformed 'choices' array in response.";
+    /**
+     * Extracts the content delta from a single streamed chat.completion.chunk.
+     *
+     * Returns null when the chunk carries no content (for example the initial
+     * role-only chunk or the final chunk that only sets finish_reason).
+     */
+    public static String extractFirstDeltaContent(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
         }
-        String fromFirstBracket = fromChoices.substring(arrayStart + 1); // after '['
+        try {
+            return parse(json).getFirstContent();
+        } catch (JsonReader.JsonParseException e) {
+            return null;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getModel() {
+        return model;
+    }
 
-        // 3) Find the first "message" object within the first choice
-        String messageKey = "\"message\"";
-        int messageIdx = fromFirstBracket.indexOf(messageKey);
-        if (messageIdx < 0) {
+    public List<Choice> getChoices() {
+        return choices;
+    }
+
+    /**
+     * @return The token usage block, or null if the server did not send one.
+     */
+    public Usage getUsage() {
+        return usage;
+    }
+
+    /**
+     * @return The message of an API "error" object, or null.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return The content of the first choice, or null if there is none.
+     */
+    public String getFirstContent() {
+        return choices.isEmpty() ? null : choices.get(0).getContent();
+    }
+
+    /**
+     * @return The finish_reason of the first choice, or null if not (yet) known.
+     */
+    public String getFirstFinishReason() {
+        return choices.isEmpty() ? null : choices.get(0).getFinishReason();
+    }
+
+    /**
+     * @return true if the first choice was cut off by max_tokens or the context window.
+     */
+    public boolean isTruncated() {
+        return FINISH_LENGTH.equals(getFirstFinishReason());
+    }
+
+    /**
+     * @return The content of the first choice, or a message starting with
+     *         "Error:" describing why there is none.
+     */
+    public String getFirstContentOrError() {
+        if (errorMessage != null) {
+            return "Error: " + errorMessage;
+        }
+        if (choices.isEmpty()) {
+            return "Error: No 'choices' field found in response.";
+        }
+        Choice first = choices.get(0);
+        if (!first.hasMessage) {
             return "Error: No 'message' field found in first choice.";
         }
+        if (first.getContent() == null) {
+            return "Error: No 'content' field found in message.";
+        }
+        return first.getContent();
+    }
 
-        String fromMessage = fromFirstBracket.substring(messageIdx);
+    private static List<Choice> readChoices(JsonReader reader) {
+        List<Choice> choices = new ArrayList<>(1);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            choices.add(readChoice(reader));
+        }
+        reader.endArray();
+        return choices;
+    }
 
-        // 4) Inside the message object, find the "content" field
-        // We need to be tolerant of whitespace around the colon
-        String contentKey = "\"content\"";
-        int contentKeyIdx = fromMessage.indexOf(contentKey);
-        if (contentKeyIdx < 0) {
-            return "Error: No 'content' field found in message.";
+    private static Choice readChoice(JsonReader reader) {
+        Choice choice = new Choice();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "index":
+                    choice.index = reader.nextInt();
+                    break;
+                case "finish_reason":
+                    choice.finishReason = reader.nextString();
+                    break;
+                case "message":
+                case "delta":
+                    choice.hasMessage = true;
+                    readMessage(reader, choice);
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
+        reader.endObject();
+        return choice;
+    }
 
-        // Now find the colon after "content", skipping any whitespace
-        int colonIdx = contentKeyIdx + contentKey.length();
-        while (colonIdx < fromMessage.length() && Character.isWhitespace(fromMessage.charAt(colonIdx))) {
-            colonIdx++;
-        }
-        if (colonIdx >= fromMessage.length() || fromMessage.charAt(colonIdx) != ':') {
-            return "Error: Malformed 'content' field in message.";
-        }
-
-        // Skip the colon and any whitespace after it
-        colonIdx++;
-        while (colonIdx < fromMessage.length() && Character.isWhitespace(fromMessage.charAt(colonIdx))) {
-            colonIdx++;
-        }
-
-        // Now we should be at the opening quote of the content string
-        if (colonIdx >= fromMessage.length() || fromMessage.charAt(colonIdx) != '"') {
-            return "Error: 'content' value is not a string.";
-        }
-
-        // Start reading the string after the opening quote
-        int start = colonIdx + 1;
-        return readJsonString(fromMessage, start);
-    }
-
-    // Reads a JSON string value starting at the first character after the opening quote
-    private static String readJsonString(String json, int start) {
-        StringBuilder sb = new StringBuilder();
-        boolean escaped = false;
-        for (int i = start; i < json.length(); i++) {
-            char c = json.charAt(i);
-            if (escaped) {
-                if (c == 'n') {
-                    sb.append('\n');
-                } else if (c == 'r') {
-                    sb.append('\r');
-                } else if (c == 't') {
-                    sb.append('\t');
-                } else if (c == 'u') {
-                    // Handle Unicode escape sequences like \u003c
-                    if (i + 4 < json.length()) {
-                        try {
-                            String hex = json.substring(i + 1, i + 5);
-                            int codePoint = Integer.parseInt(hex, 16);
-                            sb.append((char) codePoint);
-                            i += 4; // Skip the next 4 hex digits
-                        } catch (NumberFormatException e) {
-                            sb.append(c); // If parsing fails, just append the character
-                        }
+    private static void readMessage(JsonReader reader, Choice choice) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "role":
+                    choice.role = reader.nextString();
+                    break;
+                case "content":
+                    if (reader.peek() == JsonReader.Token.STRING) {
+                        choice.content = reader.nextString();
                     } else {
-                        sb.append(c);
+                        reader.skipValue(); // e.g. multi-part content arrays
                     }
-                } else {
-                    sb.append(c);
-                }
-                escaped = false;
-            } else if (c == '\\') {
-                escaped = true;
-            } else if (c == '"') {
-                break; // end of string
+                    break;
+                case "refusal":
+                    choice.refusal = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static Usage readUsage(JsonReader reader) {
+        Usage usage = new Usage();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("prompt_tokens_details".equals(name) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                usage.cachedPromptTokens = readCachedTokens(reader);
+                continue;
+            }
+            if (reader.peek() != JsonReader.Token.NUMBER) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "prompt_tokens":
+                    usage.promptTokens = reader.nextLong();
+                    break;
+                case "completion_tokens":
+                    usage.completionTokens = reader.nextLong();
+                    break;
+                case "total_tokens":
+                    usage.totalTokens = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return usage;
+    }
+
+    private static long readCachedTokens(JsonReader reader) {
+        long cached = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextNameEquals("cached_tokens") && reader.peek() == JsonReader.Token.NUMBER) {
+                cached = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cached;
+    }
+
+    private static String readErrorMessage(JsonReader reader) {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            return reader.nextString();
+        }
+        String message = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextNameEquals("message") && reader.peek() == JsonReader.Token.STRING) {
+                message = reader.nextString();
             } else {
-                sb.append(c);
+                reader.skipValue();
             }
         }
-        return sb.toString();
+        reader.endObject();
+        return message != null ? message : "Unknown API error";
+    }
+
+    /**
+     * One entry of the "choices" array.
+     */
+    public static class Choice {
+        private int index;
+        private String role;
+        private String content;
+        private String refusal;
+        private String finishReason;
+        private boolean hasMessage;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public String getRefusal() {
+            return refusal;
+        }
+
+        public String getFinishReason() {
+            return finishReason;
+        }
+    }
+
+    /**
+     * The "usage" block with token counts as reported by the server.
+     */
+    public static class Usage {
+        private long promptTokens;
+        private long completionTokens;
+        private long totalTokens;
+        private long cachedPromptTokens;
+
+        public long getPromptTokens() {
+            return promptTokens;
+        }
+
+        /**
+         * @return How many of the prompt tokens the provider served from its
+         *         prompt prefix cache ("prompt_tokens_details.cached_tokens"),
+         *         0 if it did not say.
+         */
+        public long getCachedPromptTokens() {
+            return cachedPromptTokens;
+        }
+
+        public long getCompletionTokens() {
+            return completionTokens;
+        }
+
+        public long getTotalTokens() {
+            return totalTokens;
+        }
     }
 }
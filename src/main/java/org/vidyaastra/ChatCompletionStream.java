@@ -0,0 +1,91 @@
+package org.vidyaastra;
+
+/**
+ * Accumulates a server-sent event (SSE) chat completion stream line by line.
+ *
+ * Each event of the OpenAI streaming format is a line of the form
+ * <pre>data: {"choices":[{"delta":{"content":"..."}}]}</pre>
+ * and the stream is terminated by <pre>data: [DONE]</pre>. Comment lines,
+ * blank separator lines and other SSE fields are ignored.
+ */
+class ChatCompletionStream {
+
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE_MARKER = "[DONE]";
+
+    private final CompletionStreamListener listener;
+    private final StringBuilder content = new StringBuilder();
+    private String finishReason;
+    private ChatCompletionResponse.Usage usage;
+    private boolean done;
+
+    ChatCompletionStream(CompletionStreamListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Processes one line of the event stream.
+     * @param line A single line without its line terminator.
+     * @return true once the [DONE] marker has been seen.
+     */
+    boolean onLine(String line) {
+        if (done || line == null || !line.startsWith(DATA_PREFIX)) {
+            return done;
+        }
+
+        String data = line.substring(DATA_PREFIX.length()).trim();
+        if (DONE_MARKER.equals(data)) {
+            done = true;
+            return true;
+        }
+
+        ChatCompletionResponse chunk;
+        try {
+            chunk = ChatCompletionResponse.parse(data);
+        } catch (JsonReader.JsonParseException e) {
+            System.err.println("Skipping malformed stream chunk: " + e.getMessage());
+            return false;
+        }
+        if (chunk.getFirstFinishReason() != null) {
+            finishReason = chunk.getFirstFinishReason();
+        }
+        if (chunk.getUsage() != null) {
+            usage = chunk.getUsage();
+        }
+
+        String delta = chunk.getFirstContent();
+        if (delta != null && !delta.isEmpty()) {
+            content.append(delta);
+            if (listener != null) {
+                listener.onDelta(delta);
+            }
+        }
+        return false;
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    String getContent() {
+        return content.toString();
+    }
+
+    /**
+     * @return The finish_reason sent with the last chunk, or null if the stream ended early.
+     */
+    String getFinishReason() {
+        return finishReason;
+    }
+
+    /**
+     * @return true if the server ended the stream because of the length limit.
+     */
+    boolean isTruncated() {
+        return ChatCompletionResponse.FINISH_LENGTH.equals(finishReason);
+    }
+
+    ChatCompletionResponse.Usage getUsage() {
+        return usage;
+    }
+}
@@ -0,0 +1,121 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing.
+ *
+ * After {@link #getFailureThreshold()} consecutive failures the breaker opens
+ * and {@link #tryAcquire()} refuses every request for the open duration.
+ * Then a single probe request is let through: if it succeeds the breaker
+ * closes again, if it fails the breaker stays open for another period.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests are refused until the open duration has passed. */
+        OPEN,
+        /** One probe request decides whether the endpoint has recovered. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+    private long timesOpened;
+
+    /**
+     * @param failureThreshold Consecutive failures that open the breaker.
+     * @param openDuration How long requests are refused before a probe is let through.
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("The failure threshold must be at least 1.");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = Math.max(0, openDuration.toNanos());
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if a request may be sent now. The caller must report its
+     *         outcome with one of the record methods.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (getState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (probing || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            timesOpened++;
+        }
+        probing = false;
+    }
+
+    /**
+     * Reports a request that was abandoned before it had an outcome, which
+     * frees the probe slot without judging the endpoint.
+     */
+    public synchronized void recordCancelled() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return Duration.ofNanos(openNanos);
+    }
+
+    /**
+     * @return How often the breaker has opened since it was created.
+     */
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getState() + " (" + consecutiveFailures + " consecutive failures, opened " + timesOpened + " times)";
+    }
+}
@@ -0,0 +1,410 @@
+package org.vidyaastra;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.protege.editor.core.util.ProtegeDirectories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Two-tier cache for LLM completions.
+ *
+ * The first tier is a bounded in-memory LRU map, the second a directory of
+ * one file per entry that survives restarts of Protege. Entries are keyed by
+ * a SHA-256 fingerprint of model, base URL, system prompt, user prompt and
+ * temperature, expire after a configurable time-to-live and are evicted
+ * oldest-first once the disk tier grows beyond its size limit.
+ *
+ * Hit and miss counters, together with the latency of the original call,
+ * make it possible to see how much waiting the cache has saved.
+ */
+public class CompletionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompletionCache.class);
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final int DEFAULT_MEMORY_ENTRIES = 256;
+    private static final long DEFAULT_DISK_BYTES = 64L * 1024 * 1024;
+    private static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+    private static CompletionCache defaultCache;
+
+    private final File directory;
+    private final long maxDiskBytes;
+    private final Map<String, CachedEntry> memory;
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private volatile Duration ttl;
+    private volatile boolean enabled = true;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedLatencyNanos = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     * @param directory Directory for the on-disk tier, or null for a memory-only cache.
+     * @param maxMemoryEntries Maximum number of entries kept in memory.
+     * @param maxDiskBytes Maximum total size of the on-disk tier in bytes.
+     * @param ttl How long an entry stays valid after it was stored.
+     */
+    public CompletionCache(File directory, final int maxMemoryEntries, long maxDiskBytes, Duration ttl) {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.ttl = ttl;
+        this.memory = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+
+        if (directory != null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                logger.warn("Could not create completion cache directory {}", directory);
+            }
+            diskBytes.set(computeDiskUsage());
+        }
+    }
+
+    /**
+     * Gets the shared cache stored under the Protege user data directory.
+     */
+    public static synchronized CompletionCache getDefault() {
+        if (defaultCache == null) {
+            File dir = new File(new File(ProtegeDirectories.getDataDirectory(), "vidyaastra"), "completion-cache");
+            defaultCache = new CompletionCache(dir, DEFAULT_MEMORY_ENTRIES, DEFAULT_DISK_BYTES, DEFAULT_TTL);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Computes the cache key for a single-turn completion request.
+     */
+    public static String keyFor(String model, String baseUrl, String systemPrompt, String userPrompt,
+                                double temperature) {
+        return keyFor(model, baseUrl, systemPrompt, userPrompt, temperature, null);
+    }
+
+    /**
+     * Computes the cache key for a single-turn completion request with
+     * generation options. Without options the key is the same as that of
+     * {@link #keyFor(String, String, String, String, double)}.
+     */
+    public static String keyFor(String model, String baseUrl, String systemPrompt, String userPrompt,
+                                double temperature, GenerationOptions options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, model);
+            update(digest, baseUrl);
+            update(digest, systemPrompt);
+            update(digest, userPrompt);
+            update(digest, Double.toString(temperature));
+            if (options != null && !options.isEmpty()) {
+                update(digest, options.toString());
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Looks up a cached completion.
+     * @param key A key produced by {@link #keyFor}.
+     * @return The cached completion text, or null on a miss.
+     */
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        CachedEntry entry;
+        synchronized (memory) {
+            entry = memory.get(key);
+            if (entry != null && isExpired(entry, now)) {
+                memory.remove(key);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            savedLatencyNanos.addAndGet(entry.latencyNanos);
+            return entry.content;
+        }
+
+        entry = readFromDisk(key, now);
+        if (entry != null) {
+            synchronized (memory) {
+                memory.put(key, entry);
+            }
+            diskHits.incrementAndGet();
+            savedLatencyNanos.addAndGet(entry.latencyNanos);
+            return entry.content;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a completion in both tiers.
+     * @param key A key produced by {@link #keyFor}.
+     * @param content The completion text.
+     * @param latencyNanos How long the original network call took.
+     */
+    public void put(String key, String content, long latencyNanos) {
+        if (!enabled || content == null) {
+            return;
+        }
+
+        CachedEntry entry = new CachedEntry(content, System.currentTimeMillis(), latencyNanos);
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        writeToDisk(key, entry);
+    }
+
+    /**
+     * Removes one entry from both tiers, such as an answer that turned out to be unusable.
+     * @param key A key produced by {@link #keyFor}.
+     */
+    public void remove(String key) {
+        synchronized (memory) {
+            memory.remove(key);
+        }
+        if (directory != null) {
+            File file = new File(directory, key + ENTRY_SUFFIX);
+            if (file.isFile()) {
+                deleteEntryFile(file);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry from both tiers. Counters are left untouched.
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        for (File file : listEntryFiles()) {
+            deleteEntryFile(file);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getHitCount() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Total network latency avoided by cache hits, based on the latency
+     * recorded when each entry was first fetched.
+     */
+    public Duration getSavedLatency() {
+        return Duration.ofNanos(savedLatencyNanos.get());
+    }
+
+    public int getMemoryEntryCount() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompletionCache[hits=%d (memory=%d, disk=%d), misses=%d, saved=%d ms, entries=%d, disk=%d bytes]",
+                getHitCount(), getMemoryHitCount(), getDiskHitCount(), getMissCount(),
+                getSavedLatency().toMillis(), getMemoryEntryCount(), getDiskBytes());
+    }
+
+    private boolean isExpired(CachedEntry entry, long now) {
+        Duration currentTtl = ttl;
+        return currentTtl != null && now - entry.createdAtMillis > currentTtl.toMillis();
+    }
+
+    private CachedEntry readFromDisk(String key, long now) {
+        if (directory == null) {
+            return null;
+        }
+        File file = new File(directory, key + ENTRY_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long createdAt = in.readLong();
+            long latency = in.readLong();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            CachedEntry entry = new CachedEntry(new String(bytes, StandardCharsets.UTF_8), createdAt, latency);
+            if (isExpired(entry, now)) {
+                deleteEntryFile(file);
+                return null;
+            }
+            return entry;
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable cache entry {}", file, e);
+            deleteEntryFile(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CachedEntry entry) {
+        if (directory == null) {
+            return;
+        }
+
+        File target = new File(directory, key + ENTRY_SUFFIX);
+        try {
+            File tmp = File.createTempFile(key, ".tmp", directory);
+            byte[] bytes = entry.content.getBytes(StandardCharsets.UTF_8);
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeLong(entry.createdAtMillis);
+                out.writeLong(entry.latencyNanos);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            long previous = target.isFile() ? target.length() : 0;
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (diskBytes.addAndGet(target.length() - previous) > maxDiskBytes) {
+                evictDiskEntries();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write completion cache entry {}", target, e);
+        }
+    }
+
+    /**
+     * Drops expired entries first and then the oldest ones until the disk tier
+     * is back under 90% of its limit.
+     */
+    private synchronized void evictDiskEntries() {
+        File[] files = listEntryFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        long now = System.currentTimeMillis();
+        long limit = maxDiskBytes * 9 / 10;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+
+        Duration currentTtl = ttl;
+        for (File file : files) {
+            boolean expired = currentTtl != null && now - file.lastModified() > currentTtl.toMillis();
+            if (!expired && total <= limit) {
+                break;
+            }
+            total -= file.length();
+            deleteEntryFile(file);
+        }
+        diskBytes.set(computeDiskUsage());
+    }
+
+    private long computeDiskUsage() {
+        long total = 0;
+        for (File file : listEntryFiles()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private File[] listEntryFiles() {
+        if (directory == null) {
+            return new File[0];
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    private void deleteEntryFile(File file) {
+        long length = file.length();
+        if (file.delete()) {
+            diskBytes.addAndGet(-length);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        // Length prefix keeps ("ab", "c") and ("a", "bc") from colliding
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final class CachedEntry {
+        final String content;
+        final long createdAtMillis;
+        final long latencyNanos;
+
+        CachedEntry(String content, long createdAtMillis, long latencyNanos) {
+            this.content = content;
+            this.createdAtMillis = createdAtMillis;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package org.vidyaastra;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process metrics for LLM calls, kept per {@link CompletionOperation}.
+ *
+ * For every operation this counts requests and their outcomes, records
+ * end-to-end latency and time to first byte in {@link LatencyHistogram}s, and
+ * sums the bytes sent and received and the token counts reported in the
+ * response's usage block. One shared instance ({@link #getDefault()}) is fed by
+ * every OpenAiCaller and shown in the diagnostics view.
+ */
+public class CompletionMetrics {
+
+    private static final CompletionMetrics DEFAULT = new CompletionMetrics();
+
+    private final Map<CompletionOperation, OperationMetrics> operations = new EnumMap<>(CompletionOperation.class);
+    private volatile long startedAt = System.currentTimeMillis();
+
+    public CompletionMetrics() {
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            operations.put(operation, new OperationMetrics(operation));
+        }
+    }
+
+    /**
+     * @return The registry shared by all callers in the plugin.
+     */
+    public static CompletionMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    public OperationMetrics forOperation(CompletionOperation operation) {
+        return operations.get(operation != null ? operation : CompletionOperation.GENERAL);
+    }
+
+    /**
+     * Clears all counters and histograms.
+     */
+    public void reset() {
+        for (OperationMetrics metrics : operations.values()) {
+            metrics.reset();
+        }
+        startedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return Epoch milliseconds of creation or the last reset.
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Writes all metrics, including the connection timings of {@code transport}.
+     * @param writer The writer, positioned where a value is expected.
+     * @param transport The transport whose cold and warm time to first byte to include; may be null.
+     * @return The same writer.
+     */
+    public JsonWriter writeJson(JsonWriter writer, HttpTransport transport) {
+        writer.beginObject()
+                .name("started_at").value(startedAt)
+                .name("exported_at").value(System.currentTimeMillis());
+        writer.name("operations").beginObject();
+        for (OperationMetrics metrics : operations.values()) {
+            writer.name(metrics.getOperation().name());
+            metrics.writeJson(writer);
+        }
+        writer.endObject();
+        if (transport != null) {
+            writer.name("connections").beginObject()
+                    .name("cold_ttfb");
+            transport.getColdTimeToFirstByte().writeJson(writer)
+                    .name("warm_ttfb");
+            transport.getWarmTimeToFirstByte().writeJson(writer)
+                    .endObject();
+        }
+        return writer.endObject();
+    }
+
+    /**
+     * @return All metrics and the default transport's connection timings as JSON.
+     */
+    public String toJson() {
+        return writeJson(new JsonWriter(), HttpTransport.getDefault()).toString();
+    }
+
+    /**
+     * Counters and histograms of one operation.
+     */
+    public static final class OperationMetrics {
+        private final CompletionOperation operation;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder cancellations = new LongAdder();
+        private final LongAdder httpExchanges = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder cachedPromptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder usageReports = new LongAdder();
+        private final LongAdder continuations = new LongAdder();
+        private final LongAdder escalations = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+
+        OperationMetrics(CompletionOperation operation) {
+            this.operation = operation;
+        }
+
+        public CompletionOperation getOperation() {
+            return operation;
+        }
+
+        /**
+         * Counts a call made by the application, whether or not it reached the network.
+         */
+        public void recordRequest() {
+            requests.increment();
+        }
+
+        public void recordCacheHit() {
+            cacheHits.increment();
+        }
+
+        /**
+         * @param nanos Time from the call until its result was available.
+         */
+        public void recordSuccess(long nanos) {
+            successes.increment();
+            latency.recordNanos(nanos);
+        }
+
+        public void recordFailure(long nanos) {
+            failures.increment();
+            latency.recordNanos(nanos);
+        }
+
+        public void recordCancellation() {
+            cancellations.increment();
+        }
+
+        /**
+         * Counts a follow-up request resuming an answer cut off by the length limit.
+         */
+        public void recordContinuation() {
+            continuations.increment();
+        }
+
+        /**
+         * Counts a call sent again to a larger model because the answer failed validation.
+         */
+        public void recordEscalation() {
+            escalations.increment();
+        }
+
+        /**
+         * Counts one HTTP exchange, including retries.
+         * @param bytes Size of the request body, or a negative value if unknown.
+         */
+        public void recordExchange(long bytes) {
+            httpExchanges.increment();
+            if (bytes > 0) {
+                bytesSent.add(bytes);
+            }
+        }
+
+        public void recordBytesReceived(long bytes) {
+            bytesReceived.add(bytes);
+        }
+
+        public void recordTimeToFirstByte(long nanos) {
+            timeToFirstByte.recordNanos(nanos);
+        }
+
+        /**
+         * @param usage The usage block of a response; ignored if null.
+         */
+        public void recordUsage(ChatCompletionResponse.Usage usage) {
+            if (usage == null) {
+                return;
+            }
+            usageReports.increment();
+            promptTokens.add(usage.getPromptTokens());
+            cachedPromptTokens.add(usage.getCachedPromptTokens());
+            completionTokens.add(usage.getCompletionTokens());
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        public long getSuccesses() {
+            return successes.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getCancellations() {
+            return cancellations.sum();
+        }
+
+        public long getHttpExchanges() {
+            return httpExchanges.sum();
+        }
+
+        public long getBytesSent() {
+            return bytesSent.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        public long getPromptTokens() {
+            return promptTokens.sum();
+        }
+
+        /**
+         * @return How many of the prompt tokens the provider reported as served from its prefix cache.
+         */
+        public long getCachedPromptTokens() {
+            return cachedPromptTokens.sum();
+        }
+
+        public long getCompletionTokens() {
+            return completionTokens.sum();
+        }
+
+        /**
+         * @return How many responses reported token usage; streams often do not.
+         */
+        public long getUsageReports() {
+            return usageReports.sum();
+        }
+
+        public long getContinuations() {
+            return continuations.sum();
+        }
+
+        public long getEscalations() {
+            return escalations.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        void reset() {
+            for (LongAdder counter : new LongAdder[] {requests, cacheHits, successes, failures, cancellations,
+                    httpExchanges, bytesSent, bytesReceived, promptTokens, cachedPromptTokens, completionTokens,
+                    usageReports, continuations, escalations}) {
+                counter.reset();
+            }
+            latency.reset();
+            timeToFirstByte.reset();
+        }
+
+        JsonWriter writeJson(JsonWriter writer) {
+            writer.beginObject()
+                    .name("requests").value(getRequests())
+                    .name("cache_hits").value(getCacheHits())
+                    .name("successes").value(getSuccesses())
+                    .name("failures").value(getFailures())
+                    .name("cancellations").value(getCancellations())
+                    .name("http_exchanges").value(getHttpExchanges())
+                    .name("bytes_sent").value(getBytesSent())
+                    .name("bytes_received").value(getBytesReceived())
+                    .name("prompt_tokens").value(getPromptTokens())
+                    .name("cached_prompt_tokens").value(getCachedPromptTokens())
+                    .name("completion_tokens").value(getCompletionTokens())
+                    .name("usage_reports").value(getUsageReports())
+                    .name("continuations").value(getContinuations())
+                    .name("escalations").value(getEscalations())
+                    .name("latency");
+            latency.writeJson(writer)
+                    .name("ttfb");
+            return timeToFirstByte.writeJson(writer)
+                    .endObject();
+        }
+    }
+}
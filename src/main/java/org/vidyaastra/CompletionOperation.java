@@ -0,0 +1,86 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+
+/**
+ * The kinds of LLM calls the plugin makes. Settings that differ between them,
+ * such as how long a request may take, are configured per operation.
+ */
+public enum CompletionOperation {
+    /**
+     * Anything not covered by a more specific operation
+     */
+    GENERAL("General", Duration.ofSeconds(60), 2048, 2),
+
+    /**
+     * Free-form questions from the AI Integration dialog
+     */
+    BASIC_QUERY("Basic Query", Duration.ofSeconds(60), 2048, 2),
+
+    /**
+     * Generating a complete new ontology as RDF/XML
+     */
+    ONTOLOGY_GENERATION("Ontology Generation", Duration.ofMinutes(5), 16384, 4),
+
+    /**
+     * Producing modification instructions for the active ontology
+     */
+    ONTOLOGY_MODIFICATION("Ontology Modification", Duration.ofMinutes(3), 4096, 2),
+
+    /**
+     * Translating a natural language graph query into a structured query
+     */
+    NLP_QUERY("NLP Query", Duration.ofSeconds(60), 512, 0),
+
+    /**
+     * Summarising the active ontology
+     */
+    EXPLAIN_ONTOLOGY("Explain Ontology", Duration.ofMinutes(2), 2048, 2),
+
+    /**
+     * Folding the older turns of a conversation into a summary
+     */
+    CONVERSATION_SUMMARY("Conversation Summary", Duration.ofSeconds(60), 1024, 0);
+
+    private final String displayName;
+    private final Duration defaultTimeout;
+    private final int outputReserve;
+    private final int maxContinuations;
+
+    CompletionOperation(String displayName, Duration defaultTimeout, int outputReserve, int maxContinuations) {
+        this.displayName = displayName;
+        this.defaultTimeout = defaultTimeout;
+        this.outputReserve = outputReserve;
+        this.maxContinuations = maxContinuations;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return How long a request of this kind may take unless configured otherwise.
+     */
+    public Duration getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * @return How many tokens of the context window are kept free for the answer.
+     */
+    public int getOutputReserve() {
+        return outputReserve;
+    }
+
+    /**
+     * @return How many follow-up requests may resume an answer cut off by the length limit.
+     */
+    public int getMaxContinuations() {
+        return maxContinuations;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,79 @@
+package org.vidyaastra;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+
+/**
+ * The conventions of a chat completion service: where requests for an
+ * {@link Endpoint} go and how they are authorized. The request and response
+ * bodies follow the OpenAI wire format for every provider.
+ */
+public interface CompletionProvider {
+
+    /**
+     * The providers that can be selected in the preferences.
+     */
+    enum Kind {
+        OPENAI("OpenAI-compatible"),
+        AZURE("Azure OpenAI"),
+        LOCAL("Local server");
+
+        private final String displayName;
+
+        Kind(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    Kind getKind();
+
+    /**
+     * @return Where chat completion requests to the endpoint are sent.
+     * @throws IllegalArgumentException If the endpoint's base URL is not a valid URI.
+     */
+    URI chatCompletionsUri(Endpoint endpoint);
+
+    /**
+     * @return A cheap GET request target, used to open a connection ahead of time.
+     * @throws IllegalArgumentException If the endpoint's base URL is not a valid URI.
+     */
+    URI modelsUri(Endpoint endpoint);
+
+    /**
+     * Adds the headers authorizing requests to the endpoint.
+     */
+    void authorize(HttpRequest.Builder builder, Endpoint endpoint);
+
+    /**
+     * @return The provider for {@code https://api.openai.com/v1} and the many
+     *         services and proxies that implement the same API.
+     */
+    static CompletionProvider openAi() {
+        return OpenAiCompatibleProvider.INSTANCE;
+    }
+
+    /**
+     * @return The provider for Azure OpenAI, where the endpoint's model is the
+     *         deployment name.
+     */
+    static CompletionProvider azure(String apiVersion) {
+        return new AzureOpenAiProvider(apiVersion);
+    }
+
+    /**
+     * @return The provider for an OpenAI-compatible inference server on this
+     *         machine, such as llama.cpp, Ollama or vLLM.
+     */
+    static CompletionProvider localServer() {
+        return LocalServerProvider.INSTANCE;
+    }
+}
@@ -0,0 +1,17 @@
+package org.vidyaastra;
+
+/**
+ * Receives incremental content from a streamed chat completion.
+ *
+ * Deltas are delivered on the thread that reads the HTTP response, in the
+ * order the server sent them. Implementations that touch Swing components
+ * must hand the text over to the Event Dispatch Thread themselves.
+ */
+public interface CompletionStreamListener {
+
+    /**
+     * Called for every non-empty piece of generated text as soon as it arrives.
+     * @param delta The newly generated text fragment.
+     */
+    void onDelta(String delta);
+}
@@ -0,0 +1,271 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills a token budget with the most valuable pieces of prompt content.
+ *
+ * Content is added as items to named sections, each with a value. Packing
+ * takes items in order of decreasing value (ties in the order they were
+ * added) as long as they fit, skipping items that are too large, and then
+ * renders the chosen items in their sections in the order they were added.
+ * A section with a header is only rendered if at least one of its items was
+ * chosen, is set off from the previous section by a blank line and ends with
+ * a line saying how many items were left out. The
+ * {@link Result} reports what was dropped, per section.
+ */
+public class ContextPacker {
+
+    /**
+     * Value of items that are taken before any other.
+     */
+    public static final double REQUIRED = Double.POSITIVE_INFINITY;
+
+    // Space kept for the "... n more omitted" line of each section
+    private static final int OMISSION_LINE_TOKENS = 12;
+
+    private final TokenCounter counter;
+    private final int budget;
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+    private final List<Item> items = new ArrayList<>();
+
+    /**
+     * @param counter Counts the tokens of each item.
+     * @param budget Tokens the rendered text may use.
+     */
+    public ContextPacker(TokenCounter counter, int budget) {
+        this.counter = counter != null ? counter : TokenCounter.approximate();
+        this.budget = Math.max(0, budget);
+    }
+
+    /**
+     * Declares a section. Sections are rendered in the order they are declared.
+     * @param name Identifies the section in {@link #add} and in the result.
+     * @param header Line rendered above the section's items, or null to render
+     *        the items without header and omission line.
+     * @return This packer.
+     */
+    public ContextPacker section(String name, String header) {
+        sections.put(name, new Section(name, header));
+        return this;
+    }
+
+    /**
+     * Adds an item to a section, declaring the section without header if needed.
+     * @param section The section name.
+     * @param text The item as it is rendered, without line break.
+     * @param value How important the item is; higher values are taken first.
+     * @return This packer.
+     */
+    public ContextPacker add(String section, String text, double value) {
+        return add(section, text, value, null);
+    }
+
+    /**
+     * Adds an item standing for an object, which the result lists if the item is chosen.
+     * @param key What the item describes, such as an ontology entity, or null.
+     * @return This packer.
+     */
+    public ContextPacker add(String section, String text, double value, Object key) {
+        Section target = sections.computeIfAbsent(section, name -> new Section(name, null));
+        target.total++;
+        items.add(new Item(target, text, value, items.size(), key));
+        return this;
+    }
+
+    /**
+     * @return The number of items added so far.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Chooses the items that fit and renders them. A packer is packed once.
+     */
+    public Result pack() {
+        Item[] byValue = items.toArray(new Item[0]);
+        Arrays.sort(byValue, Comparator.comparingDouble((Item item) -> -item.value)
+                .thenComparingInt(item -> item.order));
+
+        int remaining = budget;
+        for (Item item : byValue) {
+            // Every item needs at least its line break
+            if (remaining < 2) {
+                break;
+            }
+            int cost = counter.count(item.text) + 1;
+            Section section = item.section;
+            if (section.included == 0 && section.header != null) {
+                cost += counter.count(section.header) + 2 + OMISSION_LINE_TOKENS;
+            }
+            if (cost <= remaining) {
+                item.included = true;
+                section.included++;
+                remaining -= cost;
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Section section : sections.values()) {
+            if (section.included == 0) {
+                continue;
+            }
+            if (section.header != null) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(section.header).append('\n');
+            }
+            for (Item item : items) {
+                if (item.included && item.section == section) {
+                    text.append(item.text).append('\n');
+                }
+            }
+            if (section.header != null && section.included < section.total) {
+                text.append("  ... ").append(section.total - section.included).append(" more omitted\n");
+            }
+        }
+        List<Object> includedKeys = new ArrayList<>();
+        for (Item item : items) {
+            if (item.included && item.key != null) {
+                includedKeys.add(item.key);
+            }
+        }
+        return new Result(text.toString(), budget - remaining, new LinkedHashMap<>(sections), includedKeys);
+    }
+
+    private static final class Section {
+        private final String name;
+        private final String header;
+        private int total;
+        private int included;
+
+        Section(String name, String header) {
+            this.name = name;
+            this.header = header;
+        }
+    }
+
+    private static final class Item {
+        private final Section section;
+        private final String text;
+        private final double value;
+        private final int order;
+        private final Object key;
+        private boolean included;
+
+        Item(Section section, String text, double value, int order, Object key) {
+            this.section = section;
+            this.text = text;
+            this.value = value;
+            this.order = order;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The packed text and what was left out.
+     */
+    public static final class Result {
+        private final String text;
+        private final int tokens;
+        private final Map<String, Section> sections;
+        private final List<Object> includedKeys;
+
+        Result(String text, int tokens, Map<String, Section> sections, List<Object> includedKeys) {
+            this.text = text;
+            this.tokens = tokens;
+            this.sections = sections;
+            this.includedKeys = includedKeys;
+        }
+
+        /**
+         * @return The chosen items, one per line, grouped by section.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return Tokens the text uses by the packer's count.
+         */
+        public int getTokens() {
+            return tokens;
+        }
+
+        public int getIncludedCount() {
+            int count = 0;
+            for (Section section : sections.values()) {
+                count += section.included;
+            }
+            return count;
+        }
+
+        public int getDroppedCount() {
+            int count = 0;
+            for (Section section : sections.values()) {
+                count += section.total - section.included;
+            }
+            return count;
+        }
+
+        public int getTotalCount(String section) {
+            Section s = sections.get(section);
+            return s != null ? s.total : 0;
+        }
+
+        public int getDroppedCount(String section) {
+            Section s = sections.get(section);
+            return s != null ? s.total - s.included : 0;
+        }
+
+        /**
+         * @return The keys of the chosen items that have one and are of the type, in the order added.
+         */
+        public <T> List<T> getIncludedKeys(Class<T> type) {
+            List<T> keys = new ArrayList<>();
+            for (Object key : includedKeys) {
+                if (type.isInstance(key)) {
+                    keys.add(type.cast(key));
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * @return true if nothing had to be left out.
+         */
+        public boolean isComplete() {
+            return getDroppedCount() == 0;
+        }
+
+        /**
+         * @return A sentence such as "Omitted 120 of 5000 classes, 3 of 40
+         *         individuals", or an empty string if nothing was left out.
+         */
+        public String describeDropped() {
+            StringBuilder sb = new StringBuilder();
+            for (Section section : sections.values()) {
+                int dropped = section.total - section.included;
+                if (dropped == 0) {
+                    continue;
+                }
+                sb.append(sb.length() == 0 ? "Omitted " : ", ")
+                        .append(dropped).append(" of ").append(section.total).append(' ').append(section.name);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "ContextPacker.Result[" + getIncludedCount() + " items, " + tokens + " tokens"
+                    + (isComplete() ? "" : ", " + describeDropped()) + "]";
+        }
+    }
+}
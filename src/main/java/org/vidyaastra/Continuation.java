@@ -0,0 +1,156 @@
+package org.vidyaastra;
+
+import java.util.List;
+
+/**
+ * Resumes a completion that was cut off by the length limit.
+ *
+ * The continuation request repeats the original prompt, followed by the tail
+ * of the text generated so far as the assistant's answer and an instruction
+ * to carry on from there. Models often repeat the end of that tail before
+ * continuing, so the start of each continuation is matched against the tail
+ * and the repeated text is dropped when the parts are joined.
+ */
+final class Continuation {
+
+    /**
+     * How much of the text generated so far the continuation request shows.
+     */
+    static final int TAIL_CHARS = 4000;
+
+    // Shorter matches are taken for coincidence, such as a shared line break
+    private static final int MIN_OVERLAP = 8;
+
+    private static final String INSTRUCTION = "Your previous answer was cut off by the length limit; its end is "
+            + "shown above. Continue exactly where it stops, in the middle of a word or tag if need be. "
+            + "Do not repeat anything, do not add an introduction and do not start a new code block.";
+
+    private Continuation() {
+    }
+
+    /**
+     * @return The messages of the request continuing {@code text}.
+     */
+    static List<Message> messages(String systemPrompt, String userQuery, CharSequence text) {
+        return List.of(
+                new Message("system", systemPrompt),
+                new Message("user", userQuery),
+                new Message("assistant", tail(text)),
+                new Message("user", INSTRUCTION)
+        );
+    }
+
+    static String tail(CharSequence text) {
+        int from = Math.max(0, text.length() - TAIL_CHARS);
+        // Do not split a surrogate pair
+        if (from > 0 && Character.isLowSurrogate(text.charAt(from))) {
+            from++;
+        }
+        return text.subSequence(from, text.length()).toString();
+    }
+
+    /**
+     * Appends a continuation to the text, leaving out what it repeats.
+     * @return The part of the continuation that was appended.
+     */
+    static String append(StringBuilder text, String continuation) {
+        String tail = tail(text);
+        String rest = continuation.substring(overlap(tail, continuation));
+        text.append(rest);
+        return rest;
+    }
+
+    /**
+     * @return How many leading characters of the continuation repeat the end
+     *         of the tail, including a code fence the model opened again.
+     */
+    static int overlap(String tail, String continuation) {
+        int skip = 0;
+        if (continuation.startsWith("```")) {
+            int lineEnd = continuation.indexOf('\n');
+            skip = lineEnd >= 0 ? lineEnd + 1 : continuation.length();
+        }
+        int max = Math.min(tail.length(), continuation.length() - skip);
+        for (int k = max; k >= MIN_OVERLAP; k--) {
+            if (tail.regionMatches(tail.length() - k, continuation, skip, k)) {
+                return skip + k;
+            }
+        }
+        return skip;
+    }
+
+    /**
+     * Passes the deltas of a streamed continuation on without the text it
+     * repeats. Deltas are held back while they could still be a repetition,
+     * which is decided as soon as they stop matching the tail.
+     */
+    static final class Stitcher implements CompletionStreamListener {
+        private final String tail;
+        private final CompletionStreamListener target;
+        private final StringBuilder pending = new StringBuilder();
+        private final StringBuilder appended = new StringBuilder();
+        private boolean resolved;
+
+        /**
+         * @param text The text generated so far; not changed.
+         * @param target Receives the deltas without the repetition.
+         */
+        Stitcher(CharSequence text, CompletionStreamListener target) {
+            this.tail = tail(text);
+            this.target = target;
+        }
+
+        @Override
+        public void onDelta(String delta) {
+            if (resolved) {
+                emit(delta);
+                return;
+            }
+            pending.append(delta);
+            if (!mayRepeatTail(pending.toString())) {
+                resolve();
+            }
+        }
+
+        private boolean mayRepeatTail(String start) {
+            if (start.startsWith("```")) {
+                // The fence line is dropped anyway; what follows decides
+                int lineEnd = start.indexOf('\n');
+                return lineEnd < 0 || tail.contains(start.substring(lineEnd + 1));
+            }
+            return tail.contains(start);
+        }
+
+        /**
+         * Passes on what is still held back; called when the stream has ended.
+         */
+        void finish() {
+            if (!resolved) {
+                resolve();
+            }
+        }
+
+        private void resolve() {
+            resolved = true;
+            String start = pending.toString();
+            pending.setLength(0);
+            emit(start.substring(overlap(tail, start)));
+        }
+
+        private void emit(String delta) {
+            if (!delta.isEmpty()) {
+                appended.append(delta);
+                if (target != null) {
+                    target.onDelta(delta);
+                }
+            }
+        }
+
+        /**
+         * @return Everything passed on so far.
+         */
+        String getAppended() {
+            return appended.toString();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The earlier turns of a multi-turn session, sent along with each new question
+ * so that follow-up questions need not restate what was already said.
+ *
+ * The history is kept within a token budget. Once the turns grow beyond it,
+ * all but the most recent {@link #KEEP_RECENT_TURNS} are folded into a running
+ * summary, so that the prompt stays about the same size however long the
+ * session runs. The summary is written by a {@link Summarizer}, usually an LLM
+ * call of {@link CompletionOperation#CONVERSATION_SUMMARY}, in the background:
+ * until it is done the turns are still sent in full. If there is no summarizer
+ * or it fails, the turns are shortened to their opening lines instead.
+ */
+public class Conversation {
+
+    /**
+     * Turns that are always sent word for word.
+     */
+    public static final int KEEP_RECENT_TURNS = 2;
+
+    // Length of a question or answer in the summary written without an LLM
+    private static final int FALLBACK_CHARS = 200;
+
+    private static final String SUMMARY_PROMPT = "You maintain the memory of a conversation between a user and "
+            + "an ontology assistant. Merge the existing summary and the new turns into one concise summary. "
+            + "Keep the facts, entity names, decisions and open questions that later questions may refer to; "
+            + "drop pleasantries and repetition. Answer with the summary only.";
+
+    /**
+     * Writes the summary of earlier turns.
+     */
+    public interface Summarizer {
+        /**
+         * @param summary The summary of the turns before these, possibly empty.
+         * @param turns The user and assistant messages to fold in, oldest first.
+         * @return A future completing with the new summary covering both.
+         */
+        CompletableFuture<String> summarize(String summary, List<Message> turns);
+    }
+
+    private final TokenCounter counter;
+    private final int maxHistoryTokens;
+    private final List<Message> turns = new ArrayList<>();
+    private Summarizer summarizer;
+    private String summary = "";
+    // Turns folded into the summary since the conversation started or was cleared
+    private int foldedTurns;
+    // How many of the oldest messages the running compaction replaces
+    private int compacting;
+    private CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+    // State other classes keep about this conversation, such as what it was shown of an ontology
+    private final Map<Class<?>, Object> attachments = new HashMap<>();
+
+    /**
+     * @param counter Counts the tokens of the history.
+     * @param maxHistoryTokens The size of the history from which on older turns are summarized.
+     */
+    public Conversation(TokenCounter counter, int maxHistoryTokens) {
+        this.counter = counter;
+        this.maxHistoryTokens = maxHistoryTokens;
+    }
+
+    /**
+     * @return A summarizer that asks the caller's model. The caller's operation
+     *         is set to {@link CompletionOperation#CONVERSATION_SUMMARY}; it must
+     *         not have this conversation set.
+     */
+    public static Summarizer summarizerFor(OpenAiCaller caller) {
+        caller.setOperation(CompletionOperation.CONVERSATION_SUMMARY);
+        return (summary, turns) -> {
+            StringBuilder input = new StringBuilder();
+            if (!summary.isEmpty()) {
+                input.append("Existing summary:\n").append(summary).append("\n\n");
+            }
+            input.append("New turns:\n");
+            for (Message message : turns) {
+                input.append("user".equals(message.role) ? "User: " : "Assistant: ")
+                        .append(message.content).append("\n");
+            }
+            return caller.generateCompletionAsync(SUMMARY_PROMPT, input.toString(), 0.2);
+        };
+    }
+
+    /**
+     * @param summarizer Writes the summary of older turns, or null to shorten them locally.
+     */
+    public synchronized Conversation setSummarizer(Summarizer summarizer) {
+        this.summarizer = summarizer;
+        return this;
+    }
+
+    /**
+     * Records a question and its answer. Summarizes older turns if the
+     * history has outgrown its budget.
+     */
+    public void addTurn(String question, String answer) {
+        synchronized (this) {
+            turns.add(new Message("user", question));
+            turns.add(new Message("assistant", answer));
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * @return The messages to send between the system prompt and the new
+     *         question: the summary, if there is one, and the turns after it.
+     */
+    public synchronized List<Message> getHistory() {
+        List<Message> history = new ArrayList<>(turns.size() + 1);
+        if (!summary.isEmpty()) {
+            history.add(new Message("system", "Summary of the earlier conversation:\n" + summary));
+        }
+        history.addAll(turns);
+        return history;
+    }
+
+    public synchronized boolean isEmpty() {
+        return turns.isEmpty() && summary.isEmpty();
+    }
+
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * @return How many questions are kept word for word.
+     */
+    public synchronized int getTurnCount() {
+        return turns.size() / 2;
+    }
+
+    /**
+     * Turns are numbered from 0 in the order they were added; clearing the
+     * conversation starts over.
+     * @return The number of the oldest turn still sent word for word.
+     */
+    public synchronized int getFirstTurnNumber() {
+        return foldedTurns;
+    }
+
+    /**
+     * @return The number the next turn added will get.
+     */
+    public synchronized int getNextTurnNumber() {
+        return foldedTurns + turns.size() / 2;
+    }
+
+    /**
+     * @return The tokens of the history as sent.
+     */
+    public int countTokens() {
+        int tokens = 0;
+        for (Message message : getHistory()) {
+            tokens += counter.count(message.content);
+        }
+        return tokens;
+    }
+
+    /**
+     * @return The state of the given type kept with this conversation, or null if there is none.
+     */
+    public synchronized <T> T getAttachment(Class<T> type) {
+        return type.cast(attachments.get(type));
+    }
+
+    /**
+     * Keeps state with this conversation, so that it lives exactly as long as
+     * the conversation does. Clearing the conversation keeps it.
+     * @param value The state, or null to remove it.
+     */
+    public synchronized <T> void setAttachment(Class<T> type, T value) {
+        if (value != null) {
+            attachments.put(type, value);
+        } else {
+            attachments.remove(type);
+        }
+    }
+
+    /**
+     * @return A future completing once the summary being written, if any, is in
+     *         place. By then the next compaction, if one is needed, has started.
+     */
+    public synchronized CompletableFuture<Void> getCompaction() {
+        return compaction;
+    }
+
+    /**
+     * Forgets every turn and the summary.
+     */
+    public synchronized void clear() {
+        turns.clear();
+        summary = "";
+        foldedTurns = 0;
+        compacting = 0;
+        compaction = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Summarizes all but the most recent turns if the history is over budget
+     * and no summary is being written already.
+     */
+    void compactIfNeeded() {
+        List<Message> older;
+        String previous;
+        Summarizer current;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (this) {
+            if (compacting > 0 || countTokens() <= maxHistoryTokens || turns.size() <= 2 * KEEP_RECENT_TURNS) {
+                return;
+            }
+            compacting = turns.size() - 2 * KEEP_RECENT_TURNS;
+            older = new ArrayList<>(turns.subList(0, compacting));
+            previous = summary;
+            current = summarizer;
+            compaction = done;
+        }
+        CompletableFuture<String> written;
+        try {
+            written = current != null ? current.summarize(previous, older)
+                    : CompletableFuture.completedFuture(fallbackSummary(previous, older));
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        }
+        written.whenComplete((text, error) -> {
+            String result = text;
+            if (error != null || text == null || text.trim().isEmpty()) {
+                System.err.println("Conversation summary failed, shortening older turns instead: " + error);
+                result = fallbackSummary(previous, older);
+            }
+            synchronized (this) {
+                // Not if the conversation was cleared while the summary was written
+                if (compaction == done) {
+                    turns.subList(0, compacting).clear();
+                    summary = result.trim();
+                    foldedTurns += compacting / 2;
+                    compacting = 0;
+                }
+            }
+            // Registers the next compaction, if any, before waiters are released
+            compactIfNeeded();
+            done.complete(null);
+        });
+    }
+
+    /**
+     * Keeps the opening of each question and answer, within the budget.
+     */
+    String fallbackSummary(String previous, List<Message> older) {
+        List<String> lines = new ArrayList<>();
+        if (!previous.isEmpty()) {
+            Collections.addAll(lines, previous.split("\n"));
+        }
+        for (Message message : older) {
+            lines.add(("user".equals(message.role) ? "User asked: " : "Assistant answered: ")
+                    + shorten(message.content));
+        }
+        // Oldest lines go first once the summary alone would fill the budget
+        int tokens = 0;
+        for (String line : lines) {
+            tokens += counter.count(line);
+        }
+        while (lines.size() > 1 && tokens > maxHistoryTokens / 2) {
+            tokens -= counter.count(lines.remove(0));
+        }
+        return String.join("\n", lines);
+    }
+
+    private static String shorten(String text) {
+        String line = text.trim().replaceAll("\\s+", " ");
+        return line.length() <= FALLBACK_CHARS ? line : line.substring(0, FALLBACK_CHARS) + "...";
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Conversation[" + getTurnCount() + " turns" + (summary.isEmpty() ? "" : " and a summary") + "]";
+    }
+}
@@ -0,0 +1,104 @@
+package org.vidyaastra;
+
+import java.util.Objects;
+
+/**
+ * A service that chat completions can be sent to: its base URL, the API key,
+ * the model to request there and the {@link CompletionProvider} whose
+ * conventions it follows. Instances are immutable.
+ */
+public final class Endpoint {
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final String model;
+    private final CompletionProvider provider;
+
+    /**
+     * An endpoint of an OpenAI-compatible API.
+     * @param baseUrl The base URL of the API (e.g., "https://api.openai.com/v1"); a trailing slash is removed.
+     * @param apiKey The API key; "demo" sends no Authorization header.
+     * @param model The model name to request.
+     */
+    public Endpoint(String baseUrl, String apiKey, String model) {
+        this(baseUrl, apiKey, model, CompletionProvider.openAi());
+    }
+
+    /**
+     * @param baseUrl The base URL of the API; a trailing slash is removed.
+     * @param apiKey The API key.
+     * @param model The model name, or for Azure OpenAI the deployment name.
+     * @param provider The conventions of the service.
+     */
+    public Endpoint(String baseUrl, String apiKey, String model, CompletionProvider provider) {
+        if (baseUrl == null || baseUrl.trim().isEmpty()) {
+            throw new IllegalArgumentException("Base URL must be provided.");
+        }
+        String url = baseUrl.trim();
+        this.baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.apiKey = apiKey != null ? apiKey : "";
+        this.model = model != null ? model : "";
+        this.provider = provider != null ? provider : CompletionProvider.openAi();
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public CompletionProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * @return This endpoint requesting another model.
+     */
+    public Endpoint withModel(String model) {
+        return new Endpoint(baseUrl, apiKey, model, provider);
+    }
+
+    /**
+     * @return This endpoint with an empty API key or model taken from {@code other}.
+     */
+    public Endpoint withDefaults(Endpoint other) {
+        if (!apiKey.isEmpty() && !model.isEmpty()) {
+            return this;
+        }
+        return new Endpoint(baseUrl, apiKey.isEmpty() ? other.apiKey : apiKey,
+                model.isEmpty() ? other.model : model, provider);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Endpoint)) {
+            return false;
+        }
+        Endpoint other = (Endpoint) o;
+        return baseUrl.equals(other.baseUrl) && apiKey.equals(other.apiKey) && model.equals(other.model)
+                && provider.equals(other.provider);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(baseUrl, apiKey, model, provider);
+    }
+
+    /**
+     * @return The model, base URL and provider; the key is left out so that it does not end up in logs.
+     */
+    @Override
+    public String toString() {
+        return model + " at " + baseUrl
+                + (provider.getKind() != CompletionProvider.Kind.OPENAI ? " (" + provider + ")" : "");
+    }
+}
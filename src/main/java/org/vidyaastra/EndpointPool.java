@@ -0,0 +1,174 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fallback endpoints an {@link OpenAiCaller} turns to when its own
+ * endpoint fails, and the health of every endpoint in use.
+ *
+ * Each base URL has a {@link CircuitBreaker}; endpoints whose breaker is open
+ * are skipped. With hedging enabled, a call that has not been answered after
+ * the 95th percentile of the endpoint's past latency for that operation is
+ * sent to the next endpoint as well, and the first answer wins. Hedging waits
+ * until {@link #MIN_HEDGE_SAMPLES} latencies have been recorded, so the
+ * percentile means something.
+ */
+public class EndpointPool {
+
+    /**
+     * Latencies recorded for an endpoint and operation before calls to it are hedged.
+     */
+    public static final int MIN_HEDGE_SAMPLES = 20;
+
+    private static volatile EndpointPool defaultPool = new EndpointPool();
+
+    private volatile List<Endpoint> fallbacks = Collections.emptyList();
+    private volatile boolean hedging;
+    private volatile Duration minHedgeDelay = Duration.ofSeconds(1);
+    private volatile int failureThreshold = 5;
+    private volatile Duration openDuration = Duration.ofSeconds(30);
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * @return The pool used by new OpenAiCaller instances.
+     */
+    public static EndpointPool getDefault() {
+        return defaultPool;
+    }
+
+    public static void setDefault(EndpointPool pool) {
+        defaultPool = pool != null ? pool : new EndpointPool();
+    }
+
+    /**
+     * @param fallbacks Endpoints to try in this order once the caller's own
+     *        endpoint has failed. An empty key or model means the caller's.
+     */
+    public EndpointPool setFallbacks(List<Endpoint> fallbacks) {
+        this.fallbacks = Collections.unmodifiableList(new ArrayList<>(fallbacks));
+        return this;
+    }
+
+    public List<Endpoint> getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * @param hedging Whether slow calls are duplicated to the next endpoint.
+     */
+    public EndpointPool setHedging(boolean hedging) {
+        this.hedging = hedging;
+        return this;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * @param minHedgeDelay The shortest wait before a call is hedged, however fast the endpoint usually is.
+     */
+    public EndpointPool setMinHedgeDelay(Duration minHedgeDelay) {
+        this.minHedgeDelay = minHedgeDelay;
+        return this;
+    }
+
+    public Duration getMinHedgeDelay() {
+        return minHedgeDelay;
+    }
+
+    /**
+     * Sets when endpoints count as unhealthy. Breakers already created are
+     * replaced, so every endpoint is considered healthy again.
+     * @param failureThreshold Consecutive failures that open an endpoint's breaker.
+     * @param openDuration How long an endpoint is skipped before it is probed again.
+     */
+    public synchronized EndpointPool setBreakerPolicy(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("The failure threshold must be at least 1.");
+        }
+        if (failureThreshold != this.failureThreshold || !openDuration.equals(this.openDuration)) {
+            this.failureThreshold = failureThreshold;
+            this.openDuration = openDuration;
+            breakers.clear();
+        }
+        return this;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @param primary The caller's own endpoint.
+     * @return The primary followed by the fallbacks, without duplicates.
+     */
+    public List<Endpoint> candidates(Endpoint primary) {
+        Map<String, Endpoint> byUrl = new LinkedHashMap<>();
+        byUrl.put(primary.getBaseUrl(), primary);
+        for (Endpoint fallback : fallbacks) {
+            byUrl.putIfAbsent(fallback.getBaseUrl(), fallback.withDefaults(primary));
+        }
+        return new ArrayList<>(byUrl.values());
+    }
+
+    public CircuitBreaker breakerFor(Endpoint endpoint) {
+        return breakers.computeIfAbsent(endpoint.getBaseUrl(),
+                url -> new CircuitBreaker(failureThreshold, openDuration));
+    }
+
+    /**
+     * Records how long the endpoint took to answer a call of the operation.
+     */
+    public void recordLatency(Endpoint endpoint, CompletionOperation operation, long nanos) {
+        latencyFor(endpoint, operation).recordNanos(nanos);
+    }
+
+    public LatencyHistogram latencyFor(Endpoint endpoint, CompletionOperation operation) {
+        return latencies.computeIfAbsent(endpoint.getBaseUrl() + " " + operation,
+                key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return How long a call of the operation to the endpoint runs before it
+     *         is hedged, or null if it is not hedged.
+     */
+    public Duration hedgeDelay(Endpoint endpoint, CompletionOperation operation) {
+        if (!hedging) {
+            return null;
+        }
+        LatencyHistogram latency = latencyFor(endpoint, operation);
+        if (latency.getCount() < MIN_HEDGE_SAMPLES) {
+            return null;
+        }
+        Duration p95 = latency.getPercentile(95);
+        return p95.compareTo(minHedgeDelay) > 0 ? p95 : minHedgeDelay;
+    }
+
+    /**
+     * @return The state of every endpoint's breaker by base URL.
+     */
+    public Map<String, CircuitBreaker.State> getBreakerStates() {
+        Map<String, CircuitBreaker.State> states = new LinkedHashMap<>();
+        breakers.forEach((url, breaker) -> states.put(url, breaker.getState()));
+        return states;
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointPool[" + fallbacks.size() + " fallbacks, hedging " + (hedging ? "on" : "off")
+                + ", breakers " + getBreakerStates() + "]";
+    }
+}
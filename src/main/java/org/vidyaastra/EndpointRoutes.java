@@ -0,0 +1,61 @@
+package org.vidyaastra;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Sends the calls of selected operations to an endpoint other than the one an
+ * {@link OpenAiCaller} was created with, for instance the short, frequent
+ * NLP query parses to an inference server on this machine. Operations without
+ * a route use the caller's own endpoint.
+ */
+public class EndpointRoutes {
+
+    private static volatile EndpointRoutes defaultRoutes = new EndpointRoutes();
+
+    private final Map<CompletionOperation, Endpoint> routes = new EnumMap<>(CompletionOperation.class);
+
+    /**
+     * @return The routes used by new OpenAiCaller instances.
+     */
+    public static EndpointRoutes getDefault() {
+        return defaultRoutes;
+    }
+
+    public static void setDefault(EndpointRoutes routes) {
+        defaultRoutes = routes != null ? routes : new EndpointRoutes();
+    }
+
+    /**
+     * @param endpoint Where calls of the operation go; null for the caller's own endpoint.
+     */
+    public synchronized EndpointRoutes setEndpoint(CompletionOperation operation, Endpoint endpoint) {
+        if (endpoint != null) {
+            routes.put(operation, endpoint);
+        } else {
+            routes.remove(operation);
+        }
+        return this;
+    }
+
+    /**
+     * @return Where calls of the operation go, or null for the caller's own endpoint.
+     */
+    public synchronized Endpoint getEndpoint(CompletionOperation operation) {
+        return routes.get(operation);
+    }
+
+    public synchronized Map<CompletionOperation, Endpoint> getEndpoints() {
+        return Collections.unmodifiableMap(new EnumMap<>(routes));
+    }
+
+    public synchronized void clear() {
+        routes.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EndpointRoutes" + routes;
+    }
+}
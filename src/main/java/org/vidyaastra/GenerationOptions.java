@@ -0,0 +1,302 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Optional sampling and output-length parameters of a chat completion:
+ * max_tokens, stop, seed, top_p and response_format. Unset parameters are
+ * left out of the request, so the server's defaults apply.
+ *
+ * Setters return this for chaining. Requests and callers take a copy, so an
+ * instance can be reused and changed afterwards. {@link #defaultsFor} gives
+ * the parameters each kind of call uses unless configured otherwise.
+ */
+public class GenerationOptions {
+
+    /**
+     * The most stop sequences the OpenAI API accepts.
+     */
+    public static final int MAX_STOP_SEQUENCES = 4;
+
+    /**
+     * Stop sequence ending a generated ontology. The server leaves it out of
+     * the answer, so the caller has to append it again.
+     */
+    public static final String RDF_END = "</rdf:RDF>";
+
+    // What the OpenAI API accepts as the name of a response schema
+    private static final Pattern SCHEMA_NAME = Pattern.compile("[a-zA-Z0-9_-]{1,64}");
+
+    /**
+     * Values of response_format.
+     */
+    public enum ResponseFormat {
+        TEXT("text"),
+        JSON_OBJECT("json_object"),
+        /**
+         * JSON following a schema, set with {@link #setJsonSchema}.
+         */
+        JSON_SCHEMA("json_schema");
+
+        private final String type;
+
+        ResponseFormat(String type) {
+            this.type = type;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+
+    private Integer maxTokens;
+    private final List<String> stop = new ArrayList<>();
+    private Long seed;
+    private Double topP;
+    private ResponseFormat responseFormat;
+    private String schemaName;
+    private JsonSchema schema;
+
+    public GenerationOptions() {
+    }
+
+    public GenerationOptions(GenerationOptions other) {
+        this.maxTokens = other.maxTokens;
+        this.stop.addAll(other.stop);
+        this.seed = other.seed;
+        this.topP = other.topP;
+        this.responseFormat = other.responseFormat;
+        this.schemaName = other.schemaName;
+        this.schema = other.schema;
+    }
+
+    /**
+     * @return The parameters calls of the operation use unless configured otherwise.
+     */
+    public static GenerationOptions defaultsFor(CompletionOperation operation) {
+        GenerationOptions options = new GenerationOptions();
+        if (operation == null) {
+            return options;
+        }
+        switch (operation) {
+            case NLP_QUERY:
+                // A short JSON object
+                return options.setMaxTokens(128).setJsonSchema(QueryIntent.SCHEMA_NAME, QueryIntent.SCHEMA);
+            case ONTOLOGY_MODIFICATION:
+                return options.setJsonSchema(ModificationPlan.SCHEMA_NAME, ModificationPlan.SCHEMA);
+            case ONTOLOGY_GENERATION:
+                // Commentary after the document only costs time
+                return options.setStop(RDF_END);
+            case CONVERSATION_SUMMARY:
+                // A summary longer than this would not save anything
+                return options.setMaxTokens(512);
+            default:
+                return options;
+        }
+    }
+
+    /**
+     * @return The most tokens the answer may have, or null for the server's limit.
+     */
+    public Integer getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * @param maxTokens The most tokens the answer may have, or null (or less than 1) for the server's limit.
+     */
+    public GenerationOptions setMaxTokens(Integer maxTokens) {
+        this.maxTokens = maxTokens != null && maxTokens > 0 ? maxTokens : null;
+        return this;
+    }
+
+    /**
+     * @return The stop sequences, possibly empty.
+     */
+    public List<String> getStop() {
+        return Collections.unmodifiableList(stop);
+    }
+
+    /**
+     * @param sequences Sequences at which the server ends the answer; they are
+     *        not part of it. Empty sequences are ignored.
+     * @throws IllegalArgumentException If there are more than {@link #MAX_STOP_SEQUENCES}.
+     */
+    public GenerationOptions setStop(String... sequences) {
+        return setStop(Arrays.asList(sequences));
+    }
+
+    public GenerationOptions setStop(List<String> sequences) {
+        List<String> nonEmpty = new ArrayList<>();
+        for (String sequence : sequences) {
+            if (sequence != null && !sequence.isEmpty()) {
+                nonEmpty.add(sequence);
+            }
+        }
+        if (nonEmpty.size() > MAX_STOP_SEQUENCES) {
+            throw new IllegalArgumentException("At most " + MAX_STOP_SEQUENCES + " stop sequences are allowed.");
+        }
+        stop.clear();
+        stop.addAll(nonEmpty);
+        return this;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed Makes sampling repeatable as far as the server supports it, or null for random.
+     */
+    public GenerationOptions setSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Double getTopP() {
+        return topP;
+    }
+
+    /**
+     * @param topP Nucleus sampling mass between 0 (exclusive) and 1, or null for the server's default.
+     */
+    public GenerationOptions setTopP(Double topP) {
+        if (topP != null && (topP <= 0 || topP > 1)) {
+            throw new IllegalArgumentException("top_p must be in (0, 1]: " + topP);
+        }
+        this.topP = topP;
+        return this;
+    }
+
+    public ResponseFormat getResponseFormat() {
+        return responseFormat;
+    }
+
+    /**
+     * @param responseFormat The format the answer must have, or null for the server's default (text).
+     * @throws IllegalArgumentException For {@link ResponseFormat#JSON_SCHEMA}, which needs {@link #setJsonSchema}.
+     */
+    public GenerationOptions setResponseFormat(ResponseFormat responseFormat) {
+        if (responseFormat == ResponseFormat.JSON_SCHEMA) {
+            throw new IllegalArgumentException("A JSON schema response format is set with setJsonSchema.");
+        }
+        this.responseFormat = responseFormat;
+        this.schemaName = null;
+        this.schema = null;
+        return this;
+    }
+
+    /**
+     * Asks for an answer that is JSON following the schema. The schema is
+     * sent in strict mode, so servers supporting it only sample valid answers.
+     * @param name Names the schema for the server; letters, digits, '_' and '-' only.
+     * @param schema The schema of the answer, an object schema.
+     */
+    public GenerationOptions setJsonSchema(String name, JsonSchema schema) {
+        if (name == null || !SCHEMA_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid schema name: " + name);
+        }
+        if (schema == null || schema.getProperties() == null) {
+            throw new IllegalArgumentException("The response schema must be an object schema.");
+        }
+        this.responseFormat = ResponseFormat.JSON_SCHEMA;
+        this.schemaName = name;
+        this.schema = schema;
+        return this;
+    }
+
+    /**
+     * @return The name of the response schema, or null if none is set.
+     */
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    /**
+     * @return The schema the answer must follow, or null if none is set.
+     */
+    public JsonSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return true if no parameter is set.
+     */
+    public boolean isEmpty() {
+        return maxTokens == null && stop.isEmpty() && seed == null && topP == null && responseFormat == null;
+    }
+
+    /**
+     * Writes the parameters that are set as fields of the request object.
+     * @return The same writer.
+     */
+    public JsonWriter writeFields(JsonWriter writer) {
+        if (maxTokens != null) {
+            writer.name("max_tokens").value((long) maxTokens);
+        }
+        if (topP != null) {
+            writer.name("top_p").value((double) topP);
+        }
+        if (seed != null) {
+            writer.name("seed").value((long) seed);
+        }
+        if (!stop.isEmpty()) {
+            writer.name("stop").beginArray();
+            for (String sequence : stop) {
+                writer.value(sequence);
+            }
+            writer.endArray();
+        }
+        if (responseFormat != null) {
+            writer.name("response_format").beginObject()
+                    .name("type").value(responseFormat.getType());
+            if (schema != null) {
+                writer.name("json_schema").beginObject()
+                        .name("name").value(schemaName)
+                        .name("strict").value(true)
+                        .name("schema");
+                schema.writeTo(writer).endObject();
+            }
+            writer.endObject();
+        }
+        return writer;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GenerationOptions)) {
+            return false;
+        }
+        GenerationOptions other = (GenerationOptions) o;
+        return Objects.equals(maxTokens, other.maxTokens)
+                && stop.equals(other.stop)
+                && Objects.equals(seed, other.seed)
+                && Objects.equals(topP, other.topP)
+                && responseFormat == other.responseFormat
+                && Objects.equals(schemaName, other.schemaName)
+                && Objects.equals(schema, other.schema);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxTokens, stop, seed, topP, responseFormat, schemaName, schema);
+    }
+
+    /**
+     * @return The parameters that are set, also used in cache keys.
+     */
+    @Override
+    public String toString() {
+        return "GenerationOptions[maxTokens " + maxTokens + ", stop " + stop + ", seed " + seed
+                + ", topP " + topP + ", responseFormat " + responseFormat
+                + (schema != null ? " " + schemaName + " " + schema : "") + "]";
+    }
+}
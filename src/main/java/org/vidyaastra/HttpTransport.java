@@ -0,0 +1,319 @@
+package org.vidyaastra;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the HttpClient used for LLM calls and rebuilds it when its
+ * {@link TransportSettings} change.
+ *
+ * Besides the client itself this provides the per-operation request timeouts,
+ * the executor used to read streamed responses, and a limit on concurrent
+ * requests per host. The JDK client has no such limit of its own, so requests
+ * queue for a host permit before they are sent.
+ *
+ * Connections can be opened ahead of the first real request with
+ * {@link #prewarm(HttpRequest)}. Time to first byte is recorded separately for
+ * requests to hosts this client had not talked to yet (cold) and to hosts it
+ * already holds a connection to (warm).
+ */
+public class HttpTransport {
+
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // Streamed bodies are read with blocking iteration, which must not run on the client's own threads
+    private static final ExecutorService PLATFORM_STREAM_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "vidyaastra-stream-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Runnable NO_PERMIT = () -> { };
+
+    // Must come after the fields above, which building a transport relies on
+    private static final HttpTransport DEFAULT = new HttpTransport(new TransportSettings());
+
+    private volatile State state;
+    private ExecutorService virtualThreadExecutor;
+    private final Map<String, HostPermits> hosts = new HashMap<>();
+    private int rebuildCount;
+    private final LatencyHistogram coldTimeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram warmTimeToFirstByte = new LatencyHistogram();
+
+    public HttpTransport(TransportSettings settings) {
+        this.state = build(new TransportSettings(settings));
+    }
+
+    /**
+     * @return The transport shared by all callers in the plugin.
+     */
+    public static HttpTransport getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return true if this JVM can run the transport on virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Applies new settings, rebuilding the client if anything changed. Requests
+     * already in flight finish on the previous client.
+     * @param settings The settings to apply; copied.
+     * @return true if the client was rebuilt.
+     */
+    public synchronized boolean configure(TransportSettings settings) {
+        if (state.settings.equals(settings)) {
+            return false;
+        }
+        state = build(new TransportSettings(settings));
+        rebuildCount++;
+        System.out.println("HTTP transport rebuilt: " + state.settings);
+
+        // A raised or removed limit may let queued requests go
+        for (HostPermits permits : hosts.values()) {
+            grantWaiting(permits);
+        }
+        return true;
+    }
+
+    public HttpClient getClient() {
+        return state.client;
+    }
+
+    /**
+     * @return A copy of the settings in effect.
+     */
+    public TransportSettings getSettings() {
+        return new TransportSettings(state.settings);
+    }
+
+    public Duration getRequestTimeout(CompletionOperation operation) {
+        return state.settings.getRequestTimeout(operation);
+    }
+
+    /**
+     * @return The executor on which streamed response bodies are read.
+     */
+    public Executor getStreamExecutor() {
+        return state.streamExecutor;
+    }
+
+    /**
+     * @return How often the client has been rebuilt because settings changed.
+     */
+    public synchronized int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    /**
+     * Waits for a free slot for a request to the host of {@code uri}.
+     * @param uri The request URI.
+     * @return A future completing with the action that frees the slot again; the
+     *         action may safely be run more than once.
+     */
+    public synchronized CompletableFuture<Runnable> acquireHostPermit(URI uri) {
+        if (state.settings.getMaxStreamsPerHost() == 0) {
+            return CompletableFuture.completedFuture(NO_PERMIT);
+        }
+        String host = hostKey(uri);
+        HostPermits permits = hosts.computeIfAbsent(host, HostPermits::new);
+        if (permits.inUse < state.settings.getMaxStreamsPerHost()) {
+            permits.inUse++;
+            return CompletableFuture.completedFuture(releaseAction(host));
+        }
+        CompletableFuture<Runnable> waiter = new CompletableFuture<>();
+        permits.waiting.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * @return Requests currently holding a permit for the host of {@code uri}.
+     */
+    public synchronized int getActiveRequests(URI uri) {
+        HostPermits permits = hosts.get(hostKey(uri));
+        return permits != null ? permits.inUse : 0;
+    }
+
+    /**
+     * Opens a connection to the host of {@code request} in the background so
+     * that the first real request does not pay for DNS, TCP and TLS setup. Does
+     * nothing if this client already talked to the host or is warming it up.
+     * @param request A cheap request to the host, such as listing models; any
+     *        response status counts as success.
+     * @return A future completing with true once the host was reached, or false
+     *         if it was unreachable, in which case a later call tries again.
+     */
+    public CompletableFuture<Boolean> prewarm(HttpRequest request) {
+        State current = state;
+        String host = hostKey(request.uri());
+        if (current.connectedHosts.contains(host)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        CompletableFuture<Boolean> warming = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = current.warming.putIfAbsent(host, warming);
+        if (existing != null) {
+            return existing;
+        }
+
+        long start = System.nanoTime();
+        current.client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        current.warming.remove(host, warming);
+                        System.err.println("Skipped pre-connect, " + host + " is unreachable: "
+                                + (error.getCause() != null ? error.getCause() : error));
+                        warming.complete(false);
+                        return;
+                    }
+                    recordTimeToFirstByte(request.uri(), false, System.nanoTime() - start);
+                    System.out.println("Pre-connected to " + host + " in "
+                            + Duration.ofNanos(System.nanoTime() - start).toMillis() + " ms");
+                    warming.complete(true);
+                });
+        return warming;
+    }
+
+    /**
+     * @return true if this client already exchanged a request with the host of {@code uri}.
+     */
+    public boolean isConnected(URI uri) {
+        return state.connectedHosts.contains(hostKey(uri));
+    }
+
+    /**
+     * Records the time from sending a request until its response headers arrived.
+     * @param uri The request URI; its host is marked as connected.
+     * @param warm Whether the host was already connected when the request was sent.
+     * @param nanos The elapsed time.
+     */
+    public void recordTimeToFirstByte(URI uri, boolean warm, long nanos) {
+        state.connectedHosts.add(hostKey(uri));
+        (warm ? warmTimeToFirstByte : coldTimeToFirstByte).recordNanos(nanos);
+    }
+
+    /**
+     * @return Time to first byte of requests that had to open a connection.
+     */
+    public LatencyHistogram getColdTimeToFirstByte() {
+        return coldTimeToFirstByte;
+    }
+
+    /**
+     * @return Time to first byte of requests to an already connected host.
+     */
+    public LatencyHistogram getWarmTimeToFirstByte() {
+        return warmTimeToFirstByte;
+    }
+
+    private Runnable releaseAction(String host) {
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                release(host);
+            }
+        };
+    }
+
+    private synchronized void release(String host) {
+        HostPermits permits = hosts.get(host);
+        if (permits == null) {
+            return;
+        }
+        permits.inUse--;
+        grantWaiting(permits);
+    }
+
+    private void grantWaiting(HostPermits permits) {
+        int limit = state.settings.getMaxStreamsPerHost();
+        while (!permits.waiting.isEmpty() && (limit == 0 || permits.inUse < limit)) {
+            CompletableFuture<Runnable> next = permits.waiting.poll();
+            if (limit == 0) {
+                next.complete(NO_PERMIT);
+                continue;
+            }
+            // Waiters that gave up in the meantime are skipped
+            permits.inUse++;
+            if (!next.complete(releaseAction(permits.host))) {
+                permits.inUse--;
+            }
+        }
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    private State build(TransportSettings settings) {
+        Executor executor = null;
+        if (settings.isVirtualThreads() && VIRTUAL_THREAD_EXECUTOR != null) {
+            if (virtualThreadExecutor == null) {
+                try {
+                    virtualThreadExecutor = (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("Virtual threads unavailable, using platform threads: " + e.getMessage());
+                }
+            }
+            executor = virtualThreadExecutor;
+        }
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(settings.getHttpVersion())
+                .connectTimeout(settings.getConnectTimeout());
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        return new State(settings, builder.build(), executor != null ? executor : PLATFORM_STREAM_EXECUTOR);
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static final class State {
+        final TransportSettings settings;
+        final HttpClient client;
+        final Executor streamExecutor;
+        // Pooled connections belong to the client, so these start empty on every rebuild
+        final Set<String> connectedHosts = ConcurrentHashMap.newKeySet();
+        final Map<String, CompletableFuture<Boolean>> warming = new ConcurrentHashMap<>();
+
+        State(TransportSettings settings, HttpClient client, Executor streamExecutor) {
+            this.settings = settings;
+            this.client = client;
+            this.streamExecutor = streamExecutor;
+        }
+    }
+
+    private static final class HostPermits {
+        final String host;
+        final ArrayDeque<CompletableFuture<Runnable>> waiting = new ArrayDeque<>();
+        int inUse;
+
+        HostPermits(String host) {
+            this.host = host;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package org.vidyaastra;
+
+import java.util.Arrays;
+
+/**
+ * A small single-pass pull parser for JSON text.
+ *
+ * The reader walks the input exactly once without copying it. Values the
+ * caller is not interested in are skipped with {@link #skipValue()}, which
+ * never allocates; strings are only materialised when asked for, and a string
+ * without escape sequences is copied straight out of the input in one step.
+ *
+ * All escapes defined by RFC 8259 are supported, including \/, \b, \f and
+ * surrogate pairs written as two consecutive \\uXXXX escapes.
+ */
+public class JsonReader {
+
+    /**
+     * The kind of the next element in the input.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // Lexical scopes
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final CharSequence in;
+    private final int limit;
+    private int pos;
+
+    private int[] stack = new int[16];
+    private int stackSize = 1;
+
+    private Token peeked;
+
+    /**
+     * Reuses a single builder for strings that contain escape sequences.
+     */
+    private StringBuilder scratch;
+
+    public JsonReader(CharSequence in) {
+        this.in = in;
+        this.limit = in.length();
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public Token peek() {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    public void beginObject() {
+        expect(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+        peeked = null;
+    }
+
+    public void endObject() {
+        expect(Token.END_OBJECT);
+        pos++;
+        stackSize--;
+        peeked = null;
+    }
+
+    public void beginArray() {
+        expect(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+        peeked = null;
+    }
+
+    public void endArray() {
+        expect(Token.END_ARRAY);
+        pos++;
+        stackSize--;
+        peeked = null;
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    public boolean hasNext() {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the next property name.
+     */
+    public String nextName() {
+        expect(Token.NAME);
+        String name = readString();
+        stack[stackSize - 1] = DANGLING_NAME;
+        peeked = null;
+        return name;
+    }
+
+    /**
+     * Consumes the next property name and compares it with the expected value
+     * without allocating a string when the name contains no escapes.
+     */
+    public boolean nextNameEquals(String expected) {
+        expect(Token.NAME);
+        int start = pos + 1;
+        int end = findStringEnd(start);
+        boolean equals;
+        if (end >= 0) {
+            equals = regionEquals(start, end, expected);
+            pos = end + 1;
+        } else {
+            equals = readString().equals(expected);
+        }
+        stack[stackSize - 1] = DANGLING_NAME;
+        peeked = null;
+        return equals;
+    }
+
+    /**
+     * Consumes the next string value. Numbers, booleans and null are returned
+     * as their literal text so lenient callers can treat any scalar as text.
+     */
+    public String nextString() {
+        Token token = peek();
+        String value;
+        if (token == Token.STRING) {
+            value = readString();
+        } else if (token == Token.NUMBER || token == Token.BOOLEAN || token == Token.NULL) {
+            int start = pos;
+            pos = scanLiteralEnd(pos);
+            value = in.subSequence(start, pos).toString();
+        } else {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        peeked = null;
+        return value;
+    }
+
+    public long nextLong() {
+        expect(Token.NUMBER);
+        long value = 0;
+        boolean negative = false;
+        int start = pos;
+        int end = scanLiteralEnd(pos);
+        int i = start;
+        if (i < end && in.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        for (; i < end; i++) {
+            char c = in.charAt(i);
+            if (c < '0' || c > '9') {
+                // Fractions and exponents are rare here; fall back to the general parser
+                pos = end;
+                peeked = null;
+                return (long) Double.parseDouble(in.subSequence(start, end).toString());
+            }
+            value = value * 10 + (c - '0');
+        }
+        pos = end;
+        peeked = null;
+        return negative ? -value : value;
+    }
+
+    public int nextInt() {
+        return (int) nextLong();
+    }
+
+    public double nextDouble() {
+        expect(Token.NUMBER);
+        int start = pos;
+        pos = scanLiteralEnd(pos);
+        peeked = null;
+        return Double.parseDouble(in.subSequence(start, pos).toString());
+    }
+
+    public boolean nextBoolean() {
+        expect(Token.BOOLEAN);
+        boolean value = in.charAt(pos) == 't';
+        pos += value ? 4 : 5;
+        peeked = null;
+        return value;
+    }
+
+    public void nextNull() {
+        expect(Token.NULL);
+        pos += 4;
+        peeked = null;
+    }
+
+    /**
+     * Reads the next value as text: a string as is, a number or boolean as
+     * written, and null or an array or object, which is skipped, as an empty string.
+     */
+    public String nextValueAsString() {
+        switch (peek()) {
+            case STRING:
+                return nextString();
+            case NUMBER:
+            case BOOLEAN:
+                int start = pos;
+                pos = scanLiteralEnd(pos);
+                peeked = null;
+                return in.subSequence(start, pos).toString();
+            default:
+                skipValue();
+                return "";
+        }
+    }
+
+    /**
+     * Finds the JSON object in a model's answer, which may be wrapped in a
+     * markdown code block or surrounded by prose.
+     * @return The text from the first '{' to the last '}', or null if there is none.
+     */
+    public static String objectIn(String text) {
+        int start = text.indexOf('{');
+        int end = text.lastIndexOf('}');
+        return start >= 0 && end > start ? text.substring(start, end + 1) : null;
+    }
+
+    /**
+     * Skips the next value, including any nested arrays or objects, without
+     * allocating. A pending property name is skipped together with its value.
+     */
+    public void skipValue() {
+        int depth = 0;
+        do {
+            Token token = peek();
+            if (token == Token.NAME) {
+                // A name is not a value on its own; skip it together with what follows
+                skipString();
+                stack[stackSize - 1] = DANGLING_NAME;
+                peeked = null;
+                token = peek();
+            }
+            switch (token) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case STRING:
+                    skipString();
+                    peeked = null;
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    pos = scanLiteralEnd(pos);
+                    peeked = null;
+                    break;
+                default:
+                    throw syntaxError("Unexpected end of input");
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Returns the offset of the next unread character, mainly for error messages.
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    private Token doPeek() {
+        int scope = stack[stackSize - 1];
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY: {
+                char c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Unterminated array");
+                }
+                pos++;
+                break;
+            }
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT: {
+                char c = nextNonWhitespace();
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Unterminated object");
+                    }
+                    pos++;
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a property name");
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return Token.NAME;
+            }
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                pos++;
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (skipWhitespace() >= limit) {
+                    return Token.END_DOCUMENT;
+                }
+                throw syntaxError("Unexpected content after the top-level value");
+            default:
+                throw new IllegalStateException("Unknown scope " + scope);
+        }
+
+        char c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + c + "'");
+        }
+    }
+
+    private char nextNonWhitespace() {
+        if (skipWhitespace() >= limit) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return in.charAt(pos);
+    }
+
+    private int skipWhitespace() {
+        while (pos < limit) {
+            char c = in.charAt(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private int scanLiteralEnd(int from) {
+        int i = from;
+        while (i < limit) {
+            char c = in.charAt(i);
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the closing quote if the string starting at
+     * {@code start} has no escapes, or -1 if it contains at least one.
+     */
+    private int findStringEnd(int start) {
+        for (int i = start; i < limit; i++) {
+            char c = in.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\') {
+                return -1;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private boolean regionEquals(int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (in.charAt(i) != expected.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipString() {
+        for (int i = pos + 1; i < limit; i++) {
+            char c = in.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                pos = i + 1;
+                return;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Reads the string starting at the opening quote under {@code pos}.
+     */
+    private String readString() {
+        int start = pos + 1;
+        int end = findStringEnd(start);
+        if (end >= 0) {
+            pos = end + 1;
+            return in.subSequence(start, end).toString();
+        }
+
+        StringBuilder sb = scratch;
+        if (sb == null) {
+            sb = scratch = new StringBuilder();
+        }
+        sb.setLength(0);
+
+        int i = start;
+        while (i < limit) {
+            char c = in.charAt(i++);
+            if (c == '"') {
+                pos = i;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= limit) {
+                break;
+            }
+            char escaped = in.charAt(i++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escaped);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > limit) {
+                        throw syntaxError("Unterminated \\u escape");
+                    }
+                    // High and low surrogates arrive as two escapes and pair up in the builder
+                    sb.append((char) parseHex(i));
+                    i += 4;
+                    break;
+                default:
+                    throw syntaxError("Invalid escape sequence \\" + escaped);
+            }
+        }
+        pos = limit;
+        throw syntaxError("Unterminated string");
+    }
+
+    private int parseHex(int from) {
+        int value = 0;
+        for (int i = from; i < from + 4; i++) {
+            int digit = Character.digit(in.charAt(i), 16);
+            if (digit < 0) {
+                throw syntaxError("Invalid \\u escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private void expect(Token expected) {
+        Token actual = peek();
+        if (actual != expected) {
+            throw syntaxError("Expected " + expected + " but was " + actual);
+        }
+        // Position the cursor on the first character of the token
+        if (expected != Token.END_DOCUMENT) {
+            skipWhitespace();
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private JsonParseException syntaxError(String message) {
+        return new JsonParseException(message + " at offset " + pos);
+    }
+
+    /**
+     * Thrown when the input is not well-formed JSON.
+     */
+    public static class JsonParseException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public JsonParseException(String message) {
+            super(message);
+        }
+    }
+}
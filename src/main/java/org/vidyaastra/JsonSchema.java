@@ -0,0 +1,140 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subset of JSON Schema that structured outputs need: strings, optionally
+ * limited to a set of values, arrays and objects. Instances are immutable;
+ * {@link #property} returns a new object schema.
+ *
+ * Objects are written the way strict structured outputs require them: every
+ * property is required and no other properties are allowed. A property the
+ * model may leave out is therefore asked for as an empty string or array.
+ */
+public final class JsonSchema {
+
+    private final String type;
+    private final List<String> values;
+    private final JsonSchema items;
+    private final Map<String, JsonSchema> properties;
+
+    private JsonSchema(String type, List<String> values, JsonSchema items, Map<String, JsonSchema> properties) {
+        this.type = type;
+        this.values = values;
+        this.items = items;
+        this.properties = properties;
+    }
+
+    /**
+     * @param values The values the string may take, or none for any string.
+     */
+    public static JsonSchema string(String... values) {
+        return new JsonSchema("string", Collections.unmodifiableList(new ArrayList<>(Arrays.asList(values))),
+                null, null);
+    }
+
+    public static JsonSchema array(JsonSchema items) {
+        return new JsonSchema("array", Collections.emptyList(), items, null);
+    }
+
+    /**
+     * @return An object without properties; add them with {@link #property}.
+     */
+    public static JsonSchema object() {
+        return new JsonSchema("object", Collections.emptyList(), null, Collections.emptyMap());
+    }
+
+    /**
+     * @return This object schema with one more property, written in the order added.
+     */
+    public JsonSchema property(String name, JsonSchema schema) {
+        if (properties == null) {
+            throw new IllegalStateException("Only object schemas have properties.");
+        }
+        Map<String, JsonSchema> extended = new LinkedHashMap<>(properties);
+        extended.put(name, schema);
+        return new JsonSchema(type, values, null, Collections.unmodifiableMap(extended));
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return The values a string may take, empty for any.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * @return The schema of an array's items, or null if this is not an array.
+     */
+    public JsonSchema getItems() {
+        return items;
+    }
+
+    /**
+     * @return An object's properties by name, or null if this is not an object.
+     */
+    public Map<String, JsonSchema> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Writes the schema as a JSON value.
+     * @return The same writer.
+     */
+    public JsonWriter writeTo(JsonWriter writer) {
+        writer.beginObject().name("type").value(type);
+        if (!values.isEmpty()) {
+            writer.name("enum").beginArray();
+            for (String value : values) {
+                writer.value(value);
+            }
+            writer.endArray();
+        }
+        if (items != null) {
+            writer.name("items");
+            items.writeTo(writer);
+        }
+        if (properties != null) {
+            writer.name("properties").beginObject();
+            for (Map.Entry<String, JsonSchema> property : properties.entrySet()) {
+                writer.name(property.getKey());
+                property.getValue().writeTo(writer);
+            }
+            writer.endObject();
+            writer.name("required").beginArray();
+            for (String name : properties.keySet()) {
+                writer.value(name);
+            }
+            writer.endArray();
+            writer.name("additionalProperties").value(false);
+        }
+        return writer.endObject();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof JsonSchema && toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /**
+     * @return The schema as JSON text, also used in cache keys.
+     */
+    @Override
+    public String toString() {
+        return writeTo(new JsonWriter()).toString();
+    }
+}
@@ -0,0 +1,267 @@
+package org.vidyaastra;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A small streaming JSON writer that encodes straight into a UTF-8 byte buffer.
+ *
+ * Strings are escaped and encoded in a single pass over their characters, so
+ * writing a large prompt costs one copy into the buffer and nothing else. The
+ * buffer can be handed to the HTTP client as-is with {@link #toBodyPublisher()}
+ * and reused for the next document after {@link #reset()}.
+ *
+ * Escaping follows RFC 8259: quote, backslash and all control characters are
+ * escaped; unpaired surrogates are written as \\uXXXX so the output is always
+ * valid UTF-8.
+ */
+public class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buf;
+    private int count;
+
+    /**
+     * One entry per open object/array: true once the first element was written.
+     */
+    private boolean[] hasElements = new boolean[8];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter() {
+        this(256);
+    }
+
+    /**
+     * @param initialCapacity Expected size of the document in bytes.
+     */
+    public JsonWriter(int initialCapacity) {
+        this.buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Discards the written document but keeps the buffer for reuse.
+     */
+    public JsonWriter reset() {
+        count = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        pop();
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        pop();
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Writes a property name; the next call must write its value.
+     */
+    public JsonWriter name(String name) {
+        if (depth == 0 || afterName) {
+            throw new IllegalStateException("Property name not allowed here: " + name);
+        }
+        beforeElement();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value, or null if {@code value} is null.
+     */
+    public JsonWriter value(String value) {
+        beforeValue();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a number using {@link Double#toString(double)}.
+     */
+    public JsonWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("JSON does not allow " + value);
+        }
+        beforeValue();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * @return Number of bytes written so far.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return A copy of the written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Wraps the written bytes without copying them. The writer must not be
+     * reset or written to until the request using the publisher has been sent.
+     */
+    public HttpRequest.BodyPublisher toBodyPublisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            beforeElement();
+        }
+    }
+
+    private void beforeElement() {
+        if (hasElements[depth - 1]) {
+            writeByte(',');
+        } else {
+            hasElements[depth - 1] = true;
+        }
+    }
+
+    private void push() {
+        if (depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth++] = false;
+    }
+
+    private void pop() {
+        if (depth == 0 || afterName) {
+            throw new IllegalStateException("Nothing to close");
+        }
+        depth--;
+    }
+
+    private void writeString(String s) {
+        int length = s.length();
+        ensureCapacity(length + 2);
+        writeByte('"');
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (count + 6 > buf.length) {
+                ensureCapacity(6 + (length - i));
+            }
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buf[count++] = '\\';
+                }
+                buf[count++] = (byte) c;
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[count++] = (byte) (0xF0 | (cp >> 18));
+                    buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[count++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    writeUnicodeEscape(c);
+                }
+            } else {
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeControl(char c) {
+        switch (c) {
+            case '\n': buf[count++] = '\\'; buf[count++] = 'n'; break;
+            case '\r': buf[count++] = '\\'; buf[count++] = 'r'; break;
+            case '\t': buf[count++] = '\\'; buf[count++] = 't'; break;
+            case '\b': buf[count++] = '\\'; buf[count++] = 'b'; break;
+            case '\f': buf[count++] = '\\'; buf[count++] = 'f'; break;
+            default: writeUnicodeEscape(c);
+        }
+    }
+
+    private void writeUnicodeEscape(char c) {
+        buf[count++] = '\\';
+        buf[count++] = 'u';
+        buf[count++] = HEX[(c >> 12) & 0xF];
+        buf[count++] = HEX[(c >> 8) & 0xF];
+        buf[count++] = HEX[(c >> 4) & 0xF];
+        buf[count++] = HEX[c & 0xF];
+    }
+
+    private void writeAscii(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buf[count++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        int required = count + extra;
+        if (required > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(required, buf.length * 2));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Records durations in log-linear buckets, in the manner of HdrHistogram.
+ *
+ * Values are kept in microseconds. Below 64 µs every value has its own bucket;
+ * above that each power of two is split into 32 buckets, so any recorded value
+ * is reported within about 3% of its true value no matter how large it is,
+ * while the histogram itself stays a fixed array of about a thousand counters.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // Values beyond 2^40 µs (about 12 days) are counted in the last bucket
+    private static final long MAX_TRACKABLE_MICROS = (1L << 40) - 1;
+    private static final int BUCKET_COUNT = indexFor(MAX_TRACKABLE_MICROS) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long totalMicros;
+    private long minMicros = Long.MAX_VALUE;
+    private long maxMicros;
+
+    /**
+     * @param nanos The duration to record; negative values count as zero.
+     */
+    public synchronized void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[indexFor(Math.min(micros, MAX_TRACKABLE_MICROS))]++;
+        count++;
+        totalMicros += micros;
+        minMicros = Math.min(minMicros, micros);
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    public void record(Duration duration) {
+        recordNanos(duration.toNanos());
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized Duration getMean() {
+        return micros(count == 0 ? 0 : totalMicros / count);
+    }
+
+    public synchronized Duration getMin() {
+        return micros(count == 0 ? 0 : minMicros);
+    }
+
+    public synchronized Duration getMax() {
+        return micros(maxMicros);
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The smallest recorded duration that this percentage of all values
+     *         does not exceed, to within the bucket precision; zero if empty.
+     */
+    public synchronized Duration getPercentile(double percentile) {
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The bucket's upper end, but never beyond what was actually recorded
+                return micros(Math.max(minMicros, Math.min(maxMicros, highestEquivalentValue(i))));
+            }
+        }
+        return micros(maxMicros);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalMicros = 0;
+        minMicros = Long.MAX_VALUE;
+        maxMicros = 0;
+    }
+
+    /**
+     * Writes count, mean, extremes and the usual percentiles in milliseconds.
+     * @param writer The writer, positioned where a value is expected.
+     * @return The same writer.
+     */
+    public synchronized JsonWriter writeJson(JsonWriter writer) {
+        return writer.beginObject()
+                .name("count").value(count)
+                .name("mean_ms").value(millis(getMean()))
+                .name("min_ms").value(millis(getMin()))
+                .name("p50_ms").value(millis(getPercentile(50)))
+                .name("p90_ms").value(millis(getPercentile(90)))
+                .name("p95_ms").value(millis(getPercentile(95)))
+                .name("p99_ms").value(millis(getPercentile(99)))
+                .name("max_ms").value(millis(getMax()))
+                .endObject();
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) {
+            return "no requests";
+        }
+        return String.format("%d requests, p50 %d ms, p95 %d ms, max %d ms",
+                count, getPercentile(50).toMillis(), getPercentile(95).toMillis(), getMax().toMillis());
+    }
+
+    static int indexFor(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(micros)) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (micros >> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static Duration micros(long micros) {
+        return Duration.ofNanos(micros * 1000);
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,22 @@
+package org.vidyaastra;
+
+/**
+ * An OpenAI-compatible inference server on this machine. It takes the same
+ * requests as {@link OpenAiCompatibleProvider}; a key is only sent if one is
+ * configured, since local servers usually do not check one.
+ */
+public class LocalServerProvider extends OpenAiCompatibleProvider {
+
+    static final LocalServerProvider INSTANCE = new LocalServerProvider();
+
+    /**
+     * Where llama.cpp's server listens by default; Ollama uses
+     * {@code http://localhost:11434/v1}.
+     */
+    public static final String DEFAULT_BASE_URL = "http://localhost:8080/v1";
+
+    @Override
+    public CompletionProvider.Kind getKind() {
+        return CompletionProvider.Kind.LOCAL;
+    }
+}
@@ -0,0 +1,277 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Picks the model for each call from a per-operation list ordered from the
+ * smallest and fastest to the largest model.
+ *
+ * A call goes to the first model of its operation's {@link Rule} unless the
+ * prompt is larger than the rule allows for it, or the model's recent calls
+ * of that operation failed too often or were slower than the latency target;
+ * then the next model is considered. A model whose answer does not pass the
+ * caller's validation is escalated to the next one, and the rejection counts
+ * as a failure. Statistics only cover the last {@link #STATS_WINDOW}, so a
+ * model that was passed over is tried again once its failures have aged out.
+ * Operations without a rule keep the caller's model.
+ */
+public class ModelRouter {
+
+    /**
+     * How far back outcomes count towards a model's statistics.
+     */
+    public static final Duration STATS_WINDOW = Duration.ofMinutes(10);
+
+    /**
+     * Outcomes needed before a model is judged by its statistics.
+     */
+    public static final int MIN_SAMPLES = 5;
+
+    // Enough for a stable percentile, small enough to sort on every call
+    private static final int MAX_SAMPLES = 50;
+
+    private static volatile ModelRouter defaultRouter = new ModelRouter();
+
+    /**
+     * The models one operation may use and when to move past the first one.
+     * Instances are immutable.
+     */
+    public static final class Rule {
+        private final List<String> models;
+        private final int maxPromptTokens;
+        private final Duration latencyTarget;
+        private final double maxErrorRate;
+
+        /**
+         * @param models The models to use, smallest first; at least one.
+         * @param maxPromptTokens The largest prompt the first model is given, or 0 for any size.
+         * @param latencyTarget The 95th percentile latency a model must keep to, or null for any.
+         * @param maxErrorRate The share of failed or rejected calls, between 0 and 1, above
+         *        which a model is passed over.
+         */
+        public Rule(List<String> models, int maxPromptTokens, Duration latencyTarget, double maxErrorRate) {
+            List<String> nonEmpty = new ArrayList<>();
+            for (String model : models) {
+                if (model != null && !model.trim().isEmpty()) {
+                    nonEmpty.add(model.trim());
+                }
+            }
+            if (nonEmpty.isEmpty()) {
+                throw new IllegalArgumentException("A routing rule needs at least one model.");
+            }
+            this.models = Collections.unmodifiableList(nonEmpty);
+            this.maxPromptTokens = Math.max(0, maxPromptTokens);
+            this.latencyTarget = latencyTarget != null && !latencyTarget.isZero() ? latencyTarget : null;
+            this.maxErrorRate = maxErrorRate;
+        }
+
+        /**
+         * @param models Comma-separated model names, smallest first.
+         * @return The rule, or null if no model is given.
+         */
+        public static Rule parse(String models, int maxPromptTokens, Duration latencyTarget, double maxErrorRate) {
+            if (models == null || models.trim().isEmpty()) {
+                return null;
+            }
+            return new Rule(Arrays.asList(models.split(",")), maxPromptTokens, latencyTarget, maxErrorRate);
+        }
+
+        public List<String> getModels() {
+            return models;
+        }
+
+        public int getMaxPromptTokens() {
+            return maxPromptTokens;
+        }
+
+        public Duration getLatencyTarget() {
+            return latencyTarget;
+        }
+
+        public double getMaxErrorRate() {
+            return maxErrorRate;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" > ", models) + " (first model up to "
+                    + (maxPromptTokens > 0 ? maxPromptTokens + " prompt tokens" : "any prompt size")
+                    + (latencyTarget != null ? ", p95 under " + latencyTarget.toMillis() + " ms" : "")
+                    + ", at most " + Math.round(maxErrorRate * 100) + "% errors)";
+        }
+    }
+
+    /**
+     * Recent outcomes of one model for one operation.
+     */
+    public static final class ModelStats {
+        private final Deque<long[]> samples = new ArrayDeque<>();
+        private final LongSupplier clock;
+
+        ModelStats(LongSupplier clock) {
+            this.clock = clock;
+        }
+
+        synchronized void record(long nanos, boolean failed) {
+            samples.addLast(new long[] {clock.getAsLong(), nanos, failed ? 1 : 0});
+            if (samples.size() > MAX_SAMPLES) {
+                samples.removeFirst();
+            }
+        }
+
+        private void expire() {
+            long oldest = clock.getAsLong() - STATS_WINDOW.toNanos();
+            while (!samples.isEmpty() && samples.peekFirst()[0] < oldest) {
+                samples.removeFirst();
+            }
+        }
+
+        public synchronized int getSamples() {
+            expire();
+            return samples.size();
+        }
+
+        /**
+         * @return The share of recent calls that failed or were rejected, 0 if there were none.
+         */
+        public synchronized double getErrorRate() {
+            expire();
+            if (samples.isEmpty()) {
+                return 0;
+            }
+            long failed = samples.stream().filter(sample -> sample[2] == 1).count();
+            return (double) failed / samples.size();
+        }
+
+        /**
+         * @return The 95th percentile latency of recent successful calls, zero if there were none.
+         */
+        public synchronized Duration getP95() {
+            expire();
+            long[] latencies = samples.stream().filter(sample -> sample[2] == 0).mapToLong(sample -> sample[1]).toArray();
+            if (latencies.length == 0) {
+                return Duration.ZERO;
+            }
+            Arrays.sort(latencies);
+            return Duration.ofNanos(latencies[(int) Math.ceil(0.95 * latencies.length) - 1]);
+        }
+
+        @Override
+        public String toString() {
+            return getSamples() + " calls, " + Math.round(getErrorRate() * 100) + "% errors, p95 "
+                    + getP95().toMillis() + " ms";
+        }
+    }
+
+    private final Map<CompletionOperation, Rule> rules = new EnumMap<>(CompletionOperation.class);
+    private final Map<String, ModelStats> stats = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    public ModelRouter() {
+        this(System::nanoTime);
+    }
+
+    ModelRouter(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return The router used by new OpenAiCaller instances.
+     */
+    public static ModelRouter getDefault() {
+        return defaultRouter;
+    }
+
+    public static void setDefault(ModelRouter router) {
+        defaultRouter = router != null ? router : new ModelRouter();
+    }
+
+    /**
+     * @param rule The models of the operation, or null to keep the caller's model.
+     */
+    public synchronized ModelRouter setRule(CompletionOperation operation, Rule rule) {
+        if (rule != null) {
+            rules.put(operation, rule);
+        } else {
+            rules.remove(operation);
+        }
+        return this;
+    }
+
+    public synchronized Rule getRule(CompletionOperation operation) {
+        return rules.get(operation);
+    }
+
+    /**
+     * @param promptTokens The size of the prompt.
+     * @return The model for a call of the operation, or null if it has no rule.
+     */
+    public String select(CompletionOperation operation, int promptTokens) {
+        Rule rule = getRule(operation);
+        if (rule == null) {
+            return null;
+        }
+        List<String> models = rule.getModels();
+        for (int i = 0; i < models.size() - 1; i++) {
+            if (i == 0 && rule.getMaxPromptTokens() > 0 && promptTokens > rule.getMaxPromptTokens()) {
+                continue;
+            }
+            if (isHealthy(rule, getStats(operation, models.get(i)))) {
+                return models.get(i);
+            }
+        }
+        return models.get(models.size() - 1);
+    }
+
+    private static boolean isHealthy(Rule rule, ModelStats modelStats) {
+        if (modelStats.getSamples() < MIN_SAMPLES) {
+            return true;
+        }
+        if (modelStats.getErrorRate() > rule.getMaxErrorRate()) {
+            return false;
+        }
+        return rule.getLatencyTarget() == null || modelStats.getP95().compareTo(rule.getLatencyTarget()) <= 0;
+    }
+
+    /**
+     * @return The model after {@code model} in the operation's rule, or null if there is none.
+     */
+    public String escalate(CompletionOperation operation, String model) {
+        Rule rule = getRule(operation);
+        if (rule == null) {
+            return null;
+        }
+        int index = rule.getModels().indexOf(model);
+        return index >= 0 && index < rule.getModels().size() - 1 ? rule.getModels().get(index + 1) : null;
+    }
+
+    public void recordSuccess(CompletionOperation operation, String model, long nanos) {
+        getStats(operation, model).record(nanos, false);
+    }
+
+    /**
+     * Records a call that failed, or whose answer the caller rejected.
+     */
+    public void recordFailure(CompletionOperation operation, String model) {
+        getStats(operation, model).record(0, true);
+    }
+
+    public ModelStats getStats(CompletionOperation operation, String model) {
+        return stats.computeIfAbsent(operation.name() + " " + model, key -> new ModelStats(clock));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ModelRouter" + rules;
+    }
+}
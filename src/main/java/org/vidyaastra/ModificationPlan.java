@@ -0,0 +1,253 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The changes a model proposes for an ontology: a list of operations and a
+ * summary explaining them. Instances are immutable.
+ *
+ * Calls of {@link CompletionOperation#ONTOLOGY_MODIFICATION} ask for it as
+ * JSON following {@link #SCHEMA}. Servers without structured outputs may
+ * still answer with one "ACTION: ..." line per operation and a closing
+ * "SUMMARY:" section, which {@link #parse} reads as well.
+ */
+public final class ModificationPlan {
+
+    public static final String SCHEMA_NAME = "modification_plan";
+
+    /**
+     * What an operation does, and what its entity, target and value are.
+     */
+    public enum Action {
+        /** Entity: the class; value: a description. */
+        ADD_CLASS,
+        /** Entity: the property; value: a description. */
+        ADD_OBJECT_PROPERTY,
+        /** Entity: the property; value: a description. */
+        ADD_DATA_PROPERTY,
+        /** Entity: the subclass; target: the superclass. */
+        ADD_SUBCLASS,
+        /** Entity: the property; target: the domain class. */
+        ADD_DOMAIN,
+        /** Entity: the property; target: the range class or datatype. */
+        ADD_RANGE,
+        /** Entity: the class. */
+        REMOVE_CLASS,
+        /** Entity: the property. */
+        REMOVE_PROPERTY,
+        /** Entity: the annotated entity; target: the annotation type; value: its value. */
+        ADD_ANNOTATION
+    }
+
+    public static final JsonSchema SCHEMA;
+
+    static {
+        List<String> actions = new ArrayList<>();
+        for (Action action : Action.values()) {
+            actions.add(action.name());
+        }
+        SCHEMA = JsonSchema.object()
+                .property("operations", JsonSchema.array(JsonSchema.object()
+                        .property("action", JsonSchema.string(actions.toArray(new String[0])))
+                        .property("entity", JsonSchema.string())
+                        .property("target", JsonSchema.string())
+                        .property("value", JsonSchema.string())))
+                .property("summary", JsonSchema.string());
+    }
+
+    /**
+     * One change to the ontology. Fields an action does not use are empty.
+     */
+    public static final class Operation {
+        private final Action action;
+        private final String entity;
+        private final String target;
+        private final String value;
+
+        public Operation(Action action, String entity, String target, String value) {
+            this.action = action;
+            this.entity = entity;
+            this.target = target;
+            this.value = value;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return action + " " + entity + (target.isEmpty() ? "" : " " + target)
+                    + (value.isEmpty() ? "" : " - " + value);
+        }
+    }
+
+    private final List<Operation> operations;
+    private final String summary;
+
+    public ModificationPlan(List<Operation> operations, String summary) {
+        this.operations = Collections.unmodifiableList(new ArrayList<>(operations));
+        this.summary = summary;
+    }
+
+    /**
+     * Reads a model's answer, as JSON or in the line format. Operations with
+     * an unknown action or without an entity are left out.
+     * @return The plan, possibly without operations.
+     * @throws JsonReader.JsonParseException If the answer looks like JSON but is malformed.
+     */
+    public static ModificationPlan parse(String answer) {
+        String json = answer.trim().startsWith("{") || answer.contains("```") ? JsonReader.objectIn(answer) : null;
+        return json != null ? parseJson(json) : parseLines(answer);
+    }
+
+    private static ModificationPlan parseJson(String json) {
+        JsonReader reader = new JsonReader(json);
+        List<Operation> operations = new ArrayList<>();
+        String summary = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("operations".equals(name) && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Operation operation = readOperation(reader);
+                    if (operation != null) {
+                        operations.add(operation);
+                    }
+                }
+                reader.endArray();
+            } else if ("summary".equals(name)) {
+                summary = reader.nextValueAsString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ModificationPlan(operations, summary.trim());
+    }
+
+    private static Operation readOperation(JsonReader reader) {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String action = "";
+        String entity = "";
+        String target = "";
+        String value = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "action":
+                    action = reader.nextValueAsString();
+                    break;
+                case "entity":
+                    entity = reader.nextValueAsString();
+                    break;
+                case "target":
+                    target = reader.nextValueAsString();
+                    break;
+                case "value":
+                    value = reader.nextValueAsString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return operation(action, entity, target, value);
+    }
+
+    private static ModificationPlan parseLines(String answer) {
+        List<Operation> operations = new ArrayList<>();
+        String summary = "";
+        for (String line : answer.split("\n")) {
+            line = line.trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String keyword = line.substring(0, colon).trim();
+            String rest = line.substring(colon + 1).trim();
+            if ("SUMMARY".equals(keyword)) {
+                summary = answer.substring(answer.indexOf("SUMMARY:") + "SUMMARY:".length()).trim();
+                break;
+            }
+            Operation operation = null;
+            if ("ADD_SUBCLASS".equals(keyword)) {
+                operation = split(keyword, rest, "subClassOf");
+            } else if ("ADD_DOMAIN".equals(keyword)) {
+                operation = split(keyword, rest, " domain ");
+            } else if ("ADD_RANGE".equals(keyword)) {
+                operation = split(keyword, rest, " range ");
+            } else if ("ADD_ANNOTATION".equals(keyword)) {
+                String[] parts = rest.split(" - ", 3);
+                operation = operation(keyword, parts[0], parts.length > 1 ? parts[1] : "",
+                        parts.length > 2 ? parts[2] : "");
+            } else {
+                // The name ends at the first dash, where the description starts
+                int dash = rest.indexOf('-');
+                operation = dash >= 0 ? operation(keyword, rest.substring(0, dash), "", rest.substring(dash + 1))
+                        : operation(keyword, rest, "", "");
+            }
+            if (operation != null) {
+                operations.add(operation);
+            }
+        }
+        return new ModificationPlan(operations, summary);
+    }
+
+    private static Operation split(String keyword, String rest, String separator) {
+        String[] parts = rest.split(separator, 2);
+        return parts.length == 2 ? operation(keyword, parts[0], parts[1], "") : null;
+    }
+
+    /**
+     * @return The operation, or null if the action is unknown or the entity is empty.
+     */
+    private static Operation operation(String action, String entity, String target, String value) {
+        Action known;
+        try {
+            known = Action.valueOf(action.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (entity.trim().isEmpty()) {
+            return null;
+        }
+        return new Operation(known, entity.trim(), target.trim(), value.trim());
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return The model's explanation of the changes; possibly empty.
+     */
+    public String getSummary() {
+        return summary;
+    }
+
+    @Override
+    public String toString() {
+        return "ModificationPlan" + operations;
+    }
+}
@@ -1,31 +1,85 @@
 package org.vidyaastra;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
+import java.io.UncheckedIOException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A lightweight, dependency-minimal class to call the OpenAI Chat Completion API
  * using Java 11+ HttpClient for networking.
  *
  * This version is flexible and can target the official OpenAI API or a proxy like the
- * LangChain4j demo endpoint by changing the base URL.
+ * LangChain4j demo endpoint by changing the base URL. Services with other URL or
+ * authorization conventions, such as Azure OpenAI, are reached through an
+ * {@link Endpoint} with the matching {@link CompletionProvider}, and
+ * {@link EndpointRoutes} can send single operations to a different endpoint.
+ * The {@link ModelRouter} may pick a different model for each call.
+ *
+ * Answers are reused from the {@link CompletionCache} for identical requests
+ * and, once an ontology revision is set, from the {@link SemanticCache} for
+ * similar questions about the same revision.
+ *
+ * Every call has an asynchronous variant returning a CompletableFuture; cancelling
+ * that future aborts the HTTP exchange. The blocking methods wait on the same
+ * futures, so interrupting the calling thread (e.g. SwingWorker.cancel(true))
+ * aborts the request as well.
+ *
+ * Requests are paced by the shared {@link RateLimiter} and retried according to
+ * a {@link RetryPolicy} on 429, transient 5xx responses and network errors.
+ * When they still fail, the fallback endpoints of the {@link EndpointPool} are
+ * tried in turn.
+ *
+ * A server that rejects response_format with a 400, such as an older model,
+ * API version or local server, is asked again once without it; its base URL
+ * and model are remembered, so later calls leave the field out right away.
+ * The prompts asking for structured answers describe the format as well.
  */
 public class OpenAiCaller {
 
-    // The required path for the chat completion endpoint, appended to the base URL.
-    private static final String CHAT_COMPLETION_PATH = "/chat/completions";
-    private static final HttpClient CLIENT = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(10))
-            .build();
+    // Shared by all callers so that identical concurrent requests go out once
+    private static final SingleFlight<String> COMPLETIONS = new SingleFlight<>();
+    private static final SingleFlight<String> STREAMS = new SingleFlight<>();
+    // Base URL and model of the endpoints known to reject response_format
+    private static final Set<String> WITHOUT_RESPONSE_FORMAT = ConcurrentHashMap.newKeySet();
 
-    private final String apiKey;
-    private final String model;
-    private final String baseUrl;
+    private final Endpoint endpoint;
+    private CompletionCache cache = CompletionCache.getDefault();
+    private SemanticCache semanticCache = SemanticCache.getDefault();
+    // null: answers are not reused for similar questions
+    private String ontologyRevision;
+    // null: every call stands alone
+    private Conversation conversation;
+    private RetryPolicy retryPolicy = RetryPolicy.getDefault();
+    private RateLimiter rateLimiter = RateLimiter.getDefault();
+    private HttpTransport transport = HttpTransport.getDefault();
+    private CompletionOperation operation = CompletionOperation.GENERAL;
+    private CompletionMetrics metrics = CompletionMetrics.getDefault();
+    private Cassette cassette = Cassette.getDefault();
+    private EndpointPool endpointPool = EndpointPool.getDefault();
+    private EndpointRoutes routes = EndpointRoutes.getDefault();
+    private ModelRouter modelRouter = ModelRouter.getDefault();
+    // null: the defaults of the operation
+    private GenerationOptions options;
+    // negative: the default of the operation
+    private int maxContinuations = -1;
 
     /**
      * Initializes the caller with the API key, model, and the base URL of the service.
@@ -34,15 +88,45 @@ public class OpenAiCaller {
      * @param baseUrl The base URL of the API (e.g., "https://api.openai.com/v1" ).
      */
     public OpenAiCaller(String apiKey, String model, String baseUrl) {
+        this(openAiEndpoint(apiKey, model, baseUrl));
+    }
+
+    /**
+     * Initializes the caller with an endpoint of any provider. Unlike the
+     * OpenAI API, local inference servers usually need no API key.
+     * @param endpoint Where calls go unless their operation is routed elsewhere.
+     */
+    public OpenAiCaller(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * A caller configured like {@code other} that sends every call to {@code endpoint}.
+     */
+    private OpenAiCaller(OpenAiCaller other, Endpoint endpoint) {
+        this.endpoint = endpoint;
+        this.cache = other.cache;
+        this.semanticCache = other.semanticCache;
+        this.ontologyRevision = other.ontologyRevision;
+        this.conversation = other.conversation;
+        this.retryPolicy = other.retryPolicy;
+        this.rateLimiter = other.rateLimiter;
+        this.transport = other.transport;
+        this.operation = other.operation;
+        this.metrics = other.metrics;
+        this.cassette = other.cassette;
+        this.endpointPool = other.endpointPool;
+        this.routes = null;
+        this.modelRouter = null;
+        this.options = other.options;
+        this.maxContinuations = other.maxContinuations;
+    }
+
+    private static Endpoint openAiEndpoint(String apiKey, String model, String baseUrl) {
         if (apiKey == null || apiKey.isEmpty()) {
             throw new IllegalArgumentException("API key must be provided.");
         }
-        if (baseUrl == null || baseUrl.isEmpty()) {
-            throw new IllegalArgumentException("Base URL must be provided.");
-        }
-        this.apiKey = apiKey;
-        this.model = model;
-        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        return new Endpoint(baseUrl, apiKey, model);
     }
 
 
@@ -57,44 +141,68 @@ public class OpenAiCaller {
      * @throws RuntimeException If API returns a non-200 status code.
      */
     public String getFullResponse(String systemPrompt, String userQuery, double temperature) throws IOException, InterruptedException {
-        String fullUrl = this.baseUrl + CHAT_COMPLETION_PATH;
-
-        // 1. Build the list of messages
-        List<Message> messages = List.of(
-                new Message("system", systemPrompt),
-                new Message("user", userQuery)
-        );
-
-        ChatCompletionRequest requestObject = new ChatCompletionRequest(this.model, messages, temperature);
-
-        // Manual JSON serialization
-        String jsonPayload = requestObject.toJson();
-
-        // Build the HttpRequest
-        HttpRequest.Builder builder = HttpRequest.newBuilder()
-                .uri(URI.create(fullUrl))
-                .timeout(Duration.ofSeconds(30))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(jsonPayload));
+        return await(getFullResponseAsync(systemPrompt, userQuery, temperature));
+    }
 
-        // Only include the Authorization header if the API key is not the demo key
-        if (!"demo".equalsIgnoreCase(apiKey)) {
-            builder.header("Authorization", "Bearer " + apiKey);
+    /**
+     * Starts the API call without blocking and returns the complete raw JSON response.
+     * Cancelling the returned future aborts the HTTP exchange.
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param temperature The sampling temperature (0.0 to 2.0). Higher values make output more random.
+     * @return A future completing with the full JSON response, or exceptionally with a
+     *         RuntimeException if the API returns a non-200 status code.
+     */
+    public CompletableFuture<String> getFullResponseAsync(String systemPrompt, String userQuery, double temperature) {
+        String routed = routeModel(systemPrompt, userQuery);
+        if (routed != null) {
+            return recordRouted(routed, withModel(routed).getFullResponseAsync(systemPrompt, userQuery, temperature));
         }
+        CompletionMetrics.OperationMetrics stats = metrics.forOperation(operation);
+        stats.recordRequest();
+        return track(fullResponseAsync(buildMessages(systemPrompt, userQuery), temperature), stats);
+    }
 
-        HttpRequest request = builder.build();
-
-        // Execute the request
-        HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+    private CompletableFuture<String> fullResponseAsync(List<Message> messages, double temperature) {
+        GenerationOptions options = getOptions();
+        String endpointKey = getEndpoint().getBaseUrl() + " " + getEndpoint().getModel();
+        if (options.getResponseFormat() != null && WITHOUT_RESPONSE_FORMAT.contains(endpointKey)) {
+            options.setResponseFormat(null);
+        }
+        ChatCompletionRequest requestObject = new ChatCompletionRequest(getEndpoint().getModel(), messages,
+                temperature, false, options);
 
-        String responseBody = response.body() != null ? response.body() : "";
-        int status = response.statusCode();
-        if (status < 200 || status >= 300) {
-            System.err.println("API Call Failed. Status: " + status + ", Body: " + responseBody);
-            throw new RuntimeException("API call failed: " + status + " - " + responseBody);
+        if (cassette.isReplaying()) {
+            return replay(Cassette.keyFor(requestObject)).thenApply(entry -> {
+                checkStatus(entry.getStatus(), entry.getBody());
+                return entry.getBody();
+            });
         }
 
-        return responseBody;
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> exchange = sendChat(requestObject, HttpResponse.BodyHandlers.ofString());
+        return cancelsUpstream(exchange.thenCompose(response -> {
+            String responseBody = response.body() != null ? response.body() : "";
+            if (cassette.isRecording()) {
+                long latency = System.nanoTime() - start;
+                cassette.record(Cassette.keyFor(requestObject), response.statusCode(), responseBody, latency, latency);
+            }
+            if (options.getResponseFormat() != null && rejectsResponseFormat(response.statusCode(), responseBody)) {
+                System.out.println("Endpoint " + endpointKey + " rejects response_format, asking again without it");
+                WITHOUT_RESPONSE_FORMAT.add(endpointKey);
+                return fullResponseAsync(messages, temperature);
+            }
+            checkStatus(response.statusCode(), responseBody);
+            return CompletableFuture.completedFuture(responseBody);
+        }), exchange);
+    }
+
+    /**
+     * @return Whether a response is the error of a server not supporting the response_format field.
+     */
+    private static boolean rejectsResponseFormat(int status, String responseBody) {
+        String body = responseBody.toLowerCase(Locale.ROOT);
+        return status == 400 && (body.contains("response_format") || body.contains("json_schema"));
     }
 
     /**
@@ -121,13 +229,7 @@ public class OpenAiCaller {
      * @throws RuntimeException If API returns a non-200 status code.
      */
     public String generateCompletion(String systemPrompt, String userQuery, double temperature) throws IOException, InterruptedException {
-        String responseBody = getFullResponse(systemPrompt, userQuery, temperature);
-
-        // Log full JSON for debugging the parser
-        System.out.println("Raw JSON response:\n" + responseBody);
-
-        // Very small manual parser: extract first choice.message.content
-        return ChatCompletionResponse.extractFirstMessageContent(responseBody);
+        return await(generateCompletionAsync(systemPrompt, userQuery, temperature));
     }
 
     /**
@@ -143,6 +245,1266 @@ public class OpenAiCaller {
         return generateCompletion(systemPrompt, userQuery, 0.7);
     }
 
+    /**
+     * Starts the API call without blocking and returns the text response.
+     * Cancelling the returned future aborts the HTTP exchange.
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param temperature The sampling temperature (0.0 to 2.0). Higher values make output more random.
+     * @return A future completing with the text generated by the LLM.
+     */
+    public CompletableFuture<String> generateCompletionAsync(String systemPrompt, String userQuery, double temperature) {
+        String routed = routeModel(systemPrompt, userQuery);
+        if (routed != null) {
+            return recordRouted(routed, withModel(routed).generateCompletionAsync(systemPrompt, userQuery, temperature));
+        }
+        CompletionMetrics.OperationMetrics stats = metrics.forOperation(operation);
+        stats.recordRequest();
+        String cacheKey = cacheKey(systemPrompt, userQuery, temperature);
+        String cached = lookupCache(cacheKey, systemPrompt, userQuery, temperature);
+        if (cached != null) {
+            stats.recordCacheHit();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Identical requests already on the wire are joined instead of sent again
+        return track(COMPLETIONS.execute(fingerprint(systemPrompt, userQuery, temperature),
+                () -> fetchCompletion(systemPrompt, userQuery, temperature, cacheKey)), stats);
+    }
+
+    private CompletableFuture<String> fetchCompletion(String systemPrompt, String userQuery, double temperature,
+                                                      String cacheKey) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        result.whenComplete((content, error) -> {
+            CompletableFuture<?> part = current.get();
+            if (result.isCancelled() && part != null) {
+                part.cancel(true);
+            }
+        });
+        fetchCompletionPart(systemPrompt, userQuery, temperature, cacheKey, new StringBuilder(), 0,
+                System.nanoTime(), result, current);
+        return result;
+    }
+
+    /**
+     * Requests one part of a completion: the answer itself, or a continuation
+     * of the text so far if the previous part was cut off by the length limit.
+     */
+    private void fetchCompletionPart(String systemPrompt, String userQuery, double temperature, String cacheKey,
+                                     StringBuilder text, int continuation, long start,
+                                     CompletableFuture<String> result, AtomicReference<CompletableFuture<?>> current) {
+        List<Message> messages = continuation == 0 ? buildMessages(systemPrompt, userQuery)
+                : withHistory(Continuation.messages(systemPrompt, userQuery, text));
+        CompletableFuture<String> exchange = fullResponseAsync(messages, temperature);
+        current.set(exchange);
+        if (result.isCancelled()) {
+            exchange.cancel(true);
+            return;
+        }
+        exchange.whenComplete((responseBody, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            // Log full JSON for debugging the parser
+            System.out.println("Raw JSON response:\n" + responseBody);
+
+            ChatCompletionResponse response;
+            try {
+                response = ChatCompletionResponse.parse(responseBody);
+            } catch (JsonReader.JsonParseException e) {
+                result.complete(continuation == 0 ? "Error: Malformed response: " + e.getMessage() : text.toString());
+                return;
+            }
+            metrics.forOperation(operation).recordUsage(response.getUsage());
+
+            String content = response.getFirstContent();
+            if (content == null) {
+                // A continuation that fails keeps what was generated before
+                result.complete(continuation == 0 ? response.getFirstContentOrError() : text.toString());
+                return;
+            }
+            if (continuation == 0) {
+                text.append(content);
+            } else {
+                Continuation.append(text, content);
+            }
+            if (response.isTruncated()) {
+                if (continuation < maxContinuations()) {
+                    System.out.println("Completion cut off at " + text.length() + " chars, requesting continuation "
+                            + (continuation + 1) + " of at most " + maxContinuations());
+                    metrics.forOperation(operation).recordContinuation();
+                    fetchCompletionPart(systemPrompt, userQuery, temperature, cacheKey, text, continuation + 1,
+                            start, result, current);
+                    return;
+                }
+                System.err.println("Completion still cut off after " + continuation + " continuations");
+            } else {
+                storeInCache(cacheKey, systemPrompt, userQuery, temperature, text.toString(),
+                        System.nanoTime() - start);
+            }
+            result.complete(text.toString());
+        });
+    }
+
+    /**
+     * Starts the API call without blocking using default temperature (0.7).
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @return A future completing with the text generated by the LLM.
+     */
+    public CompletableFuture<String> generateCompletionAsync(String systemPrompt, String userQuery) {
+        return generateCompletionAsync(systemPrompt, userQuery, 0.7);
+    }
+
+    /**
+     * Executes the API call and checks the answer. If the {@link ModelRouter}
+     * has a rule for this caller's operation and the answer fails the check,
+     * the call is repeated with the next larger model of the rule.
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param temperature The sampling temperature (0.0 to 2.0). Higher values make output more random.
+     * @param validator Accepts answers the application can use.
+     * @return The first accepted answer, or the answer of the largest model if none is accepted.
+     * @throws IOException If the network call or API processing fails.
+     * @throws InterruptedException If the request is interrupted.
+     */
+    public String generateCompletion(String systemPrompt, String userQuery, double temperature,
+                                     Predicate<String> validator) throws IOException, InterruptedException {
+        return await(generateCompletionAsync(systemPrompt, userQuery, temperature, validator));
+    }
+
+    /**
+     * Starts a validated API call without blocking; see
+     * {@link #generateCompletion(String, String, double, Predicate)}.
+     * Cancelling the returned future aborts the current HTTP exchange.
+     */
+    public CompletableFuture<String> generateCompletionAsync(String systemPrompt, String userQuery, double temperature,
+                                                             Predicate<String> validator) {
+        String routed = routeModel(systemPrompt, userQuery);
+        if (routed == null) {
+            return generateCompletionAsync(systemPrompt, userQuery, temperature);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        result.whenComplete((content, error) -> {
+            CompletableFuture<?> attempt = current.get();
+            if (result.isCancelled() && attempt != null) {
+                attempt.cancel(true);
+            }
+        });
+        generateValidated(systemPrompt, userQuery, temperature, validator, routed, result, current);
+        return result;
+    }
+
+    private void generateValidated(String systemPrompt, String userQuery, double temperature,
+                                   Predicate<String> validator, String model, CompletableFuture<String> result,
+                                   AtomicReference<CompletableFuture<?>> current) {
+        OpenAiCaller routed = withModel(model);
+        long start = System.nanoTime();
+        CompletableFuture<String> attempt = routed.generateCompletionAsync(systemPrompt, userQuery, temperature);
+        current.set(attempt);
+        if (result.isCancelled()) {
+            attempt.cancel(true);
+            return;
+        }
+        attempt.whenComplete((content, error) -> {
+            if (attempt.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                modelRouter.recordFailure(operation, model);
+                result.completeExceptionally(error);
+                return;
+            }
+            if (validator.test(content)) {
+                modelRouter.recordSuccess(operation, model, System.nanoTime() - start);
+                result.complete(content);
+                return;
+            }
+            modelRouter.recordFailure(operation, model);
+            String next = modelRouter.escalate(operation, model);
+            if (next == null) {
+                result.complete(content);
+                return;
+            }
+            // Served again from the cache otherwise, even though it is of no use
+            routed.removeFromCache(systemPrompt, userQuery, temperature);
+            System.out.println("Answer of " + model + " failed validation, escalating to " + next);
+            metrics.forOperation(operation).recordEscalation();
+            generateValidated(systemPrompt, userQuery, temperature, validator, next, result, current);
+        });
+    }
+
+    /**
+     * Executes the API call in streaming mode ("stream": true) and pushes every
+     * content delta to the listener as soon as the server sends it.
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param temperature The sampling temperature (0.0 to 2.0). Higher values make output more random.
+     * @param listener Receives the generated text incrementally; may be null.
+     * @return The complete text generated by the LLM once the stream has ended.
+     * @throws IOException If the network call or API processing fails.
+     * @throws InterruptedException If the request is interrupted.
+     * @throws RuntimeException If API returns a non-200 status code.
+     */
+    public String streamCompletion(String systemPrompt, String userQuery, double temperature,
+                                   CompletionStreamListener listener) throws IOException, InterruptedException {
+        return await(streamCompletionAsync(systemPrompt, userQuery, temperature, listener));
+    }
+
+    /**
+     * Starts a streaming API call without blocking. Deltas are pushed to the
+     * listener from a background thread; cancelling the returned future closes
+     * the event stream and aborts the HTTP exchange.
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param temperature The sampling temperature (0.0 to 2.0). Higher values make output more random.
+     * @param listener Receives the generated text incrementally; may be null.
+     * @return A future completing with the complete text once the stream has ended.
+     */
+    public CompletableFuture<String> streamCompletionAsync(String systemPrompt, String userQuery, double temperature,
+                                                           CompletionStreamListener listener) {
+        String routed = routeModel(systemPrompt, userQuery);
+        if (routed != null) {
+            return recordRouted(routed,
+                    withModel(routed).streamCompletionAsync(systemPrompt, userQuery, temperature, listener));
+        }
+        CompletionMetrics.OperationMetrics stats = metrics.forOperation(operation);
+        stats.recordRequest();
+        String cacheKey = cacheKey(systemPrompt, userQuery, temperature);
+        String cached = lookupCache(cacheKey, systemPrompt, userQuery, temperature);
+        if (cached != null) {
+            stats.recordCacheHit();
+            if (listener != null) {
+                listener.onDelta(cached);
+            }
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Joiners first receive the text streamed so far, then the remaining deltas
+        AtomicReference<SharedStream> joined = new AtomicReference<>();
+        CompletableFuture<String> view = STREAMS.execute(fingerprint(systemPrompt, userQuery, temperature),
+                () -> fetchStream(systemPrompt, userQuery, temperature, cacheKey),
+                shared -> {
+                    joined.set(shared);
+                    shared.addListener(listener);
+                });
+        view.whenComplete((content, error) -> {
+            if (view.isCancelled()) {
+                joined.get().removeListener(listener);
+            }
+        });
+        return track(view, stats);
+    }
+
+    private SharedStream fetchStream(String systemPrompt, String userQuery, double temperature, String cacheKey) {
+        SharedStream result = new SharedStream();
+        fetchStreamPart(systemPrompt, userQuery, temperature, cacheKey, new StringBuilder(), 0, System.nanoTime(),
+                result);
+        return result;
+    }
+
+    /**
+     * Streams one part of a completion into {@code result}; see {@link #fetchCompletionPart}.
+     */
+    private void fetchStreamPart(String systemPrompt, String userQuery, double temperature, String cacheKey,
+                                 StringBuilder text, int continuation, long start, SharedStream result) {
+        List<Message> messages = continuation == 0 ? buildMessages(systemPrompt, userQuery)
+                : withHistory(Continuation.messages(systemPrompt, userQuery, text));
+        ChatCompletionRequest requestObject = new ChatCompletionRequest(getEndpoint().getModel(), messages,
+                temperature, true, getOptions());
+        // Deltas of a continuation are held back until it is known what they repeat
+        Continuation.Stitcher stitcher = continuation == 0 ? null : new Continuation.Stitcher(text, result);
+
+        streamPart(requestObject, stitcher != null ? stitcher : result, result).whenComplete((stream, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            if (stitcher != null) {
+                stitcher.finish();
+                text.append(stitcher.getAppended());
+            } else {
+                text.append(stream.getContent());
+            }
+            // Only reported by servers asked for it with stream_options.include_usage
+            metrics.forOperation(operation).recordUsage(stream.getUsage());
+            if (stream.isTruncated()) {
+                if (continuation < maxContinuations()) {
+                    System.out.println("Stream cut off at " + text.length() + " chars, requesting continuation "
+                            + (continuation + 1) + " of at most " + maxContinuations());
+                    metrics.forOperation(operation).recordContinuation();
+                    fetchStreamPart(systemPrompt, userQuery, temperature, cacheKey, text, continuation + 1, start,
+                            result);
+                    return;
+                }
+                System.err.println("Stream still cut off after " + continuation + " continuations");
+            } else if (stream.isDone()) {
+                storeInCache(cacheKey, systemPrompt, userQuery, temperature, text.toString(),
+                        System.nanoTime() - start);
+            }
+            result.complete(text.toString());
+        });
+    }
+
+    /**
+     * Sends a streaming request, or replays it from the cassette, and reads the
+     * events into a stream passing the deltas to the listener. Cancelling
+     * {@code result} closes the event stream and aborts the HTTP exchange.
+     */
+    private CompletableFuture<ChatCompletionStream> streamPart(ChatCompletionRequest requestObject,
+                                                               CompletionStreamListener listener,
+                                                               CompletableFuture<String> result) {
+        long start = System.nanoTime();
+        CompletableFuture<ChatCompletionStream> part = new CompletableFuture<>();
+        if (cassette.isReplaying()) {
+            replay(Cassette.keyFor(requestObject)).whenComplete((entry, error) -> {
+                if (error != null) {
+                    part.completeExceptionally(error);
+                    return;
+                }
+                transport.getStreamExecutor().execute(() -> {
+                    try (Stream<String> lines = cassette.replayLines(entry)) {
+                        if (!result.isDone()) {
+                            part.complete(readStream(entry.getStatus(), lines, listener, result));
+                        }
+                    } catch (Throwable t) {
+                        part.completeExceptionally(t);
+                    }
+                });
+            });
+            return part;
+        }
+
+        // Lines are handed out as they arrive instead of after the last byte
+        CompletableFuture<HttpResponse<Stream<String>>> exchange =
+                sendChat(requestObject, HttpResponse.BodyHandlers.ofLines());
+
+        AtomicReference<Stream<String>> body = new AtomicReference<>();
+        exchange.whenComplete((response, error) -> {
+            if (error != null) {
+                part.completeExceptionally(error);
+                return;
+            }
+            long timeToFirstByte = System.nanoTime() - start;
+            List<String> recorded = cassette.isRecording() ? new ArrayList<>() : null;
+            transport.getStreamExecutor().execute(() -> {
+                try (Stream<String> lines = recorded != null ? response.body().peek(recorded::add) : response.body()) {
+                    body.set(lines);
+                    if (!result.isDone()) {
+                        ChatCompletionStream stream;
+                        try {
+                            stream = readStream(response.statusCode(), lines, listener, result);
+                        } finally {
+                            // Recorded before completing so the cassette is complete when the caller resumes
+                            if (recorded != null && !result.isCancelled()) {
+                                cassette.record(Cassette.keyFor(requestObject), response.statusCode(),
+                                        String.join("\n", recorded), timeToFirstByte, System.nanoTime() - start);
+                            }
+                        }
+                        part.complete(stream);
+                    }
+                } catch (Throwable t) {
+                    part.completeExceptionally(t);
+                }
+            });
+        });
+        result.whenComplete((content, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+                Stream<String> lines = body.get();
+                if (lines != null) {
+                    // Closing the body cancels the subscription and with it the connection
+                    lines.close();
+                }
+            }
+        });
+        return part;
+    }
+
+    /**
+     * Starts a streaming API call without blocking using default temperature (0.7).
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param listener Receives the generated text incrementally; may be null.
+     * @return A future completing with the complete text once the stream has ended.
+     */
+    public CompletableFuture<String> streamCompletionAsync(String systemPrompt, String userQuery,
+                                                           CompletionStreamListener listener) {
+        return streamCompletionAsync(systemPrompt, userQuery, 0.7, listener);
+    }
+
+    /**
+     * Executes the API call in streaming mode using default temperature (0.7).
+     * @param systemPrompt The instruction to set the model's behavior.
+     * @param userQuery The user's input question or task.
+     * @param listener Receives the generated text incrementally; may be null.
+     * @return The complete text generated by the LLM once the stream has ended.
+     * @throws IOException If the network call or API processing fails.
+     * @throws InterruptedException If the request is interrupted.
+     * @throws RuntimeException If API returns a non-200 status code.
+     */
+    public String streamCompletion(String systemPrompt, String userQuery, CompletionStreamListener listener)
+            throws IOException, InterruptedException {
+        return streamCompletion(systemPrompt, userQuery, 0.7, listener);
+    }
+
+    /**
+     * Replaces the response cache used by this caller.
+     * @param cache The cache to consult before calling the API, or null to always go to the network.
+     */
+    public void setCache(CompletionCache cache) {
+        this.cache = cache;
+    }
+
+    public CompletionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Replaces the cache of answers to similar questions used by this caller.
+     * @param semanticCache The cache, or null to only reuse answers to identical requests.
+     */
+    public void setSemanticCache(SemanticCache semanticCache) {
+        this.semanticCache = semanticCache;
+    }
+
+    public SemanticCache getSemanticCache() {
+        return semanticCache;
+    }
+
+    /**
+     * Lets the {@link SemanticCache} answer questions similar to earlier ones.
+     * Answers are only reused within the same revision, so a changed ontology
+     * is asked about again.
+     * @param ontologyRevision Identifies the state of the ontology the questions are about,
+     *        or null to only reuse answers to identical requests.
+     */
+    public void setOntologyRevision(String ontologyRevision) {
+        this.ontologyRevision = ontologyRevision;
+    }
+
+    public String getOntologyRevision() {
+        return ontologyRevision;
+    }
+
+    /**
+     * Sends the earlier turns of a conversation along with every call. The
+     * caller does not record the answers; see {@link Conversation#addTurn}.
+     * @param conversation The conversation, or null for calls that stand alone.
+     */
+    public void setConversation(Conversation conversation) {
+        this.conversation = conversation;
+    }
+
+    public Conversation getConversation() {
+        return conversation;
+    }
+
+    /**
+     * Replaces the retry policy used by this caller.
+     * @param retryPolicy The policy, or null to never retry.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.none();
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Replaces the rate limiter used by this caller.
+     * @param rateLimiter The limiter, or null to send requests without pacing.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return How many calls were served by joining an identical request that was already in flight.
+     */
+    public static long getCoalescedRequestCount() {
+        return COMPLETIONS.getJoinedCount() + STREAMS.getJoinedCount();
+    }
+
+    /**
+     * Replaces the registry this caller reports to.
+     * @param metrics The registry; null means the shared default.
+     */
+    public void setMetrics(CompletionMetrics metrics) {
+        this.metrics = metrics != null ? metrics : CompletionMetrics.getDefault();
+    }
+
+    public CompletionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Opens a connection to the endpoint in the background, so that the first
+     * completion does not pay for connection setup. Unreachable endpoints are
+     * skipped.
+     * @return A future completing with true if the endpoint was reached.
+     */
+    public CompletableFuture<Boolean> prewarmAsync() {
+        Endpoint target = getEndpoint();
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder()
+                    .uri(target.getProvider().modelsUri(target))
+                    .timeout(transport.getSettings().getConnectTimeout())
+                    .GET();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipped pre-connect, invalid base URL: " + target.getBaseUrl());
+            return CompletableFuture.completedFuture(false);
+        }
+        target.getProvider().authorize(builder, target);
+        return transport.prewarm(builder.build());
+    }
+
+    /**
+     * Sets the kind of call this caller makes, which selects operation-specific
+     * settings such as the request timeout and the default generation options.
+     * @param operation The operation; null means {@link CompletionOperation#GENERAL}.
+     */
+    public void setOperation(CompletionOperation operation) {
+        this.operation = operation != null ? operation : CompletionOperation.GENERAL;
+    }
+
+    public CompletionOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Sets max_tokens, stop sequences and the other optional parameters of
+     * every request. The caller keeps a copy.
+     * @param options The parameters; null means the defaults of the operation
+     *        ({@link GenerationOptions#defaultsFor}).
+     */
+    public void setOptions(GenerationOptions options) {
+        this.options = options != null ? new GenerationOptions(options) : null;
+    }
+
+    /**
+     * Sets how many follow-up requests may resume an answer that was cut off
+     * by the length limit (finish_reason "length"). The parts are joined
+     * without the text a continuation repeats.
+     * @param maxContinuations The limit, 0 to return cut-off answers as they
+     *        are, or a negative value for the default of the operation
+     *        ({@link CompletionOperation#getMaxContinuations()}).
+     */
+    public void setMaxContinuations(int maxContinuations) {
+        this.maxContinuations = maxContinuations;
+    }
+
+    public int getMaxContinuations() {
+        return maxContinuations();
+    }
+
+    private int maxContinuations() {
+        return maxContinuations >= 0 ? maxContinuations : operation.getMaxContinuations();
+    }
+
+    /**
+     * @return A copy of the parameters sent with every request.
+     */
+    public GenerationOptions getOptions() {
+        return options != null ? new GenerationOptions(options) : GenerationOptions.defaultsFor(operation);
+    }
+
+    /**
+     * Replaces the HTTP transport used by this caller.
+     * @param transport The transport; null means the shared default.
+     */
+    public void setTransport(HttpTransport transport) {
+        this.transport = transport != null ? transport : HttpTransport.getDefault();
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Replaces the cassette this caller records to or replays from.
+     * While a cassette records or replays, the response cache is bypassed so
+     * that every call reaches the cassette.
+     * @param cassette The cassette; null means none.
+     */
+    public void setCassette(Cassette cassette) {
+        this.cassette = cassette != null ? cassette : Cassette.off();
+    }
+
+    public Cassette getCassette() {
+        return cassette;
+    }
+
+    /**
+     * Replaces the pool providing fallback endpoints and circuit breakers.
+     * @param endpointPool The pool; null means this caller's endpoint only.
+     */
+    public void setEndpointPool(EndpointPool endpointPool) {
+        this.endpointPool = endpointPool;
+    }
+
+    public EndpointPool getEndpointPool() {
+        return endpointPool;
+    }
+
+    /**
+     * Replaces the routes that send the calls of some operations elsewhere.
+     * @param routes The routes; null means this caller's endpoint for every operation.
+     */
+    public void setRoutes(EndpointRoutes routes) {
+        this.routes = routes;
+    }
+
+    public EndpointRoutes getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Replaces the router choosing the model per operation.
+     * @param modelRouter The router; null means this caller's model for every operation.
+     */
+    public void setModelRouter(ModelRouter modelRouter) {
+        this.modelRouter = modelRouter;
+    }
+
+    public ModelRouter getModelRouter() {
+        return modelRouter;
+    }
+
+    /**
+     * @return The model the router picks for a call with these prompts, or
+     *         null if this caller's operation has no routing rule.
+     */
+    private String routeModel(String systemPrompt, String userQuery) {
+        if (modelRouter == null || modelRouter.getRule(operation) == null) {
+            return null;
+        }
+        String model = getEndpoint().getModel();
+        int promptTokens = new ChatCompletionRequest(model, buildMessages(systemPrompt, userQuery))
+                .countPromptTokens(TokenBudget.forModel(model, operation).getCounter());
+        return modelRouter.select(operation, promptTokens);
+    }
+
+    private OpenAiCaller withModel(String model) {
+        return new OpenAiCaller(this, getEndpoint().withModel(model));
+    }
+
+    /**
+     * Reports the outcome and latency of a routed call to the router.
+     */
+    private <T> CompletableFuture<T> recordRouted(String model, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        CompletionOperation routedOperation = operation;
+        ModelRouter router = modelRouter;
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                router.recordFailure(routedOperation, model);
+            } else {
+                router.recordSuccess(routedOperation, model, System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return Where calls of this caller's operation go: the route for the
+     *         operation if there is one, otherwise the caller's own endpoint.
+     */
+    public Endpoint getEndpoint() {
+        Endpoint routed = routes != null ? routes.getEndpoint(operation) : null;
+        return routed != null ? routed : endpoint;
+    }
+
+    private CompletableFuture<Cassette.Entry> replay(String key) {
+        Cassette.Entry entry = cassette.find(key);
+        if (entry == null) {
+            return CompletableFuture.failedFuture(new IOException(
+                    "No recorded response in " + cassette.getFile() + " for request " + key));
+        }
+        return cassette.replay(entry);
+    }
+
+    private String cacheKey(String systemPrompt, String userQuery, double temperature) {
+        if (cache == null || !cache.isEnabled() || cassette.getMode() != Cassette.Mode.OFF) {
+            return null;
+        }
+        return fingerprint(systemPrompt, userQuery, temperature);
+    }
+
+    private String fingerprint(String systemPrompt, String userQuery, double temperature) {
+        Endpoint target = getEndpoint();
+        // A follow-up question is only the same request after the same history
+        String prompt = conversation == null || conversation.isEmpty() ? systemPrompt
+                : systemPrompt + conversation.getHistory();
+        return CompletionCache.keyFor(target.getModel(), target.getBaseUrl(), prompt, userQuery, temperature,
+                getOptions());
+    }
+
+    /**
+     * @return The scope of similar questions in the semantic cache, or null if it is not used.
+     */
+    private String semanticScope(String systemPrompt, double temperature) {
+        if (semanticCache == null || !semanticCache.isEnabled() || ontologyRevision == null
+                || cassette.getMode() != Cassette.Mode.OFF) {
+            return null;
+        }
+        // A follow-up's scope would include its history, which no later question shares
+        if (conversation != null && !conversation.isEmpty()) {
+            return null;
+        }
+        // The question is matched by similarity; the revision takes its place in the fingerprint
+        return fingerprint(systemPrompt, ontologyRevision, temperature);
+    }
+
+    private void removeFromCache(String systemPrompt, String userQuery, double temperature) {
+        String cacheKey = cacheKey(systemPrompt, userQuery, temperature);
+        if (cacheKey != null) {
+            cache.remove(cacheKey);
+        }
+        String scope = semanticScope(systemPrompt, temperature);
+        if (scope != null) {
+            semanticCache.remove(scope, userQuery);
+        }
+    }
+
+    private String lookupCache(String cacheKey, String systemPrompt, String userQuery, double temperature) {
+        if (cacheKey != null) {
+            String cached = cache.get(cacheKey);
+            if (cached != null) {
+                System.out.println("Completion served from cache. " + cache);
+                return cached;
+            }
+        }
+        String scope = semanticScope(systemPrompt, temperature);
+        if (scope == null) {
+            return null;
+        }
+        SemanticCache.Match match = semanticCache.find(scope, userQuery);
+        if (match == null) {
+            return null;
+        }
+        System.out.println(String.format("Completion served from semantic cache, similarity %.2f to \"%s\". %s",
+                match.getSimilarity(), match.getQuery(), semanticCache));
+        return match.getAnswer();
+    }
+
+    private void storeInCache(String cacheKey, String systemPrompt, String userQuery, double temperature,
+                              String content, long latencyNanos) {
+        if (content == null) {
+            return;
+        }
+        if (cacheKey != null) {
+            cache.put(cacheKey, content, latencyNanos);
+        }
+        String scope = semanticScope(systemPrompt, temperature);
+        if (scope != null) {
+            semanticCache.put(scope, userQuery, content);
+        }
+    }
+
+    /**
+     * Sends the request once a rate limit permit is available and retries it
+     * according to the retry policy. The future completes with the final
+     * response, successful or not; cancelling it aborts the current attempt.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+        result.whenComplete((response, error) -> {
+            CompletableFuture<?> attempt = current.get();
+            if (result.isCancelled() && attempt != null) {
+                attempt.cancel(true);
+            }
+        });
+        sendAttempt(request, handler, 1, result, current);
+        return result;
+    }
+
+    private <T> void sendAttempt(HttpRequest request, HttpResponse.BodyHandler<T> handler, int attempt,
+                                 CompletableFuture<HttpResponse<T>> result,
+                                 AtomicReference<CompletableFuture<?>> current) {
+        CompletableFuture<Void> permit = rateLimiter != null
+                ? rateLimiter.acquireAsync() : CompletableFuture.completedFuture(null);
+        current.set(permit);
+        CompletableFuture<HttpResponse<T>> exchange = permit.thenCompose(ignored -> {
+            CompletableFuture<Runnable> hostPermit = transport.acquireHostPermit(request.uri());
+            current.set(hostPermit);
+            if (result.isDone()) {
+                hostPermit.cancel(true);
+            }
+            return hostPermit;
+        }).thenCompose(release -> {
+            CompletionMetrics.OperationMetrics stats = metrics.forOperation(operation);
+            stats.recordExchange(request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(-1L));
+            boolean warm = transport.isConnected(request.uri());
+            long sentAt = System.nanoTime();
+            CompletableFuture<HttpResponse<T>> sent = transport.getClient().sendAsync(request,
+                    info -> new CountingSubscriber<>(handler.apply(info), stats));
+            current.set(sent);
+            if (result.isDone()) {
+                sent.cancel(true);
+            }
+            return sent.whenComplete((response, error) -> {
+                if (response != null) {
+                    // Bodies are read lazily for streams, so this is when the first byte arrived
+                    long timeToFirstByte = System.nanoTime() - sentAt;
+                    transport.recordTimeToFirstByte(request.uri(), warm, timeToFirstByte);
+                    stats.recordTimeToFirstByte(timeToFirstByte);
+                }
+                releaseWhenConsumed(response, release);
+            });
+        });
+        if (result.isDone()) {
+            current.get().cancel(true);
+            return;
+        }
+
+        exchange.whenComplete((response, error) -> {
+            if (result.isDone()) {
+                discardBody(response);
+                return;
+            }
+
+            long delay = -1;
+            String reason;
+            if (error != null) {
+                reason = String.valueOf(error.getCause() != null ? error.getCause() : error);
+                if (attempt < retryPolicy.getMaxAttempts() && retryPolicy.isRetryable(error)) {
+                    delay = retryPolicy.backoffMillis(attempt);
+                }
+                if (delay < 0) {
+                    result.completeExceptionally(error);
+                    return;
+                }
+            } else {
+                int status = response.statusCode();
+                reason = "HTTP " + status;
+                RateLimitHeaders limits = RateLimitHeaders.from(response.headers());
+                if (rateLimiter != null) {
+                    rateLimiter.onResponse(status, limits);
+                }
+                if (attempt < retryPolicy.getMaxAttempts() && retryPolicy.isRetryable(status, response.body())) {
+                    delay = retryPolicy.delayMillis(attempt, limits);
+                }
+                if (delay < 0) {
+                    result.complete(response);
+                    return;
+                }
+                discardBody(response);
+            }
+
+            System.err.println("Retrying API call after " + reason + " in " + delay + " ms (attempt "
+                    + (attempt + 1) + " of " + retryPolicy.getMaxAttempts() + ")");
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> sendAttempt(request, handler, attempt + 1, result, current));
+        });
+    }
+
+    /**
+     * Sends a chat completion request to this caller's endpoint, or to the
+     * fallback endpoints of the pool when it fails.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendChat(ChatCompletionRequest requestObject,
+                                                          HttpResponse.BodyHandler<T> handler) {
+        Endpoint primary = getEndpoint();
+        if (endpointPool == null || endpointPool.getFallbacks().isEmpty()) {
+            return send(buildHttpRequest(requestObject, primary), handler);
+        }
+        return new EndpointRace<>(requestObject, handler, endpointPool.candidates(primary)).start();
+    }
+
+    /**
+     * @return true if another endpoint may answer where one gave this status:
+     *         server errors, rate limiting and rejected keys or models.
+     */
+    private static boolean isFailover(int status) {
+        return status == 401 || status == 403 || status == 404 || status == 408 || status == 429 || status >= 500;
+    }
+
+    /**
+     * Sends one request to a list of endpoints. Each endpoint is tried after
+     * the one before has failed, skipping those whose circuit breaker is open.
+     * If hedging is enabled and the first endpoint is slow, the next one is
+     * tried while it is still running. The first successful response completes
+     * the race and cancels the others; if none succeeds, the last failure does.
+     */
+    private final class EndpointRace<T> {
+        private final ChatCompletionRequest requestObject;
+        private final HttpResponse.BodyHandler<T> handler;
+        private final List<Endpoint> endpoints;
+        private final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse<T>>> running = new ArrayList<>();
+        private int next;
+        private int pending;
+        private HttpResponse<T> lastResponse;
+        private Throwable lastError;
+
+        EndpointRace(ChatCompletionRequest requestObject, HttpResponse.BodyHandler<T> handler,
+                     List<Endpoint> endpoints) {
+            this.requestObject = requestObject;
+            this.handler = handler;
+            this.endpoints = endpoints;
+        }
+
+        CompletableFuture<HttpResponse<T>> start() {
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) {
+                    cancelRunning();
+                }
+            });
+            synchronized (this) {
+                if (!launchNext()) {
+                    result.completeExceptionally(new IOException(
+                            "No endpoint available, all circuit breakers are open: " + endpointPool.getBreakerStates()));
+                    return result;
+                }
+            }
+            Duration delay = endpointPool.hedgeDelay(endpoints.get(0), operation);
+            if (delay != null) {
+                CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS).execute(this::hedge);
+            }
+            return result;
+        }
+
+        private synchronized void hedge() {
+            if (!result.isDone() && next == 1 && pending > 0 && launchNext()) {
+                System.err.println("Hedging API call to " + endpoints.get(next - 1) + ", no answer from "
+                        + endpoints.get(0) + " yet");
+            }
+        }
+
+        /**
+         * Sends the request to the next endpoint whose breaker lets it through.
+         * @return false if there is none.
+         */
+        private boolean launchNext() {
+            while (next < endpoints.size()) {
+                Endpoint endpoint = endpoints.get(next++);
+                CircuitBreaker breaker = endpointPool.breakerFor(endpoint);
+                if (breaker.tryAcquire()) {
+                    launch(endpoint, breaker);
+                    return true;
+                }
+                System.err.println("Skipping " + endpoint + ", circuit breaker is " + breaker.getState());
+            }
+            return false;
+        }
+
+        private void launch(Endpoint endpoint, CircuitBreaker breaker) {
+            long start = System.nanoTime();
+            CompletableFuture<HttpResponse<T>> attempt;
+            try {
+                attempt = send(buildHttpRequest(requestObject, endpoint), handler);
+            } catch (IllegalArgumentException e) {
+                // An invalid fallback URL; the next endpoint is tried instead
+                attempt = CompletableFuture.failedFuture(e);
+            }
+            running.add(attempt);
+            pending++;
+            CompletableFuture<HttpResponse<T>> launched = attempt;
+            launched.whenComplete((response, error) ->
+                    onOutcome(endpoint, breaker, launched, System.nanoTime() - start, response, error));
+        }
+
+        private void onOutcome(Endpoint endpoint, CircuitBreaker breaker,
+                               CompletableFuture<HttpResponse<T>> attempt, long nanos,
+                               HttpResponse<T> response, Throwable error) {
+            boolean cancelled = attempt.isCancelled();
+            boolean failed = error != null || isFailover(response.statusCode());
+            if (cancelled) {
+                breaker.recordCancelled();
+            } else if (failed) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();
+                endpointPool.recordLatency(endpoint, operation, nanos);
+            }
+
+            // Completed outside the lock, since dependents of the result may run for a while
+            boolean finished;
+            HttpResponse<T> finalResponse;
+            Throwable finalError;
+            synchronized (this) {
+                pending--;
+                if (cancelled) {
+                    return;
+                }
+                if (result.isDone()) {
+                    discardBody(response);
+                    return;
+                }
+                if (failed) {
+                    System.err.println("API call to " + endpoint + " failed with "
+                            + (error != null ? String.valueOf(error.getCause() != null ? error.getCause() : error)
+                            : "HTTP " + response.statusCode()));
+                    discardBody(lastResponse);
+                    lastResponse = response;
+                    lastError = error;
+                    finished = pending == 0 && !launchNext();
+                } else {
+                    discardBody(lastResponse);
+                    lastResponse = null;
+                    finished = true;
+                }
+                finalResponse = lastResponse != null ? lastResponse : response;
+                finalError = failed ? lastError : null;
+            }
+            if (!finished) {
+                return;
+            }
+            if (finalResponse != null) {
+                if (!result.complete(finalResponse)) {
+                    discardBody(finalResponse);
+                }
+            } else {
+                result.completeExceptionally(finalError);
+            }
+            if (!failed) {
+                cancelRunning();
+            }
+        }
+
+        private synchronized void cancelRunning() {
+            for (CompletableFuture<HttpResponse<T>> attempt : running) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Frees the host permit once the exchange is over: immediately for bodies
+     * that are already read, or when a streamed body is closed.
+     */
+    private static void releaseWhenConsumed(HttpResponse<?> response, Runnable release) {
+        if (response != null && response.body() instanceof Stream) {
+            ((Stream<?>) response.body()).onClose(release);
+        } else {
+            release.run();
+        }
+    }
+
+    private static void discardBody(HttpResponse<?> response) {
+        if (response != null && response.body() instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) response.body()).close();
+            } catch (Exception e) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private ChatCompletionStream readStream(int status, Stream<String> lines, CompletionStreamListener listener,
+                                            CompletableFuture<?> result) {
+        if (status < 200 || status >= 300) {
+            checkStatus(status, lines.collect(Collectors.joining("\n")));
+        }
+
+        ChatCompletionStream stream = new ChatCompletionStream(listener);
+        Iterator<String> it = lines.iterator();
+        while (!result.isDone() && it.hasNext() && !stream.onLine(it.next())) {
+            // keep reading until [DONE], end of body or cancellation
+        }
+        return stream;
+    }
+
+    private static void checkStatus(int status, String responseBody) {
+        if (status < 200 || status >= 300) {
+            System.err.println("API Call Failed. Status: " + status + ", Body: " + responseBody);
+            throw new RuntimeException("API call failed: " + status + " - " + responseBody);
+        }
+    }
+
+    /**
+     * Records the outcome and latency of a call once its future completes.
+     */
+    private static <T> CompletableFuture<T> track(CompletableFuture<T> future,
+                                                  CompletionMetrics.OperationMetrics stats) {
+        long start = System.nanoTime();
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                stats.recordCancellation();
+            } else if (error != null) {
+                stats.recordFailure(System.nanoTime() - start);
+            } else {
+                stats.recordSuccess(System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Makes cancelling {@code result} also cancel the future it was derived from,
+     * which CompletableFuture does not do by itself.
+     */
+    private static <T> CompletableFuture<T> cancelsUpstream(CompletableFuture<T> result, CompletableFuture<?> upstream) {
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Waits for an asynchronous call, cancelling it if the waiting thread is
+     * interrupted, and rethrows its failure the way the blocking API declares it.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private List<Message> buildMessages(String systemPrompt, String userQuery) {
+        return withHistory(List.of(
+                new Message("system", systemPrompt),
+                new Message("user", userQuery)
+        ));
+    }
+
+    /**
+     * @return The messages with the conversation's history after the system prompt.
+     */
+    private List<Message> withHistory(List<Message> messages) {
+        if (conversation == null || conversation.isEmpty()) {
+            return messages;
+        }
+        List<Message> all = new ArrayList<>(messages.size() + 8);
+        all.add(messages.get(0));
+        all.addAll(conversation.getHistory());
+        all.addAll(messages.subList(1, messages.size()));
+        return all;
+    }
+
+    private HttpRequest buildHttpRequest(ChatCompletionRequest requestObject, Endpoint endpoint) {
+        if (!endpoint.getModel().isEmpty() && !endpoint.getModel().equals(requestObject.model)) {
+            requestObject = new ChatCompletionRequest(endpoint.getModel(), requestObject.messages,
+                    requestObject.temperature, requestObject.stream, requestObject.options);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(endpoint.getProvider().chatCompletionsUri(endpoint))
+                .timeout(transport.getRequestTimeout(operation))
+                .header("Content-Type", "application/json")
+                .POST(requestObject.toBodyPublisher());
+
+        if (requestObject.stream) {
+            builder.header("Accept", "text/event-stream");
+        }
+
+        endpoint.getProvider().authorize(builder, endpoint);
+
+        return builder.build();
+    }
+
+    /**
+     * Passes a response body through unchanged while counting its bytes.
+     */
+    private static final class CountingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final CompletionMetrics.OperationMetrics stats;
+
+        CountingSubscriber(HttpResponse.BodySubscriber<T> delegate, CompletionMetrics.OperationMetrics stats) {
+            this.delegate = delegate;
+            this.stats = stats;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            long bytes = 0;
+            for (ByteBuffer buffer : item) {
+                bytes += buffer.remaining();
+            }
+            stats.recordBytesReceived(bytes);
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+    }
+
+    /**
+     * A streamed completion shared by every caller that joined it. Deltas are
+     * fanned out to all listeners; a listener added late first receives
+     * everything streamed before it joined.
+     */
+    private static final class SharedStream extends CompletableFuture<String> implements CompletionStreamListener {
+        private final StringBuilder received = new StringBuilder();
+        private final List<CompletionStreamListener> listeners = new ArrayList<>(1);
+
+        @Override
+        public synchronized void onDelta(String delta) {
+            received.append(delta);
+            for (CompletionStreamListener listener : listeners) {
+                listener.onDelta(delta);
+            }
+        }
+
+        synchronized void addListener(CompletionStreamListener listener) {
+            if (listener == null) {
+                return;
+            }
+            if (received.length() > 0) {
+                listener.onDelta(received.toString());
+            }
+            listeners.add(listener);
+        }
+
+        synchronized void removeListener(CompletionStreamListener listener) {
+            listeners.remove(listener);
+        }
+    }
+
     /**
      * Example main method for local testing using the vishals demo endpoint.
      */
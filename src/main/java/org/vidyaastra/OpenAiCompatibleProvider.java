@@ -0,0 +1,45 @@
+package org.vidyaastra;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+
+/**
+ * Sends requests to {@code <base URL>/chat/completions} with the key as a
+ * bearer token. The key "demo" sends no Authorization header, as the
+ * LangChain4j demo proxy expects.
+ */
+public class OpenAiCompatibleProvider implements CompletionProvider {
+
+    static final OpenAiCompatibleProvider INSTANCE = new OpenAiCompatibleProvider();
+
+    private static final String CHAT_COMPLETION_PATH = "/chat/completions";
+    private static final String MODELS_PATH = "/models";
+
+    @Override
+    public CompletionProvider.Kind getKind() {
+        return CompletionProvider.Kind.OPENAI;
+    }
+
+    @Override
+    public URI chatCompletionsUri(Endpoint endpoint) {
+        return URI.create(endpoint.getBaseUrl() + CHAT_COMPLETION_PATH);
+    }
+
+    @Override
+    public URI modelsUri(Endpoint endpoint) {
+        return URI.create(endpoint.getBaseUrl() + MODELS_PATH);
+    }
+
+    @Override
+    public void authorize(HttpRequest.Builder builder, Endpoint endpoint) {
+        String apiKey = endpoint.getApiKey();
+        if (!apiKey.isEmpty() && !"demo".equalsIgnoreCase(apiKey)) {
+            builder.header("Authorization", "Bearer " + apiKey);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getKind().getDisplayName();
+    }
+}
@@ -0,0 +1,57 @@
+package org.vidyaastra;
+
+/**
+ * A system prompt laid out so that providers can reuse its start.
+ *
+ * OpenAI, Azure OpenAI and several local servers keep the computation for
+ * prompt prefixes they have recently seen and report the reused tokens as
+ * cached ({@link ChatCompletionResponse.Usage#getCachedPromptTokens()}). Only
+ * an identical prefix qualifies, so a prompt puts the text that is the same
+ * for every call first and the text that varies, such as the ontology context
+ * or the name of the ontology, after it. Within the dynamic part, text that
+ * changes rarely should come before text that changes with every call.
+ */
+public final class PromptLayout {
+
+    private final StringBuilder prefix = new StringBuilder();
+    private final StringBuilder suffix = new StringBuilder();
+
+    /**
+     * Adds instructions that are the same for every call.
+     * @throws IllegalStateException If dynamic text was added before.
+     */
+    public PromptLayout appendStatic(CharSequence text) {
+        if (suffix.length() > 0) {
+            throw new IllegalStateException("Static prompt text must come before dynamic text.");
+        }
+        prefix.append(text);
+        return this;
+    }
+
+    /**
+     * Adds text that may differ between calls.
+     */
+    public PromptLayout appendDynamic(CharSequence text) {
+        suffix.append(text);
+        return this;
+    }
+
+    /**
+     * @return The text that is the same for every call.
+     */
+    public String getPrefix() {
+        return prefix.toString();
+    }
+
+    public String getSuffix() {
+        return suffix.toString();
+    }
+
+    /**
+     * @return The whole prompt.
+     */
+    @Override
+    public String toString() {
+        return prefix.toString() + suffix;
+    }
+}
@@ -0,0 +1,224 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What a natural language question about the ontology asks for: the kind of
+ * query, its target, conditions the results must meet and, if the question
+ * is ambiguous, what to ask the user. Instances are immutable.
+ *
+ * Calls of {@link CompletionOperation#NLP_QUERY} ask for it as JSON following
+ * {@link #SCHEMA}, so the answer can be read in one round trip. Servers
+ * without structured outputs may still answer in the older line format
+ * ("QUERY_TYPE: ..." and "TARGET: ..."), which {@link #parse} reads as well.
+ */
+public final class QueryIntent {
+
+    public static final String SCHEMA_NAME = "query_intent";
+
+    /**
+     * The kinds of query, as the schema names them.
+     */
+    public static final List<String> TYPES = Collections.unmodifiableList(Arrays.asList(
+            "instances", "classes", "properties", "relationships", "individual", "complex", "ambiguous"));
+
+    public static final JsonSchema SCHEMA = JsonSchema.object()
+            .property("type", JsonSchema.string(TYPES.toArray(new String[0])))
+            .property("target", JsonSchema.string())
+            .property("filters", JsonSchema.array(JsonSchema.object()
+                    .property("property", JsonSchema.string())
+                    .property("operator", JsonSchema.string())
+                    .property("value", JsonSchema.string())))
+            .property("question", JsonSchema.string());
+
+    /**
+     * A condition on the results of a complex query.
+     */
+    public static final class Filter {
+        private final String property;
+        private final String operator;
+        private final String value;
+
+        public Filter(String property, String operator, String value) {
+            this.property = property;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        /**
+         * @return How the property is compared, such as "equals"; possibly empty.
+         */
+        public String getOperator() {
+            return operator;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return property + " " + (operator.isEmpty() ? "equals" : operator) + " " + value;
+        }
+    }
+
+    private final String type;
+    private final String target;
+    private final List<Filter> filters;
+    private final String question;
+
+    public QueryIntent(String type, String target, List<Filter> filters, String question) {
+        this.type = type;
+        this.target = target;
+        this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+        this.question = question;
+    }
+
+    /**
+     * Reads a model's answer, as JSON or in the line format.
+     * @return The intent; its type is lower case.
+     * @throws JsonReader.JsonParseException If the answer is in neither format or names no query type.
+     */
+    public static QueryIntent parse(String answer) {
+        String json = JsonReader.objectIn(answer);
+        QueryIntent intent = json != null ? parseJson(json) : parseLines(answer);
+        if (intent.type.isEmpty()) {
+            throw new JsonReader.JsonParseException("The answer names no query type");
+        }
+        return intent;
+    }
+
+    /**
+     * @return Whether {@link #parse} can read the answer.
+     */
+    public static boolean isValid(String answer) {
+        try {
+            parse(answer);
+            return true;
+        } catch (JsonReader.JsonParseException e) {
+            return false;
+        }
+    }
+
+    private static QueryIntent parseJson(String json) {
+        JsonReader reader = new JsonReader(json);
+        String type = "";
+        String target = "";
+        String question = "";
+        List<Filter> filters = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "type":
+                    type = reader.nextValueAsString();
+                    break;
+                case "target":
+                    target = reader.nextValueAsString();
+                    break;
+                case "question":
+                    question = reader.nextValueAsString();
+                    break;
+                case "filters":
+                    if (reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                        readFilters(reader, filters);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new QueryIntent(type.trim().toLowerCase(Locale.ROOT), target.trim(), filters, question.trim());
+    }
+
+    private static void readFilters(JsonReader reader, List<Filter> filters) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String property = "";
+            String operator = "";
+            String value = "";
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "property":
+                        property = reader.nextValueAsString();
+                        break;
+                    case "operator":
+                        operator = reader.nextValueAsString();
+                        break;
+                    case "value":
+                        value = reader.nextValueAsString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (!property.trim().isEmpty()) {
+                filters.add(new Filter(property.trim(), operator.trim(), value.trim()));
+            }
+        }
+        reader.endArray();
+    }
+
+    private static QueryIntent parseLines(String answer) {
+        String type = "";
+        String target = "";
+        for (String line : answer.split("\n")) {
+            line = line.trim();
+            if (line.startsWith("QUERY_TYPE:")) {
+                type = line.substring("QUERY_TYPE:".length()).trim();
+            } else if (line.startsWith("TARGET:")) {
+                target = line.substring("TARGET:".length()).trim();
+            }
+        }
+        return new QueryIntent(type.toLowerCase(Locale.ROOT), target, Collections.<Filter>emptyList(), "");
+    }
+
+    /**
+     * @return One of {@link #TYPES}, or another lower case word if the server did not enforce the schema.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return The class, property or individual asked about; possibly empty.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @return What to ask the user if the question is ambiguous; possibly empty.
+     */
+    public String getQuestion() {
+        return question;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryIntent[" + type + " " + target + (filters.isEmpty() ? "" : " where " + filters)
+                + (question.isEmpty() ? "" : ", asking \"" + question + "\"") + "]";
+    }
+}
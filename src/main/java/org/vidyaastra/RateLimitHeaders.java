@@ -0,0 +1,191 @@
+package org.vidyaastra;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Rate limit information sent by OpenAI-compatible servers:
+ * <pre>
+ * Retry-After: 20                       (seconds, or an HTTP date)
+ * retry-after-ms: 1500
+ * x-ratelimit-limit-requests: 500
+ * x-ratelimit-remaining-requests: 0
+ * x-ratelimit-reset-requests: 6m0s      (also "1s", "120ms", "1h2m3.5s")
+ * x-ratelimit-limit-tokens / -remaining-tokens / -reset-tokens
+ * </pre>
+ * Missing or unparsable values are reported as -1 / null.
+ */
+public class RateLimitHeaders {
+
+    private final long limitRequests;
+    private final long remainingRequests;
+    private final Duration resetRequests;
+    private final long limitTokens;
+    private final long remainingTokens;
+    private final Duration resetTokens;
+    private final Duration retryAfter;
+
+    RateLimitHeaders(long limitRequests, long remainingRequests, Duration resetRequests,
+                     long limitTokens, long remainingTokens, Duration resetTokens, Duration retryAfter) {
+        this.limitRequests = limitRequests;
+        this.remainingRequests = remainingRequests;
+        this.resetRequests = resetRequests;
+        this.limitTokens = limitTokens;
+        this.remainingTokens = remainingTokens;
+        this.resetTokens = resetTokens;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Reads the rate limit headers of a response.
+     * @param headers The response headers.
+     * @return The parsed values; never null.
+     */
+    public static RateLimitHeaders from(HttpHeaders headers) {
+        Duration retryAfter = parseDuration(headers.firstValue("retry-after-ms").map(v -> v + "ms").orElse(null));
+        if (retryAfter == null) {
+            retryAfter = parseRetryAfter(headers.firstValue("Retry-After").orElse(null));
+        }
+        return new RateLimitHeaders(
+                parseLong(headers.firstValue("x-ratelimit-limit-requests").orElse(null)),
+                parseLong(headers.firstValue("x-ratelimit-remaining-requests").orElse(null)),
+                parseDuration(headers.firstValue("x-ratelimit-reset-requests").orElse(null)),
+                parseLong(headers.firstValue("x-ratelimit-limit-tokens").orElse(null)),
+                parseLong(headers.firstValue("x-ratelimit-remaining-tokens").orElse(null)),
+                parseDuration(headers.firstValue("x-ratelimit-reset-tokens").orElse(null)),
+                retryAfter);
+    }
+
+    /**
+     * @return How long the server asked us to wait before trying again, or null.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return The time until the exhausted request or token quota resets, or null
+     *         if neither quota is known to be exhausted.
+     */
+    public Duration getExhaustedQuotaReset() {
+        Duration reset = null;
+        if (remainingRequests == 0 && resetRequests != null) {
+            reset = resetRequests;
+        }
+        if (remainingTokens == 0 && resetTokens != null && (reset == null || resetTokens.compareTo(reset) > 0)) {
+            reset = resetTokens;
+        }
+        return reset;
+    }
+
+    public long getLimitRequests() {
+        return limitRequests;
+    }
+
+    public long getRemainingRequests() {
+        return remainingRequests;
+    }
+
+    public Duration getResetRequests() {
+        return resetRequests;
+    }
+
+    public long getLimitTokens() {
+        return limitTokens;
+    }
+
+    public long getRemainingTokens() {
+        return remainingTokens;
+    }
+
+    public Duration getResetTokens() {
+        return resetTokens;
+    }
+
+    /**
+     * Parses a Retry-After value, either delay-seconds or an HTTP date.
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        value = value.trim();
+        try {
+            return Duration.ofMillis(Math.max(0, (long) (Double.parseDouble(value) * 1000)));
+        } catch (NumberFormatException e) {
+            // not delay-seconds, try an HTTP date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses durations in the Go-style format used by the x-ratelimit-reset-*
+     * headers, e.g. "1s", "6m0s", "120ms", "1h2m3.5s". A bare number is seconds.
+     */
+    static Duration parseDuration(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        value = value.trim();
+        double totalMillis = 0;
+        int i = 0;
+        int length = value.length();
+        try {
+            while (i < length) {
+                int start = i;
+                while (i < length && (Character.isDigit(value.charAt(i)) || value.charAt(i) == '.')) {
+                    i++;
+                }
+                if (start == i) {
+                    return null;
+                }
+                double number = Double.parseDouble(value.substring(start, i));
+                int unitStart = i;
+                while (i < length && Character.isLetter(value.charAt(i))) {
+                    i++;
+                }
+                String unit = value.substring(unitStart, i);
+                switch (unit) {
+                    case "h": totalMillis += number * 3_600_000; break;
+                    case "m": totalMillis += number * 60_000; break;
+                    case "s":
+                    case "": totalMillis += number * 1000; break;
+                    case "ms": totalMillis += number; break;
+                    case "us": totalMillis += number / 1000; break;
+                    case "ns": totalMillis += number / 1_000_000; break;
+                    default: return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return Duration.ofMillis((long) Math.ceil(totalMillis));
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitHeaders[requests " + remainingRequests + "/" + limitRequests + " reset " + resetRequests +
+                ", tokens " + remainingTokens + "/" + limitTokens + " reset " + resetTokens +
+                ", retryAfter " + retryAfter + "]";
+    }
+}
@@ -0,0 +1,185 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side token bucket that paces requests below the provider's quota.
+ *
+ * One shared instance ({@link #getDefault()}) is used by every OpenAiCaller in
+ * the plugin, so the generator, modifier, graph queries and batch runs draw
+ * from the same budget. The rate is either configured explicitly or, when set
+ * to 0, learned from the x-ratelimit-limit-requests header with some headroom.
+ * When the server reports an exhausted quota or answers 429 with Retry-After,
+ * all callers are held back until the reset instead of each failing on its own.
+ */
+public class RateLimiter {
+
+    private static final RateLimiter DEFAULT = new RateLimiter(0);
+
+    // Stay this far below a learned server limit
+    private static final double HEADROOM = 0.9;
+
+    // Burst size as seconds worth of permits
+    private static final double BURST_SECONDS = 1.0;
+
+    private double configuredPerMinute;
+    private double learnedPerMinute;
+    private double permitsPerNano;
+    private double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil = lastRefill;
+
+    private long throttledCount;
+    private long totalWaitNanos;
+
+    /**
+     * @param requestsPerMinute The sustained rate, or 0 to learn it from response headers.
+     */
+    public RateLimiter(double requestsPerMinute) {
+        setRequestsPerMinute(requestsPerMinute);
+    }
+
+    /**
+     * @return The limiter shared by all callers in the plugin.
+     */
+    public static RateLimiter getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param requestsPerMinute The sustained rate, or 0 to learn it from response headers.
+     */
+    public synchronized void setRequestsPerMinute(double requestsPerMinute) {
+        configuredPerMinute = Math.max(0, requestsPerMinute);
+        updateRate();
+    }
+
+    public synchronized double getConfiguredRequestsPerMinute() {
+        return configuredPerMinute;
+    }
+
+    /**
+     * @return The rate currently enforced, or 0 if requests are not paced.
+     */
+    public synchronized double getEffectiveRequestsPerMinute() {
+        return configuredPerMinute > 0 ? configuredPerMinute : learnedPerMinute;
+    }
+
+    /**
+     * Waits for a permit without blocking a thread.
+     * @return A future that completes once the request may be sent.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        long wait = reserve();
+        if (wait <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Executor delayed = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS);
+        return CompletableFuture.runAsync(() -> { }, delayed);
+    }
+
+    /**
+     * Blocks until the request may be sent.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Holds back all requests for the given time.
+     */
+    public synchronized void pauseFor(Duration duration) {
+        long until = System.nanoTime() + duration.toNanos();
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    /**
+     * Feeds the rate limit information of a response back into the limiter.
+     * @param status The HTTP status code.
+     * @param limits The parsed rate limit headers.
+     */
+    public synchronized void onResponse(int status, RateLimitHeaders limits) {
+        if (limits.getLimitRequests() > 0) {
+            double learned = limits.getLimitRequests() * HEADROOM;
+            if (learned != learnedPerMinute) {
+                learnedPerMinute = learned;
+                updateRate();
+            }
+        }
+        Duration reset = limits.getExhaustedQuotaReset();
+        if (reset != null) {
+            pauseFor(reset);
+        }
+        if (status == 429 && limits.getRetryAfter() != null) {
+            pauseFor(limits.getRetryAfter());
+        }
+    }
+
+    /**
+     * @return How many requests had to wait for a permit.
+     */
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * @return The accumulated time requests spent waiting for permits.
+     */
+    public synchronized Duration getTotalWait() {
+        return Duration.ofNanos(totalWaitNanos);
+    }
+
+    /**
+     * Takes a permit, going into debt if none is available.
+     * @return Nanoseconds the caller has to wait before sending.
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        long wait = Math.max(0, pausedUntil - now);
+        if (permitsPerNano > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+            tokens -= 1;
+            if (tokens < 0) {
+                wait = Math.max(wait, (long) Math.ceil(-tokens / permitsPerNano));
+            }
+        }
+        if (wait > 0) {
+            throttledCount++;
+            totalWaitNanos += wait;
+        }
+        return wait;
+    }
+
+    private void updateRate() {
+        double perMinute = getEffectiveRequestsPerMinute();
+        long now = System.nanoTime();
+        boolean wasPaced = permitsPerNano > 0;
+        if (wasPaced) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        }
+        lastRefill = now;
+        permitsPerNano = perMinute / TimeUnit.MINUTES.toNanos(1);
+        capacity = Math.max(1, perMinute / 60 * BURST_SECONDS);
+        // Start with a full bucket when pacing begins; otherwise keep any debt
+        tokens = wasPaced ? Math.min(tokens, capacity) : capacity;
+    }
+
+    @Override
+    public synchronized String toString() {
+        double rate = getEffectiveRequestsPerMinute();
+        return String.format("RateLimiter[%s, throttled %d, waited %d ms]",
+                rate > 0 ? String.format("%.0f req/min", rate) : "unlimited",
+                throttledCount, Duration.ofNanos(totalWaitNanos).toMillis());
+    }
+}
@@ -0,0 +1,149 @@
+package org.vidyaastra;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed API call is retried and how long to wait first.
+ *
+ * Rate limiting (429) and transient server errors (500, 502, 503, 504) as well
+ * as network failures are retried up to {@link #getMaxAttempts()} times in total.
+ * The wait is the server's Retry-After or exhausted-quota reset time when one is
+ * sent, otherwise an exponential backoff with jitter. Instances are immutable.
+ */
+public class RetryPolicy {
+
+    private static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+
+    private static volatile RetryPolicy defaultPolicy =
+            new RetryPolicy(3, Duration.ofMillis(500), Duration.ofSeconds(30));
+
+    // Waits the server asks for beyond this are not worth blocking the user for
+    private static final Duration MAX_SERVER_DELAY = Duration.ofMinutes(2);
+
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+
+    /**
+     * @param maxAttempts Total number of attempts including the first one.
+     * @param baseDelay Backoff before the first retry; doubled for every further retry.
+     * @param maxDelay Upper bound for the computed backoff.
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return A policy that never retries.
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * @return The policy used by new OpenAiCaller instances.
+     */
+    public static RetryPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    public static void setDefault(RetryPolicy policy) {
+        defaultPolicy = policy != null ? policy : NONE;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getBaseDelay() {
+        return baseDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * @param status The HTTP status code of the response.
+     * @param body The response body if it has already been read, otherwise null.
+     * @return true if the request may succeed when sent again.
+     */
+    public boolean isRetryable(int status, Object body) {
+        switch (status) {
+            case 429:
+                // An exhausted billing quota will not recover by waiting
+                return !(body instanceof String && ((String) body).contains("insufficient_quota"));
+            case 500:
+            case 502:
+            case 503:
+            case 504:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param error The failure of the HTTP exchange.
+     * @return true for network errors and timeouts.
+     */
+    public boolean isRetryable(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof IOException;
+    }
+
+    /**
+     * Computes the wait before the next attempt.
+     * @param attempt The number of the attempt that just failed, starting at 1.
+     * @param limits The rate limit headers of the failed response, or null.
+     * @return The delay in milliseconds, or -1 if the server asked for a wait
+     *         too long to retry transparently.
+     */
+    public long delayMillis(int attempt, RateLimitHeaders limits) {
+        Duration serverDelay = null;
+        if (limits != null) {
+            serverDelay = limits.getRetryAfter();
+            if (serverDelay == null) {
+                serverDelay = limits.getExhaustedQuotaReset();
+            }
+        }
+        if (serverDelay != null) {
+            if (serverDelay.compareTo(MAX_SERVER_DELAY) > 0) {
+                return -1;
+            }
+            // Small jitter so callers released together do not all return at once
+            long millis = serverDelay.toMillis();
+            return millis + ThreadLocalRandom.current().nextLong(millis / 10 + 50);
+        }
+        return backoffMillis(attempt);
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the capped delay is fixed,
+     * the other half is random.
+     * @param attempt The number of the attempt that just failed, starting at 1.
+     */
+    public long backoffMillis(int attempt) {
+        long cap = maxDelay.toMillis();
+        long exponential = baseDelay.toMillis() << Math.min(attempt - 1, 30);
+        long delay = Math.min(cap, exponential < 0 ? cap : exponential);
+        long half = delay / 2;
+        return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy[maxAttempts=" + maxAttempts + ", baseDelay=" + baseDelay + ", maxDelay=" + maxDelay + "]";
+    }
+}
@@ -0,0 +1,423 @@
+package org.vidyaastra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache that answers a question with the answer to an earlier
+ * question phrased differently, such as "show suppliers" after "list all
+ * suppliers".
+ *
+ * Questions are turned into vectors on the local CPU by hashing their words
+ * and character trigrams into a fixed number of dimensions, after dropping
+ * filler words and a plural "s". The vectors are indexed with random
+ * hyperplane locality-sensitive hashing: the signs of {@link #BANDS} x
+ * {@link #BAND_BITS} projections are split into bands, and only entries
+ * sharing at least one band with the question are compared by cosine
+ * similarity. The most similar entry at or above the threshold is returned.
+ *
+ * Words such as "not", "more" or "before" and numbers decide what a question
+ * asks for while hardly changing its vector: "earn more than 50000" and "earn
+ * less than 50000" are over 90% similar. Two questions that differ in any of
+ * them therefore never match, however similar they are otherwise.
+ *
+ * Entries live in a scope, such as a fingerprint of the model, the system
+ * prompt and the revision of the ontology, and only match questions of the
+ * same scope. Once more than the maximum number of entries are stored, the
+ * least recently used one is dropped.
+ */
+public class SemanticCache {
+
+    /**
+     * Size of the vectors questions are hashed into.
+     */
+    public static final int DIMENSIONS = 1024;
+
+    /**
+     * Number of index bands; a question is compared with every entry sharing one of them.
+     */
+    public static final int BANDS = 16;
+
+    /**
+     * Projections per band; more bits make the bands more selective.
+     */
+    public static final int BAND_BITS = 6;
+
+    public static final double DEFAULT_THRESHOLD = 0.95;
+
+    private static final int DEFAULT_MAX_ENTRIES = 512;
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    // Fixed, so that the index behaves the same in every session
+    private static final long HYPERPLANE_SEED = 0x5eed_cafeL;
+
+    // Words that change how a request is phrased but not what it asks for
+    private static final Set<String> FILLER_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "all", "any", "every", "each", "of", "in", "on", "for", "to", "me", "us", "my",
+            "our", "please", "can", "could", "would", "you", "i", "we", "is", "are", "be", "there", "that",
+            "this", "these", "those", "what", "which", "show", "list", "display", "give", "get", "find",
+            "tell", "return", "see", "view", "want", "need", "some", "and"));
+
+    // Words that turn a question into its opposite or shift what it compares
+    private static final Set<String> CONTRAST_WORDS = new HashSet<>(Arrays.asList(
+            "not", "no", "never", "without", "none", "nor", "neither", "cannot", "nobody", "nothing",
+            "more", "less", "fewer", "greater", "smaller", "larger", "bigger", "higher", "lower", "above",
+            "below", "over", "under", "least", "most", "before", "after", "exactly", "equal", "earlier",
+            "later", "older", "younger", "maximum", "minimum", "zero", "one", "two", "three", "four",
+            "five", "six", "seven", "eight", "nine", "ten", "eleven", "twelve", "hundred", "thousand"));
+
+    private static SemanticCache defaultCache;
+
+    private final float[][] hyperplanes;
+    private final int maxEntries;
+    private final Map<Entry, Boolean> entries;
+    private final Map<String, Set<Entry>> buckets = new HashMap<>();
+
+    private volatile double threshold = DEFAULT_THRESHOLD;
+    private volatile boolean enabled = true;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * An earlier question close enough to the one looked up.
+     */
+    public static final class Match {
+        private final String query;
+        private final String answer;
+        private final double similarity;
+
+        Match(String query, String answer, double similarity) {
+            this.query = query;
+            this.answer = answer;
+            this.similarity = similarity;
+        }
+
+        /**
+         * @return The earlier question.
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        /**
+         * @return The cosine similarity of the two questions, between 0 and 1.
+         */
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    private static final class Entry {
+        final String scope;
+        final String query;
+        final String contrasts;
+        final float[] vector;
+        final String[] bucketKeys;
+        final String answer;
+
+        Entry(String scope, String query, float[] vector, String[] bucketKeys, String answer) {
+            this.scope = scope;
+            this.query = query;
+            this.contrasts = contrasts(query);
+            this.vector = vector;
+            this.bucketKeys = bucketKeys;
+            this.answer = answer;
+        }
+    }
+
+    /**
+     * Creates a cache.
+     * @param maxEntries Maximum number of questions kept.
+     */
+    public SemanticCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Entry, Boolean>(16, 0.75f, true);
+        this.hyperplanes = new float[BANDS * BAND_BITS][DIMENSIONS];
+        Random random = new Random(HYPERPLANE_SEED);
+        for (float[] hyperplane : hyperplanes) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                hyperplane[i] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    /**
+     * Gets the cache shared by all callers.
+     */
+    public static synchronized SemanticCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new SemanticCache(DEFAULT_MAX_ENTRIES);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Looks up the answer to a question similar to {@code query}.
+     * @param scope Only entries stored under the same scope match.
+     * @return The most similar earlier question at or above the threshold, or null on a miss.
+     */
+    public Match find(String scope, String query) {
+        if (!enabled) {
+            return null;
+        }
+        float[] vector = vectorize(query);
+        if (vector == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        String[] keys = bucketKeys(scope, vector);
+        String contrasts = contrasts(query);
+        double minSimilarity = threshold;
+        synchronized (this) {
+            Entry best = null;
+            double bestSimilarity = minSimilarity;
+            Set<Entry> compared = new HashSet<>();
+            for (String key : keys) {
+                for (Entry candidate : buckets.getOrDefault(key, Set.of())) {
+                    if (!compared.add(candidate) || !candidate.contrasts.equals(contrasts)) {
+                        continue;
+                    }
+                    double similarity = cosine(vector, candidate.vector);
+                    if (similarity >= bestSimilarity) {
+                        best = candidate;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            if (best == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            // Marks the entry as recently used
+            entries.get(best);
+            hits.incrementAndGet();
+            return new Match(best.query, best.answer, Math.min(1.0, bestSimilarity));
+        }
+    }
+
+    /**
+     * Stores the answer to a question. Questions made up of filler words only are not stored.
+     * @param scope The scope the answer is valid in.
+     */
+    public void put(String scope, String query, String answer) {
+        if (!enabled || answer == null) {
+            return;
+        }
+        float[] vector = vectorize(query);
+        if (vector == null) {
+            return;
+        }
+        Entry entry = new Entry(scope, query, vector, bucketKeys(scope, vector), answer);
+        synchronized (this) {
+            removeQuery(scope, query);
+            entries.put(entry, Boolean.TRUE);
+            for (String key : entry.bucketKeys) {
+                buckets.computeIfAbsent(key, k -> new HashSet<>()).add(entry);
+            }
+            while (entries.size() > maxEntries) {
+                unindex(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * Removes the answer stored for exactly this question, such as one that turned out to be unusable.
+     */
+    public synchronized void remove(String scope, String query) {
+        removeQuery(scope, query);
+    }
+
+    private void removeQuery(String scope, String query) {
+        List<Entry> stale = new ArrayList<>();
+        for (Entry entry : entries.keySet()) {
+            if (entry.scope.equals(scope) && entry.query.equals(query)) {
+                stale.add(entry);
+            }
+        }
+        stale.forEach(this::unindex);
+    }
+
+    private void unindex(Entry entry) {
+        entries.remove(entry);
+        for (String key : entry.bucketKeys) {
+            Set<Entry> bucket = buckets.get(key);
+            if (bucket != null && bucket.remove(entry) && bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry. Counters are left untouched.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        buckets.clear();
+    }
+
+    /**
+     * @return The similarity, between 0 and 1, of the vectors of two questions;
+     *         0 if they differ in a negation, comparison or number.
+     */
+    public static double similarity(String first, String second) {
+        if (!contrasts(first).equals(contrasts(second))) {
+            return 0;
+        }
+        float[] a = vectorize(first);
+        float[] b = vectorize(second);
+        return a != null && b != null ? Math.max(0, cosine(a, b)) : 0;
+    }
+
+    /**
+     * @return The negations, comparisons and numbers of the question, sorted,
+     *         so that two questions can only match if theirs are the same.
+     */
+    static String contrasts(String text) {
+        List<String> contrasts = new ArrayList<>();
+        // "doesn't" negates as "does not" does
+        String normalized = text.toLowerCase(Locale.ROOT).replace("n't", " not").replace("n\u2019t", " not");
+        for (String word : normalized.split("[^\\p{L}\\p{N}.]+")) {
+            // Keeps decimals whole but not a full stop ending the question
+            while (word.endsWith(".")) {
+                word = word.substring(0, word.length() - 1);
+            }
+            if (CONTRAST_WORDS.contains(word) || word.matches(".*\\p{N}.*")) {
+                contrasts.add(word);
+            }
+        }
+        contrasts.sort(null);
+        return String.join(" ", contrasts);
+    }
+
+    /**
+     * @return The unit-length vector of the question, or null if it has no words besides fillers.
+     */
+    static float[] vectorize(String text) {
+        float[] vector = new float[DIMENSIONS];
+        boolean any = false;
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty() || FILLER_WORDS.contains(word)) {
+                continue;
+            }
+            // "suppliers" asks for the same as "supplier"
+            if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+                word = word.substring(0, word.length() - 1);
+            }
+            any = true;
+            add(vector, "w:" + word, WORD_WEIGHT);
+            String padded = " " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                add(vector, padded.substring(i, i + 3), TRIGRAM_WEIGHT);
+            }
+        }
+        if (!any) {
+            return null;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static void add(float[] vector, String feature, float weight) {
+        int hash = mix(feature.hashCode());
+        // The sign keeps colliding features from adding up on average
+        vector[hash & (DIMENSIONS - 1)] += hash < 0 ? -weight : weight;
+    }
+
+    private static int mix(int h) {
+        // Finalizer of MurmurHash3, spreads the bits of String.hashCode
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    private String[] bucketKeys(String scope, float[] vector) {
+        String[] keys = new String[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            int bits = 0;
+            for (int bit = 0; bit < BAND_BITS; bit++) {
+                float[] hyperplane = hyperplanes[band * BAND_BITS + bit];
+                double projection = 0;
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    if (vector[i] != 0) {
+                        projection += vector[i] * hyperplane[i];
+                    }
+                }
+                bits = bits << 1 | (projection >= 0 ? 1 : 0);
+            }
+            keys[band] = scope + "/" + band + "/" + bits;
+        }
+        return keys;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold The lowest similarity, between 0 and 1, at which an earlier answer is reused.
+     */
+    public void setThreshold(double threshold) {
+        if (threshold <= 0 || threshold > 1) {
+            throw new IllegalArgumentException("The similarity threshold must be above 0 and at most 1.");
+        }
+        this.threshold = threshold;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SemanticCache[hits=%d, misses=%d, entries=%d, threshold=%.2f]",
+                getHitCount(), getMissCount(), getEntryCount(), getThreshold());
+    }
+}
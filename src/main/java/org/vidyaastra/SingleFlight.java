@@ -0,0 +1,125 @@
+package org.vidyaastra;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls that share a key into a single underlying call.
+ *
+ * The first caller for a key starts the call; everyone who asks for the same
+ * key while it is still running joins it and receives the same result. Each
+ * caller gets its own future, so cancelling one only withdraws that caller.
+ * The underlying call is cancelled once every caller has withdrawn.
+ *
+ * @param <T> The result type.
+ */
+public class SingleFlight<T> {
+
+    private final Map<String, Flight<T>> flights = new HashMap<>();
+    private long startedCount;
+    private long joinedCount;
+
+    /**
+     * Runs the call, or joins an identical call that is already running.
+     * @param key Identifies identical calls.
+     * @param call Starts the call; must not block, as it runs while holding a lock.
+     * @return A future for this caller's view of the result.
+     */
+    public CompletableFuture<T> execute(String key, Supplier<? extends CompletableFuture<T>> call) {
+        return execute(key, call, null);
+    }
+
+    /**
+     * Runs the call, or joins an identical call that is already running.
+     * @param key Identifies identical calls.
+     * @param call Starts the call; must not block, as it runs while holding a lock.
+     * @param onJoin Receives the shared call for every caller, including the
+     *        first, before the caller's future is returned; may be null.
+     * @return A future for this caller's view of the result.
+     */
+    @SuppressWarnings("unchecked")
+    public <F extends CompletableFuture<T>> CompletableFuture<T> execute(String key, Supplier<F> call,
+                                                                      Consumer<? super F> onJoin) {
+        Flight<T> flight;
+        synchronized (this) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight<>(call.get());
+                flights.put(key, flight);
+                startedCount++;
+            } else {
+                joinedCount++;
+            }
+            flight.refs++;
+            if (onJoin != null) {
+                onJoin.accept((F) flight.source);
+            }
+        }
+
+        Flight<T> shared = flight;
+        CompletableFuture<T> view = new CompletableFuture<>();
+        shared.source.whenComplete((value, error) -> {
+            // Before any caller resumes, so that its next call starts afresh
+            remove(key, shared);
+            if (error != null) {
+                view.completeExceptionally(error);
+            } else {
+                view.complete(value);
+            }
+        });
+        view.whenComplete((value, error) -> {
+            if (view.isCancelled() && !shared.source.isDone()) {
+                leave(key, shared);
+            }
+        });
+        return view;
+    }
+
+    /**
+     * @return Number of calls currently running.
+     */
+    public synchronized int getInFlightCount() {
+        return flights.size();
+    }
+
+    /**
+     * @return Number of underlying calls started.
+     */
+    public synchronized long getStartedCount() {
+        return startedCount;
+    }
+
+    /**
+     * @return Number of callers that were served by an already running call.
+     */
+    public synchronized long getJoinedCount() {
+        return joinedCount;
+    }
+
+    private synchronized void remove(String key, Flight<T> flight) {
+        flights.remove(key, flight);
+    }
+
+    private void leave(String key, Flight<T> flight) {
+        synchronized (this) {
+            if (--flight.refs > 0) {
+                return;
+            }
+            // Later callers must start afresh rather than join a cancelled call
+            flights.remove(key, flight);
+        }
+        flight.source.cancel(true);
+    }
+
+    private static final class Flight<T> {
+        final CompletableFuture<T> source;
+        int refs;
+
+        Flight(CompletableFuture<T> source) {
+            this.source = source;
+        }
+    }
+}
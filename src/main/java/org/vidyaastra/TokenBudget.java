@@ -0,0 +1,229 @@
+package org.vidyaastra;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How many prompt tokens a request to a model may use.
+ *
+ * The limit is the model's context window minus the tokens reserved for the
+ * answer ({@link CompletionOperation#getOutputReserve()}), further capped by a
+ * configurable maximum so that prompt processing time stays predictable on
+ * models with very large windows. Context windows of common models are known
+ * by name; others can be registered with {@link #setContextWindow}, and
+ * unknown models get a conservative default. Instances are immutable.
+ */
+public class TokenBudget {
+
+    /**
+     * Window assumed for models that are neither known nor registered, such as
+     * local servers and Azure deployments with custom names.
+     */
+    public static final int DEFAULT_CONTEXT_WINDOW = 8192;
+
+    /**
+     * Granularity of {@link #remainingStable}.
+     */
+    public static final int STABLE_STEP = 256;
+
+    // Tokens the chat format adds around each message and to prime the reply
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int TOKENS_PER_REPLY = 3;
+
+    // Longest prefix wins, so more specific names come first
+    private static final Map<String, Integer> KNOWN_WINDOWS = new LinkedHashMap<>();
+
+    static {
+        KNOWN_WINDOWS.put("gpt-4.1", 1_047_576);
+        KNOWN_WINDOWS.put("gpt-5", 400_000);
+        KNOWN_WINDOWS.put("gpt-4o", 128_000);
+        KNOWN_WINDOWS.put("gpt-4-turbo", 128_000);
+        KNOWN_WINDOWS.put("gpt-4-1106", 128_000);
+        KNOWN_WINDOWS.put("gpt-4-0125", 128_000);
+        KNOWN_WINDOWS.put("gpt-4-32k", 32_768);
+        KNOWN_WINDOWS.put("gpt-4", 8_192);
+        KNOWN_WINDOWS.put("gpt-3.5-turbo", 16_385);
+        KNOWN_WINDOWS.put("o1-mini", 128_000);
+        KNOWN_WINDOWS.put("o1", 200_000);
+        KNOWN_WINDOWS.put("o3", 200_000);
+        KNOWN_WINDOWS.put("o4", 200_000);
+        KNOWN_WINDOWS.put("claude", 200_000);
+    }
+
+    private static final Map<String, Integer> registeredWindows = new ConcurrentHashMap<>();
+    private static volatile int defaultMaxPromptTokens = 24_000;
+    // null: the byte-pair encoding of each model
+    private static volatile TokenCounter defaultCounter;
+
+    private final int contextWindow;
+    private final int outputReserve;
+    private final int maxPromptTokens;
+    private final TokenCounter counter;
+
+    /**
+     * @param contextWindow Total tokens the model accepts for prompt and answer.
+     * @param outputReserve Tokens kept free for the answer.
+     * @param maxPromptTokens Upper bound for the prompt regardless of the window, or 0 for none.
+     * @param counter Counts the tokens of prompt text.
+     */
+    public TokenBudget(int contextWindow, int outputReserve, int maxPromptTokens, TokenCounter counter) {
+        if (contextWindow < 1) {
+            throw new IllegalArgumentException("The context window must be positive.");
+        }
+        this.contextWindow = contextWindow;
+        // Never let the answer take more than half of a small window
+        this.outputReserve = Math.max(0, Math.min(outputReserve, contextWindow / 2));
+        this.maxPromptTokens = Math.max(0, maxPromptTokens);
+        this.counter = counter != null ? counter : TokenCounter.approximate();
+    }
+
+    /**
+     * @return The budget for a request of {@code operation} to {@code model},
+     *         with the configured prompt cap and token counter.
+     */
+    public static TokenBudget forModel(String model, CompletionOperation operation) {
+        CompletionOperation op = operation != null ? operation : CompletionOperation.GENERAL;
+        TokenCounter counter = defaultCounter != null ? defaultCounter : BpeTokenCounter.forModel(model);
+        return new TokenBudget(getContextWindow(model), op.getOutputReserve(), defaultMaxPromptTokens, counter);
+    }
+
+    /**
+     * @return The context window of the model in tokens.
+     */
+    public static int getContextWindow(String model) {
+        if (model == null || model.trim().isEmpty()) {
+            return DEFAULT_CONTEXT_WINDOW;
+        }
+        String name = model.trim().toLowerCase(Locale.ROOT);
+        Integer registered = registeredWindows.get(name);
+        if (registered != null) {
+            return registered;
+        }
+        // Provider prefixes such as "openai/gpt-4o" do not change the model
+        name = name.substring(name.lastIndexOf('/') + 1);
+        for (Map.Entry<String, Integer> entry : KNOWN_WINDOWS.entrySet()) {
+            if (name.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return DEFAULT_CONTEXT_WINDOW;
+    }
+
+    /**
+     * Overrides the context window of a model.
+     * @param model The model name as sent in requests.
+     * @param tokens The window in tokens, or 0 to go back to the built-in value.
+     */
+    public static void setContextWindow(String model, int tokens) {
+        if (model == null) {
+            return;
+        }
+        String name = model.trim().toLowerCase(Locale.ROOT);
+        if (tokens > 0) {
+            registeredWindows.put(name, tokens);
+        } else {
+            registeredWindows.remove(name);
+        }
+    }
+
+    /**
+     * @return The prompt cap applied by {@link #forModel}, or 0 for none.
+     */
+    public static int getDefaultMaxPromptTokens() {
+        return defaultMaxPromptTokens;
+    }
+
+    public static void setDefaultMaxPromptTokens(int tokens) {
+        defaultMaxPromptTokens = Math.max(0, tokens);
+    }
+
+    /**
+     * @return The counter used by {@link #forModel}, or null if each model's
+     *         own encoding is used ({@link BpeTokenCounter#forModel}).
+     */
+    public static TokenCounter getDefaultCounter() {
+        return defaultCounter;
+    }
+
+    /**
+     * @param counter The counter for all models, or null to count with each
+     *        model's own encoding.
+     */
+    public static void setDefaultCounter(TokenCounter counter) {
+        defaultCounter = counter;
+    }
+
+    public int getContextWindow() {
+        return contextWindow;
+    }
+
+    public int getOutputReserve() {
+        return outputReserve;
+    }
+
+    public int getMaxPromptTokens() {
+        return maxPromptTokens;
+    }
+
+    public TokenCounter getCounter() {
+        return counter;
+    }
+
+    /**
+     * @return How many tokens all messages of the prompt may use together.
+     */
+    public int getPromptLimit() {
+        int limit = contextWindow - outputReserve;
+        return maxPromptTokens > 0 ? Math.min(limit, maxPromptTokens) : limit;
+    }
+
+    public int count(CharSequence text) {
+        return counter.count(text);
+    }
+
+    /**
+     * Computes what is left for variable content once the fixed parts of the
+     * prompt are in place.
+     * @param messages The fixed text of each message, one argument per message.
+     * @return The tokens still available, never negative.
+     */
+    public int remaining(String... messages) {
+        int used = TOKENS_PER_REPLY;
+        for (String message : messages) {
+            used += TOKENS_PER_MESSAGE + counter.count(message);
+        }
+        return Math.max(0, getPromptLimit() - used);
+    }
+
+    /**
+     * Like {@link #remaining}, but counts each message as if it were rounded
+     * up to a multiple of {@link #STABLE_STEP} tokens. Content sized with it
+     * stays the same when a question is rephrased, so the prompt prefix a
+     * provider has cached is still valid.
+     * @param messages The fixed text of each message, one argument per message.
+     * @return The tokens still available, never negative.
+     */
+    public int remainingStable(String... messages) {
+        int used = TOKENS_PER_REPLY;
+        for (String message : messages) {
+            int tokens = TOKENS_PER_MESSAGE + counter.count(message);
+            used += (tokens + STABLE_STEP - 1) / STABLE_STEP * STABLE_STEP;
+        }
+        return Math.max(0, getPromptLimit() - used);
+    }
+
+    /**
+     * @return A packer that fills {@code tokens} with content, counted with this budget's counter.
+     */
+    public ContextPacker packer(int tokens) {
+        return new ContextPacker(counter, tokens);
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBudget[window " + contextWindow + ", reserve " + outputReserve + ", prompt limit "
+                + getPromptLimit() + "]";
+    }
+}
@@ -0,0 +1,25 @@
+package org.vidyaastra;
+
+/**
+ * Counts how many tokens a model needs for a piece of text.
+ */
+public interface TokenCounter {
+
+    /**
+     * @param text The text; null counts as empty.
+     * @return The number of tokens.
+     */
+    int count(CharSequence text);
+
+    /**
+     * Returns a fast estimate that needs no vocabulary. English prose averages
+     * about four characters per token, but ontology content is dense with
+     * CamelCase names, IRIs and punctuation that split into more tokens, so
+     * every word boundary, case change, digit run and symbol is counted as
+     * well. The estimate errs on the high side so that budgets are not
+     * exceeded.
+     */
+    static TokenCounter approximate() {
+        return ApproximateTokenCounter.INSTANCE;
+    }
+}
@@ -0,0 +1,126 @@
+package org.vidyaastra;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Configuration of the HTTP transport used for all LLM calls.
+ *
+ * Setters return this for chaining. {@link HttpTransport#configure} takes a
+ * copy, so an instance can be reused and changed afterwards.
+ */
+public class TransportSettings {
+
+    private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private final Map<CompletionOperation, Duration> requestTimeouts = new EnumMap<>(CompletionOperation.class);
+    private boolean virtualThreads = true;
+    private int maxStreamsPerHost = 0;
+
+    public TransportSettings() {
+    }
+
+    public TransportSettings(TransportSettings other) {
+        this.httpVersion = other.httpVersion;
+        this.connectTimeout = other.connectTimeout;
+        this.requestTimeouts.putAll(other.requestTimeouts);
+        this.virtualThreads = other.virtualThreads;
+        this.maxStreamsPerHost = other.maxStreamsPerHost;
+    }
+
+    public HttpClient.Version getHttpVersion() {
+        return httpVersion;
+    }
+
+    /**
+     * @param httpVersion HTTP_2 (falls back to HTTP/1.1 where the server does not support it) or HTTP_1_1.
+     */
+    public TransportSettings setHttpVersion(HttpClient.Version httpVersion) {
+        this.httpVersion = Objects.requireNonNull(httpVersion);
+        return this;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public TransportSettings setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = Objects.requireNonNull(connectTimeout);
+        return this;
+    }
+
+    /**
+     * @return The configured timeout for the operation, or its default.
+     */
+    public Duration getRequestTimeout(CompletionOperation operation) {
+        return requestTimeouts.getOrDefault(operation, operation.getDefaultTimeout());
+    }
+
+    /**
+     * @param timeout The time allowed until the response headers arrive, or null for the default.
+     */
+    public TransportSettings setRequestTimeout(CompletionOperation operation, Duration timeout) {
+        if (timeout == null) {
+            requestTimeouts.remove(operation);
+        } else {
+            requestTimeouts.put(operation, timeout);
+        }
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @param virtualThreads true to run the client and stream readers on virtual
+     *        threads when the JVM supports them.
+     */
+    public TransportSettings setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public int getMaxStreamsPerHost() {
+        return maxStreamsPerHost;
+    }
+
+    /**
+     * @param maxStreamsPerHost Maximum concurrent requests to one host, or 0 for no limit.
+     */
+    public TransportSettings setMaxStreamsPerHost(int maxStreamsPerHost) {
+        this.maxStreamsPerHost = Math.max(0, maxStreamsPerHost);
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TransportSettings)) {
+            return false;
+        }
+        TransportSettings other = (TransportSettings) o;
+        return httpVersion == other.httpVersion
+                && connectTimeout.equals(other.connectTimeout)
+                && requestTimeouts.equals(other.requestTimeouts)
+                && virtualThreads == other.virtualThreads
+                && maxStreamsPerHost == other.maxStreamsPerHost;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(httpVersion, connectTimeout, requestTimeouts, virtualThreads, maxStreamsPerHost);
+    }
+
+    @Override
+    public String toString() {
+        return "TransportSettings[" + httpVersion + ", connect " + connectTimeout.getSeconds() + "s"
+                + ", timeouts " + requestTimeouts + ", virtualThreads " + virtualThreads
+                + ", maxStreamsPerHost " + (maxStreamsPerHost == 0 ? "unlimited" : maxStreamsPerHost) + "]";
+    }
+}
@@ -6,6 +6,7 @@ import javax.swing.JDialog;
 
 import org.vidyaastra.ui.view.AIQueryPanel;
 import org.vidyaastra.ui.VidyaastraDialogManager;
+import org.vidyaastra.ui.VidyaastraPreferences;
 import org.protege.editor.owl.OWLEditorKit;
 import org.protege.editor.owl.model.OWLWorkspace;
 import org.protege.editor.owl.ui.action.ProtegeOWLAction;
@@ -23,6 +24,8 @@ public class VidyaastraAction extends ProtegeOWLAction
    {
       dialogManager = new VidyaastraDialogManager();
       editorKit = getOWLEditorKit();
+      VidyaastraPreferences.applyRuntimeSettings();
+      VidyaastraPreferences.prewarmConnection();
    }
 
    @Override
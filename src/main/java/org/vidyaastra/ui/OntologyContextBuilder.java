@@ -0,0 +1,208 @@
+package org.vidyaastra.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.vidyaastra.ContextPacker;
+
+/**
+ * Builds the ontology part of a prompt within a token budget.
+ *
+ * Entities are ranked by how much of the ontology they take part in: the
+ * number of axioms referencing them, with extra weight for classes that have
+ * subclasses, so that the backbone of the hierarchy survives when a large
+ * ontology has to be cut down. Serialized ontologies are packed axiom by
+ * axiom, preferring the class hierarchy and property definitions over
+ * individual data, so that nothing is ever cut in the middle of an axiom.
+ */
+public class OntologyContextBuilder {
+    
+    public static final String CLASSES = "classes";
+    public static final String OBJECT_PROPERTIES = "object properties";
+    public static final String DATA_PROPERTIES = "data properties";
+    public static final String INDIVIDUALS = "individuals";
+    
+    // Axioms of functional syntax start with their type at the start of a line
+    private static final Pattern AXIOM_START = Pattern.compile("^([A-Z][A-Za-z]*)\\(");
+    
+    private final OWLOntology ontology;
+    private final ContextPacker packer;
+    private Function<OWLEntity, String> shortForm = entity -> entity.getIRI().getShortForm();
+    
+    /**
+     * @param ontology The ontology to describe
+     * @param packer The packer that receives the content
+     */
+    public OntologyContextBuilder(OWLOntology ontology, ContextPacker packer) {
+        this.ontology = ontology;
+        this.packer = packer;
+    }
+    
+    /**
+     * Sets how entity names are rendered. Defaults to the IRI's short form.
+     */
+    public OntologyContextBuilder setShortForm(Function<OWLEntity, String> shortForm) {
+        this.shortForm = shortForm;
+        return this;
+    }
+    
+    /**
+     * Adds the named classes except owl:Thing and owl:Nothing.
+     * @param header Section header; "%d" is replaced by the number of classes
+     */
+    public OntologyContextBuilder addClasses(String header) {
+        List<OWLClass> classes = new ArrayList<>();
+        for (OWLClass cls : ontology.getClassesInSignature()) {
+            if (!cls.isOWLThing() && !cls.isOWLNothing()) {
+                classes.add(cls);
+            }
+        }
+        return addEntities(CLASSES, header, classes);
+    }
+    
+    /**
+     * @param header Section header; "%d" is replaced by the number of properties
+     */
+    public OntologyContextBuilder addObjectProperties(String header) {
+        return addEntities(OBJECT_PROPERTIES, header, ontology.getObjectPropertiesInSignature());
+    }
+    
+    /**
+     * @param header Section header; "%d" is replaced by the number of properties
+     */
+    public OntologyContextBuilder addDataProperties(String header) {
+        return addEntities(DATA_PROPERTIES, header, ontology.getDataPropertiesInSignature());
+    }
+    
+    /**
+     * @param header Section header; "%d" is replaced by the number of individuals
+     */
+    public OntologyContextBuilder addIndividuals(String header) {
+        return addEntities(INDIVIDUALS, header, ontology.getIndividualsInSignature());
+    }
+    
+    private OntologyContextBuilder addEntities(String section, String header,
+                                               Collection<? extends OWLEntity> entities) {
+        packer.section(section, header.contains("%d") ? String.format(header, entities.size()) : header);
+        // Sorted by name so the prompt does not depend on hash set order
+        List<OWLEntity> sorted = new ArrayList<>(entities);
+        sorted.sort(Comparator.comparing(OWLEntity::getIRI));
+        for (OWLEntity entity : sorted) {
+            packer.add(section, "  - " + shortForm.apply(entity), valueOf(entity), entity);
+        }
+        return this;
+    }
+    
+    /**
+     * Rates how central an entity is to the ontology.
+     */
+    double valueOf(OWLEntity entity) {
+        double value = ontology.getReferencingAxioms(entity, Imports.EXCLUDED).size();
+        if (entity.isOWLClass()) {
+            value += 2 * ontology.getSubClassAxiomsForSuperClass(entity.asOWLClass()).size();
+        }
+        return value;
+    }
+    
+    /**
+     * Packs the entities added so far. The result's included keys are the
+     * entities that made it into the listing.
+     */
+    public ContextPacker.Result pack() {
+        return packer.pack();
+    }
+    
+    /**
+     * Packs an ontology serialized in OWL functional syntax axiom by axiom.
+     * Prefixes and the ontology header are always kept; comment and blank
+     * lines are dropped.
+     * @param document The serialized ontology
+     * @param packer The packer to fill
+     * @return The packed document and what was left out
+     */
+    public static ContextPacker.Result packFunctionalSyntax(String document, ContextPacker packer) {
+        String section = null;
+        double value = 0;
+        StringBuilder axiom = null;
+        for (String line : document.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = AXIOM_START.matcher(trimmed);
+            boolean start = matcher.find() || trimmed.equals(")");
+            if (!start && axiom != null) {
+                // A literal spanning several lines belongs to the axiom before it
+                axiom.append('\n').append(line);
+                continue;
+            }
+            if (axiom != null) {
+                packer.add(section, axiom.toString(), value);
+            }
+            String type = start && !trimmed.equals(")") ? matcher.group(1) : "";
+            section = axiomSection(type);
+            value = axiomValue(type);
+            axiom = new StringBuilder(line);
+        }
+        if (axiom != null) {
+            packer.add(section, axiom.toString(), value);
+        }
+        return packer.pack();
+    }
+    
+    private static String axiomSection(String type) {
+        switch (type) {
+            case "":
+            case "Prefix":
+            case "Ontology":
+            case "Import":
+                return "ontology header lines";
+            case "Declaration":
+                return "declarations";
+            case "SubClassOf":
+            case "EquivalentClasses":
+            case "DisjointClasses":
+            case "DisjointUnion":
+                return "class axioms";
+            case "AnnotationAssertion":
+            case "Annotation":
+                return "annotations";
+            case "ClassAssertion":
+            case "ObjectPropertyAssertion":
+            case "DataPropertyAssertion":
+            case "NegativeObjectPropertyAssertion":
+            case "NegativeDataPropertyAssertion":
+            case "SameIndividual":
+            case "DifferentIndividuals":
+                return "individual assertions";
+            default:
+                return type.contains("Property") ? "property axioms" : "other axioms";
+        }
+    }
+    
+    private static double axiomValue(String type) {
+        switch (axiomSection(type)) {
+            case "ontology header lines":
+                return ContextPacker.REQUIRED;
+            case "class axioms":
+                return 5;
+            case "property axioms":
+                return 4;
+            case "declarations":
+                return 3;
+            case "annotations":
+                return "Annotation".equals(type) ? 4 : 2;
+            default:
+                return "ClassAssertion".equals(type) ? 2 : 1;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.vidyaastra.ui;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.vidyaastra.Conversation;
+
+/**
+ * Tracks which classes and properties of an ontology a conversation has
+ * already been shown, so that follow-up requests carry only what was added or
+ * removed since then instead of the whole listing.
+ *
+ * A change listener is registered once on the manager of every ontology
+ * tracked and notes the classes and properties in the signature of every axiom
+ * added or removed. When the changes are described, each of them is checked
+ * against the ontology and the entities sent before, so an entity added and
+ * removed again does not show up at all. The full listing is needed again once
+ * the turn that carried it has been folded into the conversation's summary,
+ * or the conversation was cleared.
+ *
+ * A tracker is kept as an attachment of its conversation and lives as long
+ * as the conversation does. The listener reaches trackers through a weak set
+ * and each tracker holds its ontology weakly, so neither keeps a conversation
+ * or an ontology alive that was dropped everywhere else.
+ */
+public final class OntologyDelta {
+    
+    private static final Map<OWLOntologyManager, Boolean> LISTENED = new WeakHashMap<>();
+    private static final Set<OntologyDelta> LIVE = Collections.newSetFromMap(new WeakHashMap<>());
+    
+    private final WeakReference<OWLOntology> ontology;
+    private final Conversation conversation;
+    // The entities the model was told about, or null before the full listing was sent
+    private Set<OWLEntity> sent;
+    // Entities in axioms changed since the listing or the last changes were sent
+    private final Set<OWLEntity> touched = new HashSet<>();
+    private int fullContextTurn;
+    
+    private OntologyDelta(OWLOntology ontology, Conversation conversation) {
+        this.ontology = new WeakReference<>(ontology);
+        this.conversation = conversation;
+    }
+    
+    /**
+     * Gets the tracker of what a conversation was shown of an ontology.
+     * @param conversation The conversation the context is sent in
+     * @param ontology The ontology the conversation is about
+     * @return The tracker, new if the conversation was about another ontology before
+     */
+    public static synchronized OntologyDelta of(Conversation conversation, OWLOntology ontology) {
+        OWLOntologyManager manager = ontology.getOWLOntologyManager();
+        if (manager != null && LISTENED.put(manager, Boolean.TRUE) == null) {
+            manager.addOntologyChangeListener(OntologyDelta::changed);
+        }
+        OntologyDelta delta = conversation.getAttachment(OntologyDelta.class);
+        if (delta == null || delta.ontology.get() != ontology) {
+            if (delta != null) {
+                LIVE.remove(delta);
+            }
+            delta = new OntologyDelta(ontology, conversation);
+            conversation.setAttachment(OntologyDelta.class, delta);
+            LIVE.add(delta);
+        }
+        return delta;
+    }
+    
+    private static synchronized void changed(List<? extends OWLOntologyChange> changes) {
+        for (OWLOntologyChange change : changes) {
+            if (!change.isAxiomChange()) {
+                continue;
+            }
+            for (OntologyDelta delta : LIVE) {
+                if (delta.ontology.get() == change.getOntology() && delta.sent != null) {
+                    for (OWLEntity entity : change.getAxiom().getSignature()) {
+                        if (isListed(entity)) {
+                            delta.touched.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return True if the model has to be sent the full listing, because it
+     *         never was or the turn carrying it is no longer sent word for word
+     */
+    public boolean needsFullContext() {
+        synchronized (OntologyDelta.class) {
+            if (sent == null) {
+                return true;
+            }
+        }
+        return fullContextTurn < conversation.getFirstTurnNumber()
+            || fullContextTurn >= conversation.getNextTurnNumber();
+    }
+    
+    /**
+     * Describes the classes and properties added or removed since the last request.
+     * @param shortForm Renders an entity's name
+     * @return One line per kind of entity and direction, or an empty string if nothing changed
+     */
+    public String describeChanges(Function<OWLEntity, String> shortForm) {
+        List<OWLEntity> added = new ArrayList<>();
+        List<OWLEntity> removed = new ArrayList<>();
+        synchronized (OntologyDelta.class) {
+            OWLOntology ontology = this.ontology.get();
+            if (sent == null || ontology == null) {
+                return "";
+            }
+            for (OWLEntity entity : touched) {
+                boolean present = ontology.containsEntityInSignature(entity);
+                if (present && !sent.contains(entity)) {
+                    added.add(entity);
+                } else if (!present && sent.contains(entity)) {
+                    removed.add(entity);
+                }
+            }
+        }
+        StringBuilder changes = new StringBuilder();
+        appendLine(changes, "Classes added", added, OWLEntity::isOWLClass, shortForm);
+        appendLine(changes, "Classes removed", removed, OWLEntity::isOWLClass, shortForm);
+        appendLine(changes, "Object Properties added", added, OWLEntity::isOWLObjectProperty, shortForm);
+        appendLine(changes, "Object Properties removed", removed, OWLEntity::isOWLObjectProperty, shortForm);
+        appendLine(changes, "Data Properties added", added, OWLEntity::isOWLDataProperty, shortForm);
+        appendLine(changes, "Data Properties removed", removed, OWLEntity::isOWLDataProperty, shortForm);
+        return changes.toString();
+    }
+    
+    private static void appendLine(StringBuilder changes, String label, Collection<OWLEntity> entities,
+                                   Predicate<OWLEntity> kind,
+                                   Function<OWLEntity, String> shortForm) {
+        List<String> names = new ArrayList<>();
+        for (OWLEntity entity : entities) {
+            if (kind.test(entity)) {
+                names.add(shortForm.apply(entity));
+            }
+        }
+        if (!names.isEmpty()) {
+            names.sort(null);
+            changes.append(label).append(" (").append(names.size()).append("): ")
+                .append(String.join(", ", names)).append("\n");
+        }
+    }
+    
+    /**
+     * Records that the context of a request was sent. Call before the request's
+     * turn is added to the conversation.
+     * @param fullContext Whether the request carried the full listing rather than the changes
+     */
+    public void markSent(boolean fullContext) {
+        markSent(fullContext, null);
+    }
+    
+    /**
+     * Records that a request carried a listing cut down to fit the context
+     * window. Only the entities it named count as known to the model, so
+     * others are not reported as removed later.
+     * @param listed The classes and properties the listing named
+     */
+    public void markSent(Collection<? extends OWLEntity> listed) {
+        markSent(true, listed);
+    }
+    
+    private void markSent(boolean fullContext, Collection<? extends OWLEntity> listed) {
+        int nextTurn = conversation.getNextTurnNumber();
+        synchronized (OntologyDelta.class) {
+            OWLOntology ontology = this.ontology.get();
+            if (ontology == null) {
+                return;
+            }
+            if (fullContext || sent == null) {
+                sent = new HashSet<>();
+                for (OWLEntity entity : listed != null ? listed : ontology.getSignature()) {
+                    if (isListed(entity)) {
+                        sent.add(entity);
+                    }
+                }
+                fullContextTurn = nextTurn;
+            } else {
+                for (OWLEntity entity : touched) {
+                    if (ontology.containsEntityInSignature(entity)) {
+                        sent.add(entity);
+                    } else {
+                        sent.remove(entity);
+                    }
+                }
+            }
+            touched.clear();
+        }
+    }
+    
+    /**
+     * Only the entities the modification prompt lists are tracked.
+     */
+    private static boolean isListed(OWLEntity entity) {
+        return !entity.isBuiltIn()
+            && (entity.isOWLClass() || entity.isOWLObjectProperty() || entity.isOWLDataProperty());
+    }
+}
@@ -10,6 +10,9 @@ import org.semanticweb.owlapi.io.StringDocumentSource;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.CompletionStreamListener;
+import org.vidyaastra.GenerationOptions;
 import org.vidyaastra.OpenAiCaller;
 
 /**
@@ -38,20 +41,39 @@ public class OntologyGenerator {
      */
     public String generateOntologyContent(String description, String apiKey, String model, String baseUrl) 
             throws Exception {
+        return generateOntologyContent(description, apiKey, model, baseUrl, null);
+    }
+    
+    /**
+     * Generates a new ontology based on the user's description, streaming the raw
+     * LLM output to the given listener while it is being generated.
+     * 
+     * @param description Natural language description of the desired ontology
+     * @param apiKey OpenAI API key
+     * @param model Model to use (e.g., gpt-4o-mini)
+     * @param baseUrl Base URL for the API
+     * @param listener Receives generated text as it arrives, or null to wait for the full response
+     * @return The generated OWL content as a string
+     * @throws Exception if generation fails
+     */
+    public String generateOntologyContent(String description, String apiKey, String model, String baseUrl,
+                                          CompletionStreamListener listener) throws Exception {
         
         System.out.println("=== Starting Ontology Generation ===");
         System.out.println("Model: " + model);
         System.out.println("Description length: " + description.length() + " chars");
         
-        OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
+        OpenAiCaller caller = createCaller(apiKey, model, baseUrl);
         
         String systemPrompt = buildSystemPromptForCreation();
         String userPrompt = buildUserPromptForCreation(description);
         
         System.out.println("Calling LLM...");
         
-        // Get the full response from LLM
-        String llmResponse = caller.generateCompletion(systemPrompt, userPrompt);
+        // Get the full response from LLM, streaming it when someone is listening
+        String llmResponse = listener != null
+                ? caller.streamCompletion(systemPrompt, userPrompt, listener)
+                : caller.generateCompletion(systemPrompt, userPrompt);
         
         System.out.println("LLM response received, length: " + llmResponse.length() + " chars");
         
@@ -64,6 +86,16 @@ public class OntologyGenerator {
         return owlContent;
     }
     
+    /**
+     * Creates the caller used for the LLM request.
+     * Subclasses may override this to configure or replace it.
+     */
+    protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+        OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
+        caller.setOperation(CompletionOperation.ONTOLOGY_GENERATION);
+        return caller;
+    }
+    
     /**
      * Saves the generated OWL content to a file and optionally loads it into Protege.
      * 
@@ -347,6 +379,12 @@ public class OntologyGenerator {
         
         // Step 4: Ensure it ends with the closing RDF tag
         int rdfEnd = content.lastIndexOf("</rdf:RDF>");
+        if (rdfEnd < 0 && content.contains("<rdf:RDF")) {
+            // The request stops at the closing tag, and the server leaves the stop sequence out
+            content = content.trim() + "\n" + GenerationOptions.RDF_END;
+            rdfEnd = content.lastIndexOf(GenerationOptions.RDF_END);
+            System.out.println("Restored closing </rdf:RDF> tag removed by the stop sequence");
+        }
         if (rdfEnd < 0) {
             throw new Exception("No closing </rdf:RDF> tag found in LLM response. " +
                 "The response must be a complete OWL/RDF XML document.");
@@ -1,10 +1,13 @@
 package org.vidyaastra.ui;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.protege.editor.owl.OWLEditorKit;
 import org.protege.editor.owl.model.OWLModelManager;
 import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLDataFactory;
@@ -13,21 +16,47 @@ import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.util.OWLEntityRemover;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.vidyaastra.JsonReader;
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.ContextPacker;
+import org.vidyaastra.Conversation;
+import org.vidyaastra.ModificationPlan;
 import org.vidyaastra.OpenAiCaller;
+import org.vidyaastra.TokenBudget;
 
 /**
  * Handles modifications to existing OWL ontologies using LLM guidance.
+ *
+ * Within a {@link Conversation}, the first request carries the ontology's
+ * classes and properties and later ones only the entities added or removed
+ * since, as tracked by {@link OntologyDelta}.
  */
 public class OntologyModifier {
     
+    // Room kept in the prompt for the note on entities left out
+    private static final int OMISSION_NOTE_TOKENS = 48;
+    
     private final OWLEditorKit editorKit;
     private final VidyaastraDialogManager dialogManager;
+    private Conversation conversation;
     
     public OntologyModifier(OWLEditorKit editorKit, VidyaastraDialogManager dialogManager) {
         this.editorKit = editorKit;
         this.dialogManager = dialogManager;
     }
     
+    /**
+     * Sets the session the requests belong to. Earlier requests and answers are
+     * sent along, and the ontology is described by its changes since the last request.
+     * @param conversation The session, or null to send every request on its own with the full listing
+     */
+    public OntologyModifier setConversation(Conversation conversation) {
+        this.conversation = conversation;
+        return this;
+    }
+    
     /**
      * Modifies an ontology based on natural language instructions.
      * 
@@ -42,26 +71,79 @@ public class OntologyModifier {
     public String modifyOntology(OWLOntology ontology, String modificationRequest, 
                                  String apiKey, String model, String baseUrl) throws Exception {
         
-        // Get ontology context
-        String ontologyContext = buildOntologyContext(ontology);
-        
-        // Call LLM to get modification instructions
-        OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
         String systemPrompt = buildSystemPromptForModification();
-        String userPrompt = buildUserPromptForModification(ontologyContext, modificationRequest);
+        OntologyDelta delta = conversation != null ? OntologyDelta.of(conversation, ontology) : null;
+        boolean fullContext = delta == null || delta.needsFullContext();
         
-        String llmResponse = caller.generateCompletion(systemPrompt, userPrompt);
+        OpenAiCaller caller = createCaller(apiKey, model, baseUrl);
+        caller.setConversation(conversation);
+        ContextPacker.Result entities = null;
+        String userPrompt;
+        if (fullContext) {
+            // Fill what the model's context window leaves with the most central entities
+            // Sized by rounded lengths, so that similar requests get the same context and a cached prefix
+            TokenBudget budget = TokenBudget.forModel(model, CompletionOperation.ONTOLOGY_MODIFICATION);
+            String frame = buildUserPromptForModification(buildOntologyContext(ontology, ""), modificationRequest);
+            int history = conversation != null ? conversation.countTokens() : 0;
+            entities = new OntologyContextBuilder(ontology,
+                    budget.packer(budget.remainingStable(systemPrompt, frame) - history - OMISSION_NOTE_TOKENS))
+                .setShortForm(this::getShortForm)
+                .addClasses("Classes (%d):")
+                .addObjectProperties("Object Properties (%d):")
+                .addDataProperties("Data Properties (%d):")
+                .pack();
+            if (!entities.isComplete()) {
+                System.out.println("Ontology context trimmed to " + budget + ": " + entities.describeDropped());
+            }
+            userPrompt = buildUserPromptForModification(buildOntologyContext(ontology, entities.getText(),
+                entities.describeDropped()), modificationRequest);
+        } else {
+            // The model has the listing from an earlier turn, so only what changed since is sent
+            userPrompt = buildUserPromptForChanges(ontology, delta.describeChanges(this::getShortForm),
+                modificationRequest);
+        }
+        
+        // Call LLM to get modification instructions
+        // A larger model is asked if the routed one answers without instructions that can be applied
+        String llmResponse = caller.generateCompletion(systemPrompt, userPrompt, 0.7,
+            answer -> hasApplicableOperations(ontology, answer));
+        if (delta != null) {
+            // Before the turn is added, which may fold the turn carrying the listing into the summary
+            if (entities != null && !entities.isComplete()) {
+                delta.markSent(entities.getIncludedKeys(OWLEntity.class));
+            } else {
+                delta.markSent(fullContext);
+            }
+            conversation.addTurn(userPrompt, llmResponse);
+        }
         
         // Parse and apply modifications
         String modificationSummary = applyModifications(ontology, llmResponse);
+        if (entities != null && !entities.isComplete()) {
+            modificationSummary += "\nNote: " + entities.describeDropped()
+                + " from the ontology context to fit the model's context window.";
+        }
         
         return modificationSummary;
     }
     
+    /**
+     * Creates the caller used for the LLM request.
+     * Subclasses may override this to configure or replace it.
+     */
+    protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+        OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
+        caller.setOperation(CompletionOperation.ONTOLOGY_MODIFICATION);
+        return caller;
+    }
+    
     /**
      * Builds a textual representation of the ontology for context.
+     * 
+     * @param entityListing The packed class and property listing
+     * @param omitted What was left out of the listing, or an empty string
      */
-    private String buildOntologyContext(OWLOntology ontology) {
+    private String buildOntologyContext(OWLOntology ontology, String entityListing, String omitted) {
         StringBuilder context = new StringBuilder();
         
         // Ontology IRI
@@ -73,29 +155,9 @@ public class OntologyModifier {
         }
         context.append("\n\n");
         
-        // Classes
-        Set<OWLClass> classes = ontology.getClassesInSignature();
-        context.append("Classes (").append(classes.size()).append("):\n");
-        for (OWLClass cls : classes) {
-            if (!cls.isOWLThing() && !cls.isOWLNothing()) {
-                context.append("  - ").append(getShortForm(cls)).append("\n");
-            }
-        }
-        context.append("\n");
-        
-        // Object Properties
-        Set<OWLObjectProperty> objectProps = ontology.getObjectPropertiesInSignature();
-        context.append("Object Properties (").append(objectProps.size()).append("):\n");
-        for (OWLObjectProperty prop : objectProps) {
-            context.append("  - ").append(getShortForm(prop)).append("\n");
-        }
-        context.append("\n");
-        
-        // Data Properties
-        Set<OWLDataProperty> dataProps = ontology.getDataPropertiesInSignature();
-        context.append("Data Properties (").append(dataProps.size()).append("):\n");
-        for (OWLDataProperty prop : dataProps) {
-            context.append("  - ").append(getShortForm(prop)).append("\n");
+        context.append(entityListing);
+        if (!omitted.isEmpty()) {
+            context.append("\n(Partial listing. ").append(omitted).append(", keeping the most connected entities.)\n");
         }
         context.append("\n");
         
@@ -105,6 +167,10 @@ public class OntologyModifier {
         return context.toString();
     }
     
+    private String buildOntologyContext(OWLOntology ontology, String entityListing) {
+        return buildOntologyContext(ontology, entityListing, "");
+    }
+    
     /**
      * Gets a short, readable form of an entity's IRI.
      */
@@ -130,24 +196,29 @@ public class OntologyModifier {
         sb.append("You are an expert ontology engineer helping to modify OWL ontologies.\n\n");
         sb.append("Given the current structure of an ontology and a modification request, ");
         sb.append("provide clear, step-by-step instructions for the modifications.\n\n");
-        sb.append("Format your response as a structured list of operations:\n\n");
-        sb.append("ADD_CLASS: <ClassName> - <Description>\n");
-        sb.append("ADD_OBJECT_PROPERTY: <PropertyName> - <Description>\n");
-        sb.append("ADD_DATA_PROPERTY: <PropertyName> - <Description>\n");
-        sb.append("ADD_SUBCLASS: <SubClass> subClassOf <SuperClass>\n");
-        sb.append("ADD_DOMAIN: <Property> domain <Class>\n");
-        sb.append("ADD_RANGE: <Property> range <ClassOrDatatype>\n");
-        sb.append("REMOVE_CLASS: <ClassName>\n");
-        sb.append("REMOVE_PROPERTY: <PropertyName>\n");
-        sb.append("ADD_ANNOTATION: <Entity> - <AnnotationType> - <Value>\n\n");
-        sb.append("After the operations list, add a SUMMARY section explaining the changes.\n");
+        sb.append("Answer with a JSON object with two fields: \"operations\", a list of operations, ");
+        sb.append("and \"summary\", explaining the changes. Each operation has the fields \"action\", ");
+        sb.append("\"entity\", \"target\" and \"value\"; leave the fields an action does not use empty.\n\n");
+        sb.append("Actions:\n");
+        sb.append("ADD_CLASS: entity is the class, value a description\n");
+        sb.append("ADD_OBJECT_PROPERTY: entity is the property, value a description\n");
+        sb.append("ADD_DATA_PROPERTY: entity is the property, value a description\n");
+        sb.append("ADD_SUBCLASS: entity is the subclass, target the superclass\n");
+        sb.append("ADD_DOMAIN: entity is the property, target the domain class\n");
+        sb.append("ADD_RANGE: entity is the property, target the range class or an XSD datatype such as xsd:string\n");
+        sb.append("REMOVE_CLASS: entity is the class\n");
+        sb.append("REMOVE_PROPERTY: entity is the property\n");
+        sb.append("ADD_ANNOTATION: entity is the annotated entity, target the annotation type ");
+        sb.append("(label, comment or another annotation property), value its value\n\n");
         sb.append("Be specific and use the exact names that should be used in the ontology.");
         
         return sb.toString();
     }
     
     /**
-     * Builds the user prompt for modification.
+     * Builds the user prompt for modification. The ontology context comes
+     * before the request, so that consecutive requests against the same
+     * ontology share the prompt prefix.
      */
     private String buildUserPromptForModification(String ontologyContext, String modificationRequest) {
         StringBuilder sb = new StringBuilder();
@@ -164,6 +235,28 @@ public class OntologyModifier {
         return sb.toString();
     }
     
+    /**
+     * Builds the user prompt of a follow-up request, describing the ontology by
+     * what changed since the previous request of the conversation.
+     * 
+     * @param changes The classes and properties added or removed, or an empty string
+     */
+    private String buildUserPromptForChanges(OWLOntology ontology, String changes, String modificationRequest) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Ontology Changes Since the Previous Request:\n");
+        sb.append("-------------------------------------------\n");
+        sb.append(changes.isEmpty() ? "No classes or properties were added or removed.\n" : changes);
+        sb.append("Total Axioms: ").append(ontology.getAxiomCount()).append("\n");
+        sb.append("\n\n");
+        sb.append("Modification Request:\n");
+        sb.append("--------------------\n");
+        sb.append(modificationRequest);
+        sb.append("\n\n");
+        sb.append("Please provide the modification operations needed to fulfill this request.");
+        
+        return sb.toString();
+    }
+    
     /**
      * Parses LLM response and applies modifications to the ontology.
      */
@@ -175,96 +268,213 @@ public class OntologyModifier {
         StringBuilder summary = new StringBuilder();
         summary.append("Modifications Applied:\n\n");
         
-        String[] lines = llmResponse.split("\n");
+        ModificationPlan plan = ModificationPlan.parse(llmResponse);
         int modificationsCount = 0;
         
         String ontologyIRIString = getOntologyBaseIRI(ontology);
         
-        for (String line : lines) {
-            line = line.trim();
-            
+        List<String> skipped = new ArrayList<>();
+        for (ModificationPlan.Operation operation : plan.getOperations()) {
+            String entity = operation.getEntity();
+            String target = operation.getTarget();
+            String skipReason = getSkipReason(ontology, operation);
+            if (skipReason != null) {
+                skipped.add(operation + " (" + skipReason + ")");
+                continue;
+            }
             try {
-                if (line.startsWith("ADD_CLASS:")) {
-                    String className = extractEntityName(line);
-                    IRI classIRI = IRI.create(ontologyIRIString + "#" + className);
-                    OWLClass newClass = factory.getOWLClass(classIRI);
-                    OWLAxiom axiom = factory.getOWLDeclarationAxiom(newClass);
-                    manager.addAxiom(ontology, axiom);
-                    summary.append("✓ Added class: ").append(className).append("\n");
-                    modificationsCount++;
-                }
-                else if (line.startsWith("ADD_OBJECT_PROPERTY:")) {
-                    String propName = extractEntityName(line);
-                    IRI propIRI = IRI.create(ontologyIRIString + "#" + propName);
-                    OWLObjectProperty newProp = factory.getOWLObjectProperty(propIRI);
-                    OWLAxiom axiom = factory.getOWLDeclarationAxiom(newProp);
-                    manager.addAxiom(ontology, axiom);
-                    summary.append("✓ Added object property: ").append(propName).append("\n");
-                    modificationsCount++;
-                }
-                else if (line.startsWith("ADD_DATA_PROPERTY:")) {
-                    String propName = extractEntityName(line);
-                    IRI propIRI = IRI.create(ontologyIRIString + "#" + propName);
-                    OWLDataProperty newProp = factory.getOWLDataProperty(propIRI);
-                    OWLAxiom axiom = factory.getOWLDeclarationAxiom(newProp);
-                    manager.addAxiom(ontology, axiom);
-                    summary.append("✓ Added data property: ").append(propName).append("\n");
-                    modificationsCount++;
-                }
-                else if (line.startsWith("ADD_SUBCLASS:")) {
-                    String[] parts = line.substring("ADD_SUBCLASS:".length()).split("subClassOf");
-                    if (parts.length == 2) {
-                        String subClassName = parts[0].trim();
-                        String superClassName = parts[1].trim();
-                        
-                        OWLClass subClass = factory.getOWLClass(IRI.create(ontologyIRIString + "#" + subClassName));
-                        OWLClass superClass = factory.getOWLClass(IRI.create(ontologyIRIString + "#" + superClassName));
+                switch (operation.getAction()) {
+                    case ADD_CLASS: {
+                        OWLClass newClass = factory.getOWLClass(IRI.create(ontologyIRIString + "#" + entity));
+                        OWLAxiom axiom = factory.getOWLDeclarationAxiom(newClass);
+                        manager.addAxiom(ontology, axiom);
+                        summary.append("✓ Added class: ").append(entity).append("\n");
+                        break;
+                    }
+                    case ADD_OBJECT_PROPERTY: {
+                        OWLObjectProperty newProp = factory.getOWLObjectProperty(
+                            IRI.create(ontologyIRIString + "#" + entity));
+                        OWLAxiom axiom = factory.getOWLDeclarationAxiom(newProp);
+                        manager.addAxiom(ontology, axiom);
+                        summary.append("✓ Added object property: ").append(entity).append("\n");
+                        break;
+                    }
+                    case ADD_DATA_PROPERTY: {
+                        OWLDataProperty newProp = factory.getOWLDataProperty(
+                            IRI.create(ontologyIRIString + "#" + entity));
+                        OWLAxiom axiom = factory.getOWLDeclarationAxiom(newProp);
+                        manager.addAxiom(ontology, axiom);
+                        summary.append("✓ Added data property: ").append(entity).append("\n");
+                        break;
+                    }
+                    case ADD_SUBCLASS: {
+                        OWLClass subClass = factory.getOWLClass(IRI.create(ontologyIRIString + "#" + entity));
+                        OWLClass superClass = factory.getOWLClass(IRI.create(ontologyIRIString + "#" + target));
                         
                         OWLAxiom axiom = factory.getOWLSubClassOfAxiom(subClass, superClass);
                         manager.addAxiom(ontology, axiom);
-                        summary.append("✓ Added subclass relation: ").append(subClassName)
-                               .append(" ⊆ ").append(superClassName).append("\n");
-                        modificationsCount++;
+                        summary.append("✓ Added subclass relation: ").append(entity)
+                               .append(" ⊆ ").append(target).append("\n");
+                        break;
                     }
-                }
-                else if (line.startsWith("SUMMARY:")) {
-                    // Extract and append the summary from LLM
-                    summary.append("\nLLM Summary:\n");
-                    summary.append("------------\n");
-                    int summaryStart = llmResponse.indexOf("SUMMARY:");
-                    if (summaryStart >= 0) {
-                        String llmSummary = llmResponse.substring(summaryStart + 8).trim();
-                        summary.append(llmSummary);
+                    case ADD_DOMAIN: {
+                        IRI propertyIRI = IRI.create(ontologyIRIString + "#" + entity);
+                        OWLClass domain = factory.getOWLClass(IRI.create(ontologyIRIString + "#" + target));
+                        OWLAxiom axiom = ontology.containsDataPropertyInSignature(propertyIRI)
+                            ? factory.getOWLDataPropertyDomainAxiom(factory.getOWLDataProperty(propertyIRI), domain)
+                            : factory.getOWLObjectPropertyDomainAxiom(factory.getOWLObjectProperty(propertyIRI), domain);
+                        manager.addAxiom(ontology, axiom);
+                        summary.append("✓ Added domain: ").append(entity).append(" → ").append(target).append("\n");
+                        break;
+                    }
+                    case ADD_RANGE: {
+                        IRI propertyIRI = IRI.create(ontologyIRIString + "#" + entity);
+                        OWLAxiom axiom = isDataProperty(ontology, propertyIRI, target)
+                            ? factory.getOWLDataPropertyRangeAxiom(factory.getOWLDataProperty(propertyIRI),
+                                getDatatype(target).getDatatype(factory))
+                            : factory.getOWLObjectPropertyRangeAxiom(factory.getOWLObjectProperty(propertyIRI),
+                                factory.getOWLClass(IRI.create(ontologyIRIString + "#" + target)));
+                        manager.addAxiom(ontology, axiom);
+                        summary.append("✓ Added range: ").append(entity).append(" → ").append(target).append("\n");
+                        break;
+                    }
+                    case REMOVE_CLASS:
+                    case REMOVE_PROPERTY: {
+                        // Removes the declaration and every axiom using the entity
+                        OWLEntityRemover remover = new OWLEntityRemover(Collections.singleton(ontology));
+                        for (OWLEntity removed : ontology.getEntitiesInSignature(
+                                IRI.create(ontologyIRIString + "#" + entity))) {
+                            removed.accept(remover);
+                        }
+                        manager.applyChanges(remover.getChanges());
+                        summary.append(operation.getAction() == ModificationPlan.Action.REMOVE_CLASS
+                            ? "✓ Removed class: " : "✓ Removed property: ").append(entity).append("\n");
+                        break;
+                    }
+                    case ADD_ANNOTATION: {
+                        OWLAxiom axiom = factory.getOWLAnnotationAssertionAxiom(
+                            getAnnotationProperty(factory, ontologyIRIString, target),
+                            IRI.create(ontologyIRIString + "#" + entity), factory.getOWLLiteral(operation.getValue()));
+                        manager.addAxiom(ontology, axiom);
+                        summary.append("✓ Added annotation: ").append(entity).append(" ").append(target)
+                               .append(" \"").append(operation.getValue()).append("\"\n");
+                        break;
                     }
-                    break;
                 }
+                modificationsCount++;
             } catch (Exception e) {
-                summary.append("✗ Error processing: ").append(line).append(" - ").append(e.getMessage()).append("\n");
+                summary.append("✗ Error processing: ").append(operation).append(" - ").append(e.getMessage()).append("\n");
+            }
+        }
+        
+        if (!skipped.isEmpty()) {
+            summary.append("\nSkipped (").append(skipped.size()).append("):\n");
+            for (String operation : skipped) {
+                summary.append("- ").append(operation).append("\n");
             }
         }
         
+        if (!plan.getSummary().isEmpty()) {
+            summary.append("\nLLM Summary:\n");
+            summary.append("------------\n");
+            summary.append(plan.getSummary());
+        }
+        
         summary.insert(0, "Total modifications: " + modificationsCount + "\n\n");
         
         return summary.toString();
     }
     
     /**
-     * Extracts the entity name from a modification command line.
+     * Checks whether an answer proposes at least one operation that
+     * {@link #applyModifications} can carry out on the ontology.
      */
-    private String extractEntityName(String line) {
-        int colonIndex = line.indexOf(':');
-        if (colonIndex < 0) {
-            return "";
+    private boolean hasApplicableOperations(OWLOntology ontology, String llmResponse) {
+        try {
+            for (ModificationPlan.Operation operation : ModificationPlan.parse(llmResponse).getOperations()) {
+                if (getSkipReason(ontology, operation) == null) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (JsonReader.JsonParseException e) {
+            return false;
         }
-        
-        String remainder = line.substring(colonIndex + 1).trim();
-        int dashIndex = remainder.indexOf('-');
-        
-        if (dashIndex >= 0) {
-            return remainder.substring(0, dashIndex).trim();
+    }
+    
+    /**
+     * Checks whether an operation can be applied to the ontology as it is.
+     * 
+     * @return Why the operation cannot be applied, or null if it can
+     */
+    private String getSkipReason(OWLOntology ontology, ModificationPlan.Operation operation) {
+        String base = getOntologyBaseIRI(ontology);
+        IRI entityIRI = IRI.create(base + "#" + operation.getEntity());
+        String target = operation.getTarget();
+        switch (operation.getAction()) {
+            case ADD_SUBCLASS:
+            case ADD_DOMAIN:
+                return target.isEmpty() ? "no target given" : null;
+            case ADD_RANGE:
+                if (target.isEmpty()) {
+                    return "no target given";
+                }
+                return isDataProperty(ontology, entityIRI, target) && getDatatype(target) == null
+                    ? target + " is not a datatype" : null;
+            case REMOVE_CLASS:
+                return ontology.containsClassInSignature(entityIRI) ? null : "no such class in the ontology";
+            case REMOVE_PROPERTY:
+                return ontology.containsObjectPropertyInSignature(entityIRI)
+                    || ontology.containsDataPropertyInSignature(entityIRI)
+                    || ontology.containsAnnotationPropertyInSignature(entityIRI)
+                    ? null : "no such property in the ontology";
+            case ADD_ANNOTATION:
+                if (target.isEmpty() || operation.getValue().isEmpty()) {
+                    return "no annotation type or value given";
+                }
+                return ontology.containsEntityInSignature(entityIRI) ? null : "no such entity in the ontology";
+            default:
+                return null;
         }
-        
-        return remainder.trim();
+    }
+    
+    /**
+     * Tells whether a range is meant for a data property: one declared as such,
+     * or one not declared at all whose range is a datatype.
+     */
+    private static boolean isDataProperty(OWLOntology ontology, IRI propertyIRI, String range) {
+        return ontology.containsDataPropertyInSignature(propertyIRI)
+            || !ontology.containsObjectPropertyInSignature(propertyIRI) && getDatatype(range) != null;
+    }
+    
+    /**
+     * Looks up a built-in datatype by its short name, with or without a prefix such as "xsd:".
+     * 
+     * @return The datatype, or null if there is none by that name
+     */
+    private static OWL2Datatype getDatatype(String name) {
+        String shortName = name.substring(Math.max(name.lastIndexOf(':'), name.lastIndexOf('#')) + 1);
+        for (OWL2Datatype datatype : OWL2Datatype.values()) {
+            if (datatype.getShortForm().equalsIgnoreCase(shortName)) {
+                return datatype;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Gets the annotation property an annotation type names: the RDFS label or
+     * comment, or else a property of the ontology by that name.
+     */
+    private static OWLAnnotationProperty getAnnotationProperty(OWLDataFactory factory, String base, String type) {
+        String shortName = type.substring(type.lastIndexOf(':') + 1).trim();
+        if ("label".equalsIgnoreCase(shortName)) {
+            return factory.getRDFSLabel();
+        }
+        if ("comment".equalsIgnoreCase(shortName)) {
+            return factory.getRDFSComment();
+        }
+        return factory.getOWLAnnotationProperty(IRI.create(base + "#" + shortName));
     }
     
     /**
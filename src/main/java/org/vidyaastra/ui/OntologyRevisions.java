@@ -0,0 +1,56 @@
+package org.vidyaastra.ui;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+/**
+ * Tells apart the states an ontology goes through while it is edited.
+ *
+ * A change listener is registered once on the manager of every ontology asked
+ * about and counts the changes applied to each of its ontologies. Answers
+ * cached for one revision are thus not reused after the ontology has changed.
+ * Ontologies and managers are held weakly, so closing them frees their entry.
+ */
+public final class OntologyRevisions {
+    
+    private static final Map<OWLOntologyManager, Boolean> LISTENED = new WeakHashMap<>();
+    private static final Map<OWLOntology, AtomicLong> REVISIONS = new WeakHashMap<>();
+    
+    private OntologyRevisions() {
+    }
+    
+    /**
+     * Gets the current revision of an ontology.
+     * @param ontology The ontology
+     * @return A string that changes with every change applied to the ontology, or null if there is no ontology
+     */
+    public static synchronized String revisionOf(OWLOntology ontology) {
+        if (ontology == null) {
+            return null;
+        }
+        OWLOntologyManager manager = ontology.getOWLOntologyManager();
+        if (manager != null && LISTENED.put(manager, Boolean.TRUE) == null) {
+            manager.addOntologyChangeListener(changes -> {
+                for (OWLOntologyChange change : changes) {
+                    increment(change.getOntology());
+                }
+            });
+        }
+        // The identity separates ontologies loaded more than once under the same ID
+        return ontology.getOntologyID() + "@" + Integer.toHexString(System.identityHashCode(ontology))
+            + "#" + counter(ontology).get();
+    }
+    
+    private static synchronized void increment(OWLOntology ontology) {
+        counter(ontology).incrementAndGet();
+    }
+    
+    private static AtomicLong counter(OWLOntology ontology) {
+        return REVISIONS.computeIfAbsent(ontology, o -> new AtomicLong());
+    }
+}
@@ -1,7 +1,34 @@
 package org.vidyaastra.ui;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
 import org.protege.editor.core.prefs.Preferences;
 import org.protege.editor.core.prefs.PreferencesManager;
+import org.protege.editor.core.util.ProtegeDirectories;
+import org.vidyaastra.AzureOpenAiProvider;
+import org.vidyaastra.Cassette;
+import org.vidyaastra.CompletionCache;
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.CompletionProvider;
+import org.vidyaastra.Endpoint;
+import org.vidyaastra.EndpointPool;
+import org.vidyaastra.EndpointRoutes;
+import org.vidyaastra.HttpTransport;
+import org.vidyaastra.LocalServerProvider;
+import org.vidyaastra.ModelRouter;
+import org.vidyaastra.SemanticCache;
+import org.vidyaastra.OpenAiCaller;
+import org.vidyaastra.RateLimiter;
+import org.vidyaastra.RetryPolicy;
+import org.vidyaastra.TokenBudget;
+import org.vidyaastra.TransportSettings;
 
 /**
  * Helper class to manage VidyaAstra preferences including OpenAI configuration.
@@ -14,10 +41,60 @@ public class VidyaastraPreferences {
     private static final String OPENAI_BASE_URL_KEY = "openai.baseUrl";
     private static final String OPENAI_API_KEY_KEY = "openai.apiKey";
     private static final String OPENAI_MODEL_KEY = "openai.model";
+    private static final String CACHE_ENABLED_KEY = "cache.enabled";
+    private static final String CACHE_TTL_HOURS_KEY = "cache.ttlHours";
+    private static final String SEMANTIC_CACHE_ENABLED_KEY = "cache.semantic.enabled";
+    private static final String SEMANTIC_CACHE_THRESHOLD_KEY = "cache.semantic.thresholdPercent";
+    private static final String RETRY_MAX_ATTEMPTS_KEY = "retry.maxAttempts";
+    private static final String RATE_LIMIT_RPM_KEY = "rateLimit.requestsPerMinute";
+    private static final String HTTP_VERSION_KEY = "transport.httpVersion";
+    private static final String CONNECT_TIMEOUT_KEY = "transport.connectTimeoutSeconds";
+    private static final String REQUEST_TIMEOUT_KEY_PREFIX = "transport.timeoutSeconds.";
+    private static final String VIRTUAL_THREADS_KEY = "transport.virtualThreads";
+    private static final String MAX_STREAMS_PER_HOST_KEY = "transport.maxStreamsPerHost";
+    private static final String CONTEXT_WINDOW_KEY = "budget.contextWindowTokens";
+    private static final String MAX_PROMPT_TOKENS_KEY = "budget.maxPromptTokens";
+    private static final String CONVERSATION_TOKENS_KEY = "budget.conversationTokens";
+    private static final String CASSETTE_MODE_KEY = "cassette.mode";
+    private static final String CASSETTE_FILE_KEY = "cassette.file";
+    private static final String CASSETTE_ORIGINAL_LATENCY_KEY = "cassette.originalLatency";
+    private static final String FAILOVER_BASE_URLS_KEY = "failover.baseUrls";
+    private static final String FAILOVER_API_KEYS_KEY = "failover.apiKeys";
+    private static final String FAILOVER_MODELS_KEY = "failover.models";
+    private static final String FAILOVER_PROVIDERS_KEY = "failover.providers";
+    private static final String FAILOVER_HEDGING_KEY = "failover.hedging";
+    private static final String FAILOVER_MIN_HEDGE_DELAY_KEY = "failover.minHedgeDelayMillis";
+    private static final String FAILOVER_BREAKER_FAILURES_KEY = "failover.breakerFailures";
+    private static final String FAILOVER_BREAKER_OPEN_SECONDS_KEY = "failover.breakerOpenSeconds";
+    private static final String PROVIDER_KEY_PREFIX = "provider.";
+    private static final String AZURE_BASE_URL_KEY = "azure.baseUrl";
+    private static final String AZURE_API_KEY_KEY = "azure.apiKey";
+    private static final String AZURE_DEPLOYMENT_KEY = "azure.deployment";
+    private static final String AZURE_API_VERSION_KEY = "azure.apiVersion";
+    private static final String LOCAL_BASE_URL_KEY = "local.baseUrl";
+    private static final String LOCAL_API_KEY_KEY = "local.apiKey";
+    private static final String LOCAL_MODEL_KEY = "local.model";
+    private static final String ROUTING_KEY_PREFIX = "routing.";
+    private static final String ROUTING_MODELS_SUFFIX = ".models";
+    private static final String ROUTING_MAX_PROMPT_TOKENS_SUFFIX = ".maxPromptTokens";
+    private static final String ROUTING_LATENCY_TARGET_SUFFIX = ".latencyTargetMillis";
+    private static final String ROUTING_MAX_ERROR_PERCENT_KEY = "routing.maxErrorPercent";
     
     // Default values
     private static final String DEFAULT_BASE_URL = "https://api.openai.com/v1";
     private static final String DEFAULT_MODEL = "gpt-4o-mini";
+    private static final int DEFAULT_CACHE_TTL_HOURS = 24;
+    private static final int DEFAULT_SEMANTIC_CACHE_THRESHOLD_PERCENT = 95;
+    private static final int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+    private static final int DEFAULT_RATE_LIMIT_RPM = 0;
+    private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    private static final int DEFAULT_MAX_STREAMS_PER_HOST = 8;
+    private static final int DEFAULT_MAX_PROMPT_TOKENS = 24000;
+    private static final int DEFAULT_CONVERSATION_TOKENS = 2048;
+    private static final int DEFAULT_MIN_HEDGE_DELAY_MILLIS = 1000;
+    private static final int DEFAULT_BREAKER_FAILURES = 5;
+    private static final int DEFAULT_BREAKER_OPEN_SECONDS = 30;
+    private static final int DEFAULT_ROUTING_MAX_ERROR_PERCENT = 20;
     
     /**
      * Gets the VidyaAstra preferences instance.
@@ -83,4 +160,706 @@ public class VidyaastraPreferences {
         String apiKey = getOpenAiApiKey();
         return apiKey != null && !apiKey.trim().isEmpty();
     }
+    
+    /**
+     * Checks if LLM responses should be served from the local response cache.
+     * @return true if the cache is enabled (default), false otherwise
+     */
+    public static boolean isResponseCacheEnabled() {
+        return getPreferences().getBoolean(CACHE_ENABLED_KEY, true);
+    }
+    
+    /**
+     * Enables or disables the local response cache.
+     * @param enabled true to enable the cache
+     */
+    public static void setResponseCacheEnabled(boolean enabled) {
+        getPreferences().putBoolean(CACHE_ENABLED_KEY, enabled);
+    }
+    
+    /**
+     * Gets how long cached responses stay valid.
+     * @return The time-to-live in hours, or default if not set
+     */
+    public static int getResponseCacheTtlHours() {
+        return getPreferences().getInt(CACHE_TTL_HOURS_KEY, DEFAULT_CACHE_TTL_HOURS);
+    }
+    
+    /**
+     * Sets how long cached responses stay valid.
+     * @param hours The time-to-live in hours
+     */
+    public static void setResponseCacheTtlHours(int hours) {
+        getPreferences().putInt(CACHE_TTL_HOURS_KEY, hours);
+    }
+    
+    /**
+     * Checks if answers to Basic Queries are reused for similar questions about the same ontology revision.
+     * @return true if the semantic cache is enabled (default), false otherwise
+     */
+    public static boolean isSemanticCacheEnabled() {
+        return getPreferences().getBoolean(SEMANTIC_CACHE_ENABLED_KEY, true);
+    }
+    
+    /**
+     * Enables or disables the semantic cache.
+     * @param enabled true to enable the cache
+     */
+    public static void setSemanticCacheEnabled(boolean enabled) {
+        getPreferences().putBoolean(SEMANTIC_CACHE_ENABLED_KEY, enabled);
+    }
+    
+    /**
+     * Gets how similar two questions must be for the answer to one to be reused for the other.
+     * @return The similarity in percent, or default if not set
+     */
+    public static int getSemanticCacheThresholdPercent() {
+        return getPreferences().getInt(SEMANTIC_CACHE_THRESHOLD_KEY, DEFAULT_SEMANTIC_CACHE_THRESHOLD_PERCENT);
+    }
+    
+    /**
+     * Sets how similar two questions must be for the answer to one to be reused for the other.
+     * @param percent The similarity in percent
+     */
+    public static void setSemanticCacheThresholdPercent(int percent) {
+        getPreferences().putInt(SEMANTIC_CACHE_THRESHOLD_KEY, percent);
+    }
+    
+    /**
+     * Gets how many times an API call is attempted in total on 429, 5xx or network errors.
+     * @return The attempt count (1 = no retries), or default if not set
+     */
+    public static int getRetryMaxAttempts() {
+        return getPreferences().getInt(RETRY_MAX_ATTEMPTS_KEY, DEFAULT_RETRY_MAX_ATTEMPTS);
+    }
+    
+    /**
+     * Sets how many times an API call is attempted in total.
+     * @param attempts The attempt count (1 = no retries)
+     */
+    public static void setRetryMaxAttempts(int attempts) {
+        getPreferences().putInt(RETRY_MAX_ATTEMPTS_KEY, attempts);
+    }
+    
+    /**
+     * Gets the client-side request rate limit shared by all AI features.
+     * @return Requests per minute, or 0 to follow the limits reported by the server
+     */
+    public static int getRateLimitRequestsPerMinute() {
+        return getPreferences().getInt(RATE_LIMIT_RPM_KEY, DEFAULT_RATE_LIMIT_RPM);
+    }
+    
+    /**
+     * Sets the client-side request rate limit shared by all AI features.
+     * @param requestsPerMinute Requests per minute, or 0 to follow the server's limits
+     */
+    public static void setRateLimitRequestsPerMinute(int requestsPerMinute) {
+        getPreferences().putInt(RATE_LIMIT_RPM_KEY, requestsPerMinute);
+    }
+    
+    /**
+     * Reads the HTTP transport configuration.
+     * @return The stored settings, with defaults for anything not set
+     */
+    public static TransportSettings getTransportSettings() {
+        Preferences prefs = getPreferences();
+        TransportSettings settings = new TransportSettings();
+        try {
+            settings.setHttpVersion(HttpClient.Version.valueOf(
+                prefs.getString(HTTP_VERSION_KEY, HttpClient.Version.HTTP_2.name())));
+        } catch (IllegalArgumentException e) {
+            settings.setHttpVersion(HttpClient.Version.HTTP_2);
+        }
+        settings.setConnectTimeout(Duration.ofSeconds(
+            Math.max(1, prefs.getInt(CONNECT_TIMEOUT_KEY, DEFAULT_CONNECT_TIMEOUT_SECONDS))));
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            int seconds = prefs.getInt(REQUEST_TIMEOUT_KEY_PREFIX + operation.name(), 0);
+            if (seconds > 0) {
+                settings.setRequestTimeout(operation, Duration.ofSeconds(seconds));
+            }
+        }
+        settings.setVirtualThreads(prefs.getBoolean(VIRTUAL_THREADS_KEY, true));
+        settings.setMaxStreamsPerHost(prefs.getInt(MAX_STREAMS_PER_HOST_KEY, DEFAULT_MAX_STREAMS_PER_HOST));
+        return settings;
+    }
+    
+    /**
+     * Stores the HTTP transport configuration. Takes effect with {@link #applyRuntimeSettings()}.
+     * @param settings The settings to store
+     */
+    public static void setTransportSettings(TransportSettings settings) {
+        Preferences prefs = getPreferences();
+        prefs.putString(HTTP_VERSION_KEY, settings.getHttpVersion().name());
+        prefs.putInt(CONNECT_TIMEOUT_KEY, (int) settings.getConnectTimeout().getSeconds());
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            prefs.putInt(REQUEST_TIMEOUT_KEY_PREFIX + operation.name(),
+                (int) settings.getRequestTimeout(operation).getSeconds());
+        }
+        prefs.putBoolean(VIRTUAL_THREADS_KEY, settings.isVirtualThreads());
+        prefs.putInt(MAX_STREAMS_PER_HOST_KEY, settings.getMaxStreamsPerHost());
+    }
+    
+    /**
+     * Gets the context window of the configured model.
+     * @return The window in tokens, or 0 to derive it from the model name
+     */
+    public static int getContextWindowTokens() {
+        return getPreferences().getInt(CONTEXT_WINDOW_KEY, 0);
+    }
+    
+    /**
+     * Sets the context window of the configured model, for models whose window
+     * cannot be derived from their name.
+     * @param tokens The window in tokens, or 0 to derive it from the model name
+     */
+    public static void setContextWindowTokens(int tokens) {
+        getPreferences().putInt(CONTEXT_WINDOW_KEY, tokens);
+    }
+    
+    /**
+     * Gets the upper bound for prompt size, which keeps latency predictable on
+     * models with very large context windows.
+     * @return The bound in tokens, or 0 to use the whole window
+     */
+    public static int getMaxPromptTokens() {
+        return getPreferences().getInt(MAX_PROMPT_TOKENS_KEY, DEFAULT_MAX_PROMPT_TOKENS);
+    }
+    
+    /**
+     * Sets the upper bound for prompt size.
+     * @param tokens The bound in tokens, or 0 to use the whole window
+     */
+    public static void setMaxPromptTokens(int tokens) {
+        getPreferences().putInt(MAX_PROMPT_TOKENS_KEY, tokens);
+    }
+    
+    /**
+     * Gets how large the history of a Basic Query conversation may grow before older turns are summarized.
+     * @return The size in tokens, 0 if every question stands alone
+     */
+    public static int getConversationHistoryTokens() {
+        return getPreferences().getInt(CONVERSATION_TOKENS_KEY, DEFAULT_CONVERSATION_TOKENS);
+    }
+    
+    /**
+     * Sets how large the history of a Basic Query conversation may grow before older turns are summarized.
+     * @param tokens The size in tokens, 0 if every question stands alone
+     */
+    public static void setConversationHistoryTokens(int tokens) {
+        getPreferences().putInt(CONVERSATION_TOKENS_KEY, tokens);
+    }
+    
+    /**
+     * Gets whether LLM traffic is recorded to or replayed from a cassette.
+     * @return The cassette mode, OFF by default
+     */
+    public static Cassette.Mode getCassetteMode() {
+        try {
+            return Cassette.Mode.valueOf(getPreferences().getString(CASSETTE_MODE_KEY, Cassette.Mode.OFF.name()));
+        } catch (IllegalArgumentException e) {
+            return Cassette.Mode.OFF;
+        }
+    }
+    
+    /**
+     * Sets whether LLM traffic is recorded to or replayed from a cassette.
+     * @param mode The cassette mode
+     */
+    public static void setCassetteMode(Cassette.Mode mode) {
+        getPreferences().putString(CASSETTE_MODE_KEY, mode.name());
+    }
+    
+    /**
+     * Gets the cassette file LLM traffic is recorded to or replayed from.
+     * @return The file, by default in the Protégé data directory
+     */
+    public static File getCassetteFile() {
+        String path = getPreferences().getString(CASSETTE_FILE_KEY, "");
+        if (path.trim().isEmpty()) {
+            File dir = new File(new File(ProtegeDirectories.getDataDirectory(), "vidyaastra"), "cassettes");
+            return new File(dir, "default.jsonl");
+        }
+        return new File(path.trim());
+    }
+    
+    /**
+     * Sets the cassette file LLM traffic is recorded to or replayed from.
+     * @param file The file
+     */
+    public static void setCassetteFile(File file) {
+        getPreferences().putString(CASSETTE_FILE_KEY, file.getPath());
+    }
+    
+    /**
+     * Gets whether replayed responses keep the timing they were recorded with.
+     * @return true to reproduce the recorded latency, false to answer immediately
+     */
+    public static boolean isCassetteOriginalLatency() {
+        return getPreferences().getBoolean(CASSETTE_ORIGINAL_LATENCY_KEY, true);
+    }
+    
+    /**
+     * Sets whether replayed responses keep the timing they were recorded with.
+     * @param originalLatency true to reproduce the recorded latency
+     */
+    public static void setCassetteOriginalLatency(boolean originalLatency) {
+        getPreferences().putBoolean(CASSETTE_ORIGINAL_LATENCY_KEY, originalLatency);
+    }
+    
+    /**
+     * Gets the endpoints tried in order when the configured endpoint fails.
+     * @return The fallback endpoints, each with its own provider; an empty key or model means the primary's
+     */
+    public static List<Endpoint> getFallbackEndpoints() {
+        Preferences prefs = getPreferences();
+        List<String> baseUrls = prefs.getStringList(FAILOVER_BASE_URLS_KEY, Collections.emptyList());
+        List<String> apiKeys = prefs.getStringList(FAILOVER_API_KEYS_KEY, Collections.emptyList());
+        List<String> models = prefs.getStringList(FAILOVER_MODELS_KEY, Collections.emptyList());
+        List<String> providers = prefs.getStringList(FAILOVER_PROVIDERS_KEY, Collections.emptyList());
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < baseUrls.size(); i++) {
+            if (!baseUrls.get(i).trim().isEmpty()) {
+                endpoints.add(new Endpoint(baseUrls.get(i),
+                    i < apiKeys.size() ? apiKeys.get(i) : "",
+                    i < models.size() ? models.get(i) : "",
+                    createProvider(parseKind(i < providers.size() ? providers.get(i) : ""))));
+            }
+        }
+        return endpoints;
+    }
+    
+    /**
+     * Sets the endpoints tried in order when the configured endpoint fails.
+     * @param endpoints The fallback endpoints
+     */
+    public static void setFallbackEndpoints(List<Endpoint> endpoints) {
+        List<String> baseUrls = new ArrayList<>();
+        List<String> apiKeys = new ArrayList<>();
+        List<String> models = new ArrayList<>();
+        List<String> providers = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            baseUrls.add(endpoint.getBaseUrl());
+            apiKeys.add(endpoint.getApiKey());
+            models.add(endpoint.getModel());
+            providers.add(endpoint.getProvider().getKind().name());
+        }
+        Preferences prefs = getPreferences();
+        prefs.putStringList(FAILOVER_BASE_URLS_KEY, baseUrls);
+        prefs.putStringList(FAILOVER_API_KEYS_KEY, apiKeys);
+        prefs.putStringList(FAILOVER_MODELS_KEY, models);
+        prefs.putStringList(FAILOVER_PROVIDERS_KEY, providers);
+    }
+    
+    /**
+     * Gets whether slow calls are also sent to the next endpoint.
+     * @return true to hedge calls that take longer than usual
+     */
+    public static boolean isHedgingEnabled() {
+        return getPreferences().getBoolean(FAILOVER_HEDGING_KEY, false);
+    }
+    
+    /**
+     * Sets whether slow calls are also sent to the next endpoint.
+     * @param enabled true to hedge calls that take longer than usual
+     */
+    public static void setHedgingEnabled(boolean enabled) {
+        getPreferences().putBoolean(FAILOVER_HEDGING_KEY, enabled);
+    }
+    
+    /**
+     * Gets the shortest wait before a call is hedged.
+     * @return The delay in milliseconds
+     */
+    public static int getMinHedgeDelayMillis() {
+        return getPreferences().getInt(FAILOVER_MIN_HEDGE_DELAY_KEY, DEFAULT_MIN_HEDGE_DELAY_MILLIS);
+    }
+    
+    /**
+     * Sets the shortest wait before a call is hedged.
+     * @param millis The delay in milliseconds
+     */
+    public static void setMinHedgeDelayMillis(int millis) {
+        getPreferences().putInt(FAILOVER_MIN_HEDGE_DELAY_KEY, millis);
+    }
+    
+    /**
+     * Gets the number of consecutive failures after which an endpoint is skipped.
+     * @return The failure threshold of the circuit breakers
+     */
+    public static int getBreakerFailureThreshold() {
+        return getPreferences().getInt(FAILOVER_BREAKER_FAILURES_KEY, DEFAULT_BREAKER_FAILURES);
+    }
+    
+    /**
+     * Sets the number of consecutive failures after which an endpoint is skipped.
+     * @param failures The failure threshold of the circuit breakers
+     */
+    public static void setBreakerFailureThreshold(int failures) {
+        getPreferences().putInt(FAILOVER_BREAKER_FAILURES_KEY, failures);
+    }
+    
+    /**
+     * Gets how long a failing endpoint is skipped before it is tried again.
+     * @return The open duration of the circuit breakers in seconds
+     */
+    public static int getBreakerOpenSeconds() {
+        return getPreferences().getInt(FAILOVER_BREAKER_OPEN_SECONDS_KEY, DEFAULT_BREAKER_OPEN_SECONDS);
+    }
+    
+    /**
+     * Sets how long a failing endpoint is skipped before it is tried again.
+     * @param seconds The open duration of the circuit breakers in seconds
+     */
+    public static void setBreakerOpenSeconds(int seconds) {
+        getPreferences().putInt(FAILOVER_BREAKER_OPEN_SECONDS_KEY, seconds);
+    }
+    
+    /**
+     * Gets the provider that calls of an operation are sent to.
+     * @param operation The kind of call
+     * @return The provider; OpenAI-compatible means the endpoint configured above
+     */
+    public static CompletionProvider.Kind getProvider(CompletionOperation operation) {
+        return parseKind(getPreferences().getString(
+            PROVIDER_KEY_PREFIX + operation.name(), CompletionProvider.Kind.OPENAI.name()));
+    }
+    
+    private static CompletionProvider.Kind parseKind(String name) {
+        try {
+            return CompletionProvider.Kind.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return CompletionProvider.Kind.OPENAI;
+        }
+    }
+    
+    /**
+     * Sets the provider that calls of an operation are sent to.
+     * @param operation The kind of call
+     * @param kind The provider
+     */
+    public static void setProvider(CompletionOperation operation, CompletionProvider.Kind kind) {
+        getPreferences().putString(PROVIDER_KEY_PREFIX + operation.name(), kind.name());
+    }
+    
+    /**
+     * Gets the Azure OpenAI resource URL.
+     * @return The URL, such as https://my-resource.openai.azure.com, or empty if not configured
+     */
+    public static String getAzureBaseUrl() {
+        return getPreferences().getString(AZURE_BASE_URL_KEY, "");
+    }
+    
+    /**
+     * Sets the Azure OpenAI resource URL.
+     * @param baseUrl The URL of the resource
+     */
+    public static void setAzureBaseUrl(String baseUrl) {
+        getPreferences().putString(AZURE_BASE_URL_KEY, baseUrl);
+    }
+    
+    /**
+     * Gets the Azure OpenAI API key.
+     * @return The key, or empty if not configured
+     */
+    public static String getAzureApiKey() {
+        return getPreferences().getString(AZURE_API_KEY_KEY, "");
+    }
+    
+    /**
+     * Sets the Azure OpenAI API key.
+     * @param apiKey The key
+     */
+    public static void setAzureApiKey(String apiKey) {
+        getPreferences().putString(AZURE_API_KEY_KEY, apiKey);
+    }
+    
+    /**
+     * Gets the Azure OpenAI deployment, which takes the place of the model name.
+     * @return The deployment name, or empty if not configured
+     */
+    public static String getAzureDeployment() {
+        return getPreferences().getString(AZURE_DEPLOYMENT_KEY, "");
+    }
+    
+    /**
+     * Sets the Azure OpenAI deployment.
+     * @param deployment The deployment name
+     */
+    public static void setAzureDeployment(String deployment) {
+        getPreferences().putString(AZURE_DEPLOYMENT_KEY, deployment);
+    }
+    
+    /**
+     * Gets the Azure OpenAI API version.
+     * @return The api-version parameter sent with every request
+     */
+    public static String getAzureApiVersion() {
+        return getPreferences().getString(AZURE_API_VERSION_KEY, AzureOpenAiProvider.DEFAULT_API_VERSION);
+    }
+    
+    /**
+     * Sets the Azure OpenAI API version.
+     * @param apiVersion The api-version parameter sent with every request
+     */
+    public static void setAzureApiVersion(String apiVersion) {
+        getPreferences().putString(AZURE_API_VERSION_KEY, apiVersion);
+    }
+    
+    /**
+     * Gets the base URL of the inference server on this machine.
+     * @return The base URL of its OpenAI-compatible API
+     */
+    public static String getLocalBaseUrl() {
+        return getPreferences().getString(LOCAL_BASE_URL_KEY, LocalServerProvider.DEFAULT_BASE_URL);
+    }
+    
+    /**
+     * Sets the base URL of the inference server on this machine.
+     * @param baseUrl The base URL of its OpenAI-compatible API
+     */
+    public static void setLocalBaseUrl(String baseUrl) {
+        getPreferences().putString(LOCAL_BASE_URL_KEY, baseUrl);
+    }
+    
+    /**
+     * Gets the API key of the local inference server.
+     * @return The key, or empty if the server does not check one
+     */
+    public static String getLocalApiKey() {
+        return getPreferences().getString(LOCAL_API_KEY_KEY, "");
+    }
+    
+    /**
+     * Sets the API key of the local inference server.
+     * @param apiKey The key, or empty if the server does not check one
+     */
+    public static void setLocalApiKey(String apiKey) {
+        getPreferences().putString(LOCAL_API_KEY_KEY, apiKey);
+    }
+    
+    /**
+     * Gets the model the local inference server is asked for.
+     * @return The model name; servers that host a single model ignore it
+     */
+    public static String getLocalModel() {
+        return getPreferences().getString(LOCAL_MODEL_KEY, "");
+    }
+    
+    /**
+     * Sets the model the local inference server is asked for.
+     * @param model The model name
+     */
+    public static void setLocalModel(String model) {
+        getPreferences().putString(LOCAL_MODEL_KEY, model);
+    }
+    
+    /**
+     * Creates the conventions of a provider as configured, such as the Azure API version.
+     * @param kind The provider
+     * @return The provider
+     */
+    public static CompletionProvider createProvider(CompletionProvider.Kind kind) {
+        switch (kind) {
+            case AZURE:
+                return CompletionProvider.azure(getAzureApiVersion());
+            case LOCAL:
+                return CompletionProvider.localServer();
+            default:
+                return CompletionProvider.openAi();
+        }
+    }
+    
+    /**
+     * Gets the endpoint of a provider as configured.
+     * @param kind The provider
+     * @return The endpoint, or null if the provider's base URL is not configured
+     */
+    public static Endpoint getProviderEndpoint(CompletionProvider.Kind kind) {
+        switch (kind) {
+            case AZURE:
+                return getAzureBaseUrl().trim().isEmpty() ? null : new Endpoint(getAzureBaseUrl(),
+                    getAzureApiKey(), getAzureDeployment(), createProvider(kind));
+            case LOCAL:
+                return getLocalBaseUrl().trim().isEmpty() ? null : new Endpoint(getLocalBaseUrl(),
+                    getLocalApiKey(), getLocalModel(), createProvider(kind));
+            default:
+                return getOpenAiBaseUrl().trim().isEmpty() ? null
+                    : new Endpoint(getOpenAiBaseUrl(), getOpenAiApiKey(), getOpenAiModel());
+        }
+    }
+    
+    /**
+     * Gets the models calls of an operation are routed to.
+     * @param operation The kind of call
+     * @return Comma-separated model names, smallest first, or empty to use the configured model
+     */
+    public static String getRoutingModels(CompletionOperation operation) {
+        return getPreferences().getString(ROUTING_KEY_PREFIX + operation.name() + ROUTING_MODELS_SUFFIX, "");
+    }
+    
+    /**
+     * Sets the models calls of an operation are routed to.
+     * @param operation The kind of call
+     * @param models Comma-separated model names, smallest first, or empty to use the configured model
+     */
+    public static void setRoutingModels(CompletionOperation operation, String models) {
+        getPreferences().putString(ROUTING_KEY_PREFIX + operation.name() + ROUTING_MODELS_SUFFIX, models);
+    }
+    
+    /**
+     * Gets the largest prompt the first routed model of an operation is given.
+     * @param operation The kind of call
+     * @return The limit in tokens, 0 for any size
+     */
+    public static int getRoutingMaxPromptTokens(CompletionOperation operation) {
+        return getPreferences().getInt(ROUTING_KEY_PREFIX + operation.name() + ROUTING_MAX_PROMPT_TOKENS_SUFFIX, 0);
+    }
+    
+    /**
+     * Sets the largest prompt the first routed model of an operation is given.
+     * @param operation The kind of call
+     * @param tokens The limit in tokens, 0 for any size
+     */
+    public static void setRoutingMaxPromptTokens(CompletionOperation operation, int tokens) {
+        getPreferences().putInt(ROUTING_KEY_PREFIX + operation.name() + ROUTING_MAX_PROMPT_TOKENS_SUFFIX, tokens);
+    }
+    
+    /**
+     * Gets the 95th percentile latency a routed model must keep to for an operation.
+     * @param operation The kind of call
+     * @return The target in milliseconds, 0 for none
+     */
+    public static int getRoutingLatencyTargetMillis(CompletionOperation operation) {
+        return getPreferences().getInt(ROUTING_KEY_PREFIX + operation.name() + ROUTING_LATENCY_TARGET_SUFFIX, 0);
+    }
+    
+    /**
+     * Sets the 95th percentile latency a routed model must keep to for an operation.
+     * @param operation The kind of call
+     * @param millis The target in milliseconds, 0 for none
+     */
+    public static void setRoutingLatencyTargetMillis(CompletionOperation operation, int millis) {
+        getPreferences().putInt(ROUTING_KEY_PREFIX + operation.name() + ROUTING_LATENCY_TARGET_SUFFIX, millis);
+    }
+    
+    /**
+     * Gets the share of failed or rejected calls above which a routed model is passed over.
+     * @return The share in percent
+     */
+    public static int getRoutingMaxErrorPercent() {
+        return getPreferences().getInt(ROUTING_MAX_ERROR_PERCENT_KEY, DEFAULT_ROUTING_MAX_ERROR_PERCENT);
+    }
+    
+    /**
+     * Sets the share of failed or rejected calls above which a routed model is passed over.
+     * @param percent The share in percent
+     */
+    public static void setRoutingMaxErrorPercent(int percent) {
+        getPreferences().putInt(ROUTING_MAX_ERROR_PERCENT_KEY, percent);
+    }
+    
+    /**
+     * Pushes the stored settings into the runtime components that depend on them.
+     * Called when the plugin initialises and whenever the preferences are applied.
+     */
+    public static void applyRuntimeSettings() {
+        CompletionCache cache = CompletionCache.getDefault();
+        cache.setEnabled(isResponseCacheEnabled());
+        cache.setTtl(Duration.ofHours(Math.max(1, getResponseCacheTtlHours())));
+        SemanticCache semanticCache = SemanticCache.getDefault();
+        semanticCache.setEnabled(isSemanticCacheEnabled());
+        semanticCache.setThreshold(Math.max(85, Math.min(100, getSemanticCacheThresholdPercent())) / 100.0);
+        
+        RetryPolicy current = RetryPolicy.getDefault();
+        RetryPolicy.setDefault(new RetryPolicy(Math.max(1, getRetryMaxAttempts()),
+                current.getBaseDelay(), current.getMaxDelay()));
+        RateLimiter.getDefault().setRequestsPerMinute(getRateLimitRequestsPerMinute());
+        
+        // Rebuilds the shared HTTP client only if the transport settings changed
+        HttpTransport.getDefault().configure(getTransportSettings());
+        
+        TokenBudget.setContextWindow(getOpenAiModel(), getContextWindowTokens());
+        TokenBudget.setDefaultMaxPromptTokens(getMaxPromptTokens());
+        
+        EndpointPool.getDefault()
+            .setFallbacks(getFallbackEndpoints())
+            .setHedging(isHedgingEnabled())
+            .setMinHedgeDelay(Duration.ofMillis(Math.max(0, getMinHedgeDelayMillis())))
+            .setBreakerPolicy(Math.max(1, getBreakerFailureThreshold()),
+                Duration.ofSeconds(Math.max(1, getBreakerOpenSeconds())));
+        
+        applyRoutes();
+        applyModelRules();
+        applyCassette();
+    }
+    
+    private static void applyModelRules() {
+        ModelRouter router = ModelRouter.getDefault();
+        double maxErrorRate = Math.max(0, Math.min(100, getRoutingMaxErrorPercent())) / 100.0;
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            int latencyTarget = getRoutingLatencyTargetMillis(operation);
+            router.setRule(operation, ModelRouter.Rule.parse(getRoutingModels(operation),
+                getRoutingMaxPromptTokens(operation),
+                latencyTarget > 0 ? Duration.ofMillis(latencyTarget) : null, maxErrorRate));
+        }
+    }
+    
+    /**
+     * Routes every operation whose provider is not the default one to that
+     * provider's endpoint. Operations whose provider is not configured stay
+     * with the default endpoint.
+     */
+    private static void applyRoutes() {
+        EndpointRoutes routes = EndpointRoutes.getDefault();
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            CompletionProvider.Kind kind = getProvider(operation);
+            Endpoint endpoint = kind != CompletionProvider.Kind.OPENAI ? getProviderEndpoint(kind) : null;
+            if (kind != CompletionProvider.Kind.OPENAI && endpoint == null) {
+                System.err.println("No " + kind + " endpoint configured, " + operation
+                    + " calls use the default endpoint.");
+            }
+            routes.setEndpoint(operation, endpoint);
+        }
+    }
+    
+    /**
+     * Opens the configured cassette, keeping the current one if nothing changed
+     * so that a recording or replay in progress is not restarted.
+     */
+    private static void applyCassette() {
+        Cassette current = Cassette.getDefault();
+        Cassette.Mode mode = getCassetteMode();
+        File file = getCassetteFile();
+        boolean originalLatency = isCassetteOriginalLatency();
+        if (mode == current.getMode()
+                && (mode == Cassette.Mode.OFF
+                    || (file.equals(current.getFile()) && originalLatency == current.isOriginalLatency()))) {
+            return;
+        }
+        if (mode == Cassette.Mode.OFF) {
+            Cassette.setDefault(null);
+            return;
+        }
+        try {
+            Cassette.setDefault(Cassette.open(file, mode, originalLatency));
+        } catch (IOException e) {
+            System.err.println("Could not open cassette " + file + ": " + e.getMessage());
+            Cassette.setDefault(null);
+        }
+    }
+    
+    /**
+     * Opens a connection to the configured endpoint, and to those operations
+     * are routed to, in the background so that the first query is not slowed
+     * down by connection setup. Skipped if no API key is configured, responses
+     * are replayed from a cassette or the endpoint is unreachable.
+     */
+    public static void prewarmConnection() {
+        if (!isOpenAiConfigured() || Cassette.getDefault().isReplaying()) {
+            return;
+        }
+        new OpenAiCaller(getOpenAiApiKey(), getOpenAiModel(), getOpenAiBaseUrl()).prewarmAsync();
+        new HashSet<>(EndpointRoutes.getDefault().getEndpoints().values())
+            .forEach(endpoint -> new OpenAiCaller(endpoint).prewarmAsync());
+    }
 }
@@ -1,18 +1,49 @@
 package org.vidyaastra.ui;
 
 import java.awt.BorderLayout;
+import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.io.File;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import javax.swing.BorderFactory;
+import javax.swing.DefaultCellEditor;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JPasswordField;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
 
 import org.protege.editor.core.ui.preferences.PreferencesLayoutPanel;
 import org.protege.editor.owl.ui.preferences.OWLPreferencesPanel;
+import org.vidyaastra.Cassette;
+import org.vidyaastra.CompletionCache;
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.CompletionProvider;
+import org.vidyaastra.Endpoint;
+import org.vidyaastra.EndpointPool;
+import org.vidyaastra.HttpTransport;
+import org.vidyaastra.ModelRouter;
+import org.vidyaastra.SemanticCache;
+import org.vidyaastra.RateLimiter;
+import org.vidyaastra.TokenBudget;
+import org.vidyaastra.TransportSettings;
 
 /**
  * Preferences panel for VidyaAstra plugin settings, including OpenAI configuration.
@@ -24,6 +55,42 @@ public class VidyaastraPreferencesPanel extends OWLPreferencesPanel {
     private JTextField baseUrlField;
     private JPasswordField apiKeyField;
     private JTextField modelField;
+    private JCheckBox cacheEnabledBox;
+    private JSpinner cacheTtlSpinner;
+    private JCheckBox semanticCacheBox;
+    private JSpinner semanticThresholdSpinner;
+    private JSpinner retryAttemptsSpinner;
+    private JSpinner rateLimitSpinner;
+    private JComboBox<HttpClient.Version> httpVersionBox;
+    private JSpinner connectTimeoutSpinner;
+    private final Map<CompletionOperation, JSpinner> requestTimeoutSpinners = new EnumMap<>(CompletionOperation.class);
+    private JCheckBox virtualThreadsBox;
+    private JSpinner maxStreamsSpinner;
+    private JSpinner contextWindowSpinner;
+    private JSpinner maxPromptTokensSpinner;
+    private JSpinner conversationTokensSpinner;
+    private JComboBox<Cassette.Mode> cassetteModeBox;
+    private JTextField cassetteFileField;
+    private JCheckBox cassetteLatencyBox;
+    private DefaultTableModel fallbackModel;
+    private JTable fallbackTable;
+    private JCheckBox hedgingBox;
+    private JSpinner minHedgeDelaySpinner;
+    private JSpinner breakerFailuresSpinner;
+    private JSpinner breakerOpenSpinner;
+    private JTextField azureBaseUrlField;
+    private JPasswordField azureApiKeyField;
+    private JTextField azureDeploymentField;
+    private JTextField azureApiVersionField;
+    private JTextField localBaseUrlField;
+    private JPasswordField localApiKeyField;
+    private JTextField localModelField;
+    private final Map<CompletionOperation, JComboBox<CompletionProvider.Kind>> providerBoxes =
+        new EnumMap<>(CompletionOperation.class);
+    private final Map<CompletionOperation, JTextField> routingModelFields = new EnumMap<>(CompletionOperation.class);
+    private final Map<CompletionOperation, JSpinner> routingPromptSpinners = new EnumMap<>(CompletionOperation.class);
+    private final Map<CompletionOperation, JSpinner> routingLatencySpinners = new EnumMap<>(CompletionOperation.class);
+    private JSpinner routingErrorSpinner;
     
     @Override
     public void initialise() throws Exception {
@@ -91,6 +158,583 @@ public class VidyaastraPreferencesPanel extends OWLPreferencesPanel {
         
         panel.addGroup("AI Integration");
         panel.addGroupComponent(openAiPanel);
+        
+        panel.addGroup("Response Cache");
+        panel.addGroupComponent(createCachePanel());
+        
+        panel.addGroup("Providers");
+        panel.addGroupComponent(createProviderPanel());
+        
+        panel.addGroup("Model Routing");
+        panel.addGroupComponent(createRoutingPanel());
+        
+        panel.addGroup("Failover");
+        panel.addGroupComponent(createFailoverPanel());
+        
+        panel.addGroup("Rate Limiting");
+        panel.addGroupComponent(createRateLimitPanel());
+        
+        panel.addGroup("HTTP Transport");
+        panel.addGroupComponent(createTransportPanel());
+        
+        panel.addGroup("Prompt Budget");
+        panel.addGroupComponent(createBudgetPanel());
+        
+        panel.addGroup("Record / Replay");
+        panel.addGroupComponent(createCassettePanel());
+    }
+    
+    private JPanel createProviderPanel() {
+        JPanel providerPanel = new JPanel(new GridBagLayout());
+        providerPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "Providers per Operation"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        int row = 0;
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            gbc.gridx = 0;
+            gbc.gridy = row++;
+            providerPanel.add(new JLabel(operation.getDisplayName() + ":"), gbc);
+            
+            gbc.gridx = 1;
+            JComboBox<CompletionProvider.Kind> box = new JComboBox<>(CompletionProvider.Kind.values());
+            box.setSelectedItem(VidyaastraPreferences.getProvider(operation));
+            providerBoxes.put(operation, box);
+            providerPanel.add(box, gbc);
+        }
+        
+        gbc.gridx = 0;
+        gbc.gridy = row++;
+        gbc.gridwidth = 2;
+        providerPanel.add(new JLabel("<html><b>Azure OpenAI</b></html>"), gbc);
+        gbc.gridwidth = 1;
+        azureBaseUrlField = new JTextField(VidyaastraPreferences.getAzureBaseUrl(), 30);
+        addRow(providerPanel, gbc, row++, "Resource URL:", azureBaseUrlField);
+        azureApiKeyField = new JPasswordField(VidyaastraPreferences.getAzureApiKey(), 30);
+        addRow(providerPanel, gbc, row++, "API Key:", azureApiKeyField);
+        azureDeploymentField = new JTextField(VidyaastraPreferences.getAzureDeployment(), 30);
+        addRow(providerPanel, gbc, row++, "Deployment:", azureDeploymentField);
+        azureApiVersionField = new JTextField(VidyaastraPreferences.getAzureApiVersion(), 30);
+        addRow(providerPanel, gbc, row++, "API version:", azureApiVersionField);
+        
+        gbc.gridx = 0;
+        gbc.gridy = row++;
+        gbc.gridwidth = 2;
+        providerPanel.add(new JLabel("<html><b>Local server</b></html>"), gbc);
+        gbc.gridwidth = 1;
+        localBaseUrlField = new JTextField(VidyaastraPreferences.getLocalBaseUrl(), 30);
+        addRow(providerPanel, gbc, row++, "Base URL:", localBaseUrlField);
+        localModelField = new JTextField(VidyaastraPreferences.getLocalModel(), 30);
+        addRow(providerPanel, gbc, row++, "Model:", localModelField);
+        localApiKeyField = new JPasswordField(VidyaastraPreferences.getLocalApiKey(), 30);
+        addRow(providerPanel, gbc, row++, "API Key (optional):", localApiKeyField);
+        
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        providerPanel.add(new JLabel("<html><i>OpenAI-compatible uses the endpoint configured under AI Integration.<br>"
+            + "A local server is any OpenAI-compatible inference server on this machine, such as<br>"
+            + "llama.cpp (http://localhost:8080/v1) or Ollama (http://localhost:11434/v1).</i></html>"), gbc);
+        
+        return providerPanel;
+    }
+    
+    private static void addRow(JPanel panel, GridBagConstraints gbc, int row, String label, JComponent field) {
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0.0;
+        panel.add(new JLabel(label), gbc);
+        
+        gbc.gridx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.weightx = 1.0;
+        panel.add(field, gbc);
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0.0;
+    }
+    
+    private JPanel createRoutingPanel() {
+        JPanel routingPanel = new JPanel(new GridBagLayout());
+        routingPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "Models per Operation"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        gbc.gridy = 0;
+        gbc.gridx = 1;
+        routingPanel.add(new JLabel("Models, smallest first"), gbc);
+        gbc.gridx = 2;
+        routingPanel.add(new JLabel("First model up to (tokens)"), gbc);
+        gbc.gridx = 3;
+        routingPanel.add(new JLabel("p95 target (ms)"), gbc);
+        
+        int row = 1;
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            gbc.gridy = row++;
+            gbc.gridx = 0;
+            routingPanel.add(new JLabel(operation.getDisplayName() + ":"), gbc);
+            
+            gbc.gridx = 1;
+            JTextField modelsField = new JTextField(VidyaastraPreferences.getRoutingModels(operation), 24);
+            routingModelFields.put(operation, modelsField);
+            routingPanel.add(modelsField, gbc);
+            
+            gbc.gridx = 2;
+            JSpinner promptSpinner = new JSpinner(new SpinnerNumberModel(
+                Math.max(0, VidyaastraPreferences.getRoutingMaxPromptTokens(operation)), 0, 10_000_000, 1000));
+            routingPromptSpinners.put(operation, promptSpinner);
+            routingPanel.add(promptSpinner, gbc);
+            
+            gbc.gridx = 3;
+            JSpinner latencySpinner = new JSpinner(new SpinnerNumberModel(
+                Math.max(0, VidyaastraPreferences.getRoutingLatencyTargetMillis(operation)), 0, 3_600_000, 250));
+            routingLatencySpinners.put(operation, latencySpinner);
+            routingPanel.add(latencySpinner, gbc);
+        }
+        
+        gbc.gridy = row++;
+        gbc.gridx = 0;
+        gbc.gridwidth = 2;
+        routingPanel.add(new JLabel("Pass a model over above this error rate (%):"), gbc);
+        
+        gbc.gridx = 2;
+        gbc.gridwidth = 1;
+        routingErrorSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(0, Math.min(100, VidyaastraPreferences.getRoutingMaxErrorPercent())), 0, 100, 5));
+        routingPanel.add(routingErrorSpinner, gbc);
+        
+        gbc.gridy = row;
+        gbc.gridx = 0;
+        gbc.gridwidth = 4;
+        routingPanel.add(new JLabel(String.format("<html><i>Empty uses the model configured under AI Integration. "
+            + "A call goes to the first model unless its prompt is larger,<br>or that model's calls over the last "
+            + "%d minutes failed too often or were too slow. Answers that cannot be parsed<br>"
+            + "(NLP queries, modifications) are asked of the next model again.</i></html>",
+            ModelRouter.STATS_WINDOW.toMinutes())), gbc);
+        
+        return routingPanel;
+    }
+    
+    private JPanel createFailoverPanel() {
+        JPanel failoverPanel = new JPanel(new GridBagLayout());
+        failoverPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "Fallback Endpoints"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        fallbackModel = new DefaultTableModel(new Object[] {"Base URL", "API Key", "Model", "Provider"}, 0);
+        for (Endpoint endpoint : VidyaastraPreferences.getFallbackEndpoints()) {
+            fallbackModel.addRow(new Object[] {endpoint.getBaseUrl(), endpoint.getApiKey(), endpoint.getModel(),
+                endpoint.getProvider().getKind()});
+        }
+        fallbackTable = new JTable(fallbackModel);
+        fallbackTable.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE);
+        fallbackTable.getColumnModel().getColumn(3).setCellEditor(
+            new DefaultCellEditor(new JComboBox<>(CompletionProvider.Kind.values())));
+        // Keys are masked unless they are being edited
+        fallbackTable.getColumnModel().getColumn(1).setCellRenderer(new DefaultTableCellRenderer() {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected void setValue(Object value) {
+                super.setValue(value == null || value.toString().isEmpty() ? "" : "\u2022\u2022\u2022\u2022\u2022\u2022");
+            }
+        });
+        JScrollPane tableScroll = new JScrollPane(fallbackTable);
+        tableScroll.setPreferredSize(new Dimension(480, 90));
+        
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 3;
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.weightx = 1.0;
+        failoverPanel.add(tableScroll, gbc);
+        
+        JPanel buttons = new JPanel();
+        JButton addButton = new JButton("Add");
+        addButton.addActionListener(e -> fallbackModel.addRow(
+            new Object[] {"", "", "", CompletionProvider.Kind.OPENAI}));
+        JButton removeButton = new JButton("Remove");
+        removeButton.addActionListener(e -> {
+            int row = fallbackTable.getSelectedRow();
+            if (row >= 0) {
+                if (fallbackTable.isEditing()) {
+                    fallbackTable.getCellEditor().cancelCellEditing();
+                }
+                fallbackModel.removeRow(row);
+            }
+        });
+        JButton upButton = new JButton("Move Up");
+        upButton.addActionListener(e -> {
+            int row = fallbackTable.getSelectedRow();
+            if (row > 0) {
+                fallbackModel.moveRow(row, row, row - 1);
+                fallbackTable.setRowSelectionInterval(row - 1, row - 1);
+            }
+        });
+        buttons.add(addButton);
+        buttons.add(removeButton);
+        buttons.add(upButton);
+        
+        gbc.gridy = 1;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0.0;
+        failoverPanel.add(buttons, gbc);
+        
+        gbc.gridy = 2;
+        failoverPanel.add(new JLabel("<html><i>Tried in this order when the endpoint above fails. "
+            + "An empty key or model means the one above.<br>For Azure OpenAI, the model is the deployment "
+            + "and the API version is the one set for Azure.</i></html>"), gbc);
+        
+        gbc.gridy = 3;
+        gbc.gridwidth = 1;
+        failoverPanel.add(new JLabel("Skip an endpoint after consecutive failures:"), gbc);
+        
+        gbc.gridx = 1;
+        breakerFailuresSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(1, VidyaastraPreferences.getBreakerFailureThreshold()), 1, 100, 1));
+        failoverPanel.add(breakerFailuresSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        failoverPanel.add(new JLabel("Try a skipped endpoint again after (seconds):"), gbc);
+        
+        gbc.gridx = 1;
+        breakerOpenSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(1, VidyaastraPreferences.getBreakerOpenSeconds()), 1, 3600, 5));
+        failoverPanel.add(breakerOpenSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        gbc.gridwidth = 2;
+        hedgingBox = new JCheckBox("Also send slow calls to the next endpoint; the first answer wins");
+        hedgingBox.setSelected(VidyaastraPreferences.isHedgingEnabled());
+        failoverPanel.add(hedgingBox, gbc);
+        
+        gbc.gridy = 6;
+        gbc.gridwidth = 1;
+        failoverPanel.add(new JLabel("Wait at least (milliseconds):"), gbc);
+        
+        gbc.gridx = 1;
+        minHedgeDelaySpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(0, VidyaastraPreferences.getMinHedgeDelayMillis()), 0, 600_000, 250));
+        failoverPanel.add(minHedgeDelaySpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 7;
+        gbc.gridwidth = 3;
+        failoverPanel.add(new JLabel(String.format("<html><i>Slow means slower than 95%% of the last calls of the "
+            + "same kind, once %d have been seen.<br>Hedged calls may be billed twice.</i></html>",
+            EndpointPool.MIN_HEDGE_SAMPLES)), gbc);
+        
+        return failoverPanel;
+    }
+    
+    private List<Endpoint> getFallbackEndpoints() {
+        if (fallbackTable.isEditing()) {
+            fallbackTable.getCellEditor().stopCellEditing();
+        }
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (int row = 0; row < fallbackModel.getRowCount(); row++) {
+            String baseUrl = cellText(row, 0);
+            if (!baseUrl.isEmpty()) {
+                Object kind = fallbackModel.getValueAt(row, 3);
+                endpoints.add(new Endpoint(baseUrl, cellText(row, 1), cellText(row, 2),
+                    VidyaastraPreferences.createProvider(kind instanceof CompletionProvider.Kind
+                        ? (CompletionProvider.Kind) kind : CompletionProvider.Kind.OPENAI)));
+            }
+        }
+        return endpoints;
+    }
+    
+    private String cellText(int row, int column) {
+        Object value = fallbackModel.getValueAt(row, column);
+        return value != null ? value.toString().trim() : "";
+    }
+    
+    private JPanel createBudgetPanel() {
+        JPanel budgetPanel = new JPanel(new GridBagLayout());
+        budgetPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "Ontology Context Size"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        budgetPanel.add(new JLabel("Model context window (tokens, 0 = by model name):"), gbc);
+        
+        gbc.gridx = 1;
+        contextWindowSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(0, VidyaastraPreferences.getContextWindowTokens()), 0, 10_000_000, 1024));
+        budgetPanel.add(contextWindowSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        budgetPanel.add(new JLabel("Max prompt tokens (0 = whole window):"), gbc);
+        
+        gbc.gridx = 1;
+        maxPromptTokensSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(0, VidyaastraPreferences.getMaxPromptTokens()), 0, 10_000_000, 1000));
+        budgetPanel.add(maxPromptTokensSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        budgetPanel.add(new JLabel("Basic Query history before summarizing (tokens, 0 = no follow-ups):"), gbc);
+        
+        gbc.gridx = 1;
+        conversationTokensSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(0, VidyaastraPreferences.getConversationHistoryTokens()), 0, 1_000_000, 512));
+        budgetPanel.add(conversationTokensSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 3;
+        gbc.gridwidth = 2;
+        String model = VidyaastraPreferences.getOpenAiModel();
+        budgetPanel.add(new JLabel(String.format("<html><i>Context window of %s: %,d tokens. "
+            + "Larger ontologies are trimmed to their most connected entities.</i></html>",
+            model, TokenBudget.getContextWindow(model))), gbc);
+        
+        return budgetPanel;
+    }
+    
+    private JPanel createCassettePanel() {
+        JPanel cassettePanel = new JPanel(new GridBagLayout());
+        cassettePanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "LLM Traffic Cassette"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        cassettePanel.add(new JLabel("Mode:"), gbc);
+        
+        gbc.gridx = 1;
+        cassetteModeBox = new JComboBox<>(Cassette.Mode.values());
+        cassetteModeBox.setSelectedItem(VidyaastraPreferences.getCassetteMode());
+        cassettePanel.add(cassetteModeBox, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        cassettePanel.add(new JLabel("Cassette file:"), gbc);
+        
+        gbc.gridx = 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.weightx = 1.0;
+        cassetteFileField = new JTextField(30);
+        cassetteFileField.setText(VidyaastraPreferences.getCassetteFile().getPath());
+        cassettePanel.add(cassetteFileField, gbc);
+        
+        gbc.gridx = 2;
+        gbc.fill = GridBagConstraints.NONE;
+        gbc.weightx = 0.0;
+        JButton browseButton = new JButton("Browse...");
+        browseButton.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setSelectedFile(new File(cassetteFileField.getText().trim()));
+            if (fileChooser.showDialog(this, "Select") == JFileChooser.APPROVE_OPTION) {
+                cassetteFileField.setText(fileChooser.getSelectedFile().getPath());
+            }
+        });
+        cassettePanel.add(browseButton, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 3;
+        cassetteLatencyBox = new JCheckBox("Replay with the recorded latency (otherwise answer immediately)");
+        cassetteLatencyBox.setSelected(VidyaastraPreferences.isCassetteOriginalLatency());
+        cassettePanel.add(cassetteLatencyBox, gbc);
+        
+        gbc.gridy = 3;
+        cassettePanel.add(new JLabel("<html><i>Record captures every LLM request and response; Replay serves them<br>"
+            + "back without network access. The response cache is bypassed in both modes.<br>"
+            + "Current: " + Cassette.getDefault() + "</i></html>"), gbc);
+        
+        return cassettePanel;
+    }
+    
+    private JPanel createTransportPanel() {
+        TransportSettings settings = VidyaastraPreferences.getTransportSettings();
+        
+        JPanel transportPanel = new JPanel(new GridBagLayout());
+        transportPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "Connection and Timeouts"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        transportPanel.add(new JLabel("HTTP version:"), gbc);
+        
+        gbc.gridx = 1;
+        httpVersionBox = new JComboBox<>(HttpClient.Version.values());
+        httpVersionBox.setSelectedItem(settings.getHttpVersion());
+        transportPanel.add(httpVersionBox, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        transportPanel.add(new JLabel("Connect timeout (seconds):"), gbc);
+        
+        gbc.gridx = 1;
+        connectTimeoutSpinner = new JSpinner(new SpinnerNumberModel(
+            (int) settings.getConnectTimeout().getSeconds(), 1, 300, 1));
+        transportPanel.add(connectTimeoutSpinner, gbc);
+        
+        int row = 2;
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            gbc.gridx = 0;
+            gbc.gridy = row++;
+            transportPanel.add(new JLabel(operation.getDisplayName() + " timeout (seconds):"), gbc);
+            
+            gbc.gridx = 1;
+            JSpinner spinner = new JSpinner(new SpinnerNumberModel(
+                (int) settings.getRequestTimeout(operation).getSeconds(), 5, 3600, 5));
+            requestTimeoutSpinners.put(operation, spinner);
+            transportPanel.add(spinner, gbc);
+        }
+        
+        gbc.gridx = 0;
+        gbc.gridy = row++;
+        transportPanel.add(new JLabel("Max concurrent requests per host (0 = unlimited):"), gbc);
+        
+        gbc.gridx = 1;
+        maxStreamsSpinner = new JSpinner(new SpinnerNumberModel(settings.getMaxStreamsPerHost(), 0, 256, 1));
+        transportPanel.add(maxStreamsSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        gbc.gridwidth = 2;
+        virtualThreadsBox = new JCheckBox("Use virtual threads for network I/O" +
+            (HttpTransport.isVirtualThreadSupported() ? "" : " (requires Java 21, not available)"));
+        virtualThreadsBox.setSelected(settings.isVirtualThreads());
+        virtualThreadsBox.setEnabled(HttpTransport.isVirtualThreadSupported());
+        transportPanel.add(virtualThreadsBox, gbc);
+        
+        gbc.gridy = row + 1;
+        HttpTransport transport = HttpTransport.getDefault();
+        transportPanel.add(new JLabel("<html><i>Time to first byte, new connection: "
+            + transport.getColdTimeToFirstByte() + "<br>Time to first byte, reused connection: "
+            + transport.getWarmTimeToFirstByte() + "</i></html>"), gbc);
+        
+        return transportPanel;
+    }
+    
+    private JPanel createRateLimitPanel() {
+        JPanel rateLimitPanel = new JPanel(new GridBagLayout());
+        rateLimitPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "Retries and Request Pacing"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        rateLimitPanel.add(new JLabel("Attempts per request (429/5xx):"), gbc);
+        
+        gbc.gridx = 1;
+        retryAttemptsSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(1, VidyaastraPreferences.getRetryMaxAttempts()), 1, 10, 1));
+        rateLimitPanel.add(retryAttemptsSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        rateLimitPanel.add(new JLabel("Max requests per minute (0 = follow server):"), gbc);
+        
+        gbc.gridx = 1;
+        rateLimitSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(0, VidyaastraPreferences.getRateLimitRequestsPerMinute()), 0, 100000, 10));
+        rateLimitPanel.add(rateLimitSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 2;
+        RateLimiter limiter = RateLimiter.getDefault();
+        rateLimitPanel.add(new JLabel(String.format("<html><i>%d requests delayed, %.1f s waited in total</i></html>",
+            limiter.getThrottledCount(), limiter.getTotalWait().toMillis() / 1000.0)), gbc);
+        
+        return rateLimitPanel;
+    }
+    
+    private JPanel createCachePanel() {
+        JPanel cachePanel = new JPanel(new GridBagLayout());
+        cachePanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createEtchedBorder(), "LLM Response Cache"));
+        
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(5, 10, 5, 10);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.gridwidth = 2;
+        cacheEnabledBox = new JCheckBox("Reuse responses for identical requests");
+        cacheEnabledBox.setSelected(VidyaastraPreferences.isResponseCacheEnabled());
+        cachePanel.add(cacheEnabledBox, gbc);
+        
+        gbc.gridy = 1;
+        gbc.gridwidth = 1;
+        cachePanel.add(new JLabel("Keep responses for (hours):"), gbc);
+        
+        gbc.gridx = 1;
+        cacheTtlSpinner = new JSpinner(new SpinnerNumberModel(
+            VidyaastraPreferences.getResponseCacheTtlHours(), 1, 24 * 30, 1));
+        cachePanel.add(cacheTtlSpinner, gbc);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 2;
+        semanticCacheBox = new JCheckBox("Reuse Basic Query answers for similar questions about an unchanged ontology");
+        semanticCacheBox.setSelected(VidyaastraPreferences.isSemanticCacheEnabled());
+        cachePanel.add(semanticCacheBox, gbc);
+        
+        gbc.gridy = 3;
+        gbc.gridwidth = 1;
+        cachePanel.add(new JLabel("Minimum similarity (%):"), gbc);
+        
+        gbc.gridx = 1;
+        semanticThresholdSpinner = new JSpinner(new SpinnerNumberModel(
+            Math.max(85, Math.min(100, VidyaastraPreferences.getSemanticCacheThresholdPercent())), 85, 100, 1));
+        cachePanel.add(semanticThresholdSpinner, gbc);
+        
+        CompletionCache cache = CompletionCache.getDefault();
+        SemanticCache semanticCache = SemanticCache.getDefault();
+        JLabel statsLabel = new JLabel(formatCacheStatistics(cache, semanticCache));
+        
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        cachePanel.add(statsLabel, gbc);
+        
+        gbc.gridx = 1;
+        JButton clearButton = new JButton("Clear Cache");
+        clearButton.addActionListener(e -> {
+            cache.clear();
+            semanticCache.clear();
+            statsLabel.setText(formatCacheStatistics(cache, semanticCache));
+        });
+        cachePanel.add(clearButton, gbc);
+        
+        return cachePanel;
+    }
+    
+    private static String formatCacheStatistics(CompletionCache cache, SemanticCache semanticCache) {
+        return String.format("<html><i>%d hits, %d misses, %.1f s saved, %d KB on disk<br>"
+            + "%d answers reused for similar questions</i></html>",
+            cache.getHitCount(), cache.getMissCount(),
+            cache.getSavedLatency().toMillis() / 1000.0, cache.getDiskBytes() / 1024, semanticCache.getHitCount());
     }
     
     @Override
@@ -104,5 +748,57 @@ public class VidyaastraPreferencesPanel extends OWLPreferencesPanel {
         VidyaastraPreferences.setOpenAiBaseUrl(baseUrlField.getText().trim());
         VidyaastraPreferences.setOpenAiApiKey(new String(apiKeyField.getPassword()));
         VidyaastraPreferences.setOpenAiModel(modelField.getText().trim());
+        VidyaastraPreferences.setResponseCacheEnabled(cacheEnabledBox.isSelected());
+        VidyaastraPreferences.setResponseCacheTtlHours((Integer) cacheTtlSpinner.getValue());
+        VidyaastraPreferences.setSemanticCacheEnabled(semanticCacheBox.isSelected());
+        VidyaastraPreferences.setSemanticCacheThresholdPercent((Integer) semanticThresholdSpinner.getValue());
+        VidyaastraPreferences.setRetryMaxAttempts((Integer) retryAttemptsSpinner.getValue());
+        VidyaastraPreferences.setRateLimitRequestsPerMinute((Integer) rateLimitSpinner.getValue());
+        
+        TransportSettings transport = new TransportSettings()
+            .setHttpVersion((HttpClient.Version) httpVersionBox.getSelectedItem())
+            .setConnectTimeout(Duration.ofSeconds((Integer) connectTimeoutSpinner.getValue()))
+            .setVirtualThreads(virtualThreadsBox.isSelected())
+            .setMaxStreamsPerHost((Integer) maxStreamsSpinner.getValue());
+        for (Map.Entry<CompletionOperation, JSpinner> entry : requestTimeoutSpinners.entrySet()) {
+            transport.setRequestTimeout(entry.getKey(), Duration.ofSeconds((Integer) entry.getValue().getValue()));
+        }
+        VidyaastraPreferences.setTransportSettings(transport);
+        
+        VidyaastraPreferences.setContextWindowTokens((Integer) contextWindowSpinner.getValue());
+        VidyaastraPreferences.setMaxPromptTokens((Integer) maxPromptTokensSpinner.getValue());
+        VidyaastraPreferences.setConversationHistoryTokens((Integer) conversationTokensSpinner.getValue());
+        
+        VidyaastraPreferences.setCassetteMode((Cassette.Mode) cassetteModeBox.getSelectedItem());
+        if (!cassetteFileField.getText().trim().isEmpty()) {
+            VidyaastraPreferences.setCassetteFile(new File(cassetteFileField.getText().trim()));
+        }
+        VidyaastraPreferences.setCassetteOriginalLatency(cassetteLatencyBox.isSelected());
+        
+        VidyaastraPreferences.setFallbackEndpoints(getFallbackEndpoints());
+        VidyaastraPreferences.setBreakerFailureThreshold((Integer) breakerFailuresSpinner.getValue());
+        VidyaastraPreferences.setBreakerOpenSeconds((Integer) breakerOpenSpinner.getValue());
+        VidyaastraPreferences.setHedgingEnabled(hedgingBox.isSelected());
+        VidyaastraPreferences.setMinHedgeDelayMillis((Integer) minHedgeDelaySpinner.getValue());
+        
+        for (Map.Entry<CompletionOperation, JComboBox<CompletionProvider.Kind>> entry : providerBoxes.entrySet()) {
+            VidyaastraPreferences.setProvider(entry.getKey(), (CompletionProvider.Kind) entry.getValue().getSelectedItem());
+        }
+        for (CompletionOperation operation : CompletionOperation.values()) {
+            VidyaastraPreferences.setRoutingModels(operation, routingModelFields.get(operation).getText().trim());
+            VidyaastraPreferences.setRoutingMaxPromptTokens(operation,
+                (Integer) routingPromptSpinners.get(operation).getValue());
+            VidyaastraPreferences.setRoutingLatencyTargetMillis(operation,
+                (Integer) routingLatencySpinners.get(operation).getValue());
+        }
+        VidyaastraPreferences.setRoutingMaxErrorPercent((Integer) routingErrorSpinner.getValue());
+        VidyaastraPreferences.setAzureBaseUrl(azureBaseUrlField.getText().trim());
+        VidyaastraPreferences.setAzureApiKey(new String(azureApiKeyField.getPassword()));
+        VidyaastraPreferences.setAzureDeployment(azureDeploymentField.getText().trim());
+        VidyaastraPreferences.setAzureApiVersion(azureApiVersionField.getText().trim());
+        VidyaastraPreferences.setLocalBaseUrl(localBaseUrlField.getText().trim());
+        VidyaastraPreferences.setLocalApiKey(new String(localApiKeyField.getPassword()));
+        VidyaastraPreferences.setLocalModel(localModelField.getText().trim());
+        VidyaastraPreferences.applyRuntimeSettings();
     }
 }
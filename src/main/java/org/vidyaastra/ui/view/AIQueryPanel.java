@@ -17,6 +17,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
 
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
@@ -41,9 +44,14 @@ import javax.swing.border.TitledBorder;
 import org.vidyaastra.ui.OntologyGenerator;
 import org.vidyaastra.ui.OntologyModifier;
 import org.vidyaastra.ui.OntologyOperationType;
+import org.vidyaastra.ui.OntologyRevisions;
 import org.vidyaastra.ui.VidyaastraDialogManager;
 import org.vidyaastra.ui.VidyaastraPreferences;
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.Conversation;
 import org.vidyaastra.OpenAiCaller;
+import org.vidyaastra.PromptLayout;
+import org.vidyaastra.TokenBudget;
 import org.protege.editor.owl.OWLEditorKit;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLOntology;
@@ -77,6 +85,7 @@ public class AIQueryPanel extends JPanel {
    private JTextArea queryTextArea;
    private JTextArea responseTextArea;
    private JButton sendButton;
+   private JButton cancelButton;
    private JButton clearButton;
    private JButton exportButton;
 
@@ -84,6 +93,14 @@ public class AIQueryPanel extends JPanel {
    private JComboBox<String> historyDropdown;
    private List<String> queryHistory = new ArrayList<>();
 
+   // The request currently running, so it can be cancelled
+   private SwingWorker<?, ?> activeWorker;
+
+   // Basic Query sessions, one per ontology, kept while the ontology is open
+   private static final Map<OWLOntology, Conversation> CONVERSATIONS = new WeakHashMap<>();
+   // Modify Ontology sessions, kept apart since their prompts and answers follow another format
+   private static final Map<OWLOntology, Conversation> MODIFICATIONS = new WeakHashMap<>();
+
    public AIQueryPanel(OWLOntology ontology, OWLEditorKit editorKit, VidyaastraDialogManager dialogHelper) {
       this.ontology = ontology;
       this.editorKit = editorKit;
@@ -315,10 +332,27 @@ public class AIQueryPanel extends JPanel {
       sendButton.addActionListener(e -> sendQuery());
       panel.add(sendButton);
 
+      cancelButton = new JButton("Cancel");
+      cancelButton.setToolTipText("Abort the running request");
+      cancelButton.setEnabled(false);
+      cancelButton.addActionListener(e -> cancelActiveRequest());
+      panel.add(cancelButton);
+
       clearButton = new JButton("Clear");
       clearButton.addActionListener(e -> clearFields());
       panel.add(clearButton);
 
+      JButton newConversationButton = new JButton("New Conversation");
+      newConversationButton.setToolTipText("Forget the earlier questions and answers about this ontology");
+      newConversationButton.addActionListener(e -> {
+         synchronized (CONVERSATIONS) {
+            CONVERSATIONS.remove(ontology);
+            MODIFICATIONS.remove(ontology);
+         }
+         responseTextArea.setText("Started a new conversation.\n");
+      });
+      panel.add(newConversationButton);
+
       JButton saveConfigButton = new JButton("Save Config");
       saveConfigButton.addActionListener(e -> savePreferences());
       panel.add(saveConfigButton);
@@ -391,50 +425,122 @@ public class AIQueryPanel extends JPanel {
    }
 
    private void executeBasicQuery(String query, String apiKey, String model, String baseUrl) {
-      // Use SwingWorker to call OpenAI in background
-      SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+      // Use SwingWorker to call OpenAI in background, publishing deltas as they stream in
+      SwingWorker<String, String> worker = new SwingWorker<String, String>() {
+         private boolean streaming;
+         private boolean finished;
+
          @Override
          protected String doInBackground() throws Exception {
             // Create OpenAiCaller
             OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
-
-            // Build system prompt with ontology context
-            String systemPrompt = "You are an expert ontology assistant helping with the ontology: " +
-                  getTitle(ontology) + ". Provide clear, concise answers about ontology structure, " +
-                  "classes, properties, and relationships.";
+            caller.setOperation(CompletionOperation.BASIC_QUERY);
+            // Rephrased questions about the same ontology state are answered from the semantic cache
+            caller.setOntologyRevision(OntologyRevisions.revisionOf(ontology));
+            // Follow-up questions are sent with the earlier turns
+            Conversation conversation = getConversation(CONVERSATIONS, CompletionOperation.BASIC_QUERY,
+                  apiKey, model, baseUrl);
+            caller.setConversation(conversation);
+
+            // Build system prompt with ontology context; the ontology's name follows the fixed
+            // instructions, so that providers can reuse the cached prefix across ontologies
+            String systemPrompt = new PromptLayout()
+                  .appendStatic("You are an expert ontology assistant. Provide clear, concise answers about " +
+                        "ontology structure, classes, properties, and relationships.\n\n")
+                  .appendDynamic("The user is working on the ontology: " + getTitle(ontology) + ".")
+                  .toString();
 
             // Call OpenAI
-            return caller.generateCompletion(systemPrompt, query);
+            String response = caller.streamCompletion(systemPrompt, query, this::publish);
+            if (conversation != null) {
+               conversation.addTurn(query, response);
+            }
+            return response;
+         }
+
+         @Override
+         protected void process(List<String> deltas) {
+            if (finished) {
+               return;
+            }
+            if (!streaming) {
+               responseTextArea.setText("=== AI Response ===\n\n");
+               streaming = true;
+            }
+            for (String delta : deltas) {
+               responseTextArea.append(delta);
+            }
          }
 
          @Override
          protected void done() {
+            finished = true;
             try {
                String response = get();
                responseTextArea.setText("=== AI Response ===\n\n");
                responseTextArea.append(response);
                responseTextArea.append("\n\n===================\n");
+            } catch (CancellationException e) {
+               displayCancelled();
             } catch (Exception e) {
                displayError(e);
             } finally {
-               sendButton.setEnabled(true);
+               requestFinished();
             }
          }
       };
 
-      worker.execute();
+      startWorker(worker);
+   }
+
+   /**
+    * Gets the session of the current ontology, or null if follow-up questions are disabled.
+    * @param sessions The sessions of one operation by ontology
+    */
+   private Conversation getConversation(Map<OWLOntology, Conversation> sessions, CompletionOperation operation,
+         String apiKey, String model, String baseUrl) {
+      int historyTokens = VidyaastraPreferences.getConversationHistoryTokens();
+      if (historyTokens <= 0 || ontology == null) {
+         return null;
+      }
+      Conversation conversation;
+      synchronized (CONVERSATIONS) {
+         conversation = sessions.computeIfAbsent(ontology, o -> new Conversation(
+               TokenBudget.forModel(model, operation).getCounter(), historyTokens));
+      }
+      // Summaries go to the model currently configured
+      conversation.setSummarizer(Conversation.summarizerFor(new OpenAiCaller(apiKey, model, baseUrl)));
+      return conversation;
    }
 
    private void executeCreateOntology(String description, String apiKey, String model, String baseUrl) {
-      SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+      SwingWorker<String, String> worker = new SwingWorker<String, String>() {
+         private boolean streaming;
+         private boolean finished;
+
          @Override
          protected String doInBackground() throws Exception {
             OntologyGenerator generator = new OntologyGenerator(editorKit, dialogHelper);
-            return generator.generateOntologyContent(description, apiKey, model, baseUrl);
+            return generator.generateOntologyContent(description, apiKey, model, baseUrl, this::publish);
+         }
+
+         @Override
+         protected void process(List<String> deltas) {
+            if (finished) {
+               return;
+            }
+            if (!streaming) {
+               responseTextArea.setText("=== Generating Ontology ===\n\n");
+               streaming = true;
+            }
+            for (String delta : deltas) {
+               responseTextArea.append(delta);
+            }
          }
 
          @Override
          protected void done() {
+            finished = true;
             try {
                String owlContent = get();
                responseTextArea.setText("=== Generated Ontology ===\n\n");
@@ -476,15 +582,17 @@ public class AIQueryPanel extends JPanel {
                            "Error saving ontology: " + saveEx.getMessage());
                   }
                }
+            } catch (CancellationException e) {
+               displayCancelled();
             } catch (Exception e) {
                displayError(e);
             } finally {
-               sendButton.setEnabled(true);
+               requestFinished();
             }
          }
       };
 
-      worker.execute();
+      startWorker(worker);
    }
 
    private void executeModifyOntology(String modificationRequest, String apiKey, String model, String baseUrl) {
@@ -498,7 +606,10 @@ public class AIQueryPanel extends JPanel {
       SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
          @Override
          protected String doInBackground() throws Exception {
-            OntologyModifier modifier = new OntologyModifier(editorKit, dialogHelper);
+            // Follow-up requests describe the ontology by what changed since the previous one
+            OntologyModifier modifier = new OntologyModifier(editorKit, dialogHelper)
+                  .setConversation(getConversation(MODIFICATIONS, CompletionOperation.ONTOLOGY_MODIFICATION,
+                        apiKey, model, baseUrl));
             return modifier.modifyOntology(ontology, modificationRequest, apiKey, model, baseUrl);
          }
 
@@ -511,17 +622,45 @@ public class AIQueryPanel extends JPanel {
                responseTextArea.append("\n\n===================\n");
                responseTextArea.append("\n✓ Modifications have been applied to the active ontology.\n");
                responseTextArea.append("   Remember to save your ontology to persist the changes.\n");
+            } catch (CancellationException e) {
+               displayCancelled();
             } catch (Exception e) {
                displayError(e);
             } finally {
-               sendButton.setEnabled(true);
+               requestFinished();
             }
          }
       };
 
+      startWorker(worker);
+   }
+
+   private void startWorker(SwingWorker<?, ?> worker) {
+      activeWorker = worker;
+      cancelButton.setEnabled(true);
       worker.execute();
    }
 
+   private void requestFinished() {
+      activeWorker = null;
+      sendButton.setEnabled(true);
+      cancelButton.setEnabled(false);
+   }
+
+   /**
+    * Cancels the running request. The worker thread is interrupted, which
+    * aborts the HTTP exchange instead of letting it run to completion.
+    */
+   public void cancelActiveRequest() {
+      if (activeWorker != null && !activeWorker.isDone()) {
+         activeWorker.cancel(true);
+      }
+   }
+
+   private void displayCancelled() {
+      responseTextArea.append("\n\n⏹ Request cancelled.\n");
+   }
+
    private void displayError(Exception e) {
       responseTextArea.setText("❌ Error:\n\n");
       responseTextArea.append(e.getMessage() + "\n\n");
@@ -665,6 +804,12 @@ public class AIQueryPanel extends JPanel {
          public void windowClosing(WindowEvent e) {
             dialog.dispose();
          }
+
+         @Override
+         public void windowClosed(WindowEvent e) {
+            // Stop paying for tokens nobody will read
+            panel.cancelActiveRequest();
+         }
       });
 
       dialog.setVisible(true);
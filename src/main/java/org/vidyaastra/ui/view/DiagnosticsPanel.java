@@ -0,0 +1,166 @@
+package org.vidyaastra.ui.view;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+
+import org.vidyaastra.CompletionMetrics;
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.EndpointPool;
+import org.vidyaastra.HttpTransport;
+import org.vidyaastra.JsonWriter;
+import org.vidyaastra.LatencyHistogram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DiagnosticsPanel shows the LLM call metrics collected by
+ * {@link CompletionMetrics} per operation and exports them as JSON.
+ */
+public class DiagnosticsPanel extends JPanel {
+   private static final long serialVersionUID = 1L;
+   private static final Logger logger = LoggerFactory.getLogger(DiagnosticsPanel.class);
+
+   private static final int REFRESH_INTERVAL_MS = 2000;
+
+   private static final String[] COLUMNS = {
+         "Operation", "Requests", "Cache Hits", "Failed", "Cancelled", "Continued", "Escalated",
+         "p50 (ms)", "p95 (ms)", "p99 (ms)", "TTFB p50 (ms)",
+         "Sent (KB)", "Received (KB)", "Prompt Tokens", "Cached Tokens", "Completion Tokens"
+   };
+
+   private final CompletionMetrics metrics;
+   private final HttpTransport transport;
+   private final DefaultTableModel tableModel;
+   private final JLabel connectionLabel;
+   private final Timer refreshTimer;
+
+   public DiagnosticsPanel(CompletionMetrics metrics, HttpTransport transport) {
+      this.metrics = metrics;
+      this.transport = transport;
+      setLayout(new BorderLayout());
+
+      tableModel = new DefaultTableModel(COLUMNS, 0) {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         public boolean isCellEditable(int row, int column) {
+            return false;
+         }
+      };
+      JTable table = new JTable(tableModel);
+      table.setAutoCreateRowSorter(true);
+      add(new JScrollPane(table), BorderLayout.CENTER);
+
+      connectionLabel = new JLabel();
+      connectionLabel.setBorder(new EmptyBorder(5, 10, 5, 10));
+      add(connectionLabel, BorderLayout.NORTH);
+
+      add(createButtonPanel(), BorderLayout.SOUTH);
+
+      refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> refresh());
+      refreshTimer.start();
+      refresh();
+   }
+
+   private JPanel createButtonPanel() {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+
+      JButton refreshButton = new JButton("Refresh");
+      refreshButton.addActionListener(e -> refresh());
+      panel.add(refreshButton);
+
+      JButton resetButton = new JButton("Reset");
+      resetButton.setToolTipText("Clear all counters and histograms");
+      resetButton.addActionListener(e -> {
+         metrics.reset();
+         refresh();
+      });
+      panel.add(resetButton);
+
+      JButton exportButton = new JButton("Export JSON");
+      exportButton.addActionListener(e -> exportJson());
+      panel.add(exportButton);
+
+      return panel;
+   }
+
+   /**
+    * Reloads the table from the current metrics.
+    */
+   public void refresh() {
+      tableModel.setRowCount(0);
+      for (CompletionOperation operation : CompletionOperation.values()) {
+         CompletionMetrics.OperationMetrics stats = metrics.forOperation(operation);
+         LatencyHistogram latency = stats.getLatency();
+         tableModel.addRow(new Object[] {
+               operation.getDisplayName(),
+               stats.getRequests(),
+               stats.getCacheHits(),
+               stats.getFailures(),
+               stats.getCancellations(),
+               stats.getContinuations(),
+               stats.getEscalations(),
+               millis(latency.getPercentile(50)),
+               millis(latency.getPercentile(95)),
+               millis(latency.getPercentile(99)),
+               millis(stats.getTimeToFirstByte().getPercentile(50)),
+               stats.getBytesSent() / 1024,
+               stats.getBytesReceived() / 1024,
+               stats.getPromptTokens(),
+               stats.getCachedPromptTokens(),
+               stats.getCompletionTokens()
+         });
+      }
+      String endpoints = EndpointPool.getDefault().getFallbacks().isEmpty() ? ""
+            : "<br>Endpoints: " + EndpointPool.getDefault().getBreakerStates();
+      connectionLabel.setText("<html>Time to first byte, new connection: " + transport.getColdTimeToFirstByte()
+            + "<br>Time to first byte, reused connection: " + transport.getWarmTimeToFirstByte() + endpoints + "</html>");
+   }
+
+   private void exportJson() {
+      JFileChooser fileChooser = new JFileChooser();
+      fileChooser.setDialogTitle("Export Metrics");
+      fileChooser.setSelectedFile(new File("vidyaastra-metrics.json"));
+
+      if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+         return;
+      }
+      File fileToSave = fileChooser.getSelectedFile();
+      try {
+         Files.write(fileToSave.toPath(),
+               metrics.writeJson(new JsonWriter(), transport).toByteArray());
+         logger.info("Metrics exported to {}", fileToSave.getAbsolutePath());
+      } catch (IOException e) {
+         logger.error("Failed to export metrics", e);
+         JOptionPane.showMessageDialog(this, "Error saving file: " + e.getMessage(),
+               "Export Failed", JOptionPane.ERROR_MESSAGE);
+      }
+   }
+
+   private static long millis(Duration duration) {
+      return duration.toMillis();
+   }
+
+   /**
+    * Stops the periodic refresh.
+    */
+   public void dispose() {
+      refreshTimer.stop();
+   }
+}
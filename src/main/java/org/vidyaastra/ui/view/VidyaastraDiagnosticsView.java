@@ -0,0 +1,40 @@
+package org.vidyaastra.ui.view;
+
+import java.awt.BorderLayout;
+
+import org.protege.editor.owl.ui.view.AbstractOWLViewComponent;
+import org.vidyaastra.CompletionMetrics;
+import org.vidyaastra.HttpTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * VidyaastraDiagnosticsView is a view component for Protege that shows
+ * latency, throughput and token usage of the plugin's LLM calls.
+ */
+public class VidyaastraDiagnosticsView extends AbstractOWLViewComponent
+{
+   private static final long serialVersionUID = 1L;
+   private static final Logger logger = LoggerFactory.getLogger(VidyaastraDiagnosticsView.class);
+
+   private DiagnosticsPanel diagnosticsPanel;
+
+   @Override
+   protected void initialiseOWLView() throws Exception
+   {
+      setLayout(new BorderLayout());
+
+      diagnosticsPanel = new DiagnosticsPanel(CompletionMetrics.getDefault(), HttpTransport.getDefault());
+      add(diagnosticsPanel, BorderLayout.CENTER);
+
+      logger.info("VidyaastraDiagnosticsView initialized");
+   }
+
+   @Override
+   protected void disposeOWLView()
+   {
+      if (diagnosticsPanel != null) {
+         diagnosticsPanel.dispose();
+      }
+   }
+}
@@ -16,10 +16,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -33,7 +32,14 @@ import javax.swing.JToolBar;
 import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
+import org.vidyaastra.CompletionOperation;
+import org.vidyaastra.ContextPacker;
+import org.vidyaastra.JsonReader;
 import org.vidyaastra.OpenAiCaller;
+import org.vidyaastra.PromptLayout;
+import org.vidyaastra.QueryIntent;
+import org.vidyaastra.TokenBudget;
+import org.vidyaastra.ui.OntologyContextBuilder;
 import org.vidyaastra.ui.VidyaastraPreferences;
 
 import org.protege.editor.owl.model.OWLModelManager;
@@ -88,6 +94,9 @@ public class VidyaastraGraphPanel extends JPanel {
    private static final long serialVersionUID = 1L;
    private static final Logger logger = LoggerFactory.getLogger(VidyaastraGraphPanel.class);
 
+   // Room kept in the prompt for the note on axioms left out
+   private static final int OMISSION_NOTE_TOKENS = 64;
+
    private OWLModelManager modelManager;
    private Graph<OWLEntity, OWLRelationship> graph;
    private VisualizationViewer<OWLEntity, OWLRelationship> viewer;
@@ -101,6 +110,8 @@ public class VidyaastraGraphPanel extends JPanel {
    private JTextField queryField;
    private JTextArea resultsArea;
    private JButton executeQueryButton;
+   private JButton cancelQueryButton;
+   private SwingWorker<?, ?> activeQueryWorker;
 
    public VidyaastraGraphPanel(OWLModelManager modelManager) {
       this.modelManager = modelManager;
@@ -653,8 +664,15 @@ public class VidyaastraGraphPanel extends JPanel {
       inputPanel.add(new JLabel("Query: "), BorderLayout.WEST);
       inputPanel.add(queryField, BorderLayout.CENTER);
 
+      cancelQueryButton = new JButton("Cancel");
+      cancelQueryButton.setFont(new Font("Arial", Font.PLAIN, 11));
+      cancelQueryButton.setToolTipText("Abort the running LLM request");
+      cancelQueryButton.setEnabled(false);
+      cancelQueryButton.addActionListener(e -> cancelActiveQuery());
+
       JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
       buttonPanel.add(executeQueryButton);
+      buttonPanel.add(cancelQueryButton);
 
       JButton exportButton = new JButton("Export");
       exportButton.setFont(new Font("Arial", Font.PLAIN, 11));
@@ -728,7 +746,7 @@ public class VidyaastraGraphPanel extends JPanel {
          private String targetEntity = "";
          private String queryType = "";
          private String clarificationQuestion = "";
-         private java.util.List<Map<String, String>> filters = new java.util.ArrayList<>();
+         private java.util.List<QueryIntent.Filter> filters = java.util.Collections.emptyList();
 
          @Override
          protected String doInBackground() throws Exception {
@@ -738,20 +756,22 @@ public class VidyaastraGraphPanel extends JPanel {
             String model = VidyaastraPreferences.getOpenAiModel();
 
             OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
+            caller.setOperation(CompletionOperation.NLP_QUERY);
 
             // Build system prompt
-            String systemPrompt = buildSparqlSystemPrompt();
+            String systemPrompt = buildSparqlSystemPrompt(
+                  TokenBudget.forModel(model, CompletionOperation.NLP_QUERY), nlQuery);
 
             logger.info("=== NLP Query Execution ===");
             logger.info("User Query: {}", nlQuery);
 
-            // Call OpenAI to understand the query
-            String response = caller.generateCompletion(systemPrompt, nlQuery, 0.3);
+            // Call OpenAI to understand the query; the answer is JSON following the query intent schema
+            // Escalated to a larger model if the routed one does not answer in a readable format
+            String response = caller.generateCompletion(systemPrompt, nlQuery, 0.3, QueryIntent::isValid);
 
             logger.info("Raw LLM Response: {}", response);
 
-            // Parse JSON response manually
-            parseJsonResponse(response);
+            parseQueryIntent(response);
 
             logger.info("Parsed - Type: {}, Target: {}, Filters: {}", queryType, targetEntity, filters.size());
 
@@ -766,90 +786,19 @@ public class VidyaastraGraphPanel extends JPanel {
             }
          }
 
-         private void parseJsonResponse(String response) {
+         private void parseQueryIntent(String response) {
             try {
-               // Check if response is in plain text format (QUERY_TYPE: xxx\nTARGET: xxx)
-               if (response.contains("QUERY_TYPE:") && response.contains("TARGET:")) {
-                  // Parse plain text format
-                  String[] lines = response.split("\n");
-                  for (String line : lines) {
-                     line = line.trim();
-                     if (line.startsWith("QUERY_TYPE:")) {
-                        queryType = line.substring("QUERY_TYPE:".length()).trim();
-                     } else if (line.startsWith("TARGET:")) {
-                        targetEntity = line.substring("TARGET:".length()).trim();
-                     }
-                  }
-                  return;
-               }
-               
-               // Otherwise, try JSON parsing
-               String json = response;
-               // Remove markdown code blocks if present
-               json = json.replaceAll("```json", "").replaceAll("```", "").trim();
-
-               // Simple manual parsing to avoid dependencies
-               // Extract type
-               int typeIdx = json.indexOf("\"type\"");
-               if (typeIdx != -1) {
-                  int start = json.indexOf("\"", typeIdx + 7) + 1;
-                  int end = json.indexOf("\"", start);
-                  queryType = json.substring(start, end);
-               }
-
-               // Extract target
-               int targetIdx = json.indexOf("\"target\"");
-               if (targetIdx != -1) {
-                  int start = json.indexOf("\"", targetIdx + 9) + 1;
-                  int end = json.indexOf("\"", start);
-                  targetEntity = json.substring(start, end);
-               }
-
-               // Extract question (for ambiguity)
-               int questionIdx = json.indexOf("\"question\"");
-               if (questionIdx != -1) {
-                  int start = json.indexOf("\"", questionIdx + 11) + 1;
-                  int end = json.indexOf("\"", start);
-                  clarificationQuestion = json.substring(start, end);
-               }
-
-               // Extract filters (very basic parsing)
-               int filtersIdx = json.indexOf("\"filters\"");
-               if (filtersIdx != -1) {
-                  String filtersSection = json.substring(filtersIdx);
-                  int arrayStart = filtersSection.indexOf("[");
-                  int arrayEnd = filtersSection.lastIndexOf("]");
-                  if (arrayStart != -1 && arrayEnd != -1) {
-                     String arrayContent = filtersSection.substring(arrayStart + 1, arrayEnd);
-                     String[] filterObjs = arrayContent.split("},");
-                     for (String obj : filterObjs) {
-                        Map<String, String> filter = new HashMap<>();
-                        extractField(obj, "property", filter);
-                        extractField(obj, "value", filter);
-                        extractField(obj, "operator", filter);
-                        if (!filter.isEmpty()) {
-                           filters.add(filter);
-                        }
-                     }
-                  }
-               }
-            } catch (Exception e) {
-               logger.error("Error parsing JSON response", e);
+               QueryIntent intent = QueryIntent.parse(response);
+               queryType = intent.getType();
+               targetEntity = intent.getTarget();
+               clarificationQuestion = intent.getQuestion();
+               filters = intent.getFilters();
+            } catch (JsonReader.JsonParseException e) {
+               logger.error("Error parsing query intent", e);
                queryType = "error";
             }
          }
 
-         private void extractField(String source, String field, Map<String, String> map) {
-            int idx = source.indexOf("\"" + field + "\"");
-            if (idx != -1) {
-               int start = source.indexOf("\"", idx + field.length() + 3) + 1;
-               int end = source.indexOf("\"", start);
-               if (start != -1 && end != -1) {
-                  map.put(field, source.substring(start, end));
-               }
-            }
-         }
-
          @Override
          protected void done() {
             try {
@@ -878,19 +827,47 @@ public class VidyaastraGraphPanel extends JPanel {
                         (filters.isEmpty() ? "" : "Filters: " + filters.size() + "\n") + "\n" +
                         results);
                }
+            } catch (CancellationException e) {
+               resultsArea.setText("⏹ Query cancelled.");
             } catch (Exception e) {
                resultsArea.setText("❌ Error executing query:\n\n" + e.getMessage());
                e.printStackTrace();
             } finally {
-               executeQueryButton.setEnabled(true);
+               queryFinished(this);
             }
          }
       };
 
+      startQueryWorker(worker);
+   }
+
+   private void startQueryWorker(SwingWorker<?, ?> worker) {
+      activeQueryWorker = worker;
+      cancelQueryButton.setEnabled(true);
       worker.execute();
    }
 
-   private String executeComplexQuery(String className, java.util.List<Map<String, String>> filters) {
+   private void queryFinished(SwingWorker<?, ?> worker) {
+      // A clarification re-run may already have started the next worker
+      if (activeQueryWorker == worker) {
+         activeQueryWorker = null;
+         cancelQueryButton.setEnabled(false);
+      }
+      executeQueryButton.setEnabled(true);
+   }
+
+   /**
+    * Cancels the running NLP query or explanation. Interrupting the worker
+    * aborts the in-flight HTTP exchange.
+    */
+   private void cancelActiveQuery() {
+      if (activeQueryWorker != null && !activeQueryWorker.isDone()) {
+         logger.info("Cancelling active LLM request");
+         activeQueryWorker.cancel(true);
+      }
+   }
+
+   private String executeComplexQuery(String className, java.util.List<QueryIntent.Filter> filters) {
       StringBuilder result = new StringBuilder();
       result.append("🔍 Complex Query Results for '").append(className).append("':\n\n");
 
@@ -911,9 +888,9 @@ public class VidyaastraGraphPanel extends JPanel {
       for (OWLNamedIndividual ind : candidates) {
          boolean matchesAll = true;
 
-         for (Map<String, String> filter : filters) {
-            String propName = filter.get("property");
-            String value = filter.get("value");
+         for (QueryIntent.Filter filter : filters) {
+            String propName = filter.getProperty();
+            String value = filter.getValue();
 
             // Check object property assertions
             boolean hasProp = ontology.getObjectPropertyAssertionAxioms(ind).stream()
@@ -946,41 +923,42 @@ public class VidyaastraGraphPanel extends JPanel {
    }
 
    /**
-    * Builds the system prompt for OpenAI to generate simple queries
+    * Builds the system prompt for OpenAI to generate simple queries, listing as
+    * many of the ontology's most connected entities as the budget allows
     */
-   private String buildSparqlSystemPrompt() {
-      StringBuilder prompt = new StringBuilder();
-      prompt.append("You are an ontology query analyzer. Parse the user's natural language question ");
-      prompt.append(
+   private String buildSparqlSystemPrompt(TokenBudget budget, String nlQuery) {
+      // Instructions first and the ontology after them, so that providers can reuse the cached prefix
+      PromptLayout prompt = new PromptLayout();
+      prompt.appendStatic("You are an ontology query analyzer. Parse the user's natural language question ");
+      prompt.appendStatic(
             "and identify what they're asking about. You must handle complex queries with multiple conditions.\n\n");
 
-      prompt.append("DO NOT answer the question yourself. Just identify the search criteria.\n");
+      prompt.appendStatic("DO NOT answer the question yourself. Just identify the search criteria.\n");
 
-      if (ontology != null) {
-         prompt.append("Current Ontology: ").append(ontology.getOntologyID().getOntologyIRI().orNull()).append("\n\n");
-
-         // Add ontology context
-         prompt.append("Available Classes:\n");
-         ontology.getClassesInSignature().stream()
-               .filter(cls -> !cls.isOWLThing() && !cls.isOWLNothing())
-               .limit(30)
-               .forEach(cls -> prompt.append("  - ").append(cls.getIRI().getShortForm()).append("\n"));
-
-         prompt.append("\nAvailable Object Properties:\n");
-         ontology.getObjectPropertiesInSignature().stream()
-               .limit(20)
-               .forEach(prop -> prompt.append("  - ").append(prop.getIRI().getShortForm()).append("\n"));
+      prompt.appendStatic("\nAnswer with a JSON object with these fields:\n");
+      prompt.appendStatic("type: one of " + String.join(", ", QueryIntent.TYPES) + "; ");
+      prompt.appendStatic("\"complex\" for instances meeting conditions, \"ambiguous\" if you must ask the user\n");
+      prompt.appendStatic("target: the class, property or individual searched for\n");
+      prompt.appendStatic("filters: for complex queries, the conditions as objects with property, operator ");
+      prompt.appendStatic("and value; otherwise an empty list\n");
+      prompt.appendStatic("question: for ambiguous queries, what to ask the user; otherwise empty\n\n");
 
-         prompt.append("\nAvailable Individuals:\n");
-         ontology.getIndividualsInSignature().stream()
-               .limit(20)
-               .forEach(ind -> prompt.append("  - ").append(ind.getIRI().getShortForm()).append("\n"));
+      if (ontology != null) {
+         prompt.appendDynamic("Current Ontology: " + ontology.getOntologyID().getOntologyIRI().orNull() + "\n\n");
+
+         // Sized by rounded lengths, so that rephrasing the question keeps the same context
+         int available = budget.remainingStable(prompt.toString(), nlQuery);
+         ContextPacker.Result context = new OntologyContextBuilder(ontology, budget.packer(available))
+               .addClasses("Available Classes:")
+               .addObjectProperties("Available Object Properties:")
+               .addIndividuals("Available Individuals:")
+               .pack();
+         prompt.appendDynamic(context.getText());
+         if (!context.isComplete()) {
+            logger.info("NLP query context trimmed to {}: {}", budget, context.describeDropped());
+         }
       }
 
-      prompt.append("\nYour response MUST be in this exact format:\n");
-      prompt.append("QUERY_TYPE: [instances|classes|properties|relationships|individual]\n");
-      prompt.append("TARGET: [search term]\n\n");
-
       return prompt.toString();
    }
 
@@ -1621,12 +1599,6 @@ public class VidyaastraGraphPanel extends JPanel {
 
                logger.info("Ontology serialized - {} characters", owlContent.length());
 
-               // Truncate if too large (keep first ~15000 chars to stay within token limits)
-               if (owlContent.length() > 15000) {
-                  owlContent = owlContent.substring(0, 15000) + "\n\n... (truncated for length)";
-                  logger.info("Ontology content truncated to 15000 characters");
-               }
-
                // Build prompt for LLM
                String systemPrompt = "You are an expert in ontology analysis and OWL (Web Ontology Language). " +
                      "Analyze the provided ontology and create a clear, concise explanation. " +
@@ -1638,7 +1610,7 @@ public class VidyaastraGraphPanel extends JPanel {
                      "- Overall structure and organization\n\n" +
                      "Keep it clear and accessible, avoiding overly technical jargon where possible.";
 
-               String userMessage = "Please analyze this OWL ontology and explain what it represents:\n\n" + owlContent;
+               String userMessage = "Please analyze this OWL ontology and explain what it represents:\n\n";
 
                // Get API configuration
                String apiKey = VidyaastraPreferences.getOpenAiApiKey();
@@ -1655,14 +1627,37 @@ public class VidyaastraGraphPanel extends JPanel {
                   baseUrl = "https://api.openai.com/v1"; // Default base URL
                }
 
+               // Keep whole axioms, the class hierarchy first, if the ontology exceeds the model's budget
+               TokenBudget budget = TokenBudget.forModel(model, CompletionOperation.EXPLAIN_ONTOLOGY);
+               int available = budget.remaining(systemPrompt, userMessage) - OMISSION_NOTE_TOKENS;
+               String omitted = "";
+               if (budget.count(owlContent) > available) {
+                  ContextPacker.Result packed = OntologyContextBuilder.packFunctionalSyntax(owlContent,
+                        budget.packer(available));
+                  owlContent = packed.getText();
+                  omitted = packed.describeDropped();
+                  logger.info("Ontology content trimmed to {}: {}", budget, omitted);
+               }
+               userMessage += owlContent;
+               if (!omitted.isEmpty()) {
+                  userMessage += "\n(" + omitted + " to fit the context window.)";
+               }
+
                // Call OpenAI
                OpenAiCaller caller = new OpenAiCaller(apiKey, model, baseUrl);
+               caller.setOperation(CompletionOperation.EXPLAIN_ONTOLOGY);
                String response = caller.generateCompletion(systemPrompt, userMessage);
 
                logger.info("Received ontology explanation from LLM - {} characters", response.length());
 
+               if (!omitted.isEmpty()) {
+                  response = "Note: the explanation is based on part of the ontology. " + omitted
+                        + " to fit the model's context window.\n\n" + response;
+               }
                return response;
 
+            } catch (InterruptedException e) {
+               throw e;
             } catch (OWLOntologyStorageException e) {
                logger.error("Failed to serialize ontology", e);
                return "ERROR: Failed to serialize ontology: " + e.getMessage();
@@ -1681,18 +1676,24 @@ public class VidyaastraGraphPanel extends JPanel {
                resultsArea.setText("=== ONTOLOGY EXPLANATION ===\n\n" + explanation);
                resultsArea.setCaretPosition(0); // Scroll to top
 
+            } catch (CancellationException e) {
+               resultsArea.setText("⏹ Explanation cancelled.");
             } catch (Exception e) {
                logger.error("Error displaying ontology explanation", e);
                resultsArea.setText("ERROR: " + e.getMessage());
+            } finally {
+               queryFinished(this);
             }
          }
       };
 
-      worker.execute();
+      executeQueryButton.setEnabled(false);
+      startQueryWorker(worker);
    }
 
    public void dispose() {
       // Cleanup resources
+      cancelActiveQuery();
       if (viewer != null) {
          viewer.setGraphLayout(null);
       }
@@ -5,6 +5,7 @@ import java.awt.BorderLayout;
 import org.protege.editor.owl.ui.view.AbstractOWLViewComponent;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLEntity;
+import org.vidyaastra.ui.VidyaastraPreferences;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +24,8 @@ public class VidyaastraGraphView extends AbstractOWLViewComponent
    protected void initialiseOWLView() throws Exception
    {
       setLayout(new BorderLayout());
+      VidyaastraPreferences.applyRuntimeSettings();
+      VidyaastraPreferences.prewarmConnection();
       
       graphPanel = new VidyaastraGraphPanel(getOWLModelManager());
       add(graphPanel, BorderLayout.CENTER);
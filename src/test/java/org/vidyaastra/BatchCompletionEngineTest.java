@@ -0,0 +1,133 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the BatchCompletionEngine
+ */
+@DisplayName("Batch Completion Engine Tests")
+class BatchCompletionEngineTest {
+
+    private static List<BatchCompletionEngine.Request> requests(int count) {
+        List<BatchCompletionEngine.Request> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(new BatchCompletionEngine.Request("Describe the class.", "Class" + i));
+        }
+        return requests;
+    }
+
+    @Test
+    @DisplayName("Should never exceed the concurrency limit")
+    void testConcurrencyLimit() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        BatchCompletionEngine engine = new BatchCompletionEngine((system, user, temperature) -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            Thread.sleep(10);
+            inFlight.decrementAndGet();
+            return user;
+        }, 4);
+
+        BatchCompletionEngine.Report report = engine.run(requests(40));
+
+        assertThat(report.getSuccessCount()).isEqualTo(40);
+        assertThat(maxInFlight.get()).isBetween(2, 4);
+        assertThat(report.getThroughputPerSecond()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should return results in input order and stream them as they finish")
+    void testOrderedAndStreamedResults() throws Exception {
+        BatchCompletionEngine engine = new BatchCompletionEngine((system, user, temperature) -> {
+            // Later items finish first
+            int n = Integer.parseInt(user.substring("Class".length()));
+            Thread.sleep(5L * (10 - n));
+            return "answer-" + n;
+        }, 10);
+        List<Integer> completionOrder = Collections.synchronizedList(new ArrayList<>());
+
+        BatchCompletionEngine.Report report = engine.run(requests(10), r -> completionOrder.add(r.getIndex()));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(report.getResults().get(i).getIndex()).isEqualTo(i);
+            assertThat(report.getResults().get(i).getContent()).isEqualTo("answer-" + i);
+        }
+        assertThat(completionOrder).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThat(completionOrder.get(0)).isNotEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Should isolate failures to their own item")
+    void testErrorIsolation() throws Exception {
+        BatchCompletionEngine engine = new BatchCompletionEngine((system, user, temperature) -> {
+            if (user.equals("Class3")) {
+                throw new RuntimeException("API call failed: 500 - boom");
+            }
+            return "ok";
+        }, 3);
+
+        BatchCompletionEngine.Report report = engine.run(requests(6));
+
+        assertThat(report.getSuccessCount()).isEqualTo(5);
+        assertThat(report.getFailureCount()).isEqualTo(1);
+        BatchCompletionEngine.Result failed = report.getResults().get(3);
+        assertThat(failed.isSuccess()).isFalse();
+        assertThat(failed.getContent()).isNull();
+        assertThat(failed.getError()).hasMessageContaining("500");
+        assertThat(report.toString()).contains("5 ok, 1 failed");
+    }
+
+    @Test
+    @DisplayName("Should cancel outstanding work when interrupted")
+    void testInterruptCancelsBatch() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger interrupted = new AtomicInteger();
+        BatchCompletionEngine engine = new BatchCompletionEngine((system, user, temperature) -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return "never";
+        }, 2);
+
+        CompletableFuture<Throwable> outcome = new CompletableFuture<>();
+        Thread runner = new Thread(() -> {
+            try {
+                engine.run(requests(10));
+                outcome.complete(null);
+            } catch (Throwable t) {
+                outcome.complete(t);
+            }
+        });
+        runner.start();
+
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        runner.interrupt();
+
+        assertThat(outcome.get(10, TimeUnit.SECONDS)).isInstanceOf(InterruptedException.class);
+        Thread.sleep(100);
+        assertThat(interrupted.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should reject a concurrency limit below one")
+    void testInvalidConcurrency() {
+        assertThatThrownBy(() -> new BatchCompletionEngine((s, u, t) -> "", 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
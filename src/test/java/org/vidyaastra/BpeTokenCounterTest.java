@@ -0,0 +1,140 @@
+package org.vidyaastra;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for BpeTokenCounter
+ */
+@DisplayName("BPE Token Counter Tests")
+class BpeTokenCounterTest {
+
+    private BpeTokenCounter counter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Every single byte, then a few merges in rank order
+        StringBuilder vocabulary = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            vocabulary.append(base64(new byte[] {(byte) b})).append(' ').append(b).append('\n');
+        }
+        String[] merges = {"he", "ll", "hell", " w", "or", " wor", "ld", " world", "'t"};
+        for (int i = 0; i < merges.length; i++) {
+            vocabulary.append(base64(merges[i].getBytes(StandardCharsets.UTF_8)))
+                    .append(' ').append(256 + i).append('\n');
+        }
+        counter = BpeTokenCounter.load(BpeTokenCounter.Encoding.CL100K_BASE,
+                new ByteArrayInputStream(vocabulary.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Test
+    @DisplayName("Should merge byte pairs by rank")
+    void testMerges() {
+        assertThat(counter.isAvailable()).isTrue();
+        assertThat(counter.encode("hello")).containsExactly(258, 'o');
+        // " world" is a single token, the whole word " hello" is not
+        assertThat(counter.encode("hello world")).containsExactly(258, 'o', 263);
+        assertThat(counter.count("hello world")).isEqualTo(3);
+        assertThat(counter.count("")).isZero();
+    }
+
+    @Test
+    @DisplayName("Should split text like the encoding's pre-tokenizer")
+    void testPreTokenization() {
+        // Contractions, digit groups of three and punctuation are pieces of their own
+        assertThat(counter.encode("don't")).containsExactly('d', 'o', 'n', 264);
+        assertThat(counter.count("12345")).isEqualTo(5);
+        assertThat(counter.encode("he.ll")).containsExactly(256, '.', 257);
+        // Non-ASCII text is counted in UTF-8 bytes
+        assertThat(counter.count("é")).isEqualTo(2);
+        assertThat(counter.count("😀")).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Should pick the encoding by model name")
+    void testEncodingForModel() {
+        assertThat(BpeTokenCounter.encodingFor("gpt-4o-mini")).isEqualTo(BpeTokenCounter.Encoding.O200K_BASE);
+        assertThat(BpeTokenCounter.encodingFor("openai/gpt-4.1")).isEqualTo(BpeTokenCounter.Encoding.O200K_BASE);
+        assertThat(BpeTokenCounter.encodingFor("o3-mini")).isEqualTo(BpeTokenCounter.Encoding.O200K_BASE);
+        assertThat(BpeTokenCounter.encodingFor("gpt-4")).isEqualTo(BpeTokenCounter.Encoding.CL100K_BASE);
+        assertThat(BpeTokenCounter.encodingFor("llama3")).isEqualTo(BpeTokenCounter.Encoding.CL100K_BASE);
+        assertThat(BpeTokenCounter.forModel("gpt-5")).isSameAs(BpeTokenCounter.get(BpeTokenCounter.Encoding.O200K_BASE));
+    }
+
+    @Test
+    @DisplayName("Should ship the published vocabularies and encode like tiktoken")
+    void testBundledVocabularies() throws Exception {
+        // SHA-256 of the files tiktoken downloads from openaipublic.blob.core.windows.net/encodings
+        assertThat(sha256("cl100k_base.tiktoken"))
+                .isEqualTo("223921b76ee99bde995b7ff738513eef100fb51d18c93597a113bcffe865b2a7");
+        assertThat(sha256("o200k_base.tiktoken"))
+                .isEqualTo("446a9538cb6c348e3516120d7c08b09f57c36495e2acfffe59a5bf8b0cfb1a2d");
+
+        BpeTokenCounter cl100k = BpeTokenCounter.get(BpeTokenCounter.Encoding.CL100K_BASE);
+        assertThat(cl100k.isAvailable()).isTrue();
+        assertThat(cl100k.encode("hello world")).containsExactly(15339, 1917);
+        assertThat(cl100k.encode("tiktoken is great!")).containsExactly(83, 1609, 5963, 374, 2294, 0);
+
+        BpeTokenCounter o200k = BpeTokenCounter.get(BpeTokenCounter.Encoding.O200K_BASE);
+        assertThat(o200k.isAvailable()).isTrue();
+        assertThat(o200k.encode("hello world")).containsExactly(24912, 2375);
+        assertThat(o200k.encode("tiktoken is great!")).containsExactly(83, 8251, 2488, 382, 2212, 0);
+    }
+
+    private static String sha256(String fileName) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = BpeTokenCounter.class.getResourceAsStream("/org/vidyaastra/tokenizer/" + fileName)) {
+            assertThat(in).as(fileName).isNotNull();
+            byte[] buffer = new byte[65536];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    @DisplayName("Should estimate when no vocabulary is installed and reject malformed ones")
+    void testFallbackAndMalformedVocabulary() {
+        BpeTokenCounter shared = BpeTokenCounter.get(BpeTokenCounter.Encoding.CL100K_BASE);
+        String text = "SubClassOf(:Dog :Animal)";
+        if (!shared.isAvailable()) {
+            assertThat(shared.count(text)).isEqualTo(TokenCounter.approximate().count(text));
+            assertThat(shared.encode(text)).isNull();
+        }
+
+        assertThatThrownBy(() -> BpeTokenCounter.load(BpeTokenCounter.Encoding.CL100K_BASE,
+                new ByteArrayInputStream("not a vocabulary".getBytes(StandardCharsets.US_ASCII))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("line 1");
+    }
+
+    @Test
+    @DisplayName("Should count the chat format around the messages of a request")
+    void testCountPromptTokens() {
+        ChatCompletionRequest request = new ChatCompletionRequest("gpt-4", Arrays.asList(
+                new Message("system", "hello"),
+                new Message("user", "hello world")));
+
+        assertThat(request.countPromptTokens(counter)).isEqualTo(3 + (4 + 2) + (4 + 3));
+    }
+}
@@ -0,0 +1,122 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for Cassette recording and replay
+ */
+@DisplayName("Cassette Tests")
+class CassetteTest {
+
+    @TempDir
+    File tempDir;
+
+    private MockOpenAiServer server;
+    private File file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = MockOpenAiServer.start();
+        file = new File(tempDir, "cassette.jsonl");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private OpenAiCaller newCaller(Cassette cassette) {
+        OpenAiCaller caller = new OpenAiCaller("test-key", "test-model", server.getBaseUrl());
+        caller.setCache(new CompletionCache(null, 16, 1024 * 1024, Duration.ofHours(1)));
+        caller.setRateLimiter(null);
+        caller.setMetrics(new CompletionMetrics());
+        caller.setCassette(cassette);
+        return caller;
+    }
+
+    @Test
+    @DisplayName("Should replay recorded completions without reaching the server")
+    void testRecordThenReplay() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("first"), MockOpenAiServer.Reply.content("second"));
+        OpenAiCaller recorder = newCaller(Cassette.open(file, Cassette.Mode.RECORD, false));
+        assertThat(recorder.generateCompletion("sys", "q")).isEqualTo("first");
+        assertThat(recorder.generateCompletion("sys", "q")).isEqualTo("second");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        server.close();
+
+        Cassette cassette = Cassette.open(file, Cassette.Mode.REPLAY, false);
+        OpenAiCaller player = newCaller(cassette);
+
+        assertThat(player.generateCompletion("sys", "q")).isEqualTo("first");
+        assertThat(player.generateCompletion("sys", "q")).isEqualTo("second");
+        assertThat(player.generateCompletion("sys", "q")).isEqualTo("second");
+        assertThat(cassette.getReplayedCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should replay a recorded stream delta by delta with its timing")
+    void testStreamReplay() throws Exception {
+        server.setLatency(MockOpenAiServer.Latency.fixed(50))
+                .enqueue(MockOpenAiServer.Reply.content("The quick brown fox").withChunkSize(4));
+        newCaller(Cassette.open(file, Cassette.Mode.RECORD, false)).streamCompletion("sys", "tell me", null);
+
+        List<String> deltas = new ArrayList<>();
+        String content = newCaller(Cassette.open(file, Cassette.Mode.REPLAY, true))
+                .streamCompletion("sys", "tell me", deltas::add);
+
+        assertThat(content).isEqualTo("The quick brown fox");
+        assertThat(deltas).hasSize(5);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should reproduce the recorded latency when asked to")
+    void testOriginalLatency() throws Exception {
+        server.setLatency(MockOpenAiServer.Latency.fixed(150)).enqueue(MockOpenAiServer.Reply.content("slow"));
+        newCaller(Cassette.open(file, Cassette.Mode.RECORD, false)).generateCompletion("sys", "q");
+
+        long start = System.nanoTime();
+        newCaller(Cassette.open(file, Cassette.Mode.REPLAY, true)).generateCompletion("sys", "q");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(150));
+    }
+
+    @Test
+    @DisplayName("Should fail requests that were never recorded")
+    void testMissingEntry() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("answer"));
+        newCaller(Cassette.open(file, Cassette.Mode.RECORD, false)).generateCompletion("sys", "q");
+        Cassette cassette = Cassette.open(file, Cassette.Mode.REPLAY, false);
+
+        assertThatThrownBy(() -> newCaller(cassette).generateCompletion("sys", "other"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("No recorded response");
+        assertThat(cassette.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should match requests regardless of line endings and trailing whitespace")
+    void testKeyNormalization() {
+        ChatCompletionRequest a = new ChatCompletionRequest("m", Arrays.asList(
+                new Message("system", "sys"), new Message("user", "line one\r\nline two  \n")), 0.2);
+        ChatCompletionRequest b = new ChatCompletionRequest("m", Arrays.asList(
+                new Message("system", "sys "), new Message("user", "line one\nline two")), 0.2);
+        ChatCompletionRequest c = new ChatCompletionRequest("m", Arrays.asList(
+                new Message("system", "sys"), new Message("user", "line one\nline two")), 0.7);
+
+        assertThat(Cassette.keyFor(a)).isEqualTo(Cassette.keyFor(b));
+        assertThat(Cassette.keyFor(a)).isNotEqualTo(Cassette.keyFor(c));
+    }
+}
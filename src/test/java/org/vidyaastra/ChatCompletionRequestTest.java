@@ -0,0 +1,176 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ChatCompletionRequest serialization
+ */
+@DisplayName("Chat Completion Request Tests")
+class ChatCompletionRequestTest {
+
+    @Test
+    @DisplayName("Should match the known payload format exactly")
+    void testGoldenPayload() {
+        ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o-mini", Arrays.asList(
+            new Message("system", "You are helpful."),
+            new Message("user", "Say \"hi\"\nC:\\temp")
+        ), 0.3);
+
+        assertThat(request.toJson()).isEqualTo(
+            "{\"model\":\"gpt-4o-mini\",\"temperature\":0.3,\"messages\":[" +
+            "{\"role\":\"system\",\"content\":\"You are helpful.\"}," +
+            "{\"role\":\"user\",\"content\":\"Say \\\"hi\\\"\\nC:\\\\temp\"}]}");
+    }
+
+    @Test
+    @DisplayName("Should produce the same bytes as the previous serializer")
+    void testByteForByteCompatibility() {
+        StringBuilder ontology = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            ontology.append("Declaration(Class(<http://example.org/onto#Klasse").append(i).append(">))\r\n")
+                    .append("AnnotationAssertion(rdfs:label <http://example.org/onto#Klasse").append(i)
+                    .append("> \"Größe \\\"").append(i).append("\\\" ✓ 🦉\"@de)\n");
+        }
+        List<Message> messages = Arrays.asList(
+            new Message("system", "Explain this ontology:\n" + ontology),
+            new Message("user", null)
+        );
+
+        for (boolean stream : new boolean[] {false, true}) {
+            ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o", messages, 0.7, stream);
+            byte[] expected = legacyToJson(request).getBytes(StandardCharsets.UTF_8);
+            JsonWriter writer = request.writeJson(new JsonWriter(16));
+
+            assertThat(writer.toByteArray()).isEqualTo(expected);
+            assertThat(request.toJson()).isEqualTo(legacyToJson(request));
+        }
+    }
+
+    @Test
+    @DisplayName("Should escape tabs and control characters")
+    void testEscapesControlCharacters() {
+        ChatCompletionRequest request = new ChatCompletionRequest("m",
+            Arrays.asList(new Message("user", "a\tb\bc\fd\u0000e\u001f")));
+
+        assertThat(request.toJson()).contains("\"content\":\"a\\tb\\bc\\fd\\u0000e\\u001f\"");
+    }
+
+    @Test
+    @DisplayName("Should round-trip through the JSON reader")
+    void testRoundTrip() {
+        String content = "tab\t quote\" slash\\ nul\u0000 lone\ud800 pair🦉 ü";
+        ChatCompletionRequest request = new ChatCompletionRequest("m",
+            Arrays.asList(new Message("user", content)), 1.0, true);
+
+        JsonReader reader = new JsonReader(request.toJson());
+        reader.beginObject();
+        assertThat(reader.nextName()).isEqualTo("model");
+        assertThat(reader.nextString()).isEqualTo("m");
+        assertThat(reader.nextName()).isEqualTo("temperature");
+        assertThat(reader.nextDouble()).isEqualTo(1.0);
+        assertThat(reader.nextName()).isEqualTo("stream");
+        assertThat(reader.nextBoolean()).isTrue();
+        assertThat(reader.nextName()).isEqualTo("messages");
+        reader.beginArray();
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+        assertThat(reader.nextName()).isEqualTo("content");
+        assertThat(reader.nextString()).isEqualTo(content);
+    }
+
+    @Test
+    @DisplayName("Should write only the generation options that are set")
+    void testGenerationOptions() {
+        GenerationOptions options = new GenerationOptions()
+                .setMaxTokens(128)
+                .setTopP(0.9)
+                .setSeed(42L)
+                .setStop("END", "")
+                .setResponseFormat(GenerationOptions.ResponseFormat.JSON_OBJECT);
+        ChatCompletionRequest request = new ChatCompletionRequest("m",
+            Arrays.asList(new Message("user", "q")), 0.2, false, options);
+        options.setMaxTokens(1);
+
+        assertThat(request.toJson()).isEqualTo(
+            "{\"model\":\"m\",\"temperature\":0.2,\"max_tokens\":128,\"top_p\":0.9,\"seed\":42," +
+            "\"stop\":[\"END\"],\"response_format\":{\"type\":\"json_object\"}," +
+            "\"messages\":[{\"role\":\"user\",\"content\":\"q\"}]}");
+        assertThat(GenerationOptions.defaultsFor(CompletionOperation.ONTOLOGY_GENERATION).getStop())
+            .containsExactly("</rdf:RDF>");
+        assertThat(GenerationOptions.defaultsFor(CompletionOperation.BASIC_QUERY).isEmpty()).isTrue();
+        assertThatThrownBy(() -> new GenerationOptions().setStop("a", "b", "c", "d", "e"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should write a strict JSON schema response format")
+    void testJsonSchemaResponseFormat() {
+        GenerationOptions options = new GenerationOptions().setJsonSchema("intent", JsonSchema.object()
+                .property("type", JsonSchema.string("a", "b"))
+                .property("tags", JsonSchema.array(JsonSchema.string())));
+        ChatCompletionRequest request = new ChatCompletionRequest("m",
+            Arrays.asList(new Message("user", "q")), 0.2, false, options);
+
+        assertThat(request.toJson()).contains("\"response_format\":{\"type\":\"json_schema\"," +
+            "\"json_schema\":{\"name\":\"intent\",\"strict\":true,\"schema\":{\"type\":\"object\"," +
+            "\"properties\":{\"type\":{\"type\":\"string\",\"enum\":[\"a\",\"b\"]}," +
+            "\"tags\":{\"type\":\"array\",\"items\":{\"type\":\"string\"}}}," +
+            "\"required\":[\"type\",\"tags\"],\"additionalProperties\":false}}}");
+        assertThat(new GenerationOptions(options)).isEqualTo(options);
+        assertThat(GenerationOptions.defaultsFor(CompletionOperation.ONTOLOGY_MODIFICATION).getSchema())
+            .isEqualTo(ModificationPlan.SCHEMA);
+        assertThatThrownBy(() -> new GenerationOptions()
+                .setResponseFormat(GenerationOptions.ResponseFormat.JSON_SCHEMA))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new GenerationOptions().setJsonSchema("bad name", JsonSchema.object()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should reuse the writer buffer after reset")
+    void testWriterReuse() {
+        JsonWriter writer = new JsonWriter();
+        ChatCompletionRequest first = new ChatCompletionRequest("a", Arrays.asList(new Message("user", "x".repeat(5000))));
+        ChatCompletionRequest second = new ChatCompletionRequest("b", Arrays.asList(new Message("user", "y")));
+
+        first.writeJson(writer);
+        second.writeJson(writer.reset());
+
+        assertThat(writer.toString()).isEqualTo(second.toJson());
+    }
+
+    /**
+     * The serializer as it was before the streaming writer, kept as reference.
+     */
+    private static String legacyToJson(ChatCompletionRequest request) {
+        String messagesJson = request.messages.stream()
+                .map(m -> "{" +
+                        "\"role\":\"" + legacyEscape(m.role) + "\"," +
+                        "\"content\":\"" + legacyEscape(m.content) + "\"}")
+                .collect(Collectors.joining(","));
+
+        return "{" +
+                "\"model\":\"" + legacyEscape(request.model) + "\"," +
+                "\"temperature\":" + request.temperature + "," +
+                (request.stream ? "\"stream\":true," : "") +
+                "\"messages\":[" + messagesJson + "]" +
+                "}";
+    }
+
+    private static String legacyEscape(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r");
+    }
+}
@@ -0,0 +1,194 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ChatCompletionResponse parsing
+ */
+@DisplayName("Chat Completion Response Tests")
+class ChatCompletionResponseTest {
+
+    private static final String SIMPLE_RESPONSE = "{\n" +
+        "  \"id\": \"chatcmpl-123\",\n" +
+        "  \"object\": \"chat.completion\",\n" +
+        "  \"model\": \"gpt-4o-mini\",\n" +
+        "  \"choices\": [\n" +
+        "    {\n" +
+        "      \"index\": 0,\n" +
+        "      \"message\": { \"role\": \"assistant\", \"content\": \"Hello there\", \"refusal\": null },\n" +
+        "      \"logprobs\": null,\n" +
+        "      \"finish_reason\": \"stop\"\n" +
+        "    }\n" +
+        "  ],\n" +
+        "  \"usage\": { \"prompt_tokens\": 12, \"completion_tokens\": 3, \"total_tokens\": 15,\n" +
+        "             \"prompt_tokens_details\": { \"cached_tokens\": 0 } },\n" +
+        "  \"system_fingerprint\": \"fp_1\"\n" +
+        "}";
+
+    @Test
+    @DisplayName("Should parse content, finish_reason and usage")
+    void testParseSimpleResponse() {
+        ChatCompletionResponse response = ChatCompletionResponse.parse(SIMPLE_RESPONSE);
+
+        assertThat(response.getId()).isEqualTo("chatcmpl-123");
+        assertThat(response.getModel()).isEqualTo("gpt-4o-mini");
+        assertThat(response.getFirstContent()).isEqualTo("Hello there");
+        assertThat(response.getFirstFinishReason()).isEqualTo("stop");
+        assertThat(response.getChoices().get(0).getRole()).isEqualTo("assistant");
+        assertThat(response.getUsage().getPromptTokens()).isEqualTo(12);
+        assertThat(response.getUsage().getCompletionTokens()).isEqualTo(3);
+        assertThat(response.getUsage().getTotalTokens()).isEqualTo(15);
+        assertThat(response.getUsage().getCachedPromptTokens()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should parse the cached prompt tokens of the usage details")
+    void testParseCachedPromptTokens() {
+        ChatCompletionResponse response = ChatCompletionResponse.parse("{\"choices\":[],\"usage\":{"
+                + "\"prompt_tokens\":2006,\"completion_tokens\":300,\"total_tokens\":2306,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":1920,\"audio_tokens\":0},"
+                + "\"completion_tokens_details\":{\"reasoning_tokens\":0}}}");
+
+        assertThat(response.getUsage().getPromptTokens()).isEqualTo(2006);
+        assertThat(response.getUsage().getCachedPromptTokens()).isEqualTo(1920);
+        assertThat(response.getUsage().getTotalTokens()).isEqualTo(2306);
+    }
+
+    @Test
+    @DisplayName("Should keep extractFirstMessageContent working for the known shape")
+    void testExtractFirstMessageContent() {
+        assertThat(ChatCompletionResponse.extractFirstMessageContent(SIMPLE_RESPONSE)).isEqualTo("Hello there");
+    }
+
+    @Test
+    @DisplayName("Should decode every JSON escape sequence")
+    void testDecodeAllEscapes() {
+        String json = "{\"choices\":[{\"message\":{\"content\":" +
+            "\"q\\\"uote \\\\ slash\\/ b\\b f\\f n\\n r\\r t\\t lt\\u003c\"}}]}";
+
+        String content = ChatCompletionResponse.extractFirstMessageContent(json);
+
+        assertThat(content).isEqualTo("q\"uote \\ slash/ b\b f\f n\n r\r t\t lt<");
+    }
+
+    @Test
+    @DisplayName("Should combine surrogate pairs into a single code point")
+    void testDecodeSurrogatePairs() {
+        String json = "{\"choices\":[{\"message\":{\"content\":\"owl \\ud83e\\udd89 and raw 😀\"}}]}";
+
+        String content = ChatCompletionResponse.extractFirstMessageContent(json);
+
+        assertThat(content).isEqualTo("owl 🦉 and raw 😀");
+        assertThat(content.codePointCount(0, content.length())).isEqualTo(15);
+    }
+
+    @Test
+    @DisplayName("Should not be confused by content keys inside earlier string values")
+    void testIgnoreKeysInsideStrings() {
+        String json = "{\"note\":\"\\\"choices\\\": [\\\"message\\\"]\"," +
+            "\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"real\"}}]}";
+
+        assertThat(ChatCompletionResponse.extractFirstMessageContent(json)).isEqualTo("real");
+    }
+
+    @Test
+    @DisplayName("Should parse a 200 KB generated OWL document")
+    void testParseLargeResponse() {
+        StringBuilder owl = new StringBuilder("<?xml version=\"1.0\"?>\n<rdf:RDF xmlns=\"http://example.org/onto#\">\n");
+        int i = 0;
+        while (owl.length() < 200_000) {
+            owl.append("    <owl:Class rdf:about=\"http://example.org/onto#Class").append(i++).append("\">\n")
+               .append("        <rdfs:label>Class \"").append(i).append("\"\t</rdfs:label>\n")
+               .append("    </owl:Class>\n");
+        }
+        owl.append("</rdf:RDF>");
+
+        String json = "{\"id\":\"x\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" +
+            escape(owl.toString()) + "\"},\"finish_reason\":\"length\"}],\"usage\":{\"prompt_tokens\":900," +
+            "\"completion_tokens\":16000,\"total_tokens\":16900}}";
+
+        ChatCompletionResponse response = ChatCompletionResponse.parse(json);
+
+        assertThat(response.getFirstContent()).isEqualTo(owl.toString());
+        assertThat(response.getFirstFinishReason()).isEqualTo("length");
+        assertThat(response.getUsage().getCompletionTokens()).isEqualTo(16000);
+    }
+
+    @Test
+    @DisplayName("Should parse a large unescaped content value")
+    void testParseLargeUnescapedResponse() {
+        String body = "word ".repeat(50_000);
+        String json = "{\"choices\":[{\"message\":{\"content\":\"" + body + "\"}}]}";
+
+        assertThat(ChatCompletionResponse.parse(json).getFirstContent()).isEqualTo(body);
+    }
+
+    @Test
+    @DisplayName("Should read every choice in order")
+    void testMultipleChoices() {
+        String json = "{\"choices\":[" +
+            "{\"index\":0,\"message\":{\"content\":\"first\"},\"finish_reason\":\"stop\"}," +
+            "{\"index\":1,\"message\":{\"content\":\"second\"},\"finish_reason\":\"length\"}]}";
+
+        ChatCompletionResponse response = ChatCompletionResponse.parse(json);
+
+        assertThat(response.getChoices()).hasSize(2);
+        assertThat(response.getChoices().get(1).getIndex()).isEqualTo(1);
+        assertThat(response.getChoices().get(1).getContent()).isEqualTo("second");
+        assertThat(response.getChoices().get(1).getFinishReason()).isEqualTo("length");
+    }
+
+    @Test
+    @DisplayName("Should read deltas from streamed chunks")
+    void testStreamChunks() {
+        String roleChunk = "{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"},\"finish_reason\":null}]}";
+        String contentChunk = "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Hel}lo\"},\"finish_reason\":null}]}";
+        String finalChunk = "{\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}";
+
+        assertThat(ChatCompletionResponse.extractFirstDeltaContent(roleChunk)).isEmpty();
+        assertThat(ChatCompletionResponse.extractFirstDeltaContent(contentChunk)).isEqualTo("Hel}lo");
+        assertThat(ChatCompletionResponse.extractFirstDeltaContent(finalChunk)).isNull();
+        assertThat(ChatCompletionResponse.parse(finalChunk).getFirstFinishReason()).isEqualTo("stop");
+    }
+
+    @Test
+    @DisplayName("Should report missing fields as error text")
+    void testErrorMessages() {
+        assertThat(ChatCompletionResponse.extractFirstMessageContent("")).isEqualTo("Error: Empty response.");
+        assertThat(ChatCompletionResponse.extractFirstMessageContent("{\"object\":\"list\"}"))
+            .isEqualTo("Error: No 'choices' field found in response.");
+        assertThat(ChatCompletionResponse.extractFirstMessageContent("{\"choices\":[{\"index\":0}]}"))
+            .isEqualTo("Error: No 'message' field found in first choice.");
+        assertThat(ChatCompletionResponse.extractFirstMessageContent("{\"choices\":[{\"message\":{\"content\":null}}]}"))
+            .isEqualTo("Error: No 'content' field found in message.");
+        assertThat(ChatCompletionResponse.extractFirstMessageContent("{\"choices\":[{\"message\":"))
+            .startsWith("Error: Malformed response");
+    }
+
+    @Test
+    @DisplayName("Should surface API error objects")
+    void testApiErrorObject() {
+        String json = "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"requests\",\"code\":null}}";
+
+        assertThat(ChatCompletionResponse.extractFirstMessageContent(json)).isEqualTo("Error: Rate limit reached");
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 1024);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\t': sb.append("\\t"); break;
+                case '/': sb.append("\\/"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
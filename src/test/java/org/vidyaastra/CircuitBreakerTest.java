@@ -0,0 +1,92 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for CircuitBreaker and EndpointPool
+ */
+@DisplayName("Circuit Breaker Tests")
+class CircuitBreakerTest {
+
+    @Test
+    @DisplayName("Should open after consecutive failures and probe once the open duration has passed")
+    void testOpenHalfOpenClose() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(10), now::get);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.recordFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        // Only one probe at a time
+        assertThat(breaker.tryAcquire()).isFalse();
+        breaker.recordFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getTimesOpened()).isEqualTo(2);
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.recordCancelled();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.recordSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should list the primary first and fill in missing keys and models")
+    void testCandidates() {
+        Endpoint primary = new Endpoint("https://api.openai.com/v1/", "sk-primary", "gpt-4o-mini");
+        EndpointPool pool = new EndpointPool().setFallbacks(List.of(
+                new Endpoint("https://proxy.example.org/v1", "", "llama3"),
+                new Endpoint("https://api.openai.com/v1", "sk-other", "gpt-4o"),
+                new Endpoint("http://localhost:8000/v1", "demo", "")));
+
+        assertThat(pool.candidates(primary)).containsExactly(
+                primary,
+                new Endpoint("https://proxy.example.org/v1", "sk-primary", "llama3"),
+                new Endpoint("http://localhost:8000/v1", "demo", "gpt-4o-mini"));
+        assertThat(primary.toString()).doesNotContain("sk-primary");
+        assertThat(pool.breakerFor(primary)).isSameAs(pool.breakerFor(new Endpoint("https://api.openai.com/v1", "", "")));
+    }
+
+    @Test
+    @DisplayName("Should hedge only after enough latencies are known, never sooner than the minimum delay")
+    void testHedgeDelay() {
+        Endpoint endpoint = new Endpoint("https://api.openai.com/v1", "sk", "gpt-4o-mini");
+        EndpointPool pool = new EndpointPool().setMinHedgeDelay(Duration.ofMillis(500));
+        for (int i = 0; i < EndpointPool.MIN_HEDGE_SAMPLES - 1; i++) {
+            pool.recordLatency(endpoint, CompletionOperation.NLP_QUERY, Duration.ofSeconds(2).toNanos());
+        }
+        pool.recordLatency(endpoint, CompletionOperation.GENERAL, Duration.ofMillis(10).toNanos());
+
+        assertThat(pool.hedgeDelay(endpoint, CompletionOperation.NLP_QUERY)).isNull();
+        pool.setHedging(true);
+        assertThat(pool.hedgeDelay(endpoint, CompletionOperation.NLP_QUERY)).isNull();
+
+        pool.recordLatency(endpoint, CompletionOperation.NLP_QUERY, Duration.ofSeconds(2).toNanos());
+        assertThat(pool.hedgeDelay(endpoint, CompletionOperation.NLP_QUERY))
+                .isBetween(Duration.ofMillis(1900), Duration.ofMillis(2100));
+
+        for (int i = 0; i < EndpointPool.MIN_HEDGE_SAMPLES; i++) {
+            pool.recordLatency(endpoint, CompletionOperation.GENERAL, Duration.ofMillis(10).toNanos());
+        }
+        assertThat(pool.hedgeDelay(endpoint, CompletionOperation.GENERAL)).isEqualTo(Duration.ofMillis(500));
+    }
+}
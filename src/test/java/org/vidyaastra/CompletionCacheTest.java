@@ -0,0 +1,117 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the two-tier CompletionCache
+ */
+@DisplayName("Completion Cache Tests")
+class CompletionCacheTest {
+
+    @TempDir
+    File cacheDir;
+
+    @Test
+    @DisplayName("Should produce different keys for different temperatures")
+    void testKeyIncludesTemperature() {
+        String key1 = CompletionCache.keyFor("gpt-4o-mini", "https://api.openai.com/v1", "sys", "user", 0.7);
+        String key2 = CompletionCache.keyFor("gpt-4o-mini", "https://api.openai.com/v1", "sys", "user", 0.3);
+
+        assertThat(key1).isNotEqualTo(key2);
+        assertThat(key1).hasSize(64);
+    }
+
+    @Test
+    @DisplayName("Should not confuse prompts that only differ in where they are split")
+    void testKeyIsUnambiguous() {
+        String key1 = CompletionCache.keyFor("m", "u", "ab", "c", 0.7);
+        String key2 = CompletionCache.keyFor("m", "u", "a", "bc", 0.7);
+
+        assertThat(key1).isNotEqualTo(key2);
+    }
+
+    @Test
+    @DisplayName("Should count hits, misses and saved latency")
+    void testHitMissCounters() {
+        CompletionCache cache = new CompletionCache(null, 10, 1024, Duration.ofHours(1));
+
+        assertThat(cache.get("k")).isNull();
+        cache.put("k", "value", Duration.ofMillis(1500).toNanos());
+
+        assertThat(cache.get("k")).isEqualTo("value");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getSavedLatency()).isEqualTo(Duration.ofMillis(1500));
+    }
+
+    @Test
+    @DisplayName("Should evict least recently used entries from memory")
+    void testMemoryLruEviction() {
+        CompletionCache cache = new CompletionCache(null, 2, 1024, Duration.ofHours(1));
+        cache.put("a", "1", 0);
+        cache.put("b", "2", 0);
+        cache.get("a");
+        cache.put("c", "3", 0);
+
+        assertThat(cache.get("a")).isEqualTo("1");
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo("3");
+    }
+
+    @Test
+    @DisplayName("Should serve entries from disk after a restart")
+    void testDiskTierSurvivesNewInstance() {
+        CompletionCache first = new CompletionCache(cacheDir, 10, 1024 * 1024, Duration.ofHours(1));
+        first.put("key", "persisted ✓ content", 42);
+
+        CompletionCache second = new CompletionCache(cacheDir, 10, 1024 * 1024, Duration.ofHours(1));
+
+        assertThat(second.get("key")).isEqualTo("persisted ✓ content");
+        assertThat(second.getDiskHitCount()).isEqualTo(1);
+        assertThat(second.get("key")).isEqualTo("persisted ✓ content");
+        assertThat(second.getMemoryHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should treat expired entries as misses")
+    void testTtlExpiry() {
+        CompletionCache cache = new CompletionCache(cacheDir, 10, 1024 * 1024, Duration.ofHours(1));
+        cache.put("key", "value", 0);
+
+        cache.setTtl(Duration.ofMillis(-1));
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(new File(cacheDir, "key.entry")).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("Should keep the disk tier under its size limit")
+    void testDiskSizeEviction() {
+        CompletionCache cache = new CompletionCache(cacheDir, 1, 4096, Duration.ofHours(1));
+        String value = "x".repeat(1000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, value, 0);
+        }
+
+        assertThat(cache.getDiskBytes()).isLessThanOrEqualTo(4096);
+        assertThat(cache.get("key9")).isEqualTo(value);
+    }
+
+    @Test
+    @DisplayName("Should bypass storage and lookup when disabled")
+    void testDisabledCache() {
+        CompletionCache cache = new CompletionCache(null, 10, 1024, Duration.ofHours(1));
+        cache.setEnabled(false);
+        cache.put("k", "v", 0);
+        cache.setEnabled(true);
+
+        assertThat(cache.get("k")).isNull();
+    }
+}
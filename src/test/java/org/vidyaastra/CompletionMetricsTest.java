@@ -0,0 +1,126 @@
+package org.vidyaastra;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for CompletionMetrics and how OpenAiCaller feeds it
+ */
+@DisplayName("Completion Metrics Tests")
+class CompletionMetricsTest {
+
+    private static final String RESPONSE = "{\"choices\":[{\"message\":{\"content\":\"pong\"}}],"
+            + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3,\"total_tokens\":15}}";
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] json = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private OpenAiCaller newCaller(CompletionMetrics metrics, CompletionCache cache) {
+        OpenAiCaller caller = new OpenAiCaller("test-key", "test-model",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        caller.setMetrics(metrics);
+        caller.setCache(cache);
+        caller.setRateLimiter(null);
+        caller.setOperation(CompletionOperation.NLP_QUERY);
+        return caller;
+    }
+
+    @Test
+    @DisplayName("Should record latency, bytes and token usage per operation")
+    void testRecordsCallMetrics() throws Exception {
+        CompletionMetrics metrics = new CompletionMetrics();
+        newCaller(metrics, null).generateCompletion("sys", "ping");
+
+        CompletionMetrics.OperationMetrics stats = metrics.forOperation(CompletionOperation.NLP_QUERY);
+        assertThat(stats.getRequests()).isEqualTo(1);
+        assertThat(stats.getSuccesses()).isEqualTo(1);
+        assertThat(stats.getHttpExchanges()).isEqualTo(1);
+        assertThat(stats.getBytesSent()).isGreaterThan(0);
+        assertThat(stats.getBytesReceived()).isEqualTo(RESPONSE.length());
+        assertThat(stats.getPromptTokens()).isEqualTo(12);
+        assertThat(stats.getCompletionTokens()).isEqualTo(3);
+        assertThat(stats.getLatency().getCount()).isEqualTo(1);
+        assertThat(stats.getTimeToFirstByte().getCount()).isEqualTo(1);
+        assertThat(metrics.forOperation(CompletionOperation.GENERAL).getRequests()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should count cache hits without another exchange")
+    void testCountsCacheHits() throws Exception {
+        CompletionMetrics metrics = new CompletionMetrics();
+        OpenAiCaller caller = newCaller(metrics, new CompletionCache(null, 16, 1024 * 1024, Duration.ofHours(1)));
+        caller.generateCompletion("sys", "ping");
+        caller.generateCompletion("sys", "ping");
+
+        CompletionMetrics.OperationMetrics stats = metrics.forOperation(CompletionOperation.NLP_QUERY);
+        assertThat(stats.getRequests()).isEqualTo(2);
+        assertThat(stats.getCacheHits()).isEqualTo(1);
+        assertThat(stats.getHttpExchanges()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should export all operations as parseable JSON and reset to zero")
+    void testJsonExportAndReset() throws Exception {
+        CompletionMetrics metrics = new CompletionMetrics();
+        newCaller(metrics, null).generateCompletion("sys", "ping");
+
+        JsonReader reader = new JsonReader(metrics.toJson());
+        reader.beginObject();
+        long nlpRequests = -1;
+        while (reader.hasNext()) {
+            if (!reader.nextNameEquals("operations")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextNameEquals("NLP_QUERY")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                assertThat(reader.nextName()).isEqualTo("requests");
+                nlpRequests = reader.nextLong();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    reader.skipValue();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        assertThat(nlpRequests).isEqualTo(1);
+
+        metrics.reset();
+        assertThat(metrics.forOperation(CompletionOperation.NLP_QUERY).getRequests()).isZero();
+        assertThat(metrics.forOperation(CompletionOperation.NLP_QUERY).getLatency().getCount()).isZero();
+    }
+}
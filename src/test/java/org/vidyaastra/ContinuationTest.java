@@ -0,0 +1,43 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for Continuation
+ */
+@DisplayName("Continuation Tests")
+class ContinuationTest {
+
+    @Test
+    @DisplayName("Should drop the text a continuation repeats, and nothing else")
+    void testAppend() {
+        StringBuilder text = new StringBuilder("<owl:Class rdf:about=\"#Dog\"/>\n    <owl:Cla");
+
+        assertThat(Continuation.append(text, "<owl:Class rdf:about=\"#Dog\"/>\n    <owl:Class rdf:about=\"#Cat\"/>"))
+                .isEqualTo("ss rdf:about=\"#Cat\"/>");
+        assertThat(text.toString()).endsWith("<owl:Class rdf:about=\"#Cat\"/>");
+
+        // A code fence opened again is dropped, a short coincidental match is kept
+        StringBuilder other = new StringBuilder("a\n");
+        assertThat(Continuation.append(other, "```xml\n\nb")).isEqualTo("\nb");
+    }
+
+    @Test
+    @DisplayName("Should hold streamed deltas back only while they may repeat the tail")
+    void testStitcher() {
+        StringBuilder received = new StringBuilder();
+        Continuation.Stitcher stitcher = new Continuation.Stitcher("one two three four", received::append);
+
+        stitcher.onDelta("two thr");
+        assertThat(received.toString()).isEmpty();
+        stitcher.onDelta("ee four five");
+        assertThat(received.toString()).isEqualTo(" five");
+        stitcher.onDelta(" six");
+        stitcher.finish();
+
+        assertThat(stitcher.getAppended()).isEqualTo(" five six");
+    }
+}
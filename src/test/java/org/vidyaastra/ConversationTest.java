@@ -0,0 +1,91 @@
+package org.vidyaastra;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for Conversation
+ */
+@DisplayName("Conversation Tests")
+class ConversationTest {
+
+    // One token per word keeps the arithmetic readable
+    private static final TokenCounter WORDS = text -> text.toString().trim().isEmpty() ? 0
+            : text.toString().trim().split("\\s+").length;
+
+    private static String words(int count, String word) {
+        return (word + " ").repeat(count).trim();
+    }
+
+    @Test
+    @DisplayName("Should keep the history flat by shortening older turns without a summarizer")
+    void testFallbackCompaction() {
+        Conversation conversation = new Conversation(WORDS, 200);
+        int largest = 0;
+        for (int i = 0; i < 30; i++) {
+            conversation.addTurn("question " + i, words(40, "answer" + i));
+            largest = Math.max(largest, conversation.countTokens());
+        }
+
+        // The budget plus the turn that pushed the history over it
+        assertThat(largest).isLessThanOrEqualTo(200 + 42);
+        assertThat(conversation.getTurnCount()).isLessThanOrEqualTo(Conversation.KEEP_RECENT_TURNS + 2);
+        List<Message> history = conversation.getHistory();
+        assertThat(history.get(0).role).isEqualTo("system");
+        assertThat(history.get(0).content).contains("User asked: question 2");
+        assertThat(history.get(history.size() - 1).content).startsWith("answer29");
+    }
+
+    @Test
+    @DisplayName("Should send turns in full until the summary has been written")
+    void testAsyncSummary() {
+        AtomicReference<CompletableFuture<String>> pending = new AtomicReference<>();
+        AtomicReference<List<Message>> summarized = new AtomicReference<>();
+        Conversation conversation = new Conversation(WORDS, 60).setSummarizer((summary, turns) -> {
+            summarized.set(turns);
+            pending.set(new CompletableFuture<>());
+            return pending.get();
+        });
+        for (int i = 0; i < 3; i++) {
+            conversation.addTurn("question " + i, words(20, "answer"));
+        }
+
+        assertThat(summarized.get()).hasSize(2);
+        assertThat(conversation.getTurnCount()).isEqualTo(3);
+        conversation.addTurn("question 3", "short");
+        assertThat(conversation.getCompaction()).isNotDone();
+
+        pending.get().complete("The user asked about question 0.");
+        assertThat(conversation.getCompaction()).isDone();
+        assertThat(conversation.getSummary()).isEqualTo("The user asked about question 0.");
+        assertThat(conversation.getHistory()).extracting(message -> message.content)
+                .contains("question 1", "question 3").doesNotContain("question 0");
+    }
+
+    @Test
+    @DisplayName("Should fall back to shortened turns when the summarizer fails and drop results after a clear")
+    void testSummaryFailureAndClear() {
+        Conversation failing = new Conversation(WORDS, 60)
+                .setSummarizer((summary, turns) -> CompletableFuture.failedFuture(new RuntimeException("offline")));
+        for (int i = 0; i < 3; i++) {
+            failing.addTurn("question " + i, words(20, "answer"));
+        }
+        assertThat(failing.getSummary()).startsWith("User asked: question 0");
+        assertThat(failing.getTurnCount()).isEqualTo(Conversation.KEEP_RECENT_TURNS);
+
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        Conversation cleared = new Conversation(WORDS, 60).setSummarizer((summary, turns) -> pending);
+        for (int i = 0; i < 3; i++) {
+            cleared.addTurn("question " + i, words(20, "answer"));
+        }
+        cleared.clear();
+        pending.complete("stale summary");
+        assertThat(cleared.isEmpty()).isTrue();
+    }
+}
@@ -0,0 +1,152 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for HttpTransport configuration and per-host limits
+ */
+@DisplayName("HTTP Transport Tests")
+class HttpTransportTest {
+
+    private static final URI HOST_A = URI.create("https://a.example/v1/chat/completions");
+    private static final URI HOST_B = URI.create("https://b.example/v1/chat/completions");
+
+    @Test
+    @DisplayName("Should rebuild the client only when settings change")
+    void testRebuildOnlyOnChange() {
+        HttpTransport transport = new HttpTransport(new TransportSettings());
+        var client = transport.getClient();
+
+        assertThat(transport.configure(new TransportSettings())).isFalse();
+        assertThat(transport.getClient()).isSameAs(client);
+
+        assertThat(transport.configure(new TransportSettings().setConnectTimeout(Duration.ofSeconds(3)))).isTrue();
+        assertThat(transport.getClient()).isNotSameAs(client);
+        assertThat(transport.getClient().connectTimeout()).contains(Duration.ofSeconds(3));
+        assertThat(transport.getRebuildCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should use operation defaults unless a timeout is configured")
+    void testPerOperationTimeouts() {
+        TransportSettings settings = new TransportSettings()
+            .setRequestTimeout(CompletionOperation.NLP_QUERY, Duration.ofSeconds(15));
+        HttpTransport transport = new HttpTransport(settings);
+
+        assertThat(transport.getRequestTimeout(CompletionOperation.NLP_QUERY)).isEqualTo(Duration.ofSeconds(15));
+        assertThat(transport.getRequestTimeout(CompletionOperation.ONTOLOGY_GENERATION))
+            .isEqualTo(CompletionOperation.ONTOLOGY_GENERATION.getDefaultTimeout());
+
+        // The transport keeps its own copy
+        settings.setRequestTimeout(CompletionOperation.NLP_QUERY, Duration.ofSeconds(99));
+        assertThat(transport.getRequestTimeout(CompletionOperation.NLP_QUERY)).isEqualTo(Duration.ofSeconds(15));
+    }
+
+    @Test
+    @DisplayName("Should queue requests beyond the per-host limit until a permit is released")
+    void testHostPermitsQueue() {
+        HttpTransport transport = new HttpTransport(new TransportSettings().setMaxStreamsPerHost(1));
+
+        CompletableFuture<Runnable> first = transport.acquireHostPermit(HOST_A);
+        CompletableFuture<Runnable> second = transport.acquireHostPermit(HOST_A);
+        CompletableFuture<Runnable> other = transport.acquireHostPermit(HOST_B);
+
+        assertThat(first).isDone();
+        assertThat(second).isNotDone();
+        assertThat(other).isDone();
+
+        Runnable release = first.join();
+        release.run();
+        release.run();
+        assertThat(second).isDone();
+        assertThat(transport.getActiveRequests(HOST_A)).isEqualTo(1);
+
+        second.join().run();
+        assertThat(transport.getActiveRequests(HOST_A)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should skip abandoned waiters and grant queued ones when the limit is raised")
+    void testRaisedLimitGrantsWaiters() {
+        HttpTransport transport = new HttpTransport(new TransportSettings().setMaxStreamsPerHost(1));
+
+        transport.acquireHostPermit(HOST_A);
+        CompletableFuture<Runnable> abandoned = transport.acquireHostPermit(HOST_A);
+        CompletableFuture<Runnable> waiting = transport.acquireHostPermit(HOST_A);
+        abandoned.cancel(true);
+
+        transport.configure(new TransportSettings().setMaxStreamsPerHost(2));
+
+        assertThat(waiting).isDone();
+        assertThat(transport.getActiveRequests(HOST_A)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should pre-connect once and count later requests as warm")
+    void testPrewarmRecordsColdAndWarm() throws Exception {
+        AtomicInteger modelRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/models", exchange -> {
+            modelRequests.incrementAndGet();
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+        });
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] json = "{\"choices\":[{\"message\":{\"content\":\"pong\"}}]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+            exchange.close();
+        });
+        server.start();
+        try {
+            HttpTransport transport = new HttpTransport(new TransportSettings());
+            OpenAiCaller caller = new OpenAiCaller("test-key", "test-model",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+            caller.setTransport(transport);
+            caller.setCache(null);
+            caller.setRateLimiter(null);
+
+            assertThat(caller.prewarmAsync().get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(caller.prewarmAsync().get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(modelRequests.get()).isEqualTo(1);
+            assertThat(transport.getColdTimeToFirstByte().getCount()).isEqualTo(1);
+
+            caller.generateCompletion("sys", "ping");
+            assertThat(transport.getWarmTimeToFirstByte().getCount()).isEqualTo(1);
+            assertThat(transport.getColdTimeToFirstByte().getCount()).isEqualTo(1);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("Should skip pre-connecting to an unreachable endpoint")
+    void testPrewarmSkipsUnreachable() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        HttpTransport transport = new HttpTransport(new TransportSettings());
+        OpenAiCaller caller = new OpenAiCaller("test-key", "test-model", "http://127.0.0.1:" + port + "/v1");
+        caller.setTransport(transport);
+
+        assertThat(caller.prewarmAsync().get(10, TimeUnit.SECONDS)).isFalse();
+        assertThat(transport.isConnected(URI.create("http://127.0.0.1:" + port + "/v1/models"))).isFalse();
+        assertThat(transport.getColdTimeToFirstByte().getCount()).isZero();
+    }
+}
@@ -0,0 +1,88 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the single-pass JsonReader
+ */
+@DisplayName("JSON Reader Tests")
+class JsonReaderTest {
+
+    @Test
+    @DisplayName("Should walk nested objects and arrays")
+    void testNestedStructure() {
+        JsonReader reader = new JsonReader("{\"a\": [1, -2, 3.5e2], \"b\": {\"c\": true, \"d\": null}, \"e\": \"x\"}");
+
+        reader.beginObject();
+        assertThat(reader.nextName()).isEqualTo("a");
+        reader.beginArray();
+        assertThat(reader.nextLong()).isEqualTo(1);
+        assertThat(reader.nextInt()).isEqualTo(-2);
+        assertThat(reader.nextDouble()).isEqualTo(350.0);
+        assertThat(reader.hasNext()).isFalse();
+        reader.endArray();
+        assertThat(reader.nextNameEquals("b")).isTrue();
+        reader.beginObject();
+        assertThat(reader.nextName()).isEqualTo("c");
+        assertThat(reader.nextBoolean()).isTrue();
+        assertThat(reader.nextName()).isEqualTo("d");
+        assertThat(reader.peek()).isEqualTo(JsonReader.Token.NULL);
+        reader.nextNull();
+        reader.endObject();
+        assertThat(reader.nextName()).isEqualTo("e");
+        assertThat(reader.nextString()).isEqualTo("x");
+        reader.endObject();
+        assertThat(reader.peek()).isEqualTo(JsonReader.Token.END_DOCUMENT);
+    }
+
+    @Test
+    @DisplayName("Should skip deeply nested values")
+    void testSkipValue() {
+        JsonReader reader = new JsonReader("{\"skip\": {\"x\": [[{\"y\": \"\\\"]}\"}], []], \"z\": {}}, \"keep\": 7}");
+
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+        assertThat(reader.nextName()).isEqualTo("keep");
+        assertThat(reader.nextLong()).isEqualTo(7);
+        reader.endObject();
+    }
+
+    @Test
+    @DisplayName("Should skip a property name together with its value")
+    void testSkipNameAndValue() {
+        JsonReader reader = new JsonReader("{\"skip\": [1, 2], \"keep\": \"v\"}");
+
+        reader.beginObject();
+        reader.skipValue();
+        assertThat(reader.nextName()).isEqualTo("keep");
+        assertThat(reader.nextString()).isEqualTo("v");
+    }
+
+    @Test
+    @DisplayName("Should reject malformed input")
+    void testMalformedInput() {
+        assertThatThrownBy(() -> {
+            JsonReader reader = new JsonReader("{\"a\" 1}");
+            reader.beginObject();
+            reader.nextName();
+            reader.nextLong();
+        }).isInstanceOf(JsonReader.JsonParseException.class);
+
+        assertThatThrownBy(() -> {
+            JsonReader reader = new JsonReader("[\"unterminated");
+            reader.beginArray();
+            reader.nextString();
+        }).isInstanceOf(JsonReader.JsonParseException.class)
+          .hasMessageContaining("Unterminated string");
+
+        assertThatThrownBy(() -> {
+            JsonReader reader = new JsonReader("[\"bad \\x escape\"]");
+            reader.beginArray();
+            reader.nextString();
+        }).isInstanceOf(JsonReader.JsonParseException.class);
+    }
+}
@@ -0,0 +1,54 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the log-linear LatencyHistogram
+ */
+@DisplayName("Latency Histogram Tests")
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Should map every value into a bucket whose upper end is within 3%")
+    void testBucketPrecision() {
+        for (long micros = 0; micros < 5_000_000; micros = micros * 11 / 10 + 1) {
+            long high = LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexFor(micros));
+            assertThat(high).isGreaterThanOrEqualTo(micros);
+            assertThat(high - micros).isLessThanOrEqualTo(Math.max(0, micros / 32));
+        }
+    }
+
+    @Test
+    @DisplayName("Should report percentiles of a uniform distribution")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(Duration.ofMillis(ms));
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMin()).isEqualTo(Duration.ofMillis(1));
+        assertThat(histogram.getMax()).isEqualTo(Duration.ofMillis(1000));
+        assertThat(histogram.getMean().toMillis()).isEqualTo(500);
+        assertThat(histogram.getPercentile(50).toMillis()).isBetween(500L, 516L);
+        assertThat(histogram.getPercentile(99).toMillis()).isBetween(990L, 1000L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(Duration.ofMillis(1000));
+    }
+
+    @Test
+    @DisplayName("Should start over after a reset")
+    void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofSeconds(3));
+        histogram.reset();
+
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getPercentile(50)).isEqualTo(Duration.ZERO);
+        assertThat(histogram.toString()).isEqualTo("no requests");
+    }
+}
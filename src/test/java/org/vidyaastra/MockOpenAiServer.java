@@ -0,0 +1,672 @@
+package org.vidyaastra;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Stand-in for an OpenAI-compatible endpoint, for tests and benchmarks that
+ * must run offline.
+ *
+ * Serves {@code POST .../chat/completions} as a plain JSON response or, when the
+ * request asks for {@code "stream":true}, as server-sent events, and answers
+ * {@code GET .../models} so connection pre-warming works against it. Replies
+ * are taken from a queue of scripted {@link Reply}s, then from a responder
+ * function, and otherwise echo a fixed text. On top of that the server can add
+ * latency drawn from a {@link Latency} distribution, cap its output bandwidth,
+ * reject requests beyond a concurrency limit with 429, and inject random
+ * errors. Every request is recorded for assertions.
+ *
+ * <pre>
+ * try (MockOpenAiServer server = MockOpenAiServer.start()) {
+ *     server.enqueue(MockOpenAiServer.Reply.content("QUERY_TYPE: classes\nTARGET: Person"));
+ *     new OpenAiCaller("key", "model", server.getBaseUrl()).generateCompletion("sys", "user");
+ * }
+ * </pre>
+ */
+public class MockOpenAiServer implements AutoCloseable {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random(42);
+
+    private final Deque<Reply> replies = new ArrayDeque<>();
+    private final List<RecordedRequest> requests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger responseIds = new AtomicInteger();
+
+    private volatile Function<RecordedRequest, Reply> responder = request -> Reply.content("OK");
+    private volatile Latency latency = Latency.none();
+    private volatile long interChunkDelayMillis;
+    private volatile int maxConcurrentRequests;
+    private volatile double failureRate;
+    private volatile int failureStatus = 503;
+
+    private long bytesPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    private MockOpenAiServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-openai-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     */
+    public static MockOpenAiServer start() throws IOException {
+        return new MockOpenAiServer();
+    }
+
+    /**
+     * @return The base URL to configure an OpenAiCaller with, ending in /v1.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /**
+     * Queues replies that are served in order before the responder is consulted.
+     */
+    public synchronized MockOpenAiServer enqueue(Reply... scripted) {
+        Collections.addAll(replies, scripted);
+        return this;
+    }
+
+    /**
+     * @param responder Computes the reply for requests the queue does not cover.
+     */
+    public MockOpenAiServer setResponder(Function<RecordedRequest, Reply> responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    /**
+     * @param latency Delay before the response headers, drawn per request.
+     */
+    public MockOpenAiServer setLatency(Latency latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param millis Delay between two streamed chunks.
+     */
+    public MockOpenAiServer setInterChunkDelay(long millis) {
+        this.interChunkDelayMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond Output bandwidth shared by all responses, or 0 for no cap.
+     */
+    public synchronized MockOpenAiServer setThroughputLimit(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param max Requests handled at once; more are answered with 429. 0 for no limit.
+     */
+    public MockOpenAiServer setMaxConcurrentRequests(int max) {
+        this.maxConcurrentRequests = max;
+        return this;
+    }
+
+    /**
+     * Makes a random share of requests fail with the given status instead of
+     * being answered. Scripted replies are not affected.
+     */
+    public MockOpenAiServer setFailureRate(double rate, int status) {
+        this.failureRate = rate;
+        this.failureStatus = status;
+        return this;
+    }
+
+    public List<RecordedRequest> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * @return Number of chat completion requests received, including rejected ones.
+     */
+    public int getRequestCount() {
+        return (int) getRequests().stream().filter(r -> r.getPath().endsWith("/chat/completions")).count();
+    }
+
+    /**
+     * @return The largest number of requests that were being handled at once.
+     */
+    public int getPeakConcurrency() {
+        return peakInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            RecordedRequest request = new RecordedRequest(exchange, body);
+            requests.add(request);
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/models")) {
+                writeFully(exchange, 200, "{\"object\":\"list\",\"data\":[{\"id\":\"mock-model\",\"object\":\"model\"}]}");
+            } else if (path.endsWith("/chat/completions")) {
+                handleCompletion(exchange, request);
+            } else {
+                writeFully(exchange, 404, "{\"error\":{\"message\":\"Unknown path " + path + "\"}}");
+            }
+        } catch (IOException e) {
+            // The client went away; nothing left to answer
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleCompletion(HttpExchange exchange, RecordedRequest request) throws IOException {
+        int active = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(active, Math::max);
+        try {
+            Reply reply = maxConcurrentRequests > 0 && active > maxConcurrentRequests
+                    ? Reply.error(429, "rate_limit_exceeded", "Too many concurrent requests").withHeader("Retry-After", "0")
+                    : nextReply(request);
+
+            long delay = reply.latencyMillis >= 0 ? reply.latencyMillis : latency.sampleMillis(random);
+            sleep(delay);
+
+            reply.headers.forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+            if (reply.rawBody != null) {
+                writeBody(exchange, reply.status, reply.rawBody, reply.truncateAfter);
+            } else if (request.isStream()) {
+                writeStream(exchange, request, reply);
+            } else {
+                writeBody(exchange, 200, completionJson(request, reply), reply.truncateAfter);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private Reply nextReply(RecordedRequest request) {
+        synchronized (this) {
+            Reply scripted = replies.poll();
+            if (scripted != null) {
+                return scripted;
+            }
+        }
+        double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+        }
+        if (roll < failureRate) {
+            return Reply.error(failureStatus, "server_error", "Injected failure");
+        }
+        return responder.apply(request);
+    }
+
+    private String completionJson(RecordedRequest request, Reply reply) {
+        JsonWriter writer = new JsonWriter();
+        writer.beginObject()
+                .name("id").value("chatcmpl-mock-" + responseIds.incrementAndGet())
+                .name("object").value("chat.completion")
+                .name("model").value(request.getModel())
+                .name("choices").beginArray().beginObject()
+                .name("index").value(0)
+                .name("message").beginObject()
+                .name("role").value("assistant")
+                .name("content").value(request.applyStop(reply.content))
+                .endObject()
+                .name("finish_reason").value(reply.finishReason)
+                .endObject().endArray();
+        writeUsage(writer, request, reply);
+        return writer.endObject().toString();
+    }
+
+    private void writeStream(HttpExchange exchange, RecordedRequest request, Reply reply) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        String id = "chatcmpl-mock-" + responseIds.incrementAndGet();
+
+        String content = request.applyStop(reply.content);
+        int end = reply.truncateAfter >= 0 ? Math.min(reply.truncateAfter, content.length()) : content.length();
+        for (int i = 0; i < end; i += reply.chunkSize) {
+            String delta = content.substring(i, Math.min(end, i + reply.chunkSize));
+            JsonWriter chunk = new JsonWriter();
+            chunk.beginObject().name("id").value(id).name("object").value("chat.completion.chunk")
+                    .name("choices").beginArray().beginObject()
+                    .name("index").value(0)
+                    .name("delta").beginObject().name("content").value(delta).endObject()
+                    .endObject().endArray().endObject();
+            writeEvent(out, chunk.toString());
+            if (interChunkDelayMillis > 0) {
+                sleep(interChunkDelayMillis);
+            }
+        }
+        if (reply.truncateAfter >= 0) {
+            // Ends the body without a finish reason or [DONE], like a dropped upstream
+            return;
+        }
+
+        JsonWriter last = new JsonWriter();
+        last.beginObject().name("id").value(id).name("object").value("chat.completion.chunk")
+                .name("choices").beginArray().beginObject()
+                .name("index").value(0)
+                .name("delta").beginObject().endObject()
+                .name("finish_reason").value(reply.finishReason)
+                .endObject().endArray().endObject();
+        writeEvent(out, last.toString());
+
+        if (request.getBody().contains("\"include_usage\":true")) {
+            JsonWriter usage = new JsonWriter();
+            usage.beginObject().name("id").value(id).name("choices").beginArray().endArray();
+            writeUsage(usage, request, reply);
+            writeEvent(out, usage.endObject().toString());
+        }
+        writeEvent(out, "[DONE]");
+    }
+
+    private void writeEvent(OutputStream out, String data) throws IOException {
+        writeThrottled(out, ("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void writeUsage(JsonWriter writer, RecordedRequest request, Reply reply) {
+        long prompt = reply.promptTokens >= 0 ? reply.promptTokens : Math.max(1, request.getBody().length() / 4);
+        long completion = reply.completionTokens >= 0 ? reply.completionTokens : Math.max(1, reply.content.length() / 4);
+        writer.name("usage").beginObject()
+                .name("prompt_tokens").value(prompt)
+                .name("completion_tokens").value(completion)
+                .name("total_tokens").value(prompt + completion);
+        if (reply.cachedTokens >= 0) {
+            writer.name("prompt_tokens_details").beginObject()
+                    .name("cached_tokens").value(reply.cachedTokens)
+                    .endObject();
+        }
+        writer.endObject();
+    }
+
+    private void writeFully(HttpExchange exchange, int status, String body) throws IOException {
+        writeBody(exchange, status, body, -1);
+    }
+
+    /**
+     * Writes the body with its full Content-Length; a truncated body is cut
+     * off after that many bytes and the connection dropped.
+     */
+    private void writeBody(HttpExchange exchange, int status, String body, int truncateAfter) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length == 0) {
+            return;
+        }
+        OutputStream out = exchange.getResponseBody();
+        if (truncateAfter >= 0 && truncateAfter < bytes.length) {
+            writeThrottled(out, Arrays.copyOf(bytes, truncateAfter));
+            out.flush();
+            // Closing short of the declared length makes the server drop the connection
+            throw new IOException("Truncated after " + truncateAfter + " bytes");
+        }
+        writeThrottled(out, bytes);
+    }
+
+    private void writeThrottled(OutputStream out, byte[] bytes) throws IOException {
+        final int slice = 1024;
+        for (int offset = 0; offset < bytes.length; offset += slice) {
+            int length = Math.min(slice, bytes.length - offset);
+            sleepNanos(reserveBandwidth(length));
+            out.write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * @return Nanoseconds to wait before sending this many bytes.
+     */
+    private synchronized long reserveBandwidth(int bytes) {
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+        return nextFreeNanos - now;
+    }
+
+    private static void sleep(long millis) throws IOException {
+        sleepNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static void sleepNanos(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    /**
+     * A distribution of response latencies.
+     */
+    public interface Latency {
+        long sampleMillis(Random random);
+
+        static Latency none() {
+            return random -> 0;
+        }
+
+        static Latency fixed(long millis) {
+            return random -> millis;
+        }
+
+        static Latency uniform(long minMillis, long maxMillis) {
+            return random -> {
+                synchronized (random) {
+                    return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+                }
+            };
+        }
+
+        /**
+         * A long-tailed distribution typical of LLM endpoints.
+         * @param medianMillis The median latency.
+         * @param sigma Spread of the underlying normal; 0.5 gives a p99 of about 3x the median.
+         */
+        static Latency logNormal(long medianMillis, double sigma) {
+            return random -> {
+                synchronized (random) {
+                    return (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+                }
+            };
+        }
+    }
+
+    /**
+     * A scripted answer to one chat completion request.
+     */
+    public static final class Reply {
+        private int status = 200;
+        private String content = "";
+        private String rawBody;
+        private String finishReason = "stop";
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private long latencyMillis = -1;
+        private int truncateAfter = -1;
+        private int chunkSize = 8;
+        private long promptTokens = -1;
+        private long completionTokens = -1;
+        private long cachedTokens = -1;
+
+        private Reply() {
+        }
+
+        /**
+         * A successful completion; streamed when the request asks for it.
+         */
+        public static Reply content(String content) {
+            Reply reply = new Reply();
+            reply.content = content;
+            return reply;
+        }
+
+        /**
+         * An error in the OpenAI error format.
+         */
+        public static Reply error(int status, String type, String message) {
+            JsonWriter writer = new JsonWriter();
+            writer.beginObject().name("error").beginObject()
+                    .name("message").value(message)
+                    .name("type").value(type)
+                    .endObject().endObject();
+            return raw(status, writer.toString());
+        }
+
+        /**
+         * A response with exactly this status and body, never streamed.
+         */
+        public static Reply raw(int status, String body) {
+            Reply reply = new Reply();
+            reply.status = status;
+            reply.rawBody = body;
+            return reply;
+        }
+
+        public Reply withHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public Reply withFinishReason(String finishReason) {
+            this.finishReason = finishReason;
+            return this;
+        }
+
+        /**
+         * @param millis Delay for this reply instead of the server's latency distribution.
+         */
+        public Reply withLatency(long millis) {
+            this.latencyMillis = millis;
+            return this;
+        }
+
+        /**
+         * Cuts the reply short: plain bodies after this many bytes with the
+         * connection dropped, streams after this many characters of content
+         * without a finish reason or [DONE].
+         */
+        public Reply truncatedAfter(int length) {
+            this.truncateAfter = length;
+            return this;
+        }
+
+        /**
+         * @param chunkSize Characters of content per streamed event.
+         */
+        public Reply withChunkSize(int chunkSize) {
+            this.chunkSize = Math.max(1, chunkSize);
+            return this;
+        }
+
+        public Reply withUsage(long promptTokens, long completionTokens) {
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+            return this;
+        }
+
+        /**
+         * @param cachedTokens Prompt tokens reported as served from the prefix cache.
+         */
+        public Reply withCachedTokens(long cachedTokens) {
+            this.cachedTokens = cachedTokens;
+            return this;
+        }
+    }
+
+    /**
+     * A request as the server received it.
+     */
+    public static final class RecordedRequest {
+        private final String method;
+        private final String path;
+        private final String query;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private final String body;
+        private String model = "";
+        private boolean stream;
+        private Integer maxTokens;
+        private final List<String> stop = new ArrayList<>();
+        private final List<Message> messages = new ArrayList<>();
+
+        RecordedRequest(HttpExchange exchange, String body) {
+            this.method = exchange.getRequestMethod();
+            this.path = exchange.getRequestURI().getPath();
+            this.query = exchange.getRequestURI().getQuery();
+            this.body = body;
+            exchange.getRequestHeaders().forEach((name, values) -> headers.put(name.toLowerCase(), values.get(0)));
+            if (!body.isEmpty()) {
+                parseBody();
+            }
+        }
+
+        private void parseBody() {
+            JsonReader reader = new JsonReader(body);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("model".equals(name)) {
+                    model = reader.nextString();
+                } else if ("stream".equals(name)) {
+                    stream = reader.nextBoolean();
+                } else if ("max_tokens".equals(name)) {
+                    maxTokens = (int) reader.nextLong();
+                } else if ("stop".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        stop.add(reader.nextString());
+                    }
+                    reader.endArray();
+                } else if ("messages".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String role = null;
+                        String content = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if ("role".equals(field)) {
+                                role = reader.nextString();
+                            } else if ("content".equals(field) && reader.peek() == JsonReader.Token.STRING) {
+                                content = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        messages.add(new Message(role, content));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return The decoded query string, or null if there is none.
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @param name Header name, case-insensitive.
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public boolean isStream() {
+            return stream;
+        }
+
+        public List<Message> getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return max_tokens of the request, or null if not sent.
+         */
+        public Integer getMaxTokens() {
+            return maxTokens;
+        }
+
+        public List<String> getStop() {
+            return stop;
+        }
+
+        /**
+         * Cuts the content at the first stop sequence of the request, which is
+         * left out like the OpenAI API does.
+         */
+        String applyStop(String content) {
+            if (content == null) {
+                return null;
+            }
+            int end = content.length();
+            for (String sequence : stop) {
+                int at = content.indexOf(sequence);
+                if (at >= 0 && at < end) {
+                    end = at;
+                }
+            }
+            return content.substring(0, end);
+        }
+
+        /**
+         * @return Content of the last user message, or an empty string.
+         */
+        public String getUserContent() {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if ("user".equals(messages.get(i).role)) {
+                    return messages.get(i).content != null ? messages.get(i).content : "";
+                }
+            }
+            return "";
+        }
+    }
+}
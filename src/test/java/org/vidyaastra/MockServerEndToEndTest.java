@@ -0,0 +1,689 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.protege.editor.owl.OWLEditorKit;
+import org.protege.editor.owl.model.OWLModelManager;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLDataProperty;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.vidyaastra.ui.OntologyGenerator;
+import org.vidyaastra.ui.OntologyModifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * End-to-end tests of the LLM call paths against MockOpenAiServer
+ */
+@DisplayName("Mock Server End-to-End Tests")
+class MockServerEndToEndTest {
+
+    private static final String RDF = "<?xml version=\"1.0\"?>\n"
+            + "<rdf:RDF xmlns=\"http://example.org/zoo#\" xml:base=\"http://example.org/zoo\"\n"
+            + "     xmlns:owl=\"http://www.w3.org/2002/07/owl#\"\n"
+            + "     xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+            + "     xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\">\n"
+            + "    <owl:Ontology rdf:about=\"http://example.org/zoo\"/>\n"
+            + "    <owl:Class rdf:about=\"http://example.org/zoo#Animal\"/>\n"
+            + "</rdf:RDF>";
+
+    private MockOpenAiServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = MockOpenAiServer.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    private OpenAiCaller newCaller() {
+        OpenAiCaller caller = new OpenAiCaller("test-key", "test-model", server.getBaseUrl());
+        configure(caller);
+        return caller;
+    }
+
+    private static void configure(OpenAiCaller caller) {
+        caller.setCache(null);
+        caller.setRateLimiter(null);
+        caller.setMetrics(new CompletionMetrics());
+        caller.setRetryPolicy(new RetryPolicy(5, Duration.ofMillis(1), Duration.ofMillis(10)));
+    }
+
+    @Test
+    @DisplayName("Should answer a plain completion and record the request")
+    void testPlainCompletion() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("pong").withUsage(7, 1));
+        OpenAiCaller caller = newCaller();
+
+        assertThat(caller.generateCompletion("be brief", "ping")).isEqualTo("pong");
+
+        MockOpenAiServer.RecordedRequest request = server.getRequests().get(0);
+        assertThat(request.getModel()).isEqualTo("test-model");
+        assertThat(request.getHeader("Authorization")).isEqualTo("Bearer test-key");
+        assertThat(request.getUserContent()).isEqualTo("ping");
+        assertThat(caller.getMetrics().forOperation(CompletionOperation.GENERAL).getPromptTokens()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("Should stream a completion in several deltas")
+    void testStreamingCompletion() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("The quick brown fox").withChunkSize(4));
+        List<String> deltas = new ArrayList<>();
+
+        String content = newCaller().streamCompletion("sys", "tell me", deltas::add);
+
+        assertThat(content).isEqualTo("The quick brown fox");
+        assertThat(deltas).hasSize(5);
+        assertThat(server.getRequests().get(0).isStream()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should retry a body cut off mid-response")
+    void testRetriesTruncatedBody() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("complete answer").truncatedAfter(20),
+                MockOpenAiServer.Reply.content("complete answer"));
+
+        assertThat(newCaller().generateCompletion("sys", "q")).isEqualTo("complete answer");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should return the partial text of a truncated stream without caching it")
+    void testTruncatedStreamNotCached() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("abcdefghijklmnop").truncatedAfter(8));
+        OpenAiCaller caller = newCaller();
+        caller.setCache(new CompletionCache(null, 16, 1024 * 1024, Duration.ofHours(1)));
+
+        assertThat(caller.streamCompletion("sys", "q", null)).isEqualTo("abcdefgh");
+        assertThat(caller.streamCompletion("sys", "q", null)).isEqualTo("OK");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should complete a batch under latency and injected 503s")
+    void testBatchUnderLoad() throws Exception {
+        server.setLatency(MockOpenAiServer.Latency.logNormal(10, 0.5))
+                .setFailureRate(0.2, 503)
+                .setResponder(request -> MockOpenAiServer.Reply.content("echo " + request.getUserContent()));
+        List<BatchCompletionEngine.Request> requests = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            requests.add(new BatchCompletionEngine.Request("sys", "q" + i));
+        }
+
+        BatchCompletionEngine.Report report = new BatchCompletionEngine(newCaller(), 8).run(requests);
+
+        assertThat(report.getSuccessCount()).isEqualTo(40);
+        assertThat(report.getResults().get(17).getContent()).isEqualTo("echo q17");
+        assertThat(server.getRequestCount()).isGreaterThan(40);
+        assertThat(server.getPeakConcurrency()).isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    @DisplayName("Should back off when the server caps concurrent requests")
+    void testServerConcurrencyCap() throws Exception {
+        server.setLatency(MockOpenAiServer.Latency.fixed(20)).setMaxConcurrentRequests(2);
+        List<BatchCompletionEngine.Request> requests = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            requests.add(new BatchCompletionEngine.Request("sys", "q" + i));
+        }
+        OpenAiCaller caller = newCaller();
+        caller.setRetryPolicy(new RetryPolicy(20, Duration.ofMillis(5), Duration.ofMillis(50)));
+
+        BatchCompletionEngine.Report report = new BatchCompletionEngine(caller, 6).run(requests);
+
+        assertThat(report.getSuccessCount()).isEqualTo(12);
+        assertThat(server.getRequestCount()).isGreaterThan(12);
+    }
+
+    @Test
+    @DisplayName("Should deliver bodies no faster than the throughput cap")
+    void testThroughputCap() throws Exception {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 20_000) {
+            large.append("lorem ipsum ");
+        }
+        server.setThroughputLimit(100_000).enqueue(MockOpenAiServer.Reply.content(large.toString()));
+
+        long start = System.nanoTime();
+        assertThat(newCaller().generateCompletion("sys", "q")).hasSize(large.length());
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(150));
+    }
+
+    @Test
+    @DisplayName("Should generate an ontology from a fenced RDF/XML reply")
+    void testOntologyGenerator() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("Here you go:\n```xml\n" + RDF + "\n```\nEnjoy!"));
+        OntologyGenerator generator = new OntologyGenerator(null, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                return caller;
+            }
+        };
+        StringBuilder streamed = new StringBuilder();
+
+        String owl = generator.generateOntologyContent("a zoo", "test-key", "test-model", server.getBaseUrl(),
+                streamed::append);
+
+        assertThat(owl).startsWith("<?xml").endsWith("</rdf:RDF>").contains("zoo#Animal");
+        assertThat(streamed.toString()).contains("```xml").doesNotContain("Enjoy!");
+        assertThat(server.getRequests().get(0).getUserContent()).contains("a zoo");
+        // The closing tag is the stop sequence, which the server leaves out
+        assertThat(server.getRequests().get(0).getStop()).containsExactly("</rdf:RDF>");
+    }
+
+    @Test
+    @DisplayName("Should continue a streamed ontology cut off by the length limit without duplication")
+    void testOntologyGeneratorContinuesTruncatedStream() throws Exception {
+        int cut = RDF.indexOf("<owl:Class");
+        // The continuation repeats the last line before going on
+        server.enqueue(MockOpenAiServer.Reply.content("```xml\n" + RDF.substring(0, cut))
+                        .withFinishReason("length").withChunkSize(16),
+                MockOpenAiServer.Reply.content(RDF.substring(RDF.lastIndexOf("    <owl:Ontology", cut)) + "\n```")
+                        .withChunkSize(16));
+        OntologyGenerator generator = new OntologyGenerator(null, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                return caller;
+            }
+        };
+        StringBuilder streamed = new StringBuilder();
+
+        String owl = generator.generateOntologyContent("a zoo", "test-key", "test-model", server.getBaseUrl(),
+                streamed::append);
+
+        assertThat(owl).isEqualTo(RDF);
+        assertThat(streamed.toString()).isEqualTo("```xml\n" + RDF.substring(0, RDF.length() - "</rdf:RDF>".length()));
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        List<Message> continuation = server.getRequests().get(1).getMessages();
+        assertThat(continuation).hasSize(4);
+        assertThat(continuation.get(2).role).isEqualTo("assistant");
+        assertThat(continuation.get(2).content).isEqualTo("```xml\n" + RDF.substring(0, cut));
+    }
+
+    @Test
+    @DisplayName("Should stop continuing at the cap and return the text so far")
+    void testContinuationCap() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content("part" + request.getMessages().size() + ";")
+                .withFinishReason("length"));
+        OpenAiCaller caller = newCaller();
+        caller.setMaxContinuations(2);
+
+        String response = caller.generateCompletion("sys", "q");
+
+        assertThat(response).isEqualTo("part2;part4;part4;");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(caller.getMetrics().forOperation(CompletionOperation.GENERAL).getContinuations()).isEqualTo(2);
+
+        caller.setOperation(CompletionOperation.NLP_QUERY);
+        caller.setMaxContinuations(-1);
+        assertThat(caller.generateCompletion("sys", "other")).isEqualTo("part2;");
+    }
+
+    @Test
+    @DisplayName("Should apply the modifications the LLM returns to the ontology")
+    void testOntologyModifier() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        OWLModelManager modelManager = mock(OWLModelManager.class);
+        when(modelManager.getOWLOntologyManager()).thenReturn(manager);
+        OWLEditorKit editorKit = mock(OWLEditorKit.class);
+        when(editorKit.getOWLModelManager()).thenReturn(modelManager);
+
+        server.enqueue(MockOpenAiServer.Reply.content(
+                "ADD_CLASS: Animal\nADD_CLASS: Dog - a pet\nADD_SUBCLASS: Dog subClassOf Animal\nSUMMARY: Added dogs."));
+        OntologyModifier modifier = new OntologyModifier(editorKit, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                return caller;
+            }
+        };
+
+        String summary = modifier.modifyOntology(ontology, "add dogs", "test-key", "test-model", server.getBaseUrl());
+
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        assertThat(summary).startsWith("Total modifications: 3").contains("Added dogs.");
+        assertThat(ontology.containsAxiom(factory.getOWLSubClassOfAxiom(
+                factory.getOWLClass(IRI.create("http://example.org/zoo#Dog")),
+                factory.getOWLClass(IRI.create("http://example.org/zoo#Animal"))))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should ask for a modification plan as JSON and apply it")
+    void testOntologyModifierJsonPlan() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        OWLModelManager modelManager = mock(OWLModelManager.class);
+        when(modelManager.getOWLOntologyManager()).thenReturn(manager);
+        OWLEditorKit editorKit = mock(OWLEditorKit.class);
+        when(editorKit.getOWLModelManager()).thenReturn(modelManager);
+
+        server.enqueue(MockOpenAiServer.Reply.content("{\"operations\": ["
+                + "{\"action\": \"ADD_CLASS\", \"entity\": \"Cat\", \"target\": \"\", \"value\": \"a pet\"}, "
+                + "{\"action\": \"ADD_SUBCLASS\", \"entity\": \"Cat\", \"target\": \"Animal\", \"value\": \"\"}], "
+                + "\"summary\": \"Added cats.\"}"));
+        OntologyModifier modifier = new OntologyModifier(editorKit, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                return caller;
+            }
+        };
+
+        String summary = modifier.modifyOntology(ontology, "add cats", "test-key", "test-model", server.getBaseUrl());
+
+        assertThat(server.getRequests().get(0).getBody())
+                .contains("\"json_schema\":{\"name\":\"" + ModificationPlan.SCHEMA_NAME + "\",\"strict\":true");
+        assertThat(summary).startsWith("Total modifications: 2").contains("Added cats.");
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        assertThat(ontology.containsAxiom(factory.getOWLSubClassOfAxiom(
+                factory.getOWLClass(IRI.create("http://example.org/zoo#Cat")),
+                factory.getOWLClass(IRI.create("http://example.org/zoo#Animal"))))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should apply domains, ranges, removals and annotations and list skipped operations")
+    void testOntologyModifierAllActions() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLClass keeper = factory.getOWLClass(IRI.create("http://example.org/zoo#Keeper"));
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(keeper));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(keeper,
+                factory.getOWLClass(IRI.create("http://example.org/zoo#Person"))));
+        OWLModelManager modelManager = mock(OWLModelManager.class);
+        when(modelManager.getOWLOntologyManager()).thenReturn(manager);
+        OWLEditorKit editorKit = mock(OWLEditorKit.class);
+        when(editorKit.getOWLModelManager()).thenReturn(modelManager);
+
+        server.enqueue(MockOpenAiServer.Reply.content("{\"operations\": ["
+                + "{\"action\": \"ADD_CLASS\", \"entity\": \"Animal\", \"target\": \"\", \"value\": \"\"}, "
+                + "{\"action\": \"ADD_DATA_PROPERTY\", \"entity\": \"age\", \"target\": \"\", \"value\": \"\"}, "
+                + "{\"action\": \"ADD_DOMAIN\", \"entity\": \"age\", \"target\": \"Animal\", \"value\": \"\"}, "
+                + "{\"action\": \"ADD_RANGE\", \"entity\": \"age\", \"target\": \"xsd:integer\", \"value\": \"\"}, "
+                + "{\"action\": \"ADD_RANGE\", \"entity\": \"eats\", \"target\": \"Animal\", \"value\": \"\"}, "
+                + "{\"action\": \"ADD_ANNOTATION\", \"entity\": \"Animal\", \"target\": \"rdfs:comment\", "
+                + "\"value\": \"A living creature\"}, "
+                + "{\"action\": \"REMOVE_CLASS\", \"entity\": \"Keeper\", \"target\": \"\", \"value\": \"\"}, "
+                + "{\"action\": \"REMOVE_PROPERTY\", \"entity\": \"ghost\", \"target\": \"\", \"value\": \"\"}], "
+                + "\"summary\": \"Reworked the zoo.\"}"));
+        OntologyModifier modifier = new OntologyModifier(editorKit, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                return caller;
+            }
+        };
+
+        String summary = modifier.modifyOntology(ontology, "rework", "test-key", "test-model", server.getBaseUrl());
+
+        OWLClass animal = factory.getOWLClass(IRI.create("http://example.org/zoo#Animal"));
+        OWLDataProperty age = factory.getOWLDataProperty(IRI.create("http://example.org/zoo#age"));
+        assertThat(summary).startsWith("Total modifications: 7")
+                .contains("Skipped (1):\n- REMOVE_PROPERTY ghost (no such property in the ontology)");
+        assertThat(ontology.containsAxiom(factory.getOWLDataPropertyDomainAxiom(age, animal))).isTrue();
+        assertThat(ontology.containsAxiom(factory.getOWLDataPropertyRangeAxiom(age,
+                OWL2Datatype.XSD_INTEGER.getDatatype(factory)))).isTrue();
+        assertThat(ontology.containsAxiom(factory.getOWLObjectPropertyRangeAxiom(
+                factory.getOWLObjectProperty(IRI.create("http://example.org/zoo#eats")), animal))).isTrue();
+        assertThat(ontology.containsAxiom(factory.getOWLAnnotationAssertionAxiom(factory.getRDFSComment(),
+                animal.getIRI(), factory.getOWLLiteral("A living creature")))).isTrue();
+        assertThat(ontology.getAxioms(keeper, Imports.EXCLUDED)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should escalate a modification plan none of whose operations can be applied")
+    void testOntologyModifierEscalatesInapplicablePlan() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        OWLModelManager modelManager = mock(OWLModelManager.class);
+        when(modelManager.getOWLOntologyManager()).thenReturn(manager);
+        OWLEditorKit editorKit = mock(OWLEditorKit.class);
+        when(editorKit.getOWLModelManager()).thenReturn(modelManager);
+
+        server.setResponder(request -> MockOpenAiServer.Reply.content("small-model".equals(request.getModel())
+                ? "REMOVE_CLASS: Ghost\nSUMMARY: Removed ghosts." : "ADD_CLASS: Animal\nSUMMARY: Added animals."));
+        ModelRouter router = new ModelRouter().setRule(CompletionOperation.ONTOLOGY_MODIFICATION,
+                ModelRouter.Rule.parse("small-model,big-model", 0, null, 0.5));
+        OntologyModifier modifier = new OntologyModifier(editorKit, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                caller.setModelRouter(router);
+                return caller;
+            }
+        };
+
+        String summary = modifier.modifyOntology(ontology, "add animals", "test-key", "test-model",
+                server.getBaseUrl());
+
+        assertThat(server.getRequests()).extracting(MockOpenAiServer.RecordedRequest::getModel)
+                .containsExactly("small-model", "big-model");
+        assertThat(summary).startsWith("Total modifications: 1").contains("Added animals.");
+    }
+
+    @Test
+    @DisplayName("Should send only the entities changed since the previous modification request")
+    void testOntologyModifierDelta() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(
+                factory.getOWLClass(IRI.create("http://example.org/zoo#Keeper"))));
+        OWLModelManager modelManager = mock(OWLModelManager.class);
+        when(modelManager.getOWLOntologyManager()).thenReturn(manager);
+        OWLEditorKit editorKit = mock(OWLEditorKit.class);
+        when(editorKit.getOWLModelManager()).thenReturn(modelManager);
+
+        server.enqueue(MockOpenAiServer.Reply.content("ADD_CLASS: Animal\nADD_CLASS: Dog"));
+        server.enqueue(MockOpenAiServer.Reply.content("ADD_CLASS: Cat"));
+        Conversation conversation = new Conversation(TokenCounter.approximate(), 10000);
+        OntologyModifier modifier = new OntologyModifier(editorKit, null) {
+            @Override
+            protected OpenAiCaller createCaller(String apiKey, String model, String baseUrl) {
+                OpenAiCaller caller = super.createCaller(apiKey, model, baseUrl);
+                configure(caller);
+                return caller;
+            }
+        }.setConversation(conversation);
+
+        modifier.modifyOntology(ontology, "add dogs", "test-key", "test-model", server.getBaseUrl());
+        modifier.modifyOntology(ontology, "add cats", "test-key", "test-model", server.getBaseUrl());
+
+        assertThat(server.getRequests().get(0).getUserContent()).contains("Keeper");
+        MockOpenAiServer.RecordedRequest followUp = server.getRequests().get(1);
+        assertThat(followUp.getUserContent()).contains("Classes added (2): Animal, Dog")
+                .doesNotContain("Keeper").contains("add cats");
+        assertThat(followUp.getMessages()).extracting(message -> message.role)
+                .containsExactly("system", "user", "assistant", "user");
+        assertThat(conversation.getTurnCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should translate a natural language query into type and target")
+    void testNlpQueryPath() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content(
+                request.getUserContent().contains("people")
+                        ? "QUERY_TYPE: instances\nTARGET: Person"
+                        : "QUERY_TYPE: classes\nTARGET: Thing"));
+        OpenAiCaller caller = newCaller();
+        caller.setOperation(CompletionOperation.NLP_QUERY);
+
+        String response = caller.generateCompletion("You are an ontology query analyzer.", "list all people", 0.3);
+
+        String queryType = null;
+        String target = null;
+        for (String line : response.split("\n")) {
+            if (line.startsWith("QUERY_TYPE:")) {
+                queryType = line.substring("QUERY_TYPE:".length()).trim();
+            } else if (line.startsWith("TARGET:")) {
+                target = line.substring("TARGET:".length()).trim();
+            }
+        }
+        assertThat(queryType).isEqualTo("instances");
+        assertThat(target).isEqualTo("Person");
+        assertThat(server.getRequests().get(0).getBody()).contains("\"temperature\":0.3");
+        assertThat(server.getRequests().get(0).getMaxTokens()).isEqualTo(128);
+        assertThat(server.getRequests().get(0).getStop()).isEmpty();
+        assertThat(caller.getMetrics().forOperation(CompletionOperation.NLP_QUERY).getSuccesses()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should ask again without response_format when the server rejects it")
+    void testResponseFormatRejected() throws Exception {
+        server.setResponder(request -> request.getBody().contains("\"response_format\"")
+                ? MockOpenAiServer.Reply.error(400, "invalid_request_error",
+                        "Unrecognized request argument supplied: response_format")
+                : MockOpenAiServer.Reply.content("{\"type\": \"instances\", \"target\": \"Person\"}"));
+        OpenAiCaller caller = newCaller();
+        caller.setOperation(CompletionOperation.NLP_QUERY);
+
+        String answer = caller.generateCompletion("system", "list all people", 0.3, QueryIntent::isValid);
+
+        assertThat(QueryIntent.parse(answer).getTarget()).isEqualTo("Person");
+        assertThat(server.getRequests()).hasSize(2);
+        assertThat(server.getRequests().get(0).getBody()).contains("\"response_format\"");
+        assertThat(server.getRequests().get(1).getBody()).doesNotContain("\"response_format\"")
+                .contains("\"max_tokens\":128");
+
+        // The endpoint is remembered, so the next call leaves the field out right away
+        caller.generateCompletion("system", "list all animals", 0.3);
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(server.getRequests().get(2).getBody()).doesNotContain("\"response_format\"");
+    }
+
+    @Test
+    @DisplayName("Should fail over to the next endpoint and skip the failing one once its breaker opens")
+    void testFailoverToFallbackEndpoint() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.error(503, "server_error", "overloaded"));
+        try (MockOpenAiServer fallback = MockOpenAiServer.start()) {
+            fallback.setResponder(request -> MockOpenAiServer.Reply.content("from " + request.getModel()));
+            OpenAiCaller caller = newCaller();
+            caller.setEndpointPool(new EndpointPool()
+                    .setFallbacks(List.of(new Endpoint(fallback.getBaseUrl(), "", "fallback-model")))
+                    .setBreakerPolicy(1, Duration.ofMinutes(5)));
+
+            assertThat(caller.generateCompletion("system", "first", 0.0)).isEqualTo("from fallback-model");
+            int primaryRequests = server.getRequestCount();
+            assertThat(primaryRequests).isEqualTo(5);
+            assertThat(fallback.getRequests().get(0).getHeader("Authorization")).isEqualTo("Bearer test-key");
+
+            assertThat(caller.generateCompletion("system", "second", 0.0)).isEqualTo("from fallback-model");
+            assertThat(server.getRequestCount()).isEqualTo(primaryRequests);
+            assertThat(caller.getEndpointPool().getBreakerStates())
+                    .containsEntry(server.getBaseUrl(), CircuitBreaker.State.OPEN)
+                    .containsEntry(fallback.getBaseUrl(), CircuitBreaker.State.CLOSED);
+        }
+    }
+
+    @Test
+    @DisplayName("Should hedge a slow call to the next endpoint and take the first answer")
+    void testHedgedRequest() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("slow").withLatency(5_000));
+        try (MockOpenAiServer fallback = MockOpenAiServer.start()) {
+            fallback.enqueue(MockOpenAiServer.Reply.content("fast"));
+            OpenAiCaller caller = newCaller();
+            caller.setEndpointPool(new EndpointPool().setHedging(true).setMinHedgeDelay(Duration.ofMillis(100))
+                    .setFallbacks(List.of(new Endpoint(fallback.getBaseUrl(), "other-key", ""))));
+            Endpoint primary = new Endpoint(server.getBaseUrl(), "test-key", "test-model");
+            for (int i = 0; i < EndpointPool.MIN_HEDGE_SAMPLES; i++) {
+                caller.getEndpointPool().recordLatency(primary, CompletionOperation.GENERAL, 1_000_000);
+            }
+
+            long start = System.nanoTime();
+            String content = caller.generateCompletion("system", "hedge me", 0.0);
+
+            assertThat(content).isEqualTo("fast");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            assertThat(fallback.getRequests().get(0).getModel()).isEqualTo("test-model");
+            assertThat(fallback.getRequests().get(0).getHeader("Authorization")).isEqualTo("Bearer other-key");
+        }
+    }
+
+    @Test
+    @DisplayName("Should send a routed operation to a local server and Azure deployments to their path")
+    void testProviderRoutes() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content("QUERY_TYPE: classes\nTARGET: Thing"));
+        try (MockOpenAiServer local = MockOpenAiServer.start()) {
+            local.setResponder(request -> MockOpenAiServer.Reply.content("QUERY_TYPE: instances\nTARGET: Person"));
+            EndpointRoutes routes = new EndpointRoutes().setEndpoint(CompletionOperation.NLP_QUERY,
+                    new Endpoint(local.getBaseUrl(), "", "qwen2.5-1.5b", CompletionProvider.localServer()));
+            OpenAiCaller caller = newCaller();
+            caller.setRoutes(routes);
+            caller.setOperation(CompletionOperation.NLP_QUERY);
+
+            assertThat(caller.generateCompletion("system", "list all people", 0.0)).contains("TARGET: Person");
+            assertThat(local.getRequests().get(0).getModel()).isEqualTo("qwen2.5-1.5b");
+            assertThat(local.getRequests().get(0).getHeader("Authorization")).isNull();
+
+            caller.setOperation(CompletionOperation.BASIC_QUERY);
+            assertThat(caller.generateCompletion("system", "list all people", 0.0)).contains("TARGET: Thing");
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+
+        String resource = server.getBaseUrl().substring(0, server.getBaseUrl().lastIndexOf("/v1"));
+        OpenAiCaller azure = new OpenAiCaller(new Endpoint(resource, "azure-key", "my deployment",
+                CompletionProvider.azure("2024-10-21")));
+        configure(azure);
+        assertThat(azure.generateCompletion("system", "hello", 0.0)).contains("TARGET: Thing");
+        MockOpenAiServer.RecordedRequest request = server.getRequests().get(server.getRequests().size() - 1);
+        assertThat(request.getPath()).endsWith("/openai/deployments/my deployment/chat/completions");
+        assertThat(request.getQuery()).isEqualTo("api-version=2024-10-21");
+        assertThat(request.getHeader("api-key")).isEqualTo("azure-key");
+        assertThat(request.getHeader("Authorization")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should route calls to the small model and escalate answers that fail validation")
+    void testModelEscalation() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content("small-model".equals(request.getModel())
+                ? "I am not sure what you mean." : "QUERY_TYPE: instances\nTARGET: Person"));
+        ModelRouter router = new ModelRouter().setRule(CompletionOperation.NLP_QUERY,
+                ModelRouter.Rule.parse("small-model,big-model", 0, null, 0.5));
+        OpenAiCaller caller = newCaller();
+        caller.setModelRouter(router);
+        caller.setOperation(CompletionOperation.NLP_QUERY);
+
+        String answer = caller.generateCompletion("system", "list all people", 0.0,
+                content -> content.contains("TARGET:"));
+
+        assertThat(answer).contains("TARGET: Person");
+        assertThat(server.getRequests()).extracting(MockOpenAiServer.RecordedRequest::getModel)
+                .containsExactly("small-model", "big-model");
+        assertThat(caller.getMetrics().forOperation(CompletionOperation.NLP_QUERY).getEscalations()).isEqualTo(1);
+        assertThat(router.getStats(CompletionOperation.NLP_QUERY, "small-model").getErrorRate()).isEqualTo(1.0);
+        assertThat(router.getStats(CompletionOperation.NLP_QUERY, "big-model").getErrorRate()).isZero();
+
+        // Without validation, a call of another operation keeps the configured model
+        caller.setOperation(CompletionOperation.BASIC_QUERY);
+        caller.generateCompletion("system", "list all people", 0.0);
+        assertThat(server.getRequests().get(2).getModel()).isEqualTo("test-model");
+    }
+
+    @Test
+    @DisplayName("Should answer a rephrased question from the semantic cache until the ontology revision changes")
+    void testSemanticCache() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content("answer " + server.getRequestCount()));
+        OpenAiCaller caller = newCaller();
+        caller.setSemanticCache(new SemanticCache(16));
+        caller.setOntologyRevision("ontology#1");
+
+        assertThat(caller.generateCompletion("system", "list all suppliers")).isEqualTo("answer 1");
+        assertThat(caller.streamCompletion("system", "show suppliers", null)).isEqualTo("answer 1");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+
+        caller.setOntologyRevision("ontology#2");
+        assertThat(caller.generateCompletion("system", "show suppliers")).isEqualTo("answer 2");
+
+        // Without a revision only identical requests would be reused
+        caller.setOntologyRevision(null);
+        assertThat(caller.generateCompletion("system", "list suppliers")).isEqualTo("answer 3");
+        assertThat(caller.getMetrics().forOperation(CompletionOperation.GENERAL).getCacheHits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should use the semantic cache only for the first question of a conversation")
+    void testSemanticCacheSkipsFollowUps() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content("answer " + server.getRequestCount()));
+        SemanticCache semanticCache = new SemanticCache(16);
+        Conversation conversation = new Conversation(TokenCounter.approximate(), 10000);
+        OpenAiCaller caller = newCaller();
+        caller.setSemanticCache(semanticCache);
+        caller.setOntologyRevision("ontology#1");
+        caller.setConversation(conversation);
+
+        String first = caller.generateCompletion("system", "list all suppliers");
+        assertThat(semanticCache.getEntryCount()).isEqualTo(1);
+        conversation.addTurn("list all suppliers", first);
+
+        // A follow-up neither looks the cache up nor fills it
+        assertThat(caller.generateCompletion("system", "show suppliers")).isEqualTo("answer 2");
+        assertThat(caller.generateCompletion("system", "list all customers")).isEqualTo("answer 3");
+        assertThat(semanticCache.getEntryCount()).isEqualTo(1);
+        assertThat(semanticCache.getHitCount() + semanticCache.getMissCount()).isEqualTo(1);
+
+        conversation.clear();
+        assertThat(caller.generateCompletion("system", "show suppliers")).isEqualTo("answer 1");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should record the prompt tokens the provider served from its prefix cache")
+    void testCachedPromptTokens() throws Exception {
+        server.enqueue(MockOpenAiServer.Reply.content("first").withUsage(2048, 5).withCachedTokens(0));
+        server.enqueue(MockOpenAiServer.Reply.content("second").withUsage(2100, 5).withCachedTokens(1920));
+        OpenAiCaller caller = newCaller();
+
+        caller.generateCompletion("long instructions", "first question");
+        caller.generateCompletion("long instructions", "second question");
+
+        CompletionMetrics.OperationMetrics stats = caller.getMetrics().forOperation(CompletionOperation.GENERAL);
+        assertThat(stats.getPromptTokens()).isEqualTo(4148);
+        assertThat(stats.getCachedPromptTokens()).isEqualTo(1920);
+        assertThat(caller.getMetrics().toJson()).contains("\"cached_prompt_tokens\":1920");
+    }
+
+    @Test
+    @DisplayName("Should send the earlier turns of a conversation and summarize them once over budget")
+    void testConversation() throws Exception {
+        server.setResponder(request -> MockOpenAiServer.Reply.content(
+                request.getMessages().get(0).content.startsWith("You maintain the memory")
+                        ? "The user looked at suppliers." : "answer " + request.getUserContent()));
+        OpenAiCaller summaryCaller = newCaller();
+        Conversation conversation = new Conversation(TokenCounter.approximate(), 60)
+                .setSummarizer(Conversation.summarizerFor(summaryCaller));
+        OpenAiCaller caller = newCaller();
+        caller.setConversation(conversation);
+
+        String first = caller.generateCompletion("system", "list all suppliers");
+        conversation.addTurn("list all suppliers", first);
+        caller.generateCompletion("system", "and their products?");
+        assertThat(server.getRequests().get(1).getMessages()).extracting(message -> message.role)
+                .containsExactly("system", "user", "assistant", "user");
+
+        for (int i = 0; i < 4; i++) {
+            String question = "follow-up question number " + i + " about the suppliers and their products";
+            conversation.addTurn(question, caller.generateCompletion("system", question));
+        }
+        CompletableFuture<Void> compaction;
+        while (!(compaction = conversation.getCompaction()).isDone()) {
+            compaction.get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(conversation.getSummary()).isEqualTo("The user looked at suppliers.");
+        assertThat(summaryCaller.getOperation()).isEqualTo(CompletionOperation.CONVERSATION_SUMMARY);
+        caller.generateCompletion("system", "anything else?");
+        List<Message> sent = server.getRequests().get(server.getRequests().size() - 1).getMessages();
+        assertThat(sent.get(1).content).contains("The user looked at suppliers.");
+        assertThat(sent).hasSize(2 + 2 * Conversation.KEEP_RECENT_TURNS + 1);
+    }
+}
@@ -0,0 +1,80 @@
+package org.vidyaastra;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ModelRouter
+ */
+@DisplayName("Model Router Tests")
+class ModelRouterTest {
+
+    private static final CompletionOperation OP = CompletionOperation.NLP_QUERY;
+
+    @Test
+    @DisplayName("Should keep the caller's model for operations without a rule")
+    void testNoRule() {
+        ModelRouter router = new ModelRouter();
+        assertThat(router.select(OP, 100)).isNull();
+        assertThat(router.escalate(OP, "small")).isNull();
+        assertThat(ModelRouter.Rule.parse(" ", 0, null, 0.2)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should send prompts larger than the limit past the first model")
+    void testPromptSize() {
+        ModelRouter router = new ModelRouter().setRule(OP,
+                ModelRouter.Rule.parse("small, medium ,large", 1000, null, 0.2));
+
+        assertThat(router.getRule(OP).getModels()).containsExactly("small", "medium", "large");
+        assertThat(router.select(OP, 1000)).isEqualTo("small");
+        assertThat(router.select(OP, 1001)).isEqualTo("medium");
+        assertThat(router.escalate(OP, "small")).isEqualTo("medium");
+        assertThat(router.escalate(OP, "large")).isNull();
+        assertThat(router.escalate(OP, "unknown")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should pass over models that fail too often or are too slow until their statistics age out")
+    void testStats() {
+        AtomicLong now = new AtomicLong();
+        ModelRouter router = new ModelRouter(now::get).setRule(OP, new ModelRouter.Rule(
+                List.of("small", "large"), 0, Duration.ofSeconds(2), 0.2));
+
+        // Too few samples to judge
+        router.recordFailure(OP, "small");
+        router.recordFailure(OP, "small");
+        assertThat(router.select(OP, 10)).isEqualTo("small");
+
+        for (int i = 0; i < 3; i++) {
+            router.recordSuccess(OP, "small", Duration.ofMillis(500).toNanos());
+        }
+        assertThat(router.getStats(OP, "small").getErrorRate()).isEqualTo(0.4);
+        assertThat(router.select(OP, 10)).isEqualTo("large");
+
+        now.addAndGet(ModelRouter.STATS_WINDOW.toNanos() + 1);
+        assertThat(router.getStats(OP, "small").getSamples()).isZero();
+        assertThat(router.select(OP, 10)).isEqualTo("small");
+
+        for (int i = 0; i < ModelRouter.MIN_SAMPLES; i++) {
+            router.recordSuccess(OP, "small", Duration.ofSeconds(3).toNanos());
+        }
+        assertThat(router.getStats(OP, "small").getP95()).isEqualTo(Duration.ofSeconds(3));
+        assertThat(router.select(OP, 10)).isEqualTo("large");
+        // The last model is used however it does
+        assertThat(router.getStats(OP, "large").getSamples()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should reject rules without a model")
+    void testEmptyRule() {
+        assertThatThrownBy(() -> new ModelRouter.Rule(List.of(" ", ""), 0, null, 0.2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,43 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ModificationPlan
+ */
+@DisplayName("Modification Plan Tests")
+class ModificationPlanTest {
+
+    @Test
+    @DisplayName("Should read operations and summary from JSON, leaving out unknown actions")
+    void testParseJson() {
+        ModificationPlan plan = ModificationPlan.parse("{\"operations\": ["
+                + "{\"action\": \"ADD_CLASS\", \"entity\": \"Dog\", \"target\": \"\", \"value\": \"A \\\"pet\\\" - loyal\"},"
+                + "{\"action\": \"ADD_SUBCLASS\", \"entity\": \"Dog\", \"target\": \"Animal\", \"value\": \"\"},"
+                + "{\"action\": \"RENAME\", \"entity\": \"Cat\", \"target\": \"\", \"value\": \"\"}],"
+                + " \"summary\": \"Added dogs.\"}");
+
+        assertThat(plan.getOperations()).extracting(ModificationPlan.Operation::getAction)
+                .containsExactly(ModificationPlan.Action.ADD_CLASS, ModificationPlan.Action.ADD_SUBCLASS);
+        assertThat(plan.getOperations().get(0).getValue()).isEqualTo("A \"pet\" - loyal");
+        assertThat(plan.getOperations().get(1).getTarget()).isEqualTo("Animal");
+        assertThat(plan.getSummary()).isEqualTo("Added dogs.");
+    }
+
+    @Test
+    @DisplayName("Should read the line format")
+    void testParseLines() {
+        ModificationPlan plan = ModificationPlan.parse("Here you go:\nADD_CLASS: Dog - a pet\n"
+                + "ADD_SUBCLASS: Dog subClassOf Animal\nADD_DOMAIN: owns domain Person\n"
+                + "ADD_ANNOTATION: Dog - rdfs:comment - Barks\nSUMMARY: Added dogs.\nADD_CLASS: Ignored");
+
+        assertThat(plan.getOperations()).extracting(ModificationPlan.Operation::toString).containsExactly(
+                "ADD_CLASS Dog - a pet", "ADD_SUBCLASS Dog Animal", "ADD_DOMAIN owns Person",
+                "ADD_ANNOTATION Dog rdfs:comment - Barks");
+        assertThat(plan.getSummary()).startsWith("Added dogs.");
+        assertThat(ModificationPlan.parse("Sorry, I cannot help with that.").getOperations()).isEmpty();
+    }
+}
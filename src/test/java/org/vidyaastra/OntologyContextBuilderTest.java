@@ -0,0 +1,94 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.io.StringDocumentTarget;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.vidyaastra.ui.OntologyContextBuilder;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for OntologyContextBuilder
+ */
+@DisplayName("Ontology Context Builder Tests")
+class OntologyContextBuilderTest {
+
+    private static final String NS = "http://example.org/zoo#";
+
+    private OWLOntologyManager manager;
+    private OWLOntology ontology;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        manager = OWLManager.createOWLOntologyManager();
+        ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLClass animal = factory.getOWLClass(IRI.create(NS + "Animal"));
+        for (int i = 0; i < 200; i++) {
+            OWLClass species = factory.getOWLClass(IRI.create(NS + "Species" + i));
+            manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(species, animal));
+            manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(species,
+                    factory.getOWLNamedIndividual(IRI.create(NS + "specimen" + i))));
+            manager.addAxiom(ontology, factory.getOWLAnnotationAssertionAxiom(factory.getRDFSComment(),
+                    species.getIRI(), factory.getOWLLiteral("A species of animal kept at the zoo, number " + i)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep the most connected classes when the listing is trimmed")
+    void testRanksEntities() {
+        ContextPacker.Result result = new OntologyContextBuilder(ontology, new ContextPacker(null, 120))
+                .addClasses("Classes (%d):")
+                .addIndividuals("Individuals (%d):")
+                .pack();
+
+        assertThat(result.getText()).startsWith("Classes (201):\n  - Animal\n");
+        assertThat(result.getDroppedCount(OntologyContextBuilder.CLASSES)).isPositive();
+        assertThat(result.describeDropped()).contains("of 201 classes");
+        assertThat(result.getIncludedKeys(OWLEntity.class)).hasSize(result.getIncludedCount())
+                .startsWith(manager.getOWLDataFactory().getOWLClass(IRI.create(NS + "Animal")));
+    }
+
+    @Test
+    @DisplayName("Should list every entity when the budget allows")
+    void testCompleteListing() {
+        ContextPacker.Result result = new OntologyContextBuilder(ontology, new ContextPacker(null, 100_000))
+                .addClasses("Classes:")
+                .addObjectProperties("Object Properties:")
+                .pack();
+
+        assertThat(result.isComplete()).isTrue();
+        assertThat(result.getIncludedCount()).isEqualTo(201);
+    }
+
+    @Test
+    @DisplayName("Should pack serialized axioms whole, preferring the class hierarchy")
+    void testPacksFunctionalSyntax() throws Exception {
+        StringDocumentTarget target = new StringDocumentTarget();
+        manager.saveOntology(ontology, new FunctionalSyntaxDocumentFormat(), target);
+        String document = target.toString();
+        TokenBudget budget = new TokenBudget(8_192, 2_048, 3_000, null);
+
+        ContextPacker.Result result = OntologyContextBuilder.packFunctionalSyntax(document,
+                budget.packer(budget.getPromptLimit()));
+
+        assertThat(budget.count(document)).isGreaterThan(budget.getPromptLimit());
+        assertThat(budget.count(result.getText())).isLessThanOrEqualTo(budget.getPromptLimit());
+        assertThat(result.getText()).startsWith("Prefix(").contains("Ontology(<http://example.org/zoo>")
+                .endsWith(")\n");
+        assertThat(result.getDroppedCount("class axioms")).isZero();
+        assertThat(result.getDroppedCount("annotations")).isPositive();
+        for (String line : result.getText().split("\n")) {
+            assertThat(line).matches("^(\\)|[A-Za-z]+\\(.*)$");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.vidyaastra;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.vidyaastra.ui.OntologyDelta;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for OntologyDelta
+ */
+@DisplayName("Ontology Delta Tests")
+class OntologyDeltaTest {
+
+    private static final String NS = "http://example.org/zoo#";
+
+    private OWLOntologyManager manager;
+    private OWLOntology ontology;
+    private OWLDataFactory factory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        manager = OWLManager.createOWLOntologyManager();
+        ontology = manager.createOntology(IRI.create("http://example.org/zoo"));
+        factory = manager.getOWLDataFactory();
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(owlClass("Animal")));
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(owlClass("Fish")));
+    }
+
+    private OWLClass owlClass(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+    @Test
+    @DisplayName("Should describe only the entities added or removed since the last request")
+    void testDescribesChanges() {
+        Conversation conversation = new Conversation(TokenCounter.approximate(), 10000);
+        OntologyDelta delta = OntologyDelta.of(conversation, ontology);
+        assertThat(delta.needsFullContext()).isTrue();
+        delta.markSent(true);
+        conversation.addTurn("full listing", "ADD_CLASS: Dog");
+
+        assertThat(delta.needsFullContext()).isFalse();
+        assertThat(delta.describeChanges(OWLEntity::toStringID)).isEmpty();
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(owlClass("Dog"), owlClass("Animal")));
+        manager.removeAxiom(ontology, factory.getOWLDeclarationAxiom(owlClass("Fish")));
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyDomainAxiom(
+                factory.getOWLObjectProperty(IRI.create(NS + "eats")), owlClass("Animal")));
+        manager.removeAxiom(ontology, factory.getOWLObjectPropertyDomainAxiom(
+                factory.getOWLObjectProperty(IRI.create(NS + "eats")), owlClass("Animal")));
+
+        assertThat(delta.describeChanges(entity -> entity.getIRI().getShortForm()))
+                .isEqualTo("Classes added (1): Dog\nClasses removed (1): Fish\n");
+        assertThat(OntologyDelta.of(conversation, ontology)).isSameAs(delta);
+
+        delta.markSent(false);
+        conversation.addTurn("changes", "ADD_CLASS: Cat");
+        assertThat(delta.describeChanges(entity -> entity.getIRI().getShortForm())).isEmpty();
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(owlClass("Fish")));
+        assertThat(delta.describeChanges(entity -> entity.getIRI().getShortForm()))
+                .isEqualTo("Classes added (1): Fish\n");
+    }
+
+    @Test
+    @DisplayName("Should ask for the full listing again once its turn is summarized or the conversation cleared")
+    void testFullContextAgain() {
+        Conversation conversation = new Conversation(text -> text.length(), 80);
+        OntologyDelta delta = OntologyDelta.of(conversation, ontology);
+        delta.markSent(true);
+        conversation.addTurn("x".repeat(60), "answer");
+        for (int i = 0; i < Conversation.KEEP_RECENT_TURNS - 1; i++) {
+            delta.markSent(false);
+            conversation.addTurn("changes", "answer");
+        }
+        assertThat(delta.needsFullContext()).isFalse();
+
+        // Without a summarizer the oldest turn is folded in right away
+        delta.markSent(false);
+        conversation.addTurn("changes", "answer");
+        assertThat(conversation.getFirstTurnNumber()).isPositive();
+        assertThat(delta.needsFullContext()).isTrue();
+
+        delta.markSent(true);
+        conversation.addTurn("full listing", "answer");
+        assertThat(delta.needsFullContext()).isFalse();
+        conversation.clear();
+        assertThat(delta.needsFullContext()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should only count the entities of a trimmed listing as sent")
+    void testPartialListing() {
+        Conversation conversation = new Conversation(TokenCounter.approximate(), 10000);
+        OntologyDelta delta = OntologyDelta.of(conversation, ontology);
+        delta.markSent(Collections.singleton(owlClass("Animal")));
+        conversation.addTurn("partial listing", "ADD_CLASS: Dog");
+
+        assertThat(delta.needsFullContext()).isFalse();
+        manager.removeAxiom(ontology, factory.getOWLDeclarationAxiom(owlClass("Fish")));
+        manager.addAxiom(ontology, factory.getOWLDeclarationAxiom(owlClass("Dog")));
+        assertThat(delta.describeChanges(entity -> entity.getIRI().getShortForm()))
+                .isEqualTo("Classes added (1): Dog\n");
+    }
+
+    @Test
+    @DisplayName("Should let a dropped conversation and ontology be collected")
+    void testDroppedConversationIsCollected() throws Exception {
+        Map<OWLOntology, Conversation> sessions = new WeakHashMap<>();
+        OWLOntologyManager otherManager = OWLManager.createOWLOntologyManager();
+        OWLOntology other = otherManager.createOntology(IRI.create("http://example.org/other"));
+        Conversation conversation = new Conversation(TokenCounter.approximate(), 10000);
+        sessions.put(other, conversation);
+        OntologyDelta delta = OntologyDelta.of(conversation, other);
+        delta.markSent(true);
+        assertThat(conversation.getAttachment(OntologyDelta.class)).isSameAs(delta);
+
+        WeakReference<Conversation> conversationRef = new WeakReference<>(conversation);
+        WeakReference<OntologyDelta> deltaRef = new WeakReference<>(delta);
+        WeakReference<OWLOntology> ontologyRef = new WeakReference<>(other);
+        conversation = null;
+        delta = null;
+        other = null;
+        otherManager = null;
+
+        // A weak map lets go of a value only when it is next used after its key was collected
+        for (int i = 0; i < 50 && (!sessions.isEmpty() || deltaRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertThat(sessions).isEmpty();
+        assertThat(ontologyRef.get()).isNull();
+        assertThat(conversationRef.get()).isNull();
+        assertThat(deltaRef.get()).isNull();
+    }
+}
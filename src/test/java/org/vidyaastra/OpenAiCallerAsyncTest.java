@@ -0,0 +1,143 @@
+package org.vidyaastra;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the asynchronous, cancellable OpenAiCaller API
+ */
+@DisplayName("OpenAiCaller Async Tests")
+class OpenAiCallerAsyncTest {
+
+    private HttpServer server;
+    private final CountDownLatch streamStarted = new CountDownLatch(1);
+    private final CountDownLatch clientGone = new CountDownLatch(1);
+    private final AtomicInteger streamRequests = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (!body.contains("\"stream\":true")) {
+                byte[] json = "{\"choices\":[{\"message\":{\"content\":\"pong\"}}]}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, json.length);
+                exchange.getResponseBody().write(json);
+                exchange.close();
+                return;
+            }
+            // Stream deltas forever until the client hangs up
+            streamRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                while (true) {
+                    out.write("data: {\"choices\":[{\"delta\":{\"content\":\"x\"}}]}\n\n".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    streamStarted.countDown();
+                    Thread.sleep(20);
+                }
+            } catch (IOException | InterruptedException e) {
+                clientGone.countDown();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private OpenAiCaller newCaller() {
+        OpenAiCaller caller = new OpenAiCaller("demo", "test-model",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        caller.setCache(null);
+        return caller;
+    }
+
+    @Test
+    @DisplayName("Should complete a non-streaming call asynchronously")
+    void testGenerateCompletionAsync() throws Exception {
+        CompletableFuture<String> future = newCaller().generateCompletionAsync("sys", "ping");
+
+        assertThat(future.get(10, TimeUnit.SECONDS)).isEqualTo("pong");
+    }
+
+    @Test
+    @DisplayName("Should abort the HTTP exchange when a stream is cancelled")
+    void testCancelAbortsStream() throws Exception {
+        CompletableFuture<String> future = newCaller().streamCompletionAsync("sys", "go", delta -> { });
+
+        assertThat(streamStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        future.cancel(true);
+
+        assertThat(future).isCancelled();
+        assertThatThrownBy(future::join).isInstanceOf(CancellationException.class);
+        assertThat(clientGone.await(10, TimeUnit.SECONDS)).as("server saw the connection close").isTrue();
+    }
+
+    @Test
+    @DisplayName("Should abort the request when the blocking caller is interrupted")
+    void testInterruptAbortsBlockingCall() throws Exception {
+        OpenAiCaller caller = newCaller();
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                caller.streamCompletion("sys", "go", delta -> { });
+                failure.complete(null);
+            } catch (Throwable t) {
+                failure.complete(t);
+            }
+        });
+        worker.start();
+
+        assertThat(streamStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        worker.interrupt();
+
+        assertThat(failure.get(10, TimeUnit.SECONDS)).isInstanceOf(InterruptedException.class);
+        assertThat(clientGone.await(10, TimeUnit.SECONDS)).as("server saw the connection close").isTrue();
+    }
+
+    @Test
+    @DisplayName("Should share one stream between identical concurrent calls")
+    void testIdenticalStreamsShareOneExchange() throws Exception {
+        OpenAiCaller caller = newCaller();
+        StringBuffer firstText = new StringBuffer();
+        StringBuffer secondText = new StringBuffer();
+
+        CompletableFuture<String> first = caller.streamCompletionAsync("sys", "same", firstText::append);
+        assertThat(streamStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> second = newCaller().streamCompletionAsync("sys", "same", secondText::append);
+        Thread.sleep(100);
+
+        assertThat(streamRequests.get()).isEqualTo(1);
+        assertThat(secondText.length()).as("late joiner got the text so far").isGreaterThan(0);
+
+        // The exchange survives while one caller still listens
+        first.cancel(true);
+        assertThat(clientGone.await(300, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(second).isNotDone();
+
+        second.cancel(true);
+        assertThat(clientGone.await(10, TimeUnit.SECONDS)).as("last caller leaving aborts the exchange").isTrue();
+    }
+}
@@ -0,0 +1,99 @@
+package org.vidyaastra;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for OpenAiCaller retries on rate limiting and server errors
+ */
+@DisplayName("OpenAiCaller Retry Tests")
+class OpenAiCallerRetryTest {
+
+    private HttpServer server;
+    private final Deque<Integer> statuses = new ArrayDeque<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            requestCount.incrementAndGet();
+            Integer status = statuses.poll();
+            byte[] body;
+            if (status == null || status == 200) {
+                status = 200;
+                body = "{\"choices\":[{\"message\":{\"content\":\"done\"}}]}".getBytes(StandardCharsets.UTF_8);
+            } else {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                body = "{\"error\":{\"message\":\"slow down\"}}".getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private OpenAiCaller newCaller(int attempts) {
+        OpenAiCaller caller = new OpenAiCaller("demo", "test-model",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        caller.setCache(null);
+        caller.setRateLimiter(new RateLimiter(0));
+        caller.setRetryPolicy(new RetryPolicy(attempts, Duration.ofMillis(10), Duration.ofMillis(50)));
+        return caller;
+    }
+
+    @Test
+    @DisplayName("Should retry 429 and 503 until the call succeeds")
+    void testRetriesUntilSuccess() throws Exception {
+        statuses.add(429);
+        statuses.add(503);
+
+        String result = newCaller(3).generateCompletion("sys", "hello");
+
+        assertThat(result).isEqualTo("done");
+        assertThat(requestCount.get()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should fail with the last status once attempts are exhausted")
+    void testGivesUpAfterMaxAttempts() {
+        statuses.add(429);
+        statuses.add(429);
+        statuses.add(429);
+
+        assertThatThrownBy(() -> newCaller(2).generateCompletion("sys", "hello"))
+            .isInstanceOf(RuntimeException.class)
+            .hasMessageContaining("429");
+        assertThat(requestCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should not retry client errors")
+    void testNoRetryOnBadRequest() {
+        statuses.add(400);
+
+        assertThatThrownBy(() -> newCaller(3).generateCompletion("sys", "hello"))
+            .hasMessageContaining("400");
+        assertThat(requestCount.get()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,41 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for QueryIntent
+ */
+@DisplayName("Query Intent Tests")
+class QueryIntentTest {
+
+    @Test
+    @DisplayName("Should read type, target, filters and question from JSON with nested quotes")
+    void testParseJson() {
+        QueryIntent intent = QueryIntent.parse("```json\n{\"type\": \"Complex\", \"target\": \"Warrior\", "
+                + "\"filters\": [{\"property\": \"fightsFor\", \"operator\": \"equals\", \"value\": \"the \\\"Pandavas\\\"\"}, "
+                + "{\"property\": \"age\", \"operator\": \">\", \"value\": 30}], \"question\": \"\"}\n```");
+
+        assertThat(intent.getType()).isEqualTo("complex");
+        assertThat(intent.getTarget()).isEqualTo("Warrior");
+        assertThat(intent.getFilters()).extracting(QueryIntent.Filter::getValue)
+                .containsExactly("the \"Pandavas\"", "30");
+        assertThat(intent.getFilters().get(1).getOperator()).isEqualTo(">");
+        assertThat(intent.getQuestion()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should read the line format and reject answers in neither format")
+    void testParseLinesAndInvalid() {
+        QueryIntent intent = QueryIntent.parse("QUERY_TYPE: Instances\nTARGET: Person");
+
+        assertThat(intent.getType()).isEqualTo("instances");
+        assertThat(intent.getTarget()).isEqualTo("Person");
+        assertThat(intent.getFilters()).isEmpty();
+        assertThat(QueryIntent.isValid("I think you mean people.")).isFalse();
+        assertThat(QueryIntent.isValid("{\"type\": \"classes\", \"target\": ")).isFalse();
+        assertThat(QueryIntent.isValid("{\"type\": \"ambiguous\", \"question\": \"Which Arjuna?\"}")).isTrue();
+    }
+}
@@ -0,0 +1,138 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for RetryPolicy, RateLimitHeaders and RateLimiter
+ */
+@DisplayName("Retry Policy and Rate Limiter Tests")
+class RetryPolicyTest {
+
+    private static HttpHeaders headers(Map<String, List<String>> map) {
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    @Test
+    @DisplayName("Should parse the reset durations used by x-ratelimit headers")
+    void testParseDuration() {
+        assertThat(RateLimitHeaders.parseDuration("1s")).isEqualTo(Duration.ofSeconds(1));
+        assertThat(RateLimitHeaders.parseDuration("6m0s")).isEqualTo(Duration.ofMinutes(6));
+        assertThat(RateLimitHeaders.parseDuration("120ms")).isEqualTo(Duration.ofMillis(120));
+        assertThat(RateLimitHeaders.parseDuration("1h2m3.5s")).isEqualTo(Duration.ofMillis(3_723_500));
+        assertThat(RateLimitHeaders.parseDuration("2")).isEqualTo(Duration.ofSeconds(2));
+        assertThat(RateLimitHeaders.parseDuration("soon")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should read Retry-After as seconds or HTTP date")
+    void testParseRetryAfter() {
+        assertThat(RateLimitHeaders.parseRetryAfter("20")).isEqualTo(Duration.ofSeconds(20));
+        assertThat(RateLimitHeaders.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT")).isEqualTo(Duration.ZERO);
+        assertThat(RateLimitHeaders.parseRetryAfter("garbage")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should extract all rate limit headers")
+    void testFromHeaders() {
+        RateLimitHeaders limits = RateLimitHeaders.from(headers(Map.of(
+            "x-ratelimit-limit-requests", List.of("500"),
+            "x-ratelimit-remaining-requests", List.of("0"),
+            "x-ratelimit-reset-requests", List.of("6s"),
+            "x-ratelimit-remaining-tokens", List.of("0"),
+            "x-ratelimit-reset-tokens", List.of("8s"),
+            "retry-after-ms", List.of("1500"))));
+
+        assertThat(limits.getLimitRequests()).isEqualTo(500);
+        assertThat(limits.getRetryAfter()).isEqualTo(Duration.ofMillis(1500));
+        assertThat(limits.getExhaustedQuotaReset()).isEqualTo(Duration.ofSeconds(8));
+        assertThat(limits.getLimitTokens()).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("Should retry rate limiting, transient errors and network failures only")
+    void testRetryableConditions() {
+        RetryPolicy policy = RetryPolicy.getDefault();
+
+        assertThat(policy.isRetryable(429, null)).isTrue();
+        assertThat(policy.isRetryable(503, "")).isTrue();
+        assertThat(policy.isRetryable(400, "")).isFalse();
+        assertThat(policy.isRetryable(401, "")).isFalse();
+        assertThat(policy.isRetryable(429, "{\"error\":{\"code\":\"insufficient_quota\"}}")).isFalse();
+        assertThat(policy.isRetryable(new CompletionException(new ConnectException("refused")))).isTrue();
+        assertThat(policy.isRetryable(new IllegalStateException())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should back off exponentially with jitter up to the cap")
+    void testBackoff() {
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofSeconds(1));
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(policy.backoffMillis(1)).isBetween(50L, 100L);
+            assertThat(policy.backoffMillis(3)).isBetween(200L, 400L);
+            assertThat(policy.backoffMillis(20)).isBetween(500L, 1000L);
+        }
+    }
+
+    @Test
+    @DisplayName("Should prefer the server's delay and give up on very long waits")
+    void testServerDelay() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1));
+        RateLimitHeaders retryAfter = RateLimitHeaders.from(headers(Map.of("Retry-After", List.of("2"))));
+        RateLimitHeaders tooLong = RateLimitHeaders.from(headers(Map.of("Retry-After", List.of("3600"))));
+
+        assertThat(policy.delayMillis(1, retryAfter)).isBetween(2000L, 2300L);
+        assertThat(policy.delayMillis(1, tooLong)).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("Should pace requests once the burst is used up")
+    void testTokenBucketPacing() {
+        RateLimiter limiter = new RateLimiter(600); // 10 per second, burst of 10
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.reserve()).isZero();
+        }
+        long wait = limiter.reserve();
+
+        assertThat(wait).isBetween(Duration.ofMillis(50).toNanos(), Duration.ofMillis(110).toNanos());
+        assertThat(limiter.getThrottledCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should learn the rate from headers and pause on exhausted quota")
+    void testLearnAndPause() {
+        RateLimiter limiter = new RateLimiter(0);
+        assertThat(limiter.reserve()).isZero();
+
+        limiter.onResponse(200, RateLimitHeaders.from(headers(Map.of(
+            "x-ratelimit-limit-requests", List.of("100")))));
+        assertThat(limiter.getEffectiveRequestsPerMinute()).isEqualTo(90.0);
+
+        limiter.onResponse(429, RateLimitHeaders.from(headers(Map.of(
+            "x-ratelimit-remaining-requests", List.of("0"),
+            "x-ratelimit-reset-requests", List.of("5s")))));
+        assertThat(limiter.reserve()).isGreaterThan(Duration.ofSeconds(4).toNanos());
+    }
+
+    @Test
+    @DisplayName("Should let an explicit rate override the learned one")
+    void testConfiguredRateWins() {
+        RateLimiter limiter = new RateLimiter(30);
+        limiter.onResponse(200, RateLimitHeaders.from(headers(Map.of(
+            "x-ratelimit-limit-requests", List.of("10000")))));
+
+        assertThat(limiter.getEffectiveRequestsPerMinute()).isEqualTo(30.0);
+    }
+}
@@ -0,0 +1,107 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for SemanticCache
+ */
+@DisplayName("Semantic Cache Tests")
+class SemanticCacheTest {
+
+    @Test
+    @DisplayName("Should answer rephrased questions and miss questions about something else")
+    void testNearDuplicates() {
+        SemanticCache cache = new SemanticCache(16);
+        cache.put("rev1", "list all suppliers", "Supplier A, Supplier B");
+
+        SemanticCache.Match match = cache.find("rev1", "Show suppliers");
+        assertThat(match).isNotNull();
+        assertThat(match.getAnswer()).isEqualTo("Supplier A, Supplier B");
+        assertThat(match.getQuery()).isEqualTo("list all suppliers");
+        assertThat(match.getSimilarity()).isGreaterThanOrEqualTo(cache.getThreshold());
+        assertThat(cache.find("rev1", "What are the suppliers?")).isNotNull();
+
+        assertThat(cache.find("rev1", "list all customers")).isNull();
+        assertThat(cache.find("rev1", "list suppliers in Germany")).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should miss questions differing in a negation, comparison or number")
+    void testContrastingQuestions() {
+        SemanticCache cache = new SemanticCache(16);
+        cache.put("rev1", "Which employees earn more than 50000 per year?", "Alice, Bob");
+        cache.put("rev1", "Which employees report to Alice?", "Bob, Carol");
+        cache.put("rev1", "Which classes have more than 5 subclasses?", "Vehicle");
+
+        assertThat(cache.find("rev1", "Which employees earn less than 50000 per year?")).isNull();
+        assertThat(cache.find("rev1", "Which employees do not report to Alice?")).isNull();
+        assertThat(cache.find("rev1", "Which employees don't report to Alice?")).isNull();
+        assertThat(cache.find("rev1", "Which classes have more than 6 subclasses?")).isNull();
+        assertThat(cache.find("rev1", "Which classes have more than five subclasses?")).isNull();
+        assertThat(cache.getHitCount()).isZero();
+
+        assertThat(SemanticCache.similarity("Which employees earn more than 50000 per year?",
+                "Which employees earn less than 50000 per year?")).isZero();
+        assertThat(SemanticCache.similarity("Which employees report to Alice?",
+                "Which employees do not report to Alice?")).isZero();
+        assertThat(SemanticCache.similarity("more than 5 subclasses", "more than 6 subclasses")).isZero();
+
+        // Rephrasing around the same negations and numbers still matches
+        assertThat(cache.find("rev1", "List the employees which earn more than 50000 per year.")).isNotNull();
+        assertThat(cache.find("rev1", "What classes have more than 5 subclasses?")).isNotNull();
+        assertThat(SemanticCache.DEFAULT_THRESHOLD).isGreaterThan(0.92);
+    }
+
+    @Test
+    @DisplayName("Should only match within the scope an answer was stored in")
+    void testScope() {
+        SemanticCache cache = new SemanticCache(16);
+        cache.put("rev1", "list all suppliers", "old answer");
+
+        assertThat(cache.find("rev2", "list all suppliers")).isNull();
+        cache.put("rev2", "list all suppliers", "new answer");
+        assertThat(cache.find("rev2", "show suppliers").getAnswer()).isEqualTo("new answer");
+        assertThat(cache.find("rev1", "show suppliers").getAnswer()).isEqualTo("old answer");
+
+        cache.remove("rev1", "list all suppliers");
+        assertThat(cache.find("rev1", "show suppliers")).isNull();
+        assertThat(cache.getEntryCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should apply the similarity threshold")
+    void testThreshold() {
+        SemanticCache cache = new SemanticCache(16);
+        cache.put("rev1", "subclasses of Vehicle", "Car, Truck");
+        double similarity = SemanticCache.similarity("subclasses of Vehicle", "direct subclasses of Vehicle");
+        assertThat(similarity).isBetween(0.5, 0.9);
+
+        assertThat(cache.find("rev1", "direct subclasses of Vehicle")).isNull();
+        cache.setThreshold(similarity - 0.01);
+        assertThat(cache.find("rev1", "direct subclasses of Vehicle")).isNotNull();
+        assertThatThrownBy(() -> cache.setThreshold(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Should drop the least recently used entries and skip filler-only questions")
+    void testEviction() {
+        SemanticCache cache = new SemanticCache(2);
+        cache.put("rev1", "classes", "1");
+        cache.put("rev1", "individuals", "2");
+        assertThat(cache.find("rev1", "classes")).isNotNull();
+        cache.put("rev1", "object properties", "3");
+
+        assertThat(cache.getEntryCount()).isEqualTo(2);
+        assertThat(cache.find("rev1", "individuals")).isNull();
+        assertThat(cache.find("rev1", "classes")).isNotNull();
+
+        cache.put("rev1", "show me all of them", "4");
+        assertThat(cache.getEntryCount()).isEqualTo(2);
+        assertThat(SemanticCache.similarity("list all", "show them")).isZero();
+    }
+}
@@ -0,0 +1,77 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for SingleFlight request coalescing
+ */
+@DisplayName("Single Flight Tests")
+class SingleFlightTest {
+
+    @Test
+    @DisplayName("Should run identical concurrent calls once and share the result")
+    void testCoalescesIdenticalCalls() {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = flights.execute("k", () -> { calls.incrementAndGet(); return source; });
+        CompletableFuture<String> second = flights.execute("k", () -> { calls.incrementAndGet(); return source; });
+        source.complete("answer");
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(first.join()).isEqualTo("answer");
+        assertThat(second.join()).isEqualTo("answer");
+        assertThat(flights.getJoinedCount()).isEqualTo(1);
+        assertThat(flights.getInFlightCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should start a new call once the previous one finished")
+    void testNoSharingAfterCompletion() {
+        SingleFlight<String> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        flights.execute("k", () -> CompletableFuture.completedFuture("a" + calls.incrementAndGet())).join();
+        String second = flights.execute("k", () -> CompletableFuture.completedFuture("a" + calls.incrementAndGet())).join();
+
+        assertThat(second).isEqualTo("a2");
+    }
+
+    @Test
+    @DisplayName("Should keep the call running while any caller still waits")
+    void testReferenceCountedCancellation() {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.execute("k", () -> source);
+        CompletableFuture<String> second = flights.execute("k", () -> source);
+
+        first.cancel(true);
+        assertThat(source).isNotDone();
+
+        second.cancel(true);
+        assertThat(source).isCancelled();
+        assertThat(flights.getInFlightCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should propagate failures to every caller")
+    void testSharedFailure() {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.execute("k", () -> source);
+        CompletableFuture<String> second = flights.execute("k", () -> source);
+        source.completeExceptionally(new RuntimeException("API call failed: 500 - boom"));
+
+        assertThatThrownBy(first::join).hasMessageContaining("500");
+        assertThatThrownBy(second::join).hasMessageContaining("500");
+    }
+}
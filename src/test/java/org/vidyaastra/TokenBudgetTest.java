@@ -0,0 +1,139 @@
+package org.vidyaastra;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for TokenBudget, ContextPacker and PromptLayout
+ */
+@DisplayName("Token Budget Tests")
+class TokenBudgetTest {
+
+    @AfterEach
+    void tearDown() {
+        TokenBudget.setContextWindow("my-local-model", 0);
+    }
+
+    @Test
+    @DisplayName("Should know context windows by model name and fall back conservatively")
+    void testContextWindows() {
+        assertThat(TokenBudget.getContextWindow("gpt-4o-mini")).isEqualTo(128_000);
+        assertThat(TokenBudget.getContextWindow("openai/gpt-4o")).isEqualTo(128_000);
+        assertThat(TokenBudget.getContextWindow("gpt-4")).isEqualTo(8_192);
+        assertThat(TokenBudget.getContextWindow("gpt-4.1-mini")).isEqualTo(1_047_576);
+        assertThat(TokenBudget.getContextWindow("my-local-model")).isEqualTo(TokenBudget.DEFAULT_CONTEXT_WINDOW);
+
+        TokenBudget.setContextWindow("my-local-model", 32_768);
+        assertThat(TokenBudget.getContextWindow("my-local-model")).isEqualTo(32_768);
+    }
+
+    @Test
+    @DisplayName("Should keep the output reserve free and apply the prompt cap")
+    void testPromptLimit() {
+        TokenBudget small = new TokenBudget(8_192, 2_048, 0, null);
+        assertThat(small.getPromptLimit()).isEqualTo(6_144);
+        assertThat(small.remaining("abcd", "efgh")).isEqualTo(6_144 - 3 - 2 * (4 + 1));
+
+        TokenBudget capped = new TokenBudget(128_000, 16_384, 24_000, null);
+        assertThat(capped.getPromptLimit()).isEqualTo(24_000);
+
+        // The reserve never takes more than half of the window
+        assertThat(new TokenBudget(4_096, 16_384, 0, null).getPromptLimit()).isEqualTo(2_048);
+    }
+
+    @Test
+    @DisplayName("Should estimate more tokens for identifiers than for plain words")
+    void testApproximateCounter() {
+        TokenCounter counter = TokenCounter.approximate();
+        assertThat(counter.count("")).isZero();
+        assertThat(counter.count("hello world")).isEqualTo(4);
+        assertThat(counter.count("hasPartOfSupplyChain")).isGreaterThanOrEqualTo(5);
+        assertThat(counter.count("<http://example.org/zoo#Animal>")).isGreaterThan(8);
+    }
+
+    @Test
+    @DisplayName("Should take the most valuable items and render them in their original order")
+    void testPacksByValue() {
+        ContextPacker packer = new ContextPacker(text -> text.length(), 40)
+                .section("classes", null);
+        packer.add("classes", "aaaaaaaa", 1)
+                .add("classes", "bbbbbbbb", 5)
+                .add("classes", "cccccccc", 3)
+                .add("classes", "dddddddd", 4)
+                .add("classes", "eeeeeeee", 2);
+
+        ContextPacker.Result result = packer.pack();
+
+        assertThat(result.getText()).isEqualTo("bbbbbbbb\ncccccccc\ndddddddd\neeeeeeee\n");
+        assertThat(result.getDroppedCount()).isEqualTo(1);
+        assertThat(result.describeDropped()).isEqualTo("Omitted 1 of 5 classes");
+        assertThat(result.getTokens()).isLessThanOrEqualTo(40);
+    }
+
+    @Test
+    @DisplayName("Should render headers, omission lines and always keep required items")
+    void testSectionsAndRequiredItems() {
+        ContextPacker packer = new ContextPacker(text -> text.length(), 70)
+                .section("header", null)
+                .section("classes", "Classes:");
+        packer.add("classes", "  - Dog", 1)
+                .add("classes", "  - Cat", 1)
+                .add("classes", "  - AVeryLongClassNameThatDoesNotFit", 9)
+                .add("header", "Ontology(<x>", ContextPacker.REQUIRED);
+
+        ContextPacker.Result result = packer.pack();
+
+        assertThat(result.getText()).isEqualTo("Ontology(<x>\n\nClasses:\n  - Dog\n  - Cat\n  ... 1 more omitted\n");
+        assertThat(result.getDroppedCount("classes")).isEqualTo(1);
+        assertThat(result.getTotalCount("classes")).isEqualTo(3);
+        assertThat(result.isComplete()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should keep a 50k-entity listing within the budget")
+    void testLargeListingStaysWithinBudget() {
+        TokenBudget budget = new TokenBudget(8_192, 2_048, 0, null);
+        ContextPacker packer = budget.packer(budget.remaining("system prompt"))
+                .section("classes", "Classes:");
+        for (int i = 0; i < 50_000; i++) {
+            packer.add("classes", "  - GeneratedClass" + i, i % 97);
+        }
+
+        ContextPacker.Result result = packer.pack();
+
+        assertThat(budget.count(result.getText())).isLessThanOrEqualTo(budget.getPromptLimit());
+        assertThat(result.getIncludedCount()).isGreaterThan(100);
+        assertThat(result.getDroppedCount()).isEqualTo(50_000 - result.getIncludedCount());
+        assertThat(result.getText()).contains("GeneratedClass96").doesNotContain("GeneratedClass97\n");
+    }
+
+    @Test
+    @DisplayName("Should size content the same for messages of similar length")
+    void testRemainingStable() {
+        TokenBudget budget = new TokenBudget(8_192, 2_048, 0, text -> text.length());
+
+        assertThat(budget.remainingStable("system", "list all suppliers"))
+                .isEqualTo(budget.remainingStable("system", "which suppliers are there in the ontology?"))
+                .isLessThanOrEqualTo(budget.remaining("system", "which suppliers are there in the ontology?"));
+        assertThat(budget.remainingStable("system", "x".repeat(TokenBudget.STABLE_STEP)))
+                .isEqualTo(budget.remainingStable("system", "x") - TokenBudget.STABLE_STEP);
+    }
+
+    @Test
+    @DisplayName("Should keep static prompt text ahead of dynamic text")
+    void testPromptLayout() {
+        PromptLayout layout = new PromptLayout()
+                .appendStatic("Instructions. ")
+                .appendStatic("Format. ")
+                .appendDynamic("Ontology: Pizza.");
+
+        assertThat(layout.getPrefix()).isEqualTo("Instructions. Format. ");
+        assertThat(layout.getSuffix()).isEqualTo("Ontology: Pizza.");
+        assertThat(layout.toString()).isEqualTo("Instructions. Format. Ontology: Pizza.");
+        assertThatThrownBy(() -> layout.appendStatic("More instructions."))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -7,8 +7,12 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.prefs.Preferences;
 
+import org.vidyaastra.ui.VidyaastraPreferences;
+
 import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -231,4 +235,24 @@ class VidyaastraPreferencesTest {
         assertThat(projectKey).startsWith("sk-");
         assertThat(serviceKey).startsWith("sk-");
     }
+
+    @Test
+    @DisplayName("Should keep the provider of each fallback endpoint")
+    void testFallbackEndpointProviders() {
+        List<Endpoint> saved = VidyaastraPreferences.getFallbackEndpoints();
+        try {
+            VidyaastraPreferences.setFallbackEndpoints(Arrays.asList(
+                new Endpoint("https://example.openai.azure.com", "azure-key", "gpt-4o-deployment",
+                    CompletionProvider.azure(AzureOpenAiProvider.DEFAULT_API_VERSION)),
+                new Endpoint("https://api.example.com/v1", "", "")));
+
+            List<Endpoint> endpoints = VidyaastraPreferences.getFallbackEndpoints();
+
+            assertThat(endpoints).extracting(endpoint -> endpoint.getProvider().getKind())
+                .containsExactly(CompletionProvider.Kind.AZURE, CompletionProvider.Kind.OPENAI);
+            assertThat(endpoints.get(0).getModel()).isEqualTo("gpt-4o-deployment");
+        } finally {
+            VidyaastraPreferences.setFallbackEndpoints(saved);
+        }
+    }
 }